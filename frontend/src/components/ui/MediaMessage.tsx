@@ -33,6 +33,8 @@ const MediaMessage: React.FC<MediaMessageProps> = ({ content, type }) => {
   }
 
   const fullUrl = `http://localhost:8080${fileInfo.url}`;
+  // Downscaled preview for the chat bubble; the server falls back to the original until it is generated
+  const previewUrl = `${fullUrl}?size=medium`;
   
   const formatFileSize = (bytes: number) => {
     if (bytes === 0) return '0 Bytes';
@@ -70,7 +72,7 @@ const MediaMessage: React.FC<MediaMessageProps> = ({ content, type }) => {
               </div>
             ) : (
               <img
-                src={fullUrl}
+                src={previewUrl}
                 alt={fileInfo.originalName}
                 className={`max-w-full h-auto rounded-xl transition-opacity duration-300 ${
                   imageLoaded ? 'opacity-100' : 'opacity-0'
@@ -57,6 +57,14 @@ export const useWebSocket = () => {
             console.error('WebSocket error message:', data);
             break;
 
+          case 'RATE_LIMITED':
+            console.warn(`Sending too fast, retry in ${data.retryAfterMs}ms`);
+            break;
+
+          case 'RECONNECT':
+            console.log(`Server is restarting, reconnecting in ${data.delayMs}ms`);
+            break;
+
           case 'TYPING':
             // Handle typing indicator if needed
             break;
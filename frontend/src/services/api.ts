@@ -73,6 +73,9 @@ export const userAPI = {
   getUserById: (id: string): Promise<AxiosResponse<User>> =>
     api.get(`/users/${id}`),
   
+  getUsersByIds: (ids: string[]): Promise<AxiosResponse<User[]>> =>
+    api.get(`/users?ids=${ids.map(encodeURIComponent).join(',')}`),
+  
   updateProfile: (data: Partial<User>): Promise<AxiosResponse<User>> =>
     api.put('/users/profile', data),
 };
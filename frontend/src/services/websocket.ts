@@ -7,6 +7,7 @@ class WebSocketService {
   private reconnectAttempts = 0;
   private maxReconnectAttempts = 5;
   private reconnectInterval = 3000;
+  private serverReconnectDelay: number | null = null; // Delay hint from a RECONNECT event
   private messageHandler: ((data: WebSocketMessage) => void) | null = null;
   private connectHandler: (() => void) | null = null;
   private disconnectHandler: (() => void) | null = null;
@@ -43,6 +44,12 @@ class WebSocketService {
             this.connectHandler?.(); // Now call the connect handler
           }
 
+          // Server is shutting down; reconnect after its randomized delay once the socket closes
+          if (data.type === 'RECONNECT') {
+            this.serverReconnectDelay = data.delayMs ?? null;
+            this.reconnectAttempts = 0;
+          }
+
           this.messageHandler?.(data);
         } catch (error) {
           console.error('Error parsing WebSocket message:', error);
@@ -70,10 +77,13 @@ class WebSocketService {
   private handleReconnect() {
     if (this.reconnectAttempts < this.maxReconnectAttempts) {
       this.reconnectAttempts++;
-      console.log(`Attempting to reconnect... (${this.reconnectAttempts}/${this.maxReconnectAttempts})`);
+      // Jitter so clients dropped together don't all come back at the same moment
+      const delay = this.serverReconnectDelay ?? this.reconnectInterval + Math.random() * this.reconnectInterval;
+      this.serverReconnectDelay = null;
+      console.log(`Attempting to reconnect in ${Math.round(delay)}ms... (${this.reconnectAttempts}/${this.maxReconnectAttempts})`);
       setTimeout(() => {
         this.connectWebSocket();
-      }, this.reconnectInterval);
+      }, delay);
     }
   }
 
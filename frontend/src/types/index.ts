@@ -74,12 +74,14 @@ export interface ApiResponse<T = any> {
 
 // WebSocket message types - Updated to match backend
 export interface WebSocketMessage {
-  type: 'NEW_MESSAGE' | 'MESSAGE_SENT' | 'CONNECTION_ESTABLISHED' | 'ERROR' | 'USER_ONLINE' | 'USER_OFFLINE' | 'TYPING' | 'SEND_MESSAGE';
+  type: 'NEW_MESSAGE' | 'MESSAGE_SENT' | 'CONNECTION_ESTABLISHED' | 'ERROR' | 'USER_ONLINE' | 'USER_OFFLINE' | 'TYPING' | 'SEND_MESSAGE' | 'RATE_LIMITED' | 'RECONNECT';
   message?: Message;
   userId?: string;
   content?: string;
   receiverId?: string;
   messageType?: MessageType;
+  retryAfterMs?: number;
+  delayMs?: number;
 }
 
 // Store types
@@ -0,0 +1,95 @@
+package com.messaging.backend.config;
+
+import com.messaging.backend.service.MessagingMetrics;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+public class MetricsConfig {
+
+    /**
+     * Times every reactive repository method from subscription to completion. Spring Data's own repository
+     * metrics only time the method call, which for a reactive repository returns before the query runs.
+     */
+    @Bean
+    public static BeanPostProcessor repositoryMetricsPostProcessor(ObjectProvider<MessagingMetrics> metrics) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof RepositoryFactoryBeanSupport<?, ?, ?> factoryBean) {
+                    factoryBean.addRepositoryFactoryCustomizer(factory -> factory.addRepositoryProxyPostProcessor(
+                            (proxyFactory, information) -> proxyFactory.addAdvice(new RepositoryTimingInterceptor(
+                                    metrics, information.getRepositoryInterface().getSimpleName()))));
+                }
+                return bean;
+            }
+        };
+    }
+
+    public static class RepositoryTimingInterceptor implements MethodInterceptor {
+
+        private final ObjectProvider<MessagingMetrics> metrics;
+        private final String repository;
+        // success, error, cancelled timers per method
+        private final Map<Method, Timer[]> timers = new ConcurrentHashMap<>();
+
+        public RepositoryTimingInterceptor(ObjectProvider<MessagingMetrics> metrics, String repository) {
+            this.metrics = metrics;
+            this.repository = repository;
+        }
+
+        @Override
+        public Object invoke(MethodInvocation invocation) throws Throwable {
+            Object result = invocation.proceed();
+            if (result instanceof Mono<?> mono) {
+                Timer[] methodTimers = timersFor(invocation.getMethod());
+                return Mono.defer(() -> {
+                    long start = System.nanoTime();
+                    return mono.doFinally(signal -> record(methodTimers, signal, start));
+                });
+            }
+            if (result instanceof Flux<?> flux) {
+                Timer[] methodTimers = timersFor(invocation.getMethod());
+                return Flux.defer(() -> {
+                    long start = System.nanoTime();
+                    return flux.doFinally(signal -> record(methodTimers, signal, start));
+                });
+            }
+            return result;
+        }
+
+        private static void record(Timer[] methodTimers, SignalType signal, long start) {
+            int index = signal == SignalType.ON_ERROR ? 1 : signal == SignalType.CANCEL ? 2 : 0;
+            methodTimers[index].record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+
+        private Timer[] timersFor(Method method) {
+            return timers.computeIfAbsent(method, m -> new Timer[]{
+                    timer(m, "success"), timer(m, "error"), timer(m, "cancelled")});
+        }
+
+        private Timer timer(Method method, String outcome) {
+            return Timer.builder("messaging.mongo.repository")
+                    .description("Reactive repository call time, subscription to completion")
+                    .tag("repository", repository)
+                    .tag("method", method.getName())
+                    .tag("outcome", outcome)
+                    .publishPercentileHistogram()
+                    .register(metrics.getObject().getRegistry());
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.messaging.backend.config;
+
+import com.messaging.backend.repository.MessageSchema;
+import com.messaging.backend.service.QueryProfiler;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+
+import java.util.List;
+
+@Configuration
+public class MongoConfig {
+
+    // Every command goes through the profiler so slow ones can be sampled with their plan
+    @Bean
+    public MongoClientSettingsBuilderCustomizer queryProfilerCustomizer(QueryProfiler queryProfiler) {
+        return settings -> settings.addCommandListener(queryProfiler);
+    }
+
+    // Messages are stored in the compact layout of MessageSchema instead of the default field mapping
+    @Bean
+    public MongoCustomConversions mongoCustomConversions() {
+        return new MongoCustomConversions(List.of(new MessageSchema.MessageWriter(), new MessageSchema.MessageReader()));
+    }
+}
@@ -1,11 +1,13 @@
 package com.messaging.backend.config;
 
+import com.messaging.backend.model.User;
 import com.messaging.backend.security.JwtAuthenticationFilter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.http.HttpMethod;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -33,6 +35,12 @@ public class SecurityConfig {
     @Value("${cors.allowed-origins:*}")
     private String allowedOrigins;
 
+    @Value("${security.bcrypt.strength:10}")
+    private int bcryptStrength;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
     @Autowired
     private JwtAuthenticationFilter jwtAuthenticationFilter;
 
@@ -43,7 +51,11 @@ public class SecurityConfig {
                 .cors(cors -> cors.configurationSource(corsConfigurationSource()))
                 .authorizeHttpRequests(authz -> authz
                         .requestMatchers(HttpMethod.OPTIONS).permitAll()
-                        .requestMatchers("/api/auth/**", "/ws/**", "/actuator/health").permitAll()
+                        .requestMatchers("/api/auth/**", "/ws/**").permitAll()
+                        // Only served on management.server.port, which is not exposed publicly
+                        .requestMatchers("/actuator/health", "/actuator/prometheus").permitAll()
+                        .requestMatchers("/api/admin/**").hasRole(User.ROLE_ADMIN)
+                        .requestMatchers("/api/files/shards/**").hasRole(User.ROLE_ADMIN)
                         .requestMatchers(HttpMethod.GET, "/api/files/**").permitAll() // Allow file serving
                         .anyRequest().authenticated()
                 )
@@ -70,11 +82,18 @@ public class SecurityConfig {
 
     @Bean
     public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+        return new BCryptPasswordEncoder(bcryptStrength);
     }
 
     @Bean
     public AsyncTaskExecutor taskExecutor() {
+        if (virtualThreads) {
+            // One virtual thread per task (JDK 21+); blocking calls park instead of holding a pool slot
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("AsyncTask-");
+            executor.setVirtualThreads(true);
+            return new DelegatingSecurityContextAsyncTaskExecutor(executor);
+        }
+
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
         executor.setCorePoolSize(10);
         executor.setMaxPoolSize(20);
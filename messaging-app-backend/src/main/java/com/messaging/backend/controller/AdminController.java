@@ -0,0 +1,217 @@
+package com.messaging.backend.controller;
+
+import com.messaging.backend.service.ChatEventLoops;
+import com.messaging.backend.service.ChatExportService;
+import com.messaging.backend.service.IndexVerifier;
+import com.messaging.backend.service.MediaFileCache;
+import com.messaging.backend.service.MessageArchiver;
+import com.messaging.backend.service.MessageSchemaMigration;
+import com.messaging.backend.service.MessageSearchService;
+import com.messaging.backend.service.MessagingMetrics;
+import com.messaging.backend.service.QueryProfiler;
+import com.messaging.backend.service.RecentMessageCache;
+import com.messaging.backend.service.SendDeduplicator;
+import com.messaging.backend.service.ThumbnailService;
+import com.messaging.backend.service.UserProfileCache;
+import com.messaging.backend.websocket.HeartbeatWheel;
+import com.messaging.backend.websocket.OutboundWriters;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+@RestController
+@RequestMapping("/api/admin")
+public class AdminController {
+
+    @Autowired
+    private QueryProfiler queryProfiler;
+
+    @Autowired
+    private IndexVerifier indexVerifier;
+
+    @Autowired
+    private MessageArchiver messageArchiver;
+
+    @Autowired
+    private MessageSchemaMigration messageSchemaMigration;
+
+    @Autowired
+    private MessagingMetrics metrics;
+
+    @Autowired
+    private ChatEventLoops chatEventLoops;
+
+    @Autowired
+    private HeartbeatWheel heartbeatWheel;
+
+    @Autowired
+    private OutboundWriters outboundWriters;
+
+    @Autowired
+    private ChatExportService chatExportService;
+
+    @Autowired
+    private MessageSearchService messageSearchService;
+
+    @Autowired
+    private RecentMessageCache recentMessageCache;
+
+    @Autowired
+    private UserProfileCache userProfileCache;
+
+    @Autowired
+    private SendDeduplicator sendDeduplicator;
+
+    @Autowired
+    private MediaFileCache mediaFileCache;
+
+    @Autowired
+    private ThumbnailService thumbnailService;
+
+    @GetMapping("/queries/slow")
+    public ResponseEntity<Map<String, Object>> getSlowQueries() {
+        return ResponseEntity.ok(queryProfiler.getSlowQueries());
+    }
+
+    // Queueing delay of outbound WebSocket events per priority lane
+    @GetMapping("/websocket/lanes")
+    public ResponseEntity<Map<String, Object>> getOutboundLanes() {
+        return ResponseEntity.ok(metrics.getOutboundQueueStats());
+    }
+
+    // Writer threads in use and socket drains waiting for one
+    @GetMapping("/websocket/writers")
+    public ResponseEntity<Map<String, Object>> getOutboundWriters() {
+        return ResponseEntity.ok(outboundWriters.getStats());
+    }
+
+    // Queue depth per chat shard and how many deliveries were held back to keep a chat in order
+    @GetMapping("/websocket/shards")
+    public ResponseEntity<Map<String, Object>> getChatShards() {
+        return ResponseEntity.ok(chatEventLoops.getStats());
+    }
+
+    // Sessions on the heartbeat wheel, pings, missed pongs, reaped sessions and the wheel's tick cost
+    @GetMapping("/websocket/heartbeats")
+    public ResponseEntity<Map<String, Object>> getHeartbeats() {
+        return ResponseEntity.ok(heartbeatWheel.getStats());
+    }
+
+    @GetMapping("/search/stats")
+    public ResponseEntity<Map<String, Object>> getSearchStats() {
+        return ResponseEntity.ok(messageSearchService.getStats());
+    }
+
+    @GetMapping("/messages/cache/stats")
+    public ResponseEntity<Map<String, Object>> getMessageCacheStats() {
+        return ResponseEntity.ok(recentMessageCache.getStats());
+    }
+
+    @GetMapping("/messages/dedup/stats")
+    public ResponseEntity<Map<String, Object>> getDedupStats() {
+        return ResponseEntity.ok(sendDeduplicator.getStats());
+    }
+
+    @GetMapping("/users/cache/stats")
+    public ResponseEntity<Map<String, Object>> getUserCacheStats() {
+        return ResponseEntity.ok(userProfileCache.getStats());
+    }
+
+    // Media files served from memory: hits, evictions and bytes held
+    @GetMapping("/files/cache/stats")
+    public ResponseEntity<Map<String, Object>> getMediaCacheStats() {
+        return ResponseEntity.ok(mediaFileCache.getStats());
+    }
+
+    // Thumbnail pool: queue depth, active workers, thumbnails generated or failed, subsampled decodes and
+    // images refused as too large
+    @GetMapping("/files/thumbnails/stats")
+    public ResponseEntity<Map<String, Object>> getThumbnailStats() {
+        return ResponseEntity.ok(thumbnailService.getStats());
+    }
+
+    @GetMapping("/indexes")
+    public ResponseEntity<Map<String, Object>> getIndexReport() {
+        return ResponseEntity.ok(indexVerifier.getLastReport());
+    }
+
+    // Rebuilds missing indexes and explains the hot queries again
+    @PostMapping("/indexes/verify")
+    public Mono<ResponseEntity<Map<String, Object>>> verifyIndexes() {
+        return indexVerifier.verify().map(ResponseEntity::ok);
+    }
+
+    // Run state, throughput, storage saved and cold-read latency of the archiver
+    @GetMapping("/archive/stats")
+    public ResponseEntity<Map<String, Object>> getArchiveStats() {
+        return ResponseEntity.ok(messageArchiver.getStatus());
+    }
+
+    // Starts an archiving run now instead of waiting for the schedule; a run already in progress is left alone
+    @PostMapping("/archive/run")
+    public ResponseEntity<Map<String, Object>> runArchiver() {
+        Map<String, Object> status = new HashMap<>(messageArchiver.getStatus());
+        status.put("started", messageArchiver.start());
+        return ResponseEntity.ok(status);
+    }
+
+    // Progress of the compact schema migration with the collection's size per message before, after and now
+    @GetMapping("/migrations/message-schema")
+    public Mono<ResponseEntity<Map<String, Object>>> getMessageSchemaMigration() {
+        return messageSchemaMigration.getReport().map(ResponseEntity::ok);
+    }
+
+    @PostMapping("/migrations/message-schema/start")
+    public Mono<ResponseEntity<Map<String, Object>>> startMessageSchemaMigration() {
+        boolean started = messageSchemaMigration.start();
+        return messageSchemaMigration.getReport()
+                .map(report -> {
+                    report.put("started", started);
+                    return ResponseEntity.ok(report);
+                });
+    }
+
+    /**
+     * Streams the whole chat between two users as NDJSON (see ChatExportService), gzip-compressed with
+     * gzip=true. Written on the request thread as the client reads, so it is not cut off by the async timeout.
+     */
+    @GetMapping("/chats/{userId1}/{userId2}/export")
+    public void exportChat(@PathVariable String userId1, @PathVariable String userId2,
+                           @RequestParam(defaultValue = "false") boolean gzip,
+                           HttpServletResponse response) throws IOException {
+        String filename = "chat-" + userId1 + "-" + userId2 + (gzip ? ".ndjson.gz" : ".ndjson");
+        response.setContentType(gzip ? "application/gzip" : MediaType.APPLICATION_NDJSON_VALUE);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"");
+        OutputStream out = response.getOutputStream();
+        chatExportService.export(userId1, userId2, out, gzip);
+        out.flush();
+    }
+
+    // Restores an NDJSON export from the request body (gzip-compressed with gzip=true or Content-Encoding: gzip)
+    @PostMapping("/messages/import")
+    public ResponseEntity<Map<String, Object>> importMessages(@RequestParam(defaultValue = "false") boolean gzip,
+                                                              HttpServletRequest request) throws IOException {
+        InputStream in = request.getInputStream();
+        if (gzip || "gzip".equalsIgnoreCase(request.getHeader(HttpHeaders.CONTENT_ENCODING))) {
+            in = new GZIPInputStream(in, 64 * 1024);
+        }
+        return ResponseEntity.ok(chatExportService.importMessages(in));
+    }
+
+    @GetMapping("/messages/export/stats")
+    public ResponseEntity<Map<String, Object>> getExportStats() {
+        return ResponseEntity.ok(chatExportService.getStats());
+    }
+}
@@ -2,9 +2,12 @@ package com.messaging.backend.controller;
 
 import com.messaging.backend.dto.LoginDto;
 import com.messaging.backend.dto.UserRegistrationDto;
+import com.messaging.backend.service.PasswordHashingService;
 import com.messaging.backend.service.UserService;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Mono;
@@ -22,6 +25,7 @@ public class AuthController {
     public Mono<ResponseEntity<Map<String, Object>>> register(@Valid @RequestBody UserRegistrationDto userDto) {
         return userService.registerUser(userDto)
                 .map(ResponseEntity::ok)
+                .onErrorResume(PasswordHashingService.HashingCapacityExceededException.class, this::serviceUnavailable)
                 .onErrorResume(e -> Mono.just(ResponseEntity.badRequest()
                         .body(Map.of("error", e.getMessage()))));
     }
@@ -30,7 +34,14 @@ public class AuthController {
     public Mono<ResponseEntity<Map<String, Object>>> login(@Valid @RequestBody LoginDto loginDto) {
         return userService.loginUser(loginDto)
                 .map(ResponseEntity::ok)
+                .onErrorResume(PasswordHashingService.HashingCapacityExceededException.class, this::serviceUnavailable)
                 .onErrorResume(e -> Mono.just(ResponseEntity.badRequest()
                         .body(Map.of("error", e.getMessage()))));
     }
+
+    private Mono<ResponseEntity<Map<String, Object>>> serviceUnavailable(Throwable e) {
+        return Mono.just(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(Map.of("error", e.getMessage())));
+    }
 }
\ No newline at end of file
@@ -1,6 +1,12 @@
 package com.messaging.backend.controller;
 
 import com.messaging.backend.security.JwtTokenProvider;
+import com.messaging.backend.service.MediaFileCache;
+import com.messaging.backend.service.MediaShardMigration;
+import com.messaging.backend.service.MediaStorage;
+import com.messaging.backend.service.MessagingMetrics;
+import com.messaging.backend.service.RateLimiter;
+import com.messaging.backend.service.ThumbnailService;
 import com.messaging.backend.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.Resource;
@@ -16,7 +22,6 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
@@ -34,7 +39,24 @@ public class FileController {
     @Autowired
     private UserService userService;
 
-    private final String uploadDir = "media/";
+    @Autowired
+    private ThumbnailService thumbnailService;
+
+    @Autowired
+    private MediaFileCache mediaFileCache;
+
+    @Autowired
+    private MediaStorage mediaStorage;
+
+    @Autowired
+    private MediaShardMigration mediaShardMigration;
+
+    @Autowired
+    private RateLimiter rateLimiter;
+
+    @Autowired
+    private MessagingMetrics metrics;
+
     private final long maxFileSize = 65 * 1024 * 1024; // 65MB like WhatsApp
     private final DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
 
@@ -44,6 +66,8 @@ public class FileController {
             @RequestParam("type") String type,
             @RequestHeader("Authorization") String token) {
         
+        long startedAt = System.nanoTime();
+        String typeFolder = getTypeFolderName(type);
         try {
             String jwt = token.substring(7);
             if (!tokenProvider.validateToken(jwt)) {
@@ -58,6 +82,13 @@ public class FileController {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                     .body(Map.of("error", "Invalid token"));
             }
+
+            long retryAfterMs = rateLimiter.tryAcquire(userId, RateLimiter.Budget.UPLOAD);
+            if (retryAfterMs > 0) {
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf((retryAfterMs + 999) / 1000))
+                    .body(Map.of("error", "Too many uploads, retry later", "retryAfterMs", retryAfterMs));
+            }
             
             // Validate file
             if (file.isEmpty()) {
@@ -77,13 +108,6 @@ public class FileController {
                     .body(Map.of("error", "Invalid file type for " + type));
             }
 
-            // Create media directory structure: media/images/, media/videos/, etc.
-            String typeFolder = getTypeFolderName(type);
-            Path uploadPath = Paths.get(uploadDir, typeFolder);
-            if (!Files.exists(uploadPath)) {
-                Files.createDirectories(uploadPath);
-            }
-
             // Generate filename with username-datetime format
             String originalFilename = file.getOriginalFilename();
             String fileExtension = "";
@@ -94,10 +118,15 @@ public class FileController {
             String timestamp = LocalDateTime.now().format(dateFormatter);
             String filename = String.format("%s_%s%s", username, timestamp, fileExtension);
             
-            // Save file
-            Path filePath = uploadPath.resolve(filename);
+            // Save file into media/<type>/<ab>/<cd>/ so no single directory grows unbounded
+            Path filePath = mediaStorage.resolveForWrite(typeFolder, filename);
             Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
 
+            // Generate downscaled previews in the background; downloads fall back to the original until ready
+            if (thumbnailService.supports(contentType)) {
+                thumbnailService.submit(filePath);
+            }
+
             // Return file info
             Map<String, Object> response = new HashMap<>();
             response.put("filename", filename);
@@ -109,39 +138,57 @@ public class FileController {
             response.put("username", username);
             response.put("uploadedAt", LocalDateTime.now().toString());
 
+            metrics.recordUpload(typeFolder, "success", file.getSize(), startedAt);
             return ResponseEntity.ok(response);
 
         } catch (IOException e) {
+            metrics.recordUpload(typeFolder, "error", 0, startedAt);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                 .body(Map.of("error", "Failed to upload file: " + e.getMessage()));
         } catch (Exception e) {
+            metrics.recordUpload(typeFolder, "error", 0, startedAt);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                 .body(Map.of("error", "Unexpected error: " + e.getMessage()));
         }
     }
 
+    @GetMapping("/shards/migration")
+    public ResponseEntity<Map<String, Object>> getShardMigrationStatus() {
+        return ResponseEntity.ok(mediaShardMigration.getStatus());
+    }
+
+    @PostMapping("/shards/migration")
+    public ResponseEntity<Map<String, Object>> startShardMigration() {
+        if (!mediaShardMigration.start()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(Map.of("error", "Migration already running"));
+        }
+        return ResponseEntity.accepted().body(mediaShardMigration.getStatus());
+    }
+
     @GetMapping("/{folder}/{filename:.+}")
     public ResponseEntity<Resource> downloadFile(
             @PathVariable String folder, 
-            @PathVariable String filename) {
+            @PathVariable String filename,
+            @RequestParam(value = "size", required = false) String size) {
         try {
-            Path filePath = Paths.get(uploadDir, folder, filename).normalize();
-            Resource resource = new UrlResource(filePath.toUri());
+            Path filePath = mediaStorage.locate(folder, filename);
+            if (filePath == null) {
+                return ResponseEntity.notFound().build();
+            }
 
-            if (resource.exists() && resource.isReadable()) {
-                String contentType = Files.probeContentType(filePath);
-                if (contentType == null) {
-                    contentType = "application/octet-stream";
+            ThumbnailService.Size thumbnailSize = ThumbnailService.Size.fromParam(size);
+            if (thumbnailSize != null) {
+                Path thumbnailPath = thumbnailService.resolve(filePath, thumbnailSize);
+                if (Files.isReadable(thumbnailPath)) {
+                    return serveFile(thumbnailPath, filename, "max-age=31536000");
                 }
-
-                return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType(contentType))
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + filename + "\"")
-                    .header(HttpHeaders.CACHE_CONTROL, "max-age=31536000") // Cache for 1 year
-                    .body(resource);
-            } else {
-                return ResponseEntity.notFound().build();
             }
+
+            // A thumbnail request answered with the original must not be cached for long,
+            // otherwise clients keep the full-size file once the thumbnail is ready
+            String cacheControl = thumbnailSize != null ? "max-age=60" : "max-age=31536000"; // Cache for 1 year
+            return serveFile(filePath, filename, cacheControl);
         } catch (MalformedURLException e) {
             return ResponseEntity.badRequest().build();
         } catch (IOException e) {
@@ -154,40 +201,17 @@ public class FileController {
     public ResponseEntity<Resource> downloadFileOld(@PathVariable String filename) {
         try {
             // Try to find the file in any subfolder
-            String[] folders = {"images", "videos", "audio", "documents"};
-            
-            for (String folder : folders) {
-                Path filePath = Paths.get(uploadDir, folder, filename).normalize();
-                Resource resource = new UrlResource(filePath.toUri());
-                
-                if (resource.exists() && resource.isReadable()) {
-                    String contentType = Files.probeContentType(filePath);
-                    if (contentType == null) {
-                        contentType = "application/octet-stream";
-                    }
-
-                    return ResponseEntity.ok()
-                        .contentType(MediaType.parseMediaType(contentType))
-                        .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + filename + "\"")
-                        .header(HttpHeaders.CACHE_CONTROL, "max-age=31536000")
-                        .body(resource);
+            for (String folder : MediaStorage.TYPE_FOLDERS) {
+                Path filePath = mediaStorage.locate(folder, filename);
+                if (filePath != null) {
+                    return serveFile(filePath, filename, "max-age=31536000");
                 }
             }
             
             // If not found in subfolders, try root media directory
-            Path filePath = Paths.get(uploadDir, filename).normalize();
-            Resource resource = new UrlResource(filePath.toUri());
-            
-            if (resource.exists() && resource.isReadable()) {
-                String contentType = Files.probeContentType(filePath);
-                if (contentType == null) {
-                    contentType = "application/octet-stream";
-                }
-
-                return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType(contentType))
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + filename + "\"")
-                    .body(resource);
+            Path filePath = mediaStorage.getRoot().resolve(filename).normalize();
+            if (Files.isReadable(filePath)) {
+                return serveFile(filePath, filename, null);
             }
             
             return ResponseEntity.notFound().build();
@@ -198,6 +222,24 @@ public class FileController {
         }
     }
 
+    private ResponseEntity<Resource> serveFile(Path filePath, String filename, String cacheControl) throws IOException {
+        MediaFileCache.CachedFile cached = mediaFileCache.get(filePath);
+
+        // Small hot files (avatars, thumbnails) come straight from memory, everything else streams from disk
+        Resource resource = cached.hasContent() ? cached.toResource() : new UrlResource(filePath.toUri());
+
+        // ETag and Last-Modified let Spring answer If-None-Match / If-Modified-Since with a 304
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+            .contentType(MediaType.parseMediaType(cached.getContentType()))
+            .eTag(cached.getETag())
+            .lastModified(cached.getLastModified())
+            .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + filename + "\"");
+        if (cacheControl != null) {
+            builder.header(HttpHeaders.CACHE_CONTROL, cacheControl);
+        }
+        return builder.body(resource);
+    }
+
     private String getTypeFolderName(String type) {
         switch (type.toUpperCase()) {
             case "IMAGE":
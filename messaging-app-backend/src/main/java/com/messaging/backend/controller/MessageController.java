@@ -3,14 +3,24 @@ package com.messaging.backend.controller;
 import com.messaging.backend.dto.MessageDto;
 import com.messaging.backend.model.Message;
 import com.messaging.backend.security.JwtTokenProvider;
+import com.messaging.backend.service.ChatExportService;
+import com.messaging.backend.service.MessageSearchService;
 import com.messaging.backend.service.MessageService;
+import com.messaging.backend.service.RateLimiter;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
-import java.util.List;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/messages")
@@ -22,95 +32,137 @@ public class MessageController {
     @Autowired
     private JwtTokenProvider tokenProvider;
 
+    @Autowired
+    private MessageSearchService messageSearchService;
+
+
+    @Autowired
+    private RateLimiter rateLimiter;
+
+
+    @Autowired
+    private ChatExportService chatExportService;
+
     @PostMapping("/send")
-    public ResponseEntity<Message> sendMessage(@Valid @RequestBody MessageDto messageDto,
-                                               @RequestHeader("Authorization") String token) {
-        System.out.println("=== MessageController.sendMessage() called ===");
+    public Mono<ResponseEntity<Message>> sendMessage(@Valid @RequestBody MessageDto messageDto,
+                                                     @RequestHeader("Authorization") String token) {
         String jwt = token.substring(7);
         if (tokenProvider.validateToken(jwt)) {
             String senderId = tokenProvider.getUserIdFromToken(jwt);
+            long retryAfterMs = rateLimiter.tryAcquire(senderId, RateLimiter.Budget.MESSAGE);
+            if (retryAfterMs > 0) {
+                return Mono.just(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                        .header(HttpHeaders.RETRY_AFTER, String.valueOf((retryAfterMs + 999) / 1000))
+                        .build());
+            }
             System.out.println("Sending message from " + senderId + " to " + messageDto.getReceiverId());
-            System.out.println("Message content: " + messageDto.getContent());
 
-            // Convert reactive to synchronous
-            Message savedMessage = messageService.sendMessage(senderId, messageDto).block();
-            System.out.println("Message saved successfully: " + savedMessage.getId());
-            return ResponseEntity.ok(savedMessage);
+            return messageService.sendMessage(senderId, messageDto)
+                    .map(ResponseEntity::ok);
         }
         System.out.println("Unauthorized access attempt");
-        return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        return Mono.just(ResponseEntity.status(HttpStatus.UNAUTHORIZED).build());
     }
 
-    @GetMapping("/chat/{otherUserId}")
-    public ResponseEntity<List<Message>> getChatMessages(@PathVariable String otherUserId,
+    // JSON clients get the usual array; Accept: application/x-ndjson streams messages as the cursor yields them.
+    // Without "limit" the whole history is returned; with it, one page ending before the "before" message ID.
+    @GetMapping(value = "/chat/{otherUserId}", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<Flux<Message>> getChatMessages(@PathVariable String otherUserId,
+                                                         @RequestParam(required = false) Integer limit,
+                                                         @RequestParam(required = false) String before,
                                                          @RequestHeader("Authorization") String token) {
-        System.out.println("=== MessageController.getChatMessages() called ===");
         String jwt = token.substring(7);
         if (tokenProvider.validateToken(jwt)) {
             String userId = tokenProvider.getUserIdFromToken(jwt);
-            System.out.println("Getting chat messages between " + userId + " and " + otherUserId);
-
-            // Convert reactive to synchronous
-            List<Message> messages = messageService.getChatMessages(userId, otherUserId)
-                    .collectList()
-                    .block();
-            System.out.println("Retrieved " + messages.size() + " messages");
-            return ResponseEntity.ok(messages);
+            if (limit != null || before != null) {
+                int pageSize = Math.min(Math.max(1, limit != null ? limit : 50), 200);
+                return ResponseEntity.ok(messageService.getChatMessagesPage(userId, otherUserId, before, pageSize));
+            }
+            return ResponseEntity.ok(messageService.getChatMessages(userId, otherUserId));
         }
         System.out.println("Unauthorized access attempt");
         return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
     }
 
-    @GetMapping("/unread/count")
-    public ResponseEntity<Long> getUnreadCount(@RequestHeader("Authorization") String token) {
-        System.out.println("=== MessageController.getUnreadCount() called ===");
+    // NDJSON export of one of the caller's own chats, in the format /api/admin/messages/import restores
+    @GetMapping("/chat/{otherUserId}/export")
+    public void exportChat(@PathVariable String otherUserId,
+                           @RequestParam(defaultValue = "false") boolean gzip,
+                           @RequestHeader("Authorization") String token,
+                           HttpServletResponse response) throws IOException {
+        String jwt = token.substring(7);
+        if (!tokenProvider.validateToken(jwt)) {
+            System.out.println("Unauthorized access attempt");
+            response.setStatus(HttpStatus.UNAUTHORIZED.value());
+            return;
+        }
+        String userId = tokenProvider.getUserIdFromToken(jwt);
+        String filename = "chat-" + userId + "-" + otherUserId + (gzip ? ".ndjson.gz" : ".ndjson");
+        response.setContentType(gzip ? "application/gzip" : MediaType.APPLICATION_NDJSON_VALUE);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"");
+        OutputStream out = response.getOutputStream();
+        chatExportService.export(userId, otherUserId, out, gzip);
+        out.flush();
+    }
+
+    // Full-text search over the caller's own chats; "with" narrows it to the chat with one user
+    @GetMapping("/search")
+    public Mono<ResponseEntity<Map<String, Object>>> searchMessages(@RequestParam("q") String query,
+                                                                     @RequestParam(value = "with", required = false) String otherUserId,
+                                                                     @RequestParam(defaultValue = "0") int page,
+                                                                     @RequestParam(defaultValue = "20") int size,
+                                                                     @RequestHeader("Authorization") String token) {
         String jwt = token.substring(7);
         if (tokenProvider.validateToken(jwt)) {
             String userId = tokenProvider.getUserIdFromToken(jwt);
+            long retryAfterMs = rateLimiter.tryAcquire(userId, RateLimiter.Budget.SEARCH);
+            if (retryAfterMs > 0) {
+                return Mono.just(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                        .header(HttpHeaders.RETRY_AFTER, String.valueOf((retryAfterMs + 999) / 1000))
+                        .build());
+            }
+            String chatId = otherUserId != null ? messageService.generateChatId(userId, otherUserId) : null;
+            return messageSearchService.search(userId, query, chatId, Math.max(0, page), Math.min(Math.max(1, size), 100))
+                    .map(ResponseEntity::ok);
+        }
+        System.out.println("Unauthorized access attempt");
+        return Mono.just(ResponseEntity.status(HttpStatus.UNAUTHORIZED).build());
+    }
 
-            // Convert reactive to synchronous
-            Long count = messageService.getUnreadMessageCount(userId).block();
-            System.out.println("Unread message count for " + userId + ": " + count);
-            return ResponseEntity.ok(count);
+    @GetMapping("/unread/count")
+    public Mono<ResponseEntity<Long>> getUnreadCount(@RequestHeader("Authorization") String token) {
+        String jwt = token.substring(7);
+        if (tokenProvider.validateToken(jwt)) {
+            String userId = tokenProvider.getUserIdFromToken(jwt);
+            return messageService.getUnreadMessageCount(userId)
+                    .map(ResponseEntity::ok);
         }
         System.out.println("Unauthorized access attempt");
-        return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        return Mono.just(ResponseEntity.status(HttpStatus.UNAUTHORIZED).build());
     }
 
     @PutMapping("/{messageId}/read")
-    public ResponseEntity<Message> markAsRead(@PathVariable String messageId,
-                                              @RequestHeader("Authorization") String token) {
-        System.out.println("=== MessageController.markAsRead() called ===");
+    public Mono<ResponseEntity<Message>> markAsRead(@PathVariable String messageId,
+                                                    @RequestHeader("Authorization") String token) {
         String jwt = token.substring(7);
         if (tokenProvider.validateToken(jwt)) {
-            System.out.println("Marking message as read: " + messageId);
-
-            // Convert reactive to synchronous
-            Message updatedMessage = messageService.markMessageAsRead(messageId).block();
-            System.out.println("Message marked as read successfully");
-            return ResponseEntity.ok(updatedMessage);
+            return messageService.markMessageAsRead(messageId)
+                    .map(ResponseEntity::ok)
+                    .defaultIfEmpty(ResponseEntity.notFound().build());
         }
         System.out.println("Unauthorized access attempt");
-        return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        return Mono.just(ResponseEntity.status(HttpStatus.UNAUTHORIZED).build());
     }
 
-    @PutMapping("/read/{senderId}")
-    public ResponseEntity<List<Message>> markMessagesAsRead(@PathVariable String senderId,
+    @PutMapping(value = "/read/{senderId}", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<Flux<Message>> markMessagesAsRead(@PathVariable String senderId,
                                                             @RequestHeader("Authorization") String token) {
-        System.out.println("=== MessageController.markMessagesAsRead() called ===");
         String jwt = token.substring(7);
         if (tokenProvider.validateToken(jwt)) {
             String receiverId = tokenProvider.getUserIdFromToken(jwt);
-            System.out.println("Marking messages as read from " + senderId + " to " + receiverId);
-
-            // Convert reactive to synchronous
-            List<Message> updatedMessages = messageService.markMessagesAsRead(receiverId, senderId)
-                    .collectList()
-                    .block();
-            System.out.println("Marked " + updatedMessages.size() + " messages as read");
-            return ResponseEntity.ok(updatedMessages);
+            return ResponseEntity.ok(messageService.markMessagesAsRead(receiverId, senderId));
         }
         System.out.println("Unauthorized access attempt");
         return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
     }
-}
\ No newline at end of file
+}
@@ -2,16 +2,19 @@ package com.messaging.backend.controller;
 
 import com.messaging.backend.model.User;
 import com.messaging.backend.security.JwtTokenProvider;
+import com.messaging.backend.service.RateLimiter;
 import com.messaging.backend.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/users")
@@ -24,49 +27,50 @@ public class UserController {
     @Autowired
     private JwtTokenProvider tokenProvider;
 
-    @GetMapping
-    public ResponseEntity<List<User>> getAllUsers(@RequestHeader("Authorization") String authHeader) {
-        System.out.println("=== UserController.getAllUsers() called ===");
-        
+
+    @Autowired
+    private RateLimiter rateLimiter;
+
+    private static final int MAX_BATCH_IDS = 200;
+
+    @GetMapping(produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<Flux<User>> getAllUsers(@RequestHeader("Authorization") String authHeader) {
         String token = authHeader.replace("Bearer ", "");
-        System.out.println("JWT token extracted: " + token.substring(0, 20) + "...");
-        
-        try {
-            String currentUserId = tokenProvider.getUserIdFromToken(token);
-            System.out.println("Token validated. Current user ID: " + currentUserId);
-            
-            // Use synchronous approach with block() to avoid async issues
-            System.out.println("=== Starting synchronous processing ===");
-            List<User> userList = userService.getAllUsers().collectList().block();
-            
-            System.out.println("=== Synchronous response received in controller ===");
-            System.out.println("Users received from service: " + (userList != null ? userList.size() : 0));
-            if (userList != null) {
-                for (User user : userList) {
-                    System.out.println("  Response user: " + user.getUsername() + " (" + user.getId() + ")");
-                }
-            }
-            
-            System.out.println("Returning ResponseEntity with OK response");
-            return ResponseEntity.ok(userList != null ? userList : Collections.emptyList());
-            
-        } catch (Exception e) {
-            System.out.println("=== Exception in controller ===");
-            System.out.println("Exception: " + e.getMessage());
-            e.printStackTrace();
+        if (!tokenProvider.validateToken(token)) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
+        return ResponseEntity.ok(userService.getAllUsers());
+    }
+
+    // Batch profile lookup, e.g. for every chat partner at once: GET /api/users?ids=a,b,c
+    @GetMapping(params = "ids", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<Flux<User>> getUsersByIds(@RequestParam List<String> ids,
+                                                    @RequestHeader("Authorization") String authHeader) {
+        String token = authHeader.replace("Bearer ", "");
+        if (!tokenProvider.validateToken(token)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        if (ids.size() > MAX_BATCH_IDS) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(userService.getUsersByIds(ids));
     }
 
     @GetMapping("/search")
-    public Flux<User> searchUsers(@RequestParam String query,
-                                  @RequestHeader("Authorization") String token) {
+    public ResponseEntity<Flux<User>> searchUsers(@RequestParam String query,
+                                                  @RequestHeader("Authorization") String token) {
         // Extract token and validate
         String jwt = token.substring(7); // Remove "Bearer " prefix
         if (tokenProvider.validateToken(jwt)) {
-            return userService.searchUsers(query);
+            long retryAfterMs = rateLimiter.tryAcquire(tokenProvider.getUserIdFromToken(jwt), RateLimiter.Budget.SEARCH);
+            if (retryAfterMs > 0) {
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                        .header(HttpHeaders.RETRY_AFTER, String.valueOf((retryAfterMs + 999) / 1000))
+                        .build();
+            }
+            return ResponseEntity.ok(userService.searchUsers(query));
         }
-        return Flux.empty();
+        return ResponseEntity.ok(Flux.empty());
     }
 
     @GetMapping("/{userId}")
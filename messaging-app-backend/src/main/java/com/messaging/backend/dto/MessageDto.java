@@ -1,6 +1,7 @@
 package com.messaging.backend.dto;
 
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
 
 public class MessageDto {
     
@@ -11,6 +12,10 @@ public class MessageDto {
     private String content;
     
     private String type = "TEXT";
+
+    // Optional, chosen by the client; a resend with the same value returns the original message
+    @Size(max = 64, message = "Client message ID must be at most 64 characters")
+    private String clientMessageId;
     
     // Getters and Setters
     public String getReceiverId() { return receiverId; }
@@ -21,4 +26,7 @@ public class MessageDto {
     
     public String getType() { return type; }
     public void setType(String type) { this.type = type; }
+
+    public String getClientMessageId() { return clientMessageId; }
+    public void setClientMessageId(String clientMessageId) { this.clientMessageId = clientMessageId; }
 }
\ No newline at end of file
@@ -1,11 +1,24 @@
 package com.messaging.backend.model;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
 
+/**
+ * Stored in the compact layout of MessageSchema; the index keys below use its field names.
+ */
 @Document(collection = "messages")
+@CompoundIndexes({
+    // Each direction of a chat, in (timestamp, _id) order both ways, including keyset pages before a cursor
+    @CompoundIndex(name = "s_r_t_id", def = "{'s': 1, 'r': 1, 't': -1, '_id': -1}"),
+    // Unread counts per receiver
+    @CompoundIndex(name = "r_f", def = "{'r': 1, 'f': 1}"),
+    // Backstop for retried sends: one message per sender and client message ID
+    @CompoundIndex(name = "s_m", def = "{'s': 1, 'm': 1}", unique = true, partialFilter = "{'m': {'$exists': true}}")
+})
 public class Message {
     
     @Id
@@ -19,6 +32,7 @@ public class Message {
     private LocalDateTime timestamp;
     private boolean isRead;
     private boolean isDelivered;
+    private String clientMessageId;
     
     public enum MessageType {
         TEXT, IMAGE, VIDEO, AUDIO, FILE, SYSTEM
@@ -58,4 +72,7 @@ public class Message {
     
     public boolean isDelivered() { return isDelivered; }
     public void setDelivered(boolean delivered) { isDelivered = delivered; }
+
+    public String getClientMessageId() { return clientMessageId; }
+    public void setClientMessageId(String clientMessageId) { this.clientMessageId = clientMessageId; }
 }
\ No newline at end of file
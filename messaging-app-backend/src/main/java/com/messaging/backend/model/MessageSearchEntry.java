@@ -0,0 +1,64 @@
+package com.messaging.backend.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.TextScore;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * One row of the message search index: a message's normalized terms, stored once for each participant
+ * so a search is a single text-index lookup under the caller's ownerId.
+ */
+@Document(collection = "message_search")
+public class MessageSearchEntry {
+
+    @Id
+    private String id;
+
+    private String ownerId;
+    private String messageId;
+    private String chatId;
+    // Distinct output of the tokenizer; the text index (language "none") ranks over it, and $all on the array
+    // matches whole terms only
+    private List<String> terms;
+    private LocalDateTime timestamp;
+
+    @TextScore
+    private Float score;
+
+    public MessageSearchEntry() {
+    }
+
+    public MessageSearchEntry(String ownerId, Message message, List<String> terms) {
+        this.id = message.getId() + ":" + ownerId;
+        this.ownerId = ownerId;
+        this.messageId = message.getId();
+        this.chatId = message.getChatId();
+        this.terms = terms;
+        this.timestamp = message.getTimestamp();
+    }
+
+    // Getters and Setters
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getOwnerId() { return ownerId; }
+    public void setOwnerId(String ownerId) { this.ownerId = ownerId; }
+
+    public String getMessageId() { return messageId; }
+    public void setMessageId(String messageId) { this.messageId = messageId; }
+
+    public String getChatId() { return chatId; }
+    public void setChatId(String chatId) { this.chatId = chatId; }
+
+    public List<String> getTerms() { return terms; }
+    public void setTerms(List<String> terms) { this.terms = terms; }
+
+    public LocalDateTime getTimestamp() { return timestamp; }
+    public void setTimestamp(LocalDateTime timestamp) { this.timestamp = timestamp; }
+
+    public Float getScore() { return score; }
+    public void setScore(Float score) { this.score = score; }
+}
@@ -11,6 +11,9 @@ import java.util.Set;
 
 @Document(collection = "users")
 public class User {
+
+    // Grants /api/admin/**; never given through the API, only set in the users collection by an operator
+    public static final String ROLE_ADMIN = "ADMIN";
     
     @Id
     private String id;
@@ -18,6 +21,7 @@ public class User {
     @Indexed(unique = true)
     private String username;
     
+    @Indexed
     private String email;
     
     @JsonIgnore
@@ -25,6 +29,7 @@ public class User {
     
     private String displayName;
     private String avatarUrl;
+    @Indexed
     private boolean isOnline;
     
     @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd'T'HH:mm:ss")
@@ -34,6 +39,9 @@ public class User {
     private LocalDateTime createdAt;
     
     private Set<String> contacts; // List of user IDs
+
+    @JsonIgnore
+    private Set<String> roles;
     
     public User() {
         this.createdAt = LocalDateTime.now();
@@ -71,4 +79,9 @@ public class User {
     
     public Set<String> getContacts() { return contacts; }
     public void setContacts(Set<String> contacts) { this.contacts = contacts; }
+
+    public Set<String> getRoles() { return roles; }
+    public void setRoles(Set<String> roles) { this.roles = roles; }
+
+    public boolean hasRole(String role) { return roles != null && roles.contains(role); }
 }
\ No newline at end of file
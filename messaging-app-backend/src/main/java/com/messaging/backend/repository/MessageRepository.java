@@ -3,18 +3,8 @@ package com.messaging.backend.repository;
 import com.messaging.backend.model.Message;
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 import org.springframework.stereotype.Repository;
-import reactor.core.publisher.Flux;
-import reactor.core.publisher.Mono;
 
+// Queries beyond CRUD live in MessageRepositoryCustom: derived queries cannot express the compact layout
 @Repository
-public interface MessageRepository extends ReactiveMongoRepository<Message, String> {
-    
-    Flux<Message> findByChatIdOrderByTimestampAsc(String chatId);
-    
-    Flux<Message> findBySenderIdAndReceiverIdOrReceiverIdAndSenderIdOrderByTimestampAsc(
-            String senderId1, String receiverId1, String receiverId2, String senderId2);
-    
-    Mono<Long> countByReceiverIdAndIsReadFalse(String receiverId);
-    
-    Flux<Message> findByReceiverIdAndIsReadFalse(String receiverId);
-}
\ No newline at end of file
+public interface MessageRepository extends ReactiveMongoRepository<Message, String>, MessageRepositoryCustom {
+}
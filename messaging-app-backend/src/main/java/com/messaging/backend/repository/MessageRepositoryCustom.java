@@ -0,0 +1,46 @@
+package com.messaging.backend.repository;
+
+import com.messaging.backend.model.Message;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+/**
+ * Message queries written against the storage layout in MessageSchema. While documents in the legacy
+ * layout may still exist, each query also reads them and merges both results in (timestamp, ID) order.
+ */
+public interface MessageRepositoryCustom {
+
+    // By ID in either stored form; use these instead of findById, which would query a generated ID as a string
+    Mono<Message> findMessage(String id);
+
+    Flux<Message> findMessages(Collection<String> ids);
+
+    // Every message between two users, oldest first
+    Flux<Message> findChat(String userId1, String userId2);
+
+    // Up to limit messages between two users right before the cursor (the newest when null), newest first
+    Flux<Message> findChatPage(String userId1, String userId2, Message before, int limit);
+
+    Mono<Long> countUnread(String receiverId);
+
+    // Marks what the sender sent the receiver and the receiver has not read as read; returns those messages
+    Flux<Message> markChatRead(String senderId, String receiverId);
+
+    // The message a sender stored under a client message ID, if any
+    Mono<Message> findByClientMessageId(String senderId, String clientMessageId);
+
+    // Chats with messages older than the cutoff, for the archiver
+    Flux<String> findChatIdsBefore(LocalDateTime cutoff);
+
+    // Up to limit messages of a chat after the cursor (from the start when null) and older than the cutoff, oldest first
+    Flux<Message> findChatBefore(String chatId, Message after, LocalDateTime cutoff, int limit);
+
+    // The oldest message of a chat older than the cutoff that its receiver has not read, if any
+    Mono<Message> findOldestUnreadBefore(String chatId, LocalDateTime cutoff);
+
+    // Deletes the messages of a chat up to and including the cursor and returns how many there were
+    Mono<Long> deleteChatThrough(String chatId, Message last);
+}
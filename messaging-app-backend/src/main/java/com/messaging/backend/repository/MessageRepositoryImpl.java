@@ -0,0 +1,250 @@
+package com.messaging.backend.repository;
+
+import com.messaging.backend.model.Message;
+import com.messaging.backend.service.MessageSchemaMigration;
+import com.mongodb.client.result.DeleteResult;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.BasicQuery;
+import org.springframework.data.mongodb.core.query.BasicUpdate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static com.messaging.backend.repository.MessageSchema.*;
+
+public class MessageRepositoryImpl implements MessageRepositoryCustom {
+
+    private static final String COLLECTION = "messages";
+    private static final Comparator<Message> OLDEST_FIRST =
+            Comparator.comparing(Message::getTimestamp).thenComparing(Message::getId);
+
+    @Autowired
+    private ReactiveMongoTemplate mongoTemplate;
+
+    @Autowired
+    private MessageSchemaMigration schemaMigration;
+
+    @Override
+    public Mono<Message> findMessage(String id) {
+        return mongoTemplate.findOne(new BasicQuery(new Document(ID, messageId(id))), Message.class, COLLECTION);
+    }
+
+    @Override
+    public Flux<Message> findMessages(Collection<String> ids) {
+        List<Object> stored = ids.stream().map(MessageSchema::messageId).toList();
+        return find(new Document(ID, new Document("$in", stored)), Sort.unsorted(), 0);
+    }
+
+    @Override
+    public Flux<Message> findChat(String userId1, String userId2) {
+        Flux<Message> compact = find(new Document("$or", chatBranches(userId1, userId2, null)),
+                Sort.by(Sort.Direction.ASC, TIMESTAMP, ID), 0);
+        if (!schemaMigration.isLegacyReads()) {
+            return compact;
+        }
+        // Both cursors stay open and advance together, so a chat of any size streams in constant memory. A document
+        // rewritten while both cursors are at it can come from both (adjacent, dropped as the same ID); one the
+        // running migration rewrites after the compact cursor passed it but before the legacy one got there is missed
+        Flux<Message> legacy = find(new Document(LEGACY_CHAT, chatId(userId1, userId2)),
+                Sort.by(Sort.Direction.ASC, LEGACY_TIMESTAMP, ID), 0);
+        return Flux.mergeComparing(OLDEST_FIRST, legacy, compact)
+                .distinctUntilChanged(Message::getId);
+    }
+
+    @Override
+    public Flux<Message> findChatPage(String userId1, String userId2, Message before, int limit) {
+        Mono<List<Message>> compact = find(new Document("$or", chatBranches(userId1, userId2, before)),
+                Sort.by(Sort.Direction.DESC, TIMESTAMP, ID), limit).collectList();
+        if (!schemaMigration.isLegacyReads()) {
+            return compact.flatMapIterable(messages -> messages);
+        }
+        Document legacyFilter = new Document(LEGACY_CHAT, chatId(userId1, userId2));
+        if (before != null) {
+            legacyFilter.append("$or", keysetBefore(LEGACY_TIMESTAMP, before));
+        }
+        return find(legacyFilter, Sort.by(Sort.Direction.DESC, LEGACY_TIMESTAMP, ID), limit)
+                .collectList()
+                .flatMap(legacy -> compact.map(newer -> newestFirst(legacy, newer, limit)))
+                .flatMapIterable(messages -> messages);
+    }
+
+    @Override
+    public Mono<Long> countUnread(String receiverId) {
+        Document unread = new Document(RECEIVER, userId(receiverId))
+                .append(FLAGS, new Document("$in", Arrays.asList(null, DELIVERED)));
+        Mono<Long> compact = mongoTemplate.count(new BasicQuery(unread), COLLECTION);
+        if (!schemaMigration.isLegacyReads()) {
+            return compact;
+        }
+        Document legacyUnread = new Document(LEGACY_RECEIVER, receiverId).append(LEGACY_READ, false);
+        return compact.zipWith(mongoTemplate.count(new BasicQuery(legacyUnread), COLLECTION), Long::sum);
+    }
+
+    @Override
+    public Flux<Message> markChatRead(String senderId, String receiverId) {
+        // r_f narrows to the receiver's unread messages, usually far fewer than the chat s_r_t_id would walk
+        Document unread = new Document(RECEIVER, userId(receiverId)).append(SENDER, userId(senderId))
+                .append(FLAGS, new Document("$in", Arrays.asList(null, DELIVERED)));
+        Flux<Message> compact = markRead(new BasicQuery(unread).withHint("r_f"), unread,
+                new Document("$bit", new Document(FLAGS, new Document("or", READ))));
+        if (!schemaMigration.isLegacyReads()) {
+            return compact;
+        }
+        Document legacyUnread = new Document(LEGACY_RECEIVER, receiverId).append(LEGACY_SENDER, senderId)
+                .append(LEGACY_READ, false);
+        return Flux.concat(markRead(new BasicQuery(legacyUnread), legacyUnread,
+                new Document("$set", new Document(LEGACY_READ, true))), compact);
+    }
+
+    // One query for the unread messages and one update for all of them; the filter is repeated in the update
+    // so a document the migration rewrote in between is left alone
+    private Flux<Message> markRead(Query query, Document unread, Document update) {
+        return mongoTemplate.find(query, Message.class, COLLECTION)
+                .collectList()
+                .flatMapMany(messages -> {
+                    if (messages.isEmpty()) {
+                        return Flux.empty();
+                    }
+                    List<Object> ids = messages.stream().map(message -> messageId(message.getId())).toList();
+                    Document filter = new Document(unread).append(ID, new Document("$in", ids));
+                    return mongoTemplate.updateMulti(new BasicQuery(filter), new BasicUpdate(update), COLLECTION)
+                            .thenMany(Flux.fromIterable(messages))
+                            .doOnNext(message -> message.setRead(true));
+                });
+    }
+
+    @Override
+    public Mono<Message> findByClientMessageId(String senderId, String clientMessageId) {
+        Document filter = new Document(SENDER, userId(senderId)).append(CLIENT_ID, clientMessageId);
+        return mongoTemplate.findOne(new BasicQuery(filter), Message.class, COLLECTION);
+    }
+
+    @Override
+    public Flux<String> findChatIdsBefore(LocalDateTime cutoff) {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where(TIMESTAMP).lt(toDate(cutoff))),
+                Aggregation.group(SENDER, RECEIVER));
+        return mongoTemplate.aggregate(aggregation.withOptions(
+                                Aggregation.newAggregationOptions().allowDiskUse(true).build()),
+                        COLLECTION, Document.class)
+                .map(group -> {
+                    Document pair = group.get("_id", Document.class);
+                    return chatId(String.valueOf(pair.get(SENDER)), String.valueOf(pair.get(RECEIVER)));
+                })
+                .distinct();
+    }
+
+    @Override
+    public Flux<Message> findChatBefore(String chatId, Message after, LocalDateTime cutoff, int limit) {
+        Document beforeCutoff = new Document("$lt", toDate(cutoff));
+        List<Document> branches = new ArrayList<>();
+        for (Document pair : chatPairs(chatId)) {
+            if (after == null) {
+                branches.add(new Document(pair).append(TIMESTAMP, beforeCutoff));
+                continue;
+            }
+            Date timestamp = toDate(after.getTimestamp());
+            branches.add(new Document(pair).append(TIMESTAMP, new Document(beforeCutoff).append("$gt", timestamp)));
+            branches.add(new Document(pair).append(TIMESTAMP, new Document(beforeCutoff).append("$eq", timestamp))
+                    .append(ID, new Document("$gt", messageId(after.getId()))));
+        }
+        return find(new Document("$or", branches), Sort.by(Sort.Direction.ASC, TIMESTAMP, ID), limit);
+    }
+
+    @Override
+    public Mono<Message> findOldestUnreadBefore(String chatId, LocalDateTime cutoff) {
+        List<Document> branches = new ArrayList<>();
+        for (Document pair : chatPairs(chatId)) {
+            branches.add(pair.append(TIMESTAMP, new Document("$lt", toDate(cutoff)))
+                    .append(FLAGS, new Document("$in", Arrays.asList(null, DELIVERED))));
+        }
+        return find(new Document("$or", branches), Sort.by(Sort.Direction.ASC, TIMESTAMP, ID), 1).next();
+    }
+
+    @Override
+    public Mono<Long> deleteChatThrough(String chatId, Message last) {
+        Date timestamp = toDate(last.getTimestamp());
+        List<Document> branches = new ArrayList<>();
+        for (Document pair : chatPairs(chatId)) {
+            branches.add(new Document(pair).append(TIMESTAMP, new Document("$lt", timestamp)));
+            branches.add(new Document(pair).append(TIMESTAMP, timestamp)
+                    .append(ID, new Document("$lte", messageId(last.getId()))));
+        }
+        return mongoTemplate.remove(new BasicQuery(new Document("$or", branches)), COLLECTION)
+                .map(DeleteResult::getDeletedCount);
+    }
+
+    // Both directions of a chat ID, as {s, r} prefixes of the s_r_t_id index
+    private static List<Document> chatPairs(String chatId) {
+        String[] users = chatId.split("_", 2);
+        return chatBranches(users[0], users[1], null);
+    }
+
+    /**
+     * One branch per direction of the chat, so each is an exact range on the {s, r, t, _id} index and
+     * Mongo can merge the branches in sort order. With a cursor every direction gets two branches:
+     * older timestamps, and the same timestamp with a smaller ID.
+     */
+    private static List<Document> chatBranches(String userId1, String userId2, Message before) {
+        List<Document> branches = new ArrayList<>();
+        for (String[] direction : new String[][]{{userId1, userId2}, {userId2, userId1}}) {
+            Document pair = new Document(SENDER, userId(direction[0])).append(RECEIVER, userId(direction[1]));
+            if (before == null) {
+                branches.add(pair);
+                continue;
+            }
+            for (Document keyset : keysetBefore(TIMESTAMP, before)) {
+                Document branch = new Document(pair);
+                branch.putAll(keyset);
+                branches.add(branch);
+            }
+        }
+        return branches;
+    }
+
+    private static List<Document> keysetBefore(String timestampField, Message cursor) {
+        Date timestamp = toDate(cursor.getTimestamp());
+        return List.of(
+                new Document(timestampField, new Document("$lt", timestamp)),
+                new Document(timestampField, timestamp).append(ID, new Document("$lt", messageId(cursor.getId()))));
+    }
+
+    private Flux<Message> find(Document filter, Sort sort, int limit) {
+        Query query = new BasicQuery(filter).with(sort);
+        if (limit > 0) {
+            query.limit(limit);
+        }
+        return mongoTemplate.find(query, Message.class, COLLECTION);
+    }
+
+    // Both lists are newest first; the result is the newest limit messages of the two, without duplicates
+    private static List<Message> newestFirst(List<Message> a, List<Message> b, int limit) {
+        List<Message> merged = new ArrayList<>(a.size() + b.size());
+        merged.addAll(a);
+        merged.addAll(b);
+        merged.sort(OLDEST_FIRST.reversed());
+        Set<String> seen = new HashSet<>();
+        List<Message> page = new ArrayList<>(limit);
+        for (Message message : merged) {
+            if (page.size() < limit && seen.add(message.getId())) {
+                page.add(message);
+            }
+        }
+        return page;
+    }
+}
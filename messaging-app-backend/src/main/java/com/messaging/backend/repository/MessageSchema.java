@@ -0,0 +1,166 @@
+package com.messaging.backend.repository;
+
+import com.messaging.backend.model.Message;
+import com.messaging.backend.service.MessageIdGenerator;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
+import org.springframework.data.convert.WritingConverter;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+
+/**
+ * Storage layout of messages. Documents are written in the compact form and read in either form, so
+ * documents not yet rewritten by MessageSchemaMigration keep working.
+ *
+ * Compact:  { _id, s: sender, r: receiver, c: content, t: timestamp, k: type, f: flags, m: client message ID }
+ * Legacy:   { _id, senderId, receiverId, chatId, content, type, timestamp, isRead, isDelivered, _class }
+ *
+ * User IDs are stored as ObjectIds (12 bytes instead of a 24 character string). Message IDs from
+ * MessageIdGenerator are stored as the 64-bit number they are and only formatted as 16 hex digits in the
+ * Message API; older messages keep their ObjectId. Numbers sort before ObjectIds in Mongo but after them as
+ * hex strings, which only matters for an old and a new message with the same millisecond. The chat ID is not stored;
+ * it is derived from sender and receiver. k holds the type's ordinal and is left out for TEXT, f holds the
+ * delivered (1) and read (2) bits and is left out when neither is set. m is only present when the client
+ * supplied an ID for the send. Queries on messages must use these
+ * field names directly, since the converters bypass the mapping metadata of Message.
+ */
+public final class MessageSchema {
+
+    public static final String ID = "_id";
+    public static final String SENDER = "s";
+    public static final String RECEIVER = "r";
+    public static final String CONTENT = "c";
+    public static final String TIMESTAMP = "t";
+    public static final String TYPE = "k";
+    public static final String FLAGS = "f";
+    public static final String CLIENT_ID = "m";
+
+    public static final int DELIVERED = 1;
+    public static final int READ = 2;
+
+    public static final String LEGACY_SENDER = "senderId";
+    public static final String LEGACY_RECEIVER = "receiverId";
+    public static final String LEGACY_CHAT = "chatId";
+    public static final String LEGACY_TIMESTAMP = "timestamp";
+    public static final String LEGACY_READ = "isRead";
+
+    // Ordinals are stored, so new types may only be appended to Message.MessageType
+    private static final Message.MessageType[] TYPES = Message.MessageType.values();
+
+    private MessageSchema() {
+    }
+
+    public static String chatId(String userId1, String userId2) {
+        // Consistent chat ID regardless of order
+        return userId1.compareTo(userId2) < 0 ? userId1 + "_" + userId2 : userId2 + "_" + userId1;
+    }
+
+    // How a user ID is stored and queried: as an ObjectId when it is one, otherwise unchanged
+    public static Object userId(String userId) {
+        return userId != null && ObjectId.isValid(userId) ? new ObjectId(userId) : userId;
+    }
+
+    // How a message ID is stored and queried: ObjectIds as before, generated IDs as their int64
+    public static Object messageId(String id) {
+        if (id != null && ObjectId.isValid(id)) {
+            return new ObjectId(id);
+        }
+        return MessageIdGenerator.isGenerated(id) ? (Object) MessageIdGenerator.parse(id) : id;
+    }
+
+    public static Date toDate(LocalDateTime timestamp) {
+        return timestamp != null ? Date.from(timestamp.atZone(ZoneId.systemDefault()).toInstant()) : null;
+    }
+
+    public static boolean isLegacy(Document document) {
+        return !document.containsKey(SENDER) && document.containsKey(LEGACY_SENDER);
+    }
+
+    public static Document toDocument(Message message) {
+        Document document = new Document();
+        if (message.getId() != null) {
+            document.put(ID, messageId(message.getId()));
+        }
+        document.put(SENDER, userId(message.getSenderId()));
+        document.put(RECEIVER, userId(message.getReceiverId()));
+        if (message.getContent() != null) {
+            document.put(CONTENT, message.getContent());
+        }
+        document.put(TIMESTAMP, toDate(message.getTimestamp()));
+        if (message.getType() != null && message.getType() != Message.MessageType.TEXT) {
+            document.put(TYPE, message.getType().ordinal());
+        }
+        int flags = (message.isDelivered() ? DELIVERED : 0) | (message.isRead() ? READ : 0);
+        if (flags != 0) {
+            document.put(FLAGS, flags);
+        }
+        if (message.getClientMessageId() != null) {
+            document.put(CLIENT_ID, message.getClientMessageId());
+        }
+        return document;
+    }
+
+    public static Message fromDocument(Document document) {
+        Message message = new Message();
+        message.setId(idString(document.get(ID)));
+        if (isLegacy(document)) {
+            message.setSenderId(idString(document.get(LEGACY_SENDER)));
+            message.setReceiverId(idString(document.get(LEGACY_RECEIVER)));
+            message.setContent(document.getString("content"));
+            String type = document.getString("type");
+            message.setType(type != null ? Message.MessageType.valueOf(type) : Message.MessageType.TEXT);
+            message.setTimestamp(toLocalDateTime(document.getDate(LEGACY_TIMESTAMP)));
+            message.setRead(Boolean.TRUE.equals(document.getBoolean(LEGACY_READ)));
+            message.setDelivered(Boolean.TRUE.equals(document.getBoolean("isDelivered")));
+        } else {
+            message.setSenderId(idString(document.get(SENDER)));
+            message.setReceiverId(idString(document.get(RECEIVER)));
+            message.setContent(document.getString(CONTENT));
+            Integer type = document.getInteger(TYPE);
+            message.setType(type != null && type >= 0 && type < TYPES.length ? TYPES[type] : Message.MessageType.TEXT);
+            message.setTimestamp(toLocalDateTime(document.getDate(TIMESTAMP)));
+            int flags = document.getInteger(FLAGS, 0);
+            message.setRead((flags & READ) != 0);
+            message.setDelivered((flags & DELIVERED) != 0);
+            message.setClientMessageId(document.getString(CLIENT_ID));
+        }
+        if (message.getSenderId() != null && message.getReceiverId() != null) {
+            message.setChatId(chatId(message.getSenderId(), message.getReceiverId()));
+        }
+        return message;
+    }
+
+    private static String idString(Object id) {
+        if (id instanceof ObjectId objectId) {
+            return objectId.toHexString();
+        }
+        if (id instanceof Long generated) {
+            return MessageIdGenerator.format(generated);
+        }
+        return id != null ? id.toString() : null;
+    }
+
+    private static LocalDateTime toLocalDateTime(Date date) {
+        return date != null ? LocalDateTime.ofInstant(date.toInstant(), ZoneId.systemDefault()) : null;
+    }
+
+    @WritingConverter
+    public static class MessageWriter implements Converter<Message, Document> {
+        @Override
+        public Document convert(Message message) {
+            return toDocument(message);
+        }
+    }
+
+    @ReadingConverter
+    public static class MessageReader implements Converter<Document, Message> {
+        @Override
+        public Message convert(Document document) {
+            return fromDocument(document);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.messaging.backend.security;
 
+import com.messaging.backend.service.MessagingMetrics;
 import jakarta.servlet.DispatcherType;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
@@ -7,6 +8,7 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
@@ -17,7 +19,7 @@ import org.springframework.web.filter.OncePerRequestFilter;
 import org.springframework.web.context.request.async.WebAsyncUtils;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.List;
 
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
@@ -25,6 +27,9 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     @Autowired
     private JwtTokenProvider tokenProvider;
 
+    @Autowired
+    private MessagingMetrics metrics;
+
     @Override
     protected boolean shouldNotFilter(HttpServletRequest request) throws ServletException {
         // Skip filtering for async dispatches - the authentication should already be preserved
@@ -57,15 +62,25 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         String jwt = getJwtFromRequest(request);
         System.out.println("JWT token present: " + (jwt != null));
 
-        if (StringUtils.hasText(jwt) && tokenProvider.validateToken(jwt)) {
+        boolean valid = false;
+        if (StringUtils.hasText(jwt)) {
+            long verifyStart = System.nanoTime();
+            valid = tokenProvider.validateToken(jwt);
+            metrics.recordAuthVerification("jwt", valid, verifyStart);
+        }
+
+        if (valid) {
             String username = tokenProvider.getUsernameFromToken(jwt);
             String userId = tokenProvider.getUserIdFromToken(jwt);
+            List<SimpleGrantedAuthority> authorities = tokenProvider.getRolesFromToken(jwt).stream()
+                    .map(role -> new SimpleGrantedAuthority("ROLE_" + role))
+                    .toList();
             
             System.out.println("JWT valid - Username: " + username + ", UserId: " + userId);
 
-            // Create a simple authentication token with username and userId
+            // Create a simple authentication token with username, userId and the token's roles
             UsernamePasswordAuthenticationToken authentication = 
-                new UsernamePasswordAuthenticationToken(username, null, new ArrayList<>());
+                new UsernamePasswordAuthenticationToken(username, null, authorities);
             
             // Add userId as details
             authentication.setDetails(userId);
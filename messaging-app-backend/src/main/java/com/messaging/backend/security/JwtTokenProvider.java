@@ -6,7 +6,9 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.security.Key;
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 
 @Component
 public class JwtTokenProvider {
@@ -23,11 +25,17 @@ public class JwtTokenProvider {
     }
 
     public String generateToken(String username, String userId) {
+        return generateToken(username, userId, List.of());
+    }
+
+    // Roles become the request's authorities; a role change takes effect with the next token
+    public String generateToken(String username, String userId, Collection<String> roles) {
         Date expiryDate = new Date(System.currentTimeMillis() + jwtExpirationInMs);
 
         return Jwts.builder()
                 .setSubject(username)
                 .claim("userId", userId)
+                .claim("roles", roles == null ? List.of() : List.copyOf(roles))
                 .setIssuedAt(new Date())
                 .setExpiration(expiryDate)
                 .signWith(getSigningKey(), SignatureAlgorithm.HS512)
@@ -54,6 +62,20 @@ public class JwtTokenProvider {
         return claims.get("userId", String.class);
     }
 
+    public List<String> getRolesFromToken(String token) {
+        Claims claims = Jwts.parserBuilder()
+                .setSigningKey(getSigningKey())
+                .build()
+                .parseClaimsJws(token)
+                .getBody();
+
+        Object roles = claims.get("roles");
+        if (!(roles instanceof Collection<?> values)) {
+            return List.of();
+        }
+        return values.stream().map(String::valueOf).toList();
+    }
+
     public boolean validateToken(String authToken) {
         try {
             Jwts.parserBuilder()
@@ -0,0 +1,220 @@
+package com.messaging.backend.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Message processing partitioned into single-threaded shards by chat ID. Every chat belongs to one shard,
+ * and everything a shard does for its chats runs on its one thread, so per-chat state needs no locks and
+ * work for a chat happens in submission order. Other threads hand work over through the shard's lock-free
+ * queue; an idle shard thread parks until work arrives.
+ *
+ * Persisting is asynchronous and the stores of one chat may complete in any order. submitOrdered therefore
+ * starts the store on the shard (so message IDs are assigned in submission order) and queues its outcome
+ * back to the shard, which releases outcomes of a chat strictly in submission order, holding back any that
+ * overtook an earlier one.
+ */
+@Service
+public class ChatEventLoops {
+
+    // 0 uses one shard per available processor
+    @Value("${messages.shards.count:0}")
+    private int configuredShards;
+
+    private Shard[] shards;
+
+    @PostConstruct
+    public void init() {
+        int count = configuredShards > 0 ? configuredShards : Runtime.getRuntime().availableProcessors();
+        shards = new Shard[count];
+        for (int i = 0; i < count; i++) {
+            shards[i] = new Shard(i);
+            shards[i].thread.start();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Shard shard : shards) {
+            shard.running = false;
+            LockSupport.unpark(shard.thread);
+        }
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    // Runs the task on the chat's shard thread
+    public void execute(String chatId, Runnable task) {
+        shardFor(chatId).post(task);
+    }
+
+    /**
+     * Starts {@code persist} on the chat's shard, then calls {@code onSuccess} (with null for an empty
+     * result) or {@code onError} on the same shard, in the order the sends of this chat were submitted.
+     */
+    public <T> void submitOrdered(String chatId, Supplier<Mono<T>> persist, Consumer<T> onSuccess,
+                                  Consumer<Throwable> onError) {
+        Shard shard = shardFor(chatId);
+        shard.post(() -> shard.start(chatId, persist, onSuccess, onError));
+    }
+
+    private Shard shardFor(String chatId) {
+        // Spread the hash bits first; chat IDs share long common prefixes
+        int hash = chatId.hashCode();
+        hash ^= hash >>> 16;
+        return shards[(hash & Integer.MAX_VALUE) % shards.length];
+    }
+
+    public Map<String, Object> getStats() {
+        List<Map<String, Object>> perShard = new ArrayList<>();
+        long processed = 0;
+        long heldBack = 0;
+        for (Shard shard : shards) {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("shard", shard.index);
+            stats.put("queued", shard.queued.get());
+            stats.put("processed", shard.processed.get());
+            stats.put("heldBack", shard.heldBack.get());
+            stats.put("failedTasks", shard.failedTasks.get());
+            perShard.add(stats);
+            processed += shard.processed.get();
+            heldBack += shard.heldBack.get();
+        }
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("shards", shards.length);
+        stats.put("processed", processed);
+        // Stores that completed before an earlier store of the same chat and were delivered after it
+        stats.put("heldBack", heldBack);
+        stats.put("perShard", perShard);
+        return stats;
+    }
+
+    private static final class Shard implements Runnable {
+        private final int index;
+        private final Thread thread;
+        private final Queue<Runnable> inbound = new ConcurrentLinkedQueue<>();
+        private volatile boolean parked = false;
+        private volatile boolean running = true;
+
+        // Shard thread only: sends of each chat whose outcome has not been released yet, oldest first
+        private final Map<String, ArrayDeque<Pending<?>>> inFlight = new HashMap<>();
+
+        private final AtomicLong queued = new AtomicLong();
+        private final AtomicLong processed = new AtomicLong();
+        private final AtomicLong heldBack = new AtomicLong();
+        private final AtomicLong failedTasks = new AtomicLong();
+
+        private Shard(int index) {
+            this.index = index;
+            this.thread = new Thread(this, "ChatShard-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        private void post(Runnable task) {
+            queued.incrementAndGet();
+            inbound.offer(task);
+            if (parked) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                Runnable task = inbound.poll();
+                if (task == null) {
+                    parked = true;
+                    // Re-check after announcing the park, so a post that missed the flag is not slept through
+                    if (inbound.isEmpty() && running) {
+                        LockSupport.park(this);
+                    }
+                    parked = false;
+                    continue;
+                }
+                queued.decrementAndGet();
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    failedTasks.incrementAndGet();
+                    System.err.println("Error in chat shard " + index + ": " + e.getMessage());
+                }
+                processed.incrementAndGet();
+            }
+        }
+
+        private <T> void start(String chatId, Supplier<Mono<T>> persist, Consumer<T> onSuccess,
+                               Consumer<Throwable> onError) {
+            Pending<T> pending = new Pending<>(onSuccess, onError);
+            inFlight.computeIfAbsent(chatId, k -> new ArrayDeque<>()).add(pending);
+            Mono<T> store;
+            try {
+                store = persist.get();
+            } catch (RuntimeException e) {
+                store = Mono.error(e);
+            }
+            store.doOnSuccess(value -> post(() -> complete(chatId, pending, value, null)))
+                    .doOnError(error -> post(() -> complete(chatId, pending, null, error)))
+                    .onErrorResume(error -> Mono.empty())
+                    .subscribe();
+        }
+
+        private <T> void complete(String chatId, Pending<T> pending, T value, Throwable error) {
+            pending.value = value;
+            pending.error = error;
+            pending.done = true;
+            ArrayDeque<Pending<?>> chat = inFlight.get(chatId);
+            if (chat.peekFirst() != pending) {
+                heldBack.incrementAndGet();
+            }
+            while (!chat.isEmpty() && chat.peekFirst().done) {
+                chat.pollFirst().release();
+            }
+            if (chat.isEmpty()) {
+                inFlight.remove(chatId);
+            }
+        }
+    }
+
+    private static final class Pending<T> {
+        private final Consumer<T> onSuccess;
+        private final Consumer<Throwable> onError;
+        private T value;
+        private Throwable error;
+        private boolean done;
+
+        private Pending(Consumer<T> onSuccess, Consumer<Throwable> onError) {
+            this.onSuccess = onSuccess;
+            this.onError = onError;
+        }
+
+        private void release() {
+            try {
+                if (error != null) {
+                    onError.accept(error);
+                } else {
+                    onSuccess.accept(value);
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Error delivering chat event: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package com.messaging.backend.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.messaging.backend.model.Message;
+import com.messaging.backend.repository.MessageSchema;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.InsertOneModel;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.BasicQuery;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Full chat exports for backup and compliance, and the matching restore. An export is NDJSON, one record per
+ * line: a header, every message of the chat in ascending order (archived history first), a media record after
+ * each message that references an uploaded file, and an end record with the counts. Messages are pulled from
+ * the cursor a prefetch window at a time as the client reads, so memory stays constant whatever the chat size,
+ * and a client that goes away cancels the cursor.
+ *
+ * An import reads such a file line by line and inserts its messages in unordered batches, one batch in flight
+ * at a time. Messages whose sender or receiver is not a registered user are rejected, so an import cannot
+ * attribute history to accounts that do not exist. Messages that already exist are counted and left as they
+ * are, so a restore can be repeated; media records only describe the files, which are restored separately.
+ */
+@Service
+public class ChatExportService {
+
+    public static final int FORMAT_VERSION = 1;
+
+    private static final String COLLECTION = "messages";
+    private static final String USERS_COLLECTION = "users";
+    private static final String MEDIA_URL_PREFIX = "/api/files/";
+    private static final int MAX_REPORTED_ERRORS = 20;
+    private static final int DUPLICATE_KEY = 11000;
+
+    @Autowired
+    private MessageService messageService;
+
+    @Autowired
+    private MessageArchive messageArchive;
+
+    @Autowired
+    private MediaStorage mediaStorage;
+
+    @Autowired
+    private RecentMessageCache recentMessageCache;
+
+    @Autowired
+    private MessageSearchService messageSearchService;
+
+    @Autowired
+    private ReactiveMongoTemplate mongoTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${messages.export.prefetch:256}")
+    private int prefetch;
+
+    @Value("${messages.import.batch-size:500}")
+    private int importBatchSize;
+
+    private final AtomicLong exports = new AtomicLong();
+    private final AtomicLong exportedMessages = new AtomicLong();
+    private final AtomicLong imports = new AtomicLong();
+    private final AtomicLong importedMessages = new AtomicLong();
+    private final AtomicLong importDuplicates = new AtomicLong();
+
+    // Same as export(userId1, userId2, out), gzip-compressed when asked to
+    public Map<String, Object> export(String userId1, String userId2, OutputStream out, boolean gzip)
+            throws IOException {
+        if (!gzip) {
+            return export(userId1, userId2, out);
+        }
+        GZIPOutputStream compressed = new GZIPOutputStream(out, 64 * 1024);
+        Map<String, Object> end = export(userId1, userId2, compressed);
+        compressed.finish();
+        return end;
+    }
+
+    /**
+     * Writes the chat between the two users to {@code out} and returns the counts of the end record.
+     * Blocks until the export has been written; {@code out} is flushed but not closed.
+     */
+    public Map<String, Object> export(String userId1, String userId2, OutputStream out) throws IOException {
+        // Jackson must not close the stream after every record
+        ObjectWriter lines = objectMapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        String chatId = messageService.generateChatId(userId1, userId2);
+
+        Map<String, Object> header = new LinkedHashMap<>();
+        header.put("format", FORMAT_VERSION);
+        header.put("chatId", chatId);
+        header.put("participants", List.of(userId1, userId2));
+        header.put("exportedAt", Instant.now().toString());
+        writeRecord(lines, writer, "header", header);
+
+        long messages = 0;
+        long media = 0;
+        // Closing the stream cancels the cursor when the client goes away mid-export
+        try (Stream<Message> history = messageService.getChatMessages(userId1, userId2).toStream(prefetch)) {
+            for (Message message : (Iterable<Message>) history::iterator) {
+                writeRecord(lines, writer, "message", message);
+                messages++;
+                Map<String, Object> manifest = mediaManifest(message);
+                if (manifest != null) {
+                    writeRecord(lines, writer, "media", manifest);
+                    media++;
+                }
+            }
+        }
+
+        Map<String, Object> end = new LinkedHashMap<>();
+        end.put("messages", messages);
+        end.put("media", media);
+        writeRecord(lines, writer, "end", end);
+        writer.flush();
+
+        exports.incrementAndGet();
+        exportedMessages.addAndGet(messages);
+        return end;
+    }
+
+    private void writeRecord(ObjectWriter lines, Writer writer, String record, Object value) throws IOException {
+        lines.writeValue(writer, Map.of(record, value));
+        writer.write('\n');
+    }
+
+    // The uploaded file a media message points at, or null for text and external links
+    private Map<String, Object> mediaManifest(Message message) {
+        String content = message.getContent();
+        if (message.getType() == Message.MessageType.TEXT || content == null) {
+            return null;
+        }
+        int start = content.indexOf(MEDIA_URL_PREFIX);
+        if (start < 0) {
+            return null;
+        }
+        String relative = content.substring(start + MEDIA_URL_PREFIX.length());
+        int query = relative.indexOf('?');
+        if (query >= 0) {
+            relative = relative.substring(0, query);
+        }
+        int slash = relative.indexOf('/');
+        String folder = slash >= 0 ? relative.substring(0, slash) : null;
+        String filename = slash >= 0 ? relative.substring(slash + 1) : relative;
+
+        Map<String, Object> manifest = new LinkedHashMap<>();
+        manifest.put("messageId", message.getId());
+        manifest.put("url", content.substring(start));
+        manifest.put("folder", folder);
+        manifest.put("filename", filename);
+        // Only files inside the media folders; anything else is listed but not looked up
+        boolean local = folder != null && MediaStorage.TYPE_FOLDERS.contains(folder)
+                && !filename.isEmpty() && !filename.contains("/") && !filename.contains("..");
+        Path path = local ? mediaStorage.locate(folder, filename) : null;
+        try {
+            manifest.put("size", path != null ? Files.size(path) : null);
+        } catch (IOException e) {
+            path = null;
+            manifest.put("size", null);
+        }
+        manifest.put("present", path != null);
+        return manifest;
+    }
+
+    /**
+     * Restores messages from an export (or several concatenated ones). Blocks until the whole input has been
+     * read; returns what was inserted, what already existed and which lines were rejected.
+     */
+    public Map<String, Object> importMessages(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024);
+        ImportReport report = new ImportReport();
+        Set<String> chats = new HashSet<>();
+        // User ID -> registered, for the users this import has already looked up
+        Map<String, Boolean> users = new HashMap<>();
+        List<Message> batch = new ArrayList<>(importBatchSize);
+
+        String line;
+        long lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                JsonNode record = objectMapper.readTree(line);
+                if (record.has("header")) {
+                    int format = record.get("header").path("format").asInt(-1);
+                    if (format != FORMAT_VERSION) {
+                        throw new IllegalArgumentException("Unsupported export format " + format);
+                    }
+                } else if (record.has("end")) {
+                    report.expected += record.get("end").path("messages").asLong();
+                    report.files++;
+                } else if (record.has("message")) {
+                    report.read++;
+                    Message message = objectMapper.treeToValue(record.get("message"), Message.class);
+                    if (message.getId() == null || message.getSenderId() == null || message.getReceiverId() == null) {
+                        throw new IllegalArgumentException("Message without id, senderId or receiverId");
+                    }
+                    String chatId = messageService.generateChatId(message.getSenderId(), message.getReceiverId());
+                    message.setChatId(chatId);
+                    // Still in the archive, which readers prefer over hot copies
+                    if (!messageArchive.lastKey(chatId).isBefore(message)) {
+                        report.archived++;
+                        continue;
+                    }
+                    chats.add(chatId);
+                    batch.add(message);
+                    if (batch.size() >= importBatchSize) {
+                        insert(batch, users, report);
+                        batch.clear();
+                    }
+                }
+                // Media records only describe files; they are restored with the media folders
+            } catch (IOException | IllegalArgumentException e) {
+                report.rejected++;
+                if (report.errors.size() < MAX_REPORTED_ERRORS) {
+                    report.errors.add("line " + lineNumber + ": " + e.getMessage());
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            insert(batch, users, report);
+        }
+        // Cached first pages of these chats may now miss restored messages
+        chats.forEach(recentMessageCache::invalidate);
+
+        imports.incrementAndGet();
+        importedMessages.addAndGet(report.inserted);
+        importDuplicates.addAndGet(report.duplicates);
+        return report.toMap(chats.size());
+    }
+
+    private void insert(List<Message> batch, Map<String, Boolean> users, ImportReport report) {
+        lookUpUsers(batch, users);
+        for (Iterator<Message> it = batch.iterator(); it.hasNext(); ) {
+            Message message = it.next();
+            if (!users.get(message.getSenderId()) || !users.get(message.getReceiverId())) {
+                it.remove();
+                report.unknownUsers++;
+                if (report.errors.size() < MAX_REPORTED_ERRORS) {
+                    report.errors.add("message " + message.getId() + ": sender or receiver is not a registered user");
+                }
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        List<InsertOneModel<Document>> inserts = new ArrayList<>(batch.size());
+        for (Message message : batch) {
+            inserts.add(new InsertOneModel<>(MessageSchema.toDocument(message)));
+        }
+        try {
+            BulkWriteResult result = mongoTemplate.getCollection(COLLECTION)
+                    .flatMap(messages -> Mono.from(messages.bulkWrite(inserts, new BulkWriteOptions().ordered(false))))
+                    .block();
+            report.inserted += result != null ? result.getInsertedCount() : 0;
+        } catch (MongoBulkWriteException e) {
+            // Unordered: everything but the failed documents went in
+            report.inserted += e.getWriteResult().getInsertedCount();
+            for (BulkWriteError error : e.getWriteErrors()) {
+                if (error.getCode() == DUPLICATE_KEY) {
+                    report.duplicates++;
+                } else {
+                    report.failed++;
+                    if (report.errors.size() < MAX_REPORTED_ERRORS) {
+                        report.errors.add("message " + batch.get(error.getIndex()).getId() + ": " + error.getMessage());
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            report.failed += batch.size();
+            if (report.errors.size() < MAX_REPORTED_ERRORS) {
+                report.errors.add("batch of " + batch.size() + " failed: " + e.getMessage());
+            }
+            return;
+        }
+        // Upserted by entry ID, so messages that were already indexed are harmless
+        batch.forEach(messageSearchService::index);
+    }
+
+    // One $in query per batch for the senders and receivers not seen earlier in this import
+    private void lookUpUsers(List<Message> batch, Map<String, Boolean> users) {
+        Set<String> unknown = new HashSet<>();
+        for (Message message : batch) {
+            for (String userId : List.of(message.getSenderId(), message.getReceiverId())) {
+                if (!users.containsKey(userId)) {
+                    unknown.add(userId);
+                }
+            }
+        }
+        if (unknown.isEmpty()) {
+            return;
+        }
+        List<Object> ids = new ArrayList<>(unknown.size());
+        unknown.forEach(userId -> ids.add(MessageSchema.userId(userId)));
+        BasicQuery query = new BasicQuery(new Document("_id", new Document("$in", ids)), new Document("_id", 1));
+        List<Document> found = mongoTemplate.find(query, Document.class, USERS_COLLECTION).collectList().block();
+        unknown.forEach(userId -> users.put(userId, false));
+        if (found != null) {
+            found.forEach(user -> users.put(String.valueOf(user.get("_id")), true));
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("exports", exports.get());
+        stats.put("exportedMessages", exportedMessages.get());
+        stats.put("imports", imports.get());
+        stats.put("importedMessages", importedMessages.get());
+        stats.put("importDuplicates", importDuplicates.get());
+        return stats;
+    }
+
+    private static final class ImportReport {
+        private long read = 0;
+        private long expected = 0;
+        private long files = 0;
+        private long inserted = 0;
+        private long duplicates = 0;
+        private long archived = 0;
+        private long rejected = 0;
+        private long unknownUsers = 0;
+        private long failed = 0;
+        private final List<String> errors = new ArrayList<>();
+
+        private Map<String, Object> toMap(int chats) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("chats", chats);
+            map.put("messagesRead", read);
+            map.put("inserted", inserted);
+            map.put("duplicates", duplicates);
+            map.put("alreadyArchived", archived);
+            map.put("rejectedLines", rejected);
+            map.put("unknownUsers", unknownUsers);
+            map.put("failed", failed);
+            // An export cut short has no end record, or fewer messages than it announced
+            map.put("complete", files > 0 && read == expected);
+            map.put("errors", errors);
+            return map;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.messaging.backend.service;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.ReturnDocument;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Named leases shared by every instance, one document per lease in the leases collection. A lease is held
+ * by one instance until it releases it or lets it expire; the holder renews it by acquiring it again before
+ * it runs out. Expiry uses each instance's clock, so a lease must last far longer than the clocks differ.
+ */
+@Service
+public class ClusterLease {
+
+    private static final String COLLECTION = "leases";
+    private static final int DUPLICATE_KEY = 11000;
+
+    @Autowired
+    private ReactiveMongoTemplate mongoTemplate;
+
+    // Unique per process, readable in the leases collection
+    private final String owner = hostName() + "-" + ProcessHandle.current().pid() + "-"
+            + UUID.randomUUID().toString().substring(0, 8);
+
+    /**
+     * Takes the lease for {@code duration} from now, or extends it if this instance already holds it.
+     * False when another instance holds it. Blocks; call it from a background thread.
+     */
+    public boolean tryAcquire(String name, Duration duration) {
+        Date now = new Date();
+        Document filter = new Document("_id", name).append("$or", List.of(
+                new Document("owner", owner),
+                new Document("expiresAt", new Document("$lt", now))));
+        Document update = new Document("$set", new Document("owner", owner)
+                .append("expiresAt", new Date(now.getTime() + duration.toMillis())));
+        try {
+            Document lease = mongoTemplate.getCollection(COLLECTION)
+                    .flatMap(collection -> Mono.from(collection.findOneAndUpdate(filter, update,
+                            new FindOneAndUpdateOptions().upsert(true).returnDocument(ReturnDocument.AFTER))))
+                    .block();
+            return lease != null && owner.equals(lease.getString("owner"));
+        } catch (MongoException e) {
+            // The upsert found the lease held by someone else
+            if (e.getCode() == DUPLICATE_KEY) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    // Gives the lease up if this instance holds it
+    public void release(String name) {
+        mongoTemplate.getCollection(COLLECTION)
+                .flatMap(collection -> Mono.from(collection.deleteOne(
+                        new Document("_id", name).append("owner", owner))))
+                .block();
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "unknown";
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.messaging.backend.service;
+
+import com.messaging.backend.model.Message;
+import com.messaging.backend.model.User;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the indexes declared on the documents and checks that every hot repository query is served by
+ * one. Each query shape below mirrors a repository method or template query; it is explained against the
+ * live collections and fails the check if the winning plan scans the whole collection.
+ *
+ * Runs once the application is ready. In "warn" mode problems are logged; in "fail" mode startup aborts.
+ * IndexVerifierMongoTest runs the same check against a MongoDB container, so a new query shape added here
+ * is covered by the test suite.
+ */
+@Service
+public class IndexVerifier {
+
+    private static final List<Class<?>> INDEXED_DOCUMENTS = List.of(Message.class, User.class);
+
+    // Placeholder arguments; the planner only looks at the shape of the query
+    private static final ObjectId USER_A = new ObjectId("000000000000000000000001");
+    private static final ObjectId USER_B = new ObjectId("000000000000000000000002");
+    private static final Date CURSOR_TIME = new Date(0);
+
+    private static final List<HotQuery> HOT_QUERIES = List.of(
+            new HotQuery("chatHistory", "MessageRepository.findChatPage",
+                    find("messages", new Document("$or", List.of(
+                                    new Document("s", USER_A).append("r", USER_B),
+                                    new Document("s", USER_B).append("r", USER_A))),
+                            new Document("t", -1).append("_id", -1), 50)),
+            new HotQuery("chatHistoryBefore", "MessageRepository.findChatPage (cursor)",
+                    find("messages", new Document("$or", List.of(
+                                    new Document("s", USER_A).append("r", USER_B)
+                                            .append("t", new Document("$lt", CURSOR_TIME)),
+                                    new Document("s", USER_A).append("r", USER_B).append("t", CURSOR_TIME)
+                                            .append("_id", new Document("$lt", 0L)),
+                                    new Document("s", USER_B).append("r", USER_A)
+                                            .append("t", new Document("$lt", CURSOR_TIME)),
+                                    new Document("s", USER_B).append("r", USER_A).append("t", CURSOR_TIME)
+                                            .append("_id", new Document("$lt", 0L)))),
+                            new Document("t", -1).append("_id", -1), 50)),
+            new HotQuery("conversation", "MessageRepository.findChat",
+                    find("messages", new Document("$or", List.of(
+                                    new Document("s", USER_A).append("r", USER_B),
+                                    new Document("s", USER_B).append("r", USER_A))),
+                            new Document("t", 1).append("_id", 1), 0)),
+            new HotQuery("unreadCount", "MessageRepository.countUnread",
+                    new Document("count", "messages")
+                            .append("query", new Document("r", USER_A)
+                                    .append("f", new Document("$in", Arrays.asList(null, 1))))),
+            new HotQuery("markChatRead", "MessageRepository.markChatRead",
+                    new Document("find", "messages")
+                            .append("filter", new Document("r", USER_A).append("s", USER_B)
+                                    .append("f", new Document("$in", Arrays.asList(null, 1))))
+                            .append("hint", "r_f")),
+            new HotQuery("resentMessage", "MessageRepository.findByClientMessageId",
+                    find("messages", new Document("s", USER_A).append("m", "client-1"), null, 1)),
+            new HotQuery("userByUsername", "UserRepository.findByUsername / existsByUsername",
+                    find("users", new Document("username", "alice"), null, 1)),
+            new HotQuery("userByEmail", "UserRepository.existsByEmail",
+                    find("users", new Document("email", "alice@example.com"), null, 1)),
+            // Unanchored and case-insensitive, so this walks the whole username index, but not the documents
+            new HotQuery("userSearch", "UserRepository.findByUsernameContainingIgnoreCase",
+                    find("users", new Document("username",
+                            new Document("$regex", "ali").append("$options", "i")), null, 0)),
+            new HotQuery("onlineUsers", "UserRepository.findByIsOnline",
+                    find("users", new Document("isOnline", true), null, 0)));
+
+    @Autowired
+    private ReactiveMongoTemplate mongoTemplate;
+
+    // warn, fail or off
+    @Value("${mongo.index-verification.mode:warn}")
+    private String mode;
+
+    @Value("${mongo.index-verification.timeout-ms:30000}")
+    private long timeoutMs;
+
+    private volatile Map<String, Object> lastReport;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if ("off".equalsIgnoreCase(mode)) {
+            return;
+        }
+        if ("fail".equalsIgnoreCase(mode)) {
+            Map<String, Object> report;
+            try {
+                report = verify().block(Duration.ofMillis(timeoutMs));
+            } catch (Exception e) {
+                throw new IllegalStateException("Index verification could not run: " + e.getMessage(), e);
+            }
+            if (!Boolean.TRUE.equals(report.get("ok"))) {
+                throw new IllegalStateException("Index verification failed: " + report.get("problems"));
+            }
+            return;
+        }
+        verify().subscribe(report -> { },
+                error -> System.err.println("Index verification could not run: " + error.getMessage()));
+    }
+
+    /**
+     * Ensures the declared indexes and explains every hot query. The report lists each query's plan and,
+     * under "problems", the indexes that could not be built and the queries that scan a collection.
+     */
+    public Mono<Map<String, Object>> verify() {
+        List<String> problems = new ArrayList<>();
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("mode", mode);
+
+        return ensureIndexes(problems)
+                .collectList()
+                .doOnNext(indexes -> report.put("indexes", indexes))
+                .thenMany(Flux.fromIterable(HOT_QUERIES).concatMap(query -> explain(query, problems)))
+                .collectList()
+                .map(queries -> {
+                    report.put("queries", queries);
+                    report.put("problems", problems);
+                    report.put("ok", problems.isEmpty());
+                    report.put("verifiedAt", Instant.now().toString());
+                    lastReport = report;
+                    if (problems.isEmpty()) {
+                        System.out.println("Index verification passed for " + queries.size() + " queries");
+                    } else {
+                        problems.forEach(problem -> System.err.println("Index verification: " + problem));
+                    }
+                    return report;
+                });
+    }
+
+    private Flux<String> ensureIndexes(List<String> problems) {
+        IndexResolver resolver = IndexResolver.create(mongoTemplate.getConverter().getMappingContext());
+        return Flux.fromIterable(INDEXED_DOCUMENTS)
+                .concatMap(type -> Flux.fromIterable(resolver.resolveIndexFor(type))
+                        .concatMap(index -> ensureIndex(type, index, problems)));
+    }
+
+    private Mono<String> ensureIndex(Class<?> type, IndexDefinition index, List<String> problems) {
+        String collection = mongoTemplate.getCollectionName(type);
+        return mongoTemplate.indexOps(type).ensureIndex(index)
+                .map(name -> collection + "." + name)
+                .onErrorResume(error -> {
+                    synchronized (problems) {
+                        problems.add("index " + index.getIndexKeys().toJson() + " on " + collection
+                                + " could not be built: " + error.getMessage());
+                    }
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<Map<String, Object>> explain(HotQuery query, List<String> problems) {
+        Document explain = new Document("explain", query.command).append("verbosity", "queryPlanner");
+        return mongoTemplate.executeCommand(explain)
+                .map(result -> {
+                    Map<String, Object> entry = new LinkedHashMap<>();
+                    entry.put("name", query.name);
+                    entry.put("source", query.source);
+                    entry.putAll(QueryProfiler.planSummary(result));
+                    if (Boolean.TRUE.equals(entry.get("collectionScan"))) {
+                        synchronized (problems) {
+                            problems.add(query.name + " (" + query.source + ") scans the whole collection");
+                        }
+                    }
+                    return entry;
+                });
+    }
+
+    public Map<String, Object> getLastReport() {
+        return lastReport != null ? lastReport : Map.of("mode", mode, "verifiedAt", "never");
+    }
+
+    private static Document find(String collection, Document filter, Document sort, int limit) {
+        Document command = new Document("find", collection).append("filter", filter);
+        if (sort != null) {
+            command.append("sort", sort);
+        }
+        if (limit > 0) {
+            command.append("limit", limit);
+        }
+        return command;
+    }
+
+    private static final class HotQuery {
+        private final String name;
+        private final String source;
+        private final Document command;
+
+        private HotQuery(String name, String source, Document command) {
+            this.name = name;
+            this.source = source;
+            this.command = command;
+        }
+    }
+}
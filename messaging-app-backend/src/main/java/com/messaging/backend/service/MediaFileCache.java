@@ -0,0 +1,206 @@
+package com.messaging.backend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Service
+public class MediaFileCache {
+
+    @Value("${media.cache.max-entry-bytes:262144}")
+    private long maxEntryBytes;
+
+    @Value("${media.cache.max-total-bytes:67108864}")
+    private long maxTotalBytes;
+
+    @Value("${media.cache.max-entries:10000}")
+    private int maxEntries;
+
+    // Access-ordered map gives LRU iteration order; guarded by "this"
+    private final LinkedHashMap<Path, CachedFile> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalBytes = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Returns the cached view of a file, reloading it when size or modification time changed on disk.
+     * Small files keep their content in a direct buffer; larger ones are only described, so their
+     * content type is not probed again on every request.
+     */
+    public CachedFile get(Path path) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        long size = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+
+        synchronized (this) {
+            CachedFile cached = entries.get(path);
+            if (cached != null && cached.size == size && cached.lastModified == lastModified) {
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+
+        misses.incrementAndGet();
+        CachedFile loaded = load(path, size, lastModified);
+        put(path, loaded);
+        return loaded;
+    }
+
+    private CachedFile load(Path path, long size, long lastModified) throws IOException {
+        String contentType = Files.probeContentType(path);
+        if (contentType == null) {
+            contentType = "application/octet-stream";
+        }
+
+        if (size <= maxEntryBytes) {
+            byte[] bytes = Files.readAllBytes(path);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+            buffer.put(bytes).flip();
+            return new CachedFile(buffer.asReadOnlyBuffer(), eTag(bytes.length, lastModified), contentType,
+                    bytes.length, lastModified);
+        }
+        return new CachedFile(null, eTag(size, lastModified), contentType, size, lastModified);
+    }
+
+    private synchronized void put(Path path, CachedFile file) {
+        CachedFile previous = entries.put(path, file);
+        if (previous != null) {
+            totalBytes -= previous.cachedBytes();
+        }
+        totalBytes += file.cachedBytes();
+
+        Iterator<Map.Entry<Path, CachedFile>> iterator = entries.entrySet().iterator();
+        while ((totalBytes > maxTotalBytes || entries.size() > maxEntries) && iterator.hasNext()) {
+            Map.Entry<Path, CachedFile> eldest = iterator.next();
+            if (eldest.getValue() == file) {
+                continue;
+            }
+            totalBytes -= eldest.getValue().cachedBytes();
+            iterator.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    public synchronized void invalidate(Path path) {
+        CachedFile removed = entries.remove(path);
+        if (removed != null) {
+            totalBytes -= removed.cachedBytes();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        long requests = hitCount + missCount;
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRatio", requests == 0 ? 0.0 : (double) hitCount / requests);
+        stats.put("evictions", evictions.get());
+        synchronized (this) {
+            stats.put("entries", entries.size());
+            stats.put("cachedBytes", totalBytes);
+        }
+        stats.put("maxTotalBytes", maxTotalBytes);
+        return stats;
+    }
+
+    // Weak validator from size and modification time, the same pair that decides whether an entry is stale.
+    // Not derived from content: a same-second re-upload replaces the file in place under the same name, and
+    // two versions could in principle share size and mtime, so it is not offered as a strong ETag
+    private static String eTag(long size, long lastModified) {
+        return "W/\"" + Long.toHexString(size) + "-" + Long.toHexString(lastModified) + "\"";
+    }
+
+    public static final class CachedFile {
+        private final ByteBuffer content;
+        private final String eTag;
+        private final String contentType;
+        private final long size;
+        private final long lastModified;
+
+        private CachedFile(ByteBuffer content, String eTag, String contentType, long size, long lastModified) {
+            this.content = content;
+            this.eTag = eTag;
+            this.contentType = contentType;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        public boolean hasContent() { return content != null; }
+
+        public String getETag() { return eTag; }
+
+        public String getContentType() { return contentType; }
+
+        public long getSize() { return size; }
+
+        public long getLastModified() { return lastModified; }
+
+        private long cachedBytes() { return content != null ? content.capacity() : 0; }
+
+        public AbstractResource toResource() {
+            return new ByteBufferResource(content);
+        }
+    }
+
+    // Streams straight out of the shared direct buffer without copying it onto the heap
+    private static final class ByteBufferResource extends AbstractResource {
+        private final ByteBuffer content;
+
+        private ByteBufferResource(ByteBuffer content) {
+            this.content = content;
+        }
+
+        @Override
+        public String getDescription() {
+            return "Cached media file";
+        }
+
+        @Override
+        public long contentLength() {
+            return content.remaining();
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            ByteBuffer view = content.duplicate();
+            return new InputStream() {
+                @Override
+                public int read() {
+                    return view.hasRemaining() ? view.get() & 0xFF : -1;
+                }
+
+                @Override
+                public int read(byte[] target, int offset, int length) {
+                    if (!view.hasRemaining()) {
+                        return -1;
+                    }
+                    int count = Math.min(length, view.remaining());
+                    view.get(target, offset, count);
+                    return count;
+                }
+
+                @Override
+                public int available() {
+                    return view.remaining();
+                }
+            };
+        }
+    }
+}
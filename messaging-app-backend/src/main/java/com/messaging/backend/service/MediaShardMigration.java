@@ -0,0 +1,152 @@
+package com.messaging.backend.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Moves files from the old flat per-type folders into the sharded layout while the server keeps serving.
+ * Downloads look in both layouts, so a file is reachable before, during and after its move.
+ */
+@Service
+public class MediaShardMigration {
+
+    @Autowired
+    private MediaStorage mediaStorage;
+
+    @Autowired
+    private ThumbnailService thumbnailService;
+
+    @Autowired
+    private MediaFileCache mediaFileCache;
+
+    @Value("${media.sharding.migration.enabled:false}")
+    private boolean enabled;
+
+    @Value("${media.sharding.migration.threads:4}")
+    private int threads;
+
+    @Value("${media.sharding.migration.max-files-per-second:500}")
+    private int maxFilesPerSecond;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicLong moved = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    // Next time slot (System.nanoTime) a worker may move a file in; shared by all workers
+    private final AtomicLong nextSlot = new AtomicLong();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startOnBoot() {
+        if (enabled) {
+            start();
+        }
+    }
+
+    public boolean start() {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        Thread thread = new Thread(this::run, "MediaShardMigration");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    private void run() {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 64),
+                runnable -> new Thread(runnable, "MediaShardMigration-" + threadCount.incrementAndGet()),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        try {
+            for (String folder : MediaStorage.TYPE_FOLDERS) {
+                Path folderPath = mediaStorage.getFolder(folder);
+                if (!Files.isDirectory(folderPath)) {
+                    continue;
+                }
+                System.out.println("Migrating " + folderPath + " to sharded layout");
+                // Stream the directory instead of listing it; flat folders may hold millions of entries
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(folderPath, Files::isRegularFile)) {
+                    for (Path file : stream) {
+                        String filename = file.getFileName().toString();
+                        if (!thumbnailService.isDerivedFile(filename)) {
+                            executor.execute(() -> migrate(folder, file));
+                        }
+                    }
+                }
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+            System.out.println("Media shard migration finished: " + moved.get() + " moved, " + failed.get() + " failed");
+        } catch (IOException e) {
+            System.err.println("Media shard migration aborted: " + e.getMessage());
+            executor.shutdownNow();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private void migrate(String folder, Path file) {
+        throttle();
+        String filename = file.getFileName().toString();
+        try {
+            Path target = mediaStorage.resolveForWrite(folder, filename);
+            // Thumbnails first, so the sharded original never sits without its already generated previews
+            for (ThumbnailService.Size size : ThumbnailService.Size.values()) {
+                Path thumbnail = thumbnailService.resolve(file, size);
+                if (Files.exists(thumbnail)) {
+                    Files.move(thumbnail, thumbnailService.resolve(target, size), StandardCopyOption.ATOMIC_MOVE);
+                    mediaFileCache.invalidate(thumbnail);
+                }
+            }
+            Files.move(file, target, StandardCopyOption.ATOMIC_MOVE);
+            mediaFileCache.invalidate(file);
+            moved.incrementAndGet();
+        } catch (IOException e) {
+            failed.incrementAndGet();
+            System.err.println("Error migrating " + file + ": " + e.getMessage());
+        }
+    }
+
+    private void throttle() {
+        if (maxFilesPerSecond <= 0) {
+            return;
+        }
+        long interval = 1_000_000_000L / maxFilesPerSecond;
+        long now = System.nanoTime();
+        long slot = nextSlot.getAndUpdate(previous -> Math.max(previous, now) + interval);
+        long wait = slot - now;
+        if (wait > 0) {
+            LockSupport.parkNanos(wait);
+        }
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("running", running.get());
+        status.put("moved", moved.get());
+        status.put("failed", failed.get());
+        status.put("maxFilesPerSecond", maxFilesPerSecond);
+        return status;
+    }
+}
@@ -0,0 +1,72 @@
+package com.messaging.backend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+@Service
+public class MediaStorage {
+
+    public static final List<String> TYPE_FOLDERS = List.of("images", "videos", "audio", "documents");
+
+    @Value("${media.upload-dir:media/}")
+    private String uploadDir;
+
+    public Path getRoot() {
+        return Paths.get(uploadDir);
+    }
+
+    public Path getFolder(String folder) {
+        return Paths.get(uploadDir, folder).normalize();
+    }
+
+    // media/<folder>/<ab>/<cd>/<filename> where ab/cd are the first hash bytes of the filename
+    public Path shardedPath(String folder, String filename) {
+        String hash = hashFilename(filename);
+        return getFolder(folder).resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(filename).normalize();
+    }
+
+    public Path flatPath(String folder, String filename) {
+        return getFolder(folder).resolve(filename).normalize();
+    }
+
+    public Path resolveForWrite(String folder, String filename) throws IOException {
+        Path path = shardedPath(folder, filename);
+        Files.createDirectories(path.getParent());
+        return path;
+    }
+
+    /**
+     * Finds an existing file regardless of layout. The sharded path is checked again after the flat one
+     * so a file moved by the migration between the two checks is still found.
+     */
+    public Path locate(String folder, String filename) {
+        Path sharded = shardedPath(folder, filename);
+        if (Files.isReadable(sharded)) {
+            return sharded;
+        }
+        Path flat = flatPath(folder, filename);
+        if (Files.isReadable(flat)) {
+            return flat;
+        }
+        return Files.isReadable(sharded) ? sharded : null;
+    }
+
+    static String hashFilename(String filename) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            return HexFormat.of().formatHex(digest.digest(filename.getBytes(StandardCharsets.UTF_8)), 0, 2);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 not available", e);
+        }
+    }
+}
@@ -0,0 +1,640 @@
+package com.messaging.backend.service;
+
+import com.messaging.backend.model.Message;
+import com.mongodb.client.gridfs.model.GridFSFile;
+import com.mongodb.client.gridfs.model.GridFSUploadOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.reactivestreams.client.gridfs.GridFSBucket;
+import com.mongodb.reactivestreams.client.gridfs.GridFSBuckets;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Cold tier of chat history. Messages moved out of the messages collection by MessageArchiver are stored
+ * per chat in immutable segment files, kept in the message_archive GridFS bucket as <chatId>/<segment>, so
+ * every instance reads the same archive. Each archiver run appends a new segment holding messages newer
+ * than everything already archived for the chat, so the archive of a chat is always an ordered prefix of
+ * its history.
+ *
+ * Reads go to a local copy of each segment under archive/<ab>/<chatId>/ (ab is the first hash byte of the
+ * chat ID), downloaded the first time it is needed; segments never change, so the copies never go stale and
+ * the directory can be wiped at any time. The list of a chat's segments is cached for listing-ttl-ms, so a
+ * segment another instance appended is seen within that time.
+ *
+ * A segment is a header, a run of deflate-compressed blocks of up to block-size messages, and a footer
+ * with a sparse index: the first (timestamp, ID) key, offset and length of every block. Segments are
+ * memory-mapped, so a page read decompresses only the blocks it needs. Messages are ordered by
+ * (timestamp, ID), the same order as the history queries on the hot collection.
+ */
+@Service
+public class MessageArchive {
+
+    private static final int MAGIC = 0x4D534753; // "MSGS"
+    private static final byte VERSION = 1;
+    private static final int HEADER_BYTES = 5;
+    private static final int TRAILER_BYTES = 12;
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String BUCKET = "message_archive";
+    // Chat IDs are two user IDs joined by "_"; anything else must not reach the file system
+    private static final Pattern CHAT_ID = Pattern.compile("[A-Za-z0-9_-]{1,128}");
+    private static final Message.MessageType[] TYPES = Message.MessageType.values();
+
+    @Autowired
+    private MessagingMetrics metrics;
+
+    @Autowired
+    private ReactiveMongoTemplate mongoTemplate;
+
+    @Value("${messages.archive.dir:archive/}")
+    private String archiveDir;
+
+    @Value("${messages.archive.block-size:64}")
+    private int blockSize;
+
+    @Value("${messages.archive.open-chats:1024}")
+    private int maxOpenChats;
+
+    @Value("${messages.archive.listing-ttl-ms:60000}")
+    private long listingTtlMs;
+
+    private volatile GridFSBucket bucket;
+
+    // Segment indexes of recently read chats, including chats without an archive; guarded by "this"
+    private final LinkedHashMap<String, ChatSegments> openChats = new LinkedHashMap<>(256, 0.75f, true);
+
+    private final AtomicLong segmentsWritten = new AtomicLong();
+    private final AtomicLong messagesWritten = new AtomicLong();
+    private final AtomicLong rawBytes = new AtomicLong();
+    private final AtomicLong storedBytes = new AtomicLong();
+    private final AtomicLong coldReads = new AtomicLong();
+    private final AtomicLong coldReadNanos = new AtomicLong();
+    private final AtomicLong maxColdReadNanos = new AtomicLong();
+    private final AtomicLong messagesRead = new AtomicLong();
+    private final AtomicLong segmentsDownloaded = new AtomicLong();
+
+    /**
+     * Position in a chat's (timestamp, ID) order. NONE sorts before every message and is what a chat without
+     * archive reports as its last archived key.
+     */
+    public static final class Key implements Comparable<Key> {
+        public static final Key NONE = new Key(Long.MIN_VALUE, "");
+
+        private final long timestamp;
+        private final String id;
+
+        private Key(long timestamp, String id) {
+            this.timestamp = timestamp;
+            this.id = id;
+        }
+
+        public static Key of(Message message) {
+            return new Key(toMillis(message.getTimestamp()), message.getId());
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            int byTime = Long.compare(timestamp, other.timestamp);
+            return byTime != 0 ? byTime : id.compareTo(other.id);
+        }
+
+        public boolean isBefore(Message message) {
+            return compareTo(of(message)) < 0;
+        }
+
+        // A message carrying just this key, for keyset queries on the hot collection
+        public Message toCursor() {
+            Message cursor = new Message();
+            cursor.setId(id);
+            cursor.setTimestamp(LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault()));
+            return cursor;
+        }
+    }
+
+    // Key of the newest archived message of a chat; hot copies at or before it are leftovers of an interrupted run
+    public Key lastKey(String chatId) {
+        return lastKey(segments(chatId, false));
+    }
+
+    // Same, from the bucket rather than the cached listing, for the archiver
+    public Key currentLastKey(String chatId) {
+        return lastKey(segments(chatId, true));
+    }
+
+    private static Key lastKey(List<Segment> segments) {
+        return segments.isEmpty() ? Key.NONE : segments.get(segments.size() - 1).lastKey;
+    }
+
+    public Mono<Key> lastKeyAsync(String chatId) {
+        return Mono.fromCallable(() -> lastKey(chatId)).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Up to {@code limit} archived messages of a chat right before {@code before} (or the newest ones when
+     * {@code before} is null), in ascending order.
+     */
+    public Mono<List<Message>> readBefore(String chatId, Key before, int limit) {
+        return Mono.fromCallable(() -> timedRead(() -> readBeforeNow(chatId, before, limit)))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    // Whole archived history of a chat in ascending order, decompressed one block at a time as it is consumed
+    public Flux<Message> streamAll(String chatId) {
+        return Flux.defer(() -> {
+                    List<Segment> segments = segments(chatId, false);
+                    List<long[]> blocks = new ArrayList<>();
+                    for (int s = 0; s < segments.size(); s++) {
+                        for (int b = 0; b < segments.get(s).blockCount(); b++) {
+                            blocks.add(new long[]{s, b});
+                        }
+                    }
+                    return Flux.fromIterable(blocks)
+                            .concatMapIterable(block -> timedRead(() ->
+                                    segments.get((int) block[0]).readBlock((int) block[1], chatId)));
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    // An archived message by ID, or empty; IDs from MessageIdGenerator carry their timestamp, so one block is read
+    public Mono<Message> find(String chatId, String messageId) {
+        return Mono.fromCallable(() -> timedRead(() -> findNow(chatId, messageId)))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private List<Message> readBeforeNow(String chatId, Key before, int limit) {
+        List<Message> newestFirst = new ArrayList<>(limit);
+        List<Segment> segments = segments(chatId, false);
+        for (int s = segments.size() - 1; s >= 0 && newestFirst.size() < limit; s--) {
+            Segment segment = segments.get(s);
+            int block = before == null ? segment.blockCount() - 1 : segment.lastBlockBefore(before);
+            for (; block >= 0 && newestFirst.size() < limit; block--) {
+                List<Message> messages = segment.readBlock(block, chatId);
+                for (int i = messages.size() - 1; i >= 0 && newestFirst.size() < limit; i--) {
+                    Message message = messages.get(i);
+                    if (before == null || Key.of(message).compareTo(before) < 0) {
+                        newestFirst.add(message);
+                    }
+                }
+            }
+        }
+        Collections.reverse(newestFirst);
+        return newestFirst;
+    }
+
+    private Message findNow(String chatId, String messageId) {
+        List<Segment> segments = segments(chatId, false);
+        if (MessageIdGenerator.isGenerated(messageId)) {
+            Key key = new Key(MessageIdGenerator.timestampOf(MessageIdGenerator.parse(messageId)), messageId);
+            for (Segment segment : segments) {
+                if (segment.firstKey(0).compareTo(key) <= 0 && key.compareTo(segment.lastKey) <= 0) {
+                    return findInBlock(segment, segment.lastBlockBefore(key, true), chatId, messageId);
+                }
+            }
+            return null;
+        }
+        // Older ObjectId-based IDs do not encode the stored timestamp, so every block has to be checked
+        for (Segment segment : segments) {
+            for (int block = 0; block < segment.blockCount(); block++) {
+                Message message = findInBlock(segment, block, chatId, messageId);
+                if (message != null) {
+                    return message;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Message findInBlock(Segment segment, int block, String chatId, String messageId) {
+        if (block < 0) {
+            return null;
+        }
+        for (Message message : segment.readBlock(block, chatId)) {
+            if (message.getId().equals(messageId)) {
+                return message;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Writes messages of one chat (ascending order) as a new segment and returns how many were written.
+     * Messages at or before the chat's last archived key are already in the archive and are skipped. The
+     * segment is stored in the bucket before this returns; GridFS only lists a file once all its chunks are
+     * written. Only one instance may append at a time (MessageArchiver holds a cluster lease for it).
+     */
+    public int append(String chatId, List<Message> ascending) throws IOException {
+        Path chatDir = chatDir(chatId);
+        if (chatDir == null) {
+            throw new IllegalArgumentException("Invalid chat ID: " + chatId);
+        }
+        Key last = currentLastKey(chatId);
+        List<Message> messages = new ArrayList<>(ascending.size());
+        for (Message message : ascending) {
+            if (last.isBefore(message)) {
+                messages.add(message);
+            }
+        }
+        if (messages.isEmpty()) {
+            return 0;
+        }
+
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(file);
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        DataOutputStream indexOut = new DataOutputStream(index);
+        int blocks = 0;
+        long raw = 0;
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            for (int start = 0; start < messages.size(); start += blockSize) {
+                List<Message> block = messages.subList(start, Math.min(messages.size(), start + blockSize));
+                byte[] uncompressed = encodeBlock(block);
+                byte[] compressed = deflate(deflater, uncompressed);
+                Message first = block.get(0);
+                indexOut.writeLong(toMillis(first.getTimestamp()));
+                writeShortString(indexOut, first.getId());
+                indexOut.writeInt(out.size());
+                indexOut.writeInt(compressed.length);
+                indexOut.writeInt(uncompressed.length);
+                indexOut.writeInt(block.size());
+                out.write(compressed);
+                raw += uncompressed.length;
+                blocks++;
+            }
+        } finally {
+            deflater.end();
+        }
+
+        long footerOffset = out.size();
+        out.writeInt(blocks);
+        out.write(index.toByteArray());
+        Message newest = messages.get(messages.size() - 1);
+        out.writeLong(toMillis(newest.getTimestamp()));
+        writeShortString(out, newest.getId());
+        out.writeLong(footerOffset);
+        out.writeInt(MAGIC);
+        out.flush();
+
+        // Zero-padded first timestamp keeps file names in chronological order
+        String name = String.format("%013d-%s%s", toMillis(messages.get(0).getTimestamp()),
+                messages.get(0).getId(), SEGMENT_SUFFIX);
+        byte[] bytes = file.toByteArray();
+        Mono.from(bucket().uploadFromPublisher(chatId + "/" + name, Flux.just(ByteBuffer.wrap(bytes)),
+                new GridFSUploadOptions().metadata(new Document("chatId", chatId)
+                        .append("messages", messages.size())))).block();
+        // This instance reads its own segments without downloading them again
+        writeLocal(chatDir.resolve(name), Flux.just(ByteBuffer.wrap(bytes)));
+        synchronized (this) {
+            openChats.remove(chatId);
+        }
+
+        segmentsWritten.incrementAndGet();
+        messagesWritten.addAndGet(messages.size());
+        rawBytes.addAndGet(raw);
+        storedBytes.addAndGet(file.size());
+        return messages.size();
+    }
+
+    private static byte[] encodeBlock(List<Message> block) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (Message message : block) {
+            writeShortString(out, message.getId());
+            writeShortString(out, message.getSenderId());
+            writeShortString(out, message.getReceiverId());
+            if (message.getContent() == null) {
+                out.writeInt(-1);
+            } else {
+                byte[] content = message.getContent().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(content.length);
+                out.write(content);
+            }
+            out.writeByte(message.getType() != null ? message.getType().ordinal() : -1);
+            out.writeLong(toMillis(message.getTimestamp()));
+            out.writeByte((message.isRead() ? 1 : 0) | (message.isDelivered() ? 2 : 0));
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] deflate(Deflater deflater, byte[] input) {
+        deflater.reset();
+        deflater.setInput(input);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, input.length / 2));
+        byte[] chunk = new byte[8192];
+        while (!deflater.finished()) {
+            out.write(chunk, 0, deflater.deflate(chunk));
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeShortString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readShortString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static long toMillis(LocalDateTime timestamp) {
+        return timestamp.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private <T> T timedRead(Supplier<T> read) {
+        long start = System.nanoTime();
+        T result = read.get();
+        long elapsed = System.nanoTime() - start;
+        coldReads.incrementAndGet();
+        coldReadNanos.addAndGet(elapsed);
+        maxColdReadNanos.accumulateAndGet(elapsed, Math::max);
+        if (result instanceof List<?> list) {
+            messagesRead.addAndGet(list.size());
+        } else if (result != null) {
+            messagesRead.incrementAndGet();
+        }
+        metrics.recordArchiveRead(start);
+        return result;
+    }
+
+    // Null for IDs that cannot be a chat ID; such chats simply have no archive
+    private Path chatDir(String chatId) {
+        if (chatId == null || !CHAT_ID.matcher(chatId).matches()) {
+            return null;
+        }
+        String hash = Integer.toHexString((chatId.hashCode() & 0xFF) | 0x100).substring(1);
+        return Paths.get(archiveDir, hash, chatId).normalize();
+    }
+
+    private List<Segment> segments(String chatId, boolean fresh) {
+        Path chatDir = chatDir(chatId);
+        if (chatDir == null) {
+            return List.of();
+        }
+        ChatSegments cached;
+        synchronized (this) {
+            cached = openChats.get(chatId);
+        }
+        if (cached != null && !fresh && System.currentTimeMillis() - cached.listedAt < listingTtlMs) {
+            return cached.segments;
+        }
+
+        List<GridFSFile> files = Flux.from(bucket().find(Filters.regex("filename", "^" + chatId + "/"))
+                        .sort(Sorts.ascending("filename")))
+                .collectList()
+                .block();
+        List<String> names = new ArrayList<>();
+        List<Segment> segments = new ArrayList<>();
+        for (GridFSFile stored : files != null ? files : List.<GridFSFile>of()) {
+            String name = stored.getFilename().substring(chatId.length() + 1);
+            int known = cached != null ? cached.names.indexOf(name) : -1;
+            names.add(name);
+            segments.add(known >= 0 ? cached.segments.get(known) : Segment.open(local(chatDir.resolve(name), stored)));
+        }
+        synchronized (this) {
+            openChats.put(chatId, new ChatSegments(List.copyOf(names), List.copyOf(segments), System.currentTimeMillis()));
+            Iterator<ChatSegments> iterator = openChats.values().iterator();
+            while (openChats.size() > maxOpenChats && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+        return segments;
+    }
+
+    // The local copy of a stored segment, downloaded first if this instance has none
+    private Path local(Path file, GridFSFile stored) {
+        if (!Files.exists(file)) {
+            try {
+                writeLocal(file, Flux.from(bucket().downloadToPublisher(stored.getObjectId())));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            segmentsDownloaded.incrementAndGet();
+        }
+        return file;
+    }
+
+    // Written to a temporary file and renamed, so a reader never maps a partial segment
+    private static void writeLocal(Path file, Flux<ByteBuffer> content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path temp = file.resolveSibling(file.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (ByteBuffer bytes : content.toIterable()) {
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+            }
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private GridFSBucket bucket() {
+        GridFSBucket current = bucket;
+        if (current == null) {
+            current = GridFSBuckets.create(mongoTemplate.getMongoDatabase().block(), BUCKET);
+            bucket = current;
+        }
+        return current;
+    }
+
+    public Map<String, Object> getStats() {
+        long reads = coldReads.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("segmentsWritten", segmentsWritten.get());
+        stats.put("messagesWritten", messagesWritten.get());
+        stats.put("rawBytes", rawBytes.get());
+        stats.put("storedBytes", storedBytes.get());
+        stats.put("compressionRatio", storedBytes.get() == 0 ? 0.0 : (double) rawBytes.get() / storedBytes.get());
+        stats.put("coldReads", reads);
+        stats.put("coldReadMeanMs", reads == 0 ? 0.0 : coldReadNanos.get() / 1e6 / reads);
+        stats.put("coldReadMaxMs", maxColdReadNanos.get() / 1e6);
+        stats.put("messagesRead", messagesRead.get());
+        stats.put("segmentsDownloaded", segmentsDownloaded.get());
+        synchronized (this) {
+            stats.put("openChats", openChats.size());
+        }
+        return stats;
+    }
+
+    private static final class ChatSegments {
+        private final List<String> names;
+        private final List<Segment> segments;
+        private final long listedAt;
+
+        private ChatSegments(List<String> names, List<Segment> segments, long listedAt) {
+            this.names = names;
+            this.segments = segments;
+            this.listedAt = listedAt;
+        }
+    }
+
+    // One memory-mapped segment file with its sparse block index
+    private static final class Segment {
+        private final MappedByteBuffer buffer;
+        private final long[] firstTimestamps;
+        private final String[] firstIds;
+        private final int[] offsets;
+        private final int[] lengths;
+        private final int[] rawLengths;
+        private final int[] counts;
+        private final Key lastKey;
+
+        private Segment(MappedByteBuffer buffer, int blocks) {
+            this.buffer = buffer;
+            this.firstTimestamps = new long[blocks];
+            this.firstIds = new String[blocks];
+            this.offsets = new int[blocks];
+            this.lengths = new int[blocks];
+            this.rawLengths = new int[blocks];
+            this.counts = new int[blocks];
+            ByteBuffer footer = buffer.duplicate();
+            footer.position((int) buffer.getLong(buffer.limit() - TRAILER_BYTES) + 4);
+            for (int i = 0; i < blocks; i++) {
+                firstTimestamps[i] = footer.getLong();
+                firstIds[i] = readShortString(footer);
+                offsets[i] = footer.getInt();
+                lengths[i] = footer.getInt();
+                rawLengths[i] = footer.getInt();
+                counts[i] = footer.getInt();
+            }
+            long lastTimestamp = footer.getLong();
+            this.lastKey = new Key(lastTimestamp, readShortString(footer));
+        }
+
+        private static Segment open(Path file) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                // The mapping stays valid after the channel is closed
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (buffer.limit() < HEADER_BYTES + TRAILER_BYTES || buffer.getInt(0) != MAGIC
+                        || buffer.get(4) != VERSION || buffer.getInt(buffer.limit() - 4) != MAGIC) {
+                    throw new IOException("Not a message archive segment: " + file);
+                }
+                int footerOffset = (int) buffer.getLong(buffer.limit() - TRAILER_BYTES);
+                return new Segment(buffer, buffer.getInt(footerOffset));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private int blockCount() {
+            return offsets.length;
+        }
+
+        private Key firstKey(int block) {
+            return new Key(firstTimestamps[block], firstIds[block]);
+        }
+
+        // Last block whose first key is before {@code key} (or equal to it when inclusive), -1 if none
+        private int lastBlockBefore(Key key) {
+            return lastBlockBefore(key, false);
+        }
+
+        private int lastBlockBefore(Key key, boolean inclusive) {
+            int low = 0;
+            int high = offsets.length - 1;
+            int found = -1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = firstKey(mid).compareTo(key);
+                if (cmp < 0 || (inclusive && cmp == 0)) {
+                    found = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return found;
+        }
+
+        private List<Message> readBlock(int block, String chatId) {
+            byte[] raw = new byte[rawLengths[block]];
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(buffer.slice(offsets[block], lengths[block]));
+                int read = 0;
+                while (read < raw.length && !inflater.finished()) {
+                    read += inflater.inflate(raw, read, raw.length - read);
+                }
+            } catch (DataFormatException e) {
+                throw new IllegalStateException("Corrupt archive block", e);
+            } finally {
+                inflater.end();
+            }
+
+            ByteBuffer in = ByteBuffer.wrap(raw);
+            List<Message> messages = new ArrayList<>(counts[block]);
+            for (int i = 0; i < counts[block]; i++) {
+                Message message = new Message();
+                message.setId(readShortString(in));
+                message.setSenderId(readShortString(in));
+                message.setReceiverId(readShortString(in));
+                int contentLength = in.getInt();
+                if (contentLength >= 0) {
+                    message.setContent(new String(raw, in.position(), contentLength, StandardCharsets.UTF_8));
+                    in.position(in.position() + contentLength);
+                } else {
+                    message.setContent(null);
+                }
+                int type = in.get();
+                message.setType(type >= 0 && type < TYPES.length ? TYPES[type] : null);
+                message.setTimestamp(LocalDateTime.ofInstant(Instant.ofEpochMilli(in.getLong()), ZoneId.systemDefault()));
+                int flags = in.get();
+                message.setRead((flags & 1) != 0);
+                message.setDelivered((flags & 2) != 0);
+                message.setChatId(chatId);
+                messages.add(message);
+            }
+            return messages;
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package com.messaging.backend.service;
+
+import com.messaging.backend.model.Message;
+import com.messaging.backend.repository.MessageRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Moves messages older than min-age-days from the messages collection into MessageArchive. Only one
+ * instance archives at a time: a run first takes the message-archiver ClusterLease and renews it as it
+ * goes, and stops if it loses it.
+ *
+ * A run first goes chat by chat, oldest messages first, writing up to messages-per-segment messages into
+ * each new segment. A chat is only archived up to its oldest unread message, so the archive stays a prefix of
+ * history that needs no further updates (read receipts and unread counts work on the hot collection). Once
+ * every chat is written, the run waits listing-ttl-ms, so every instance lists the new segments, and only
+ * then deletes the archived messages from Mongo. A run that dies before the deletes leaves messages in both
+ * tiers; readers ignore the hot copies and the next run deletes them without archiving them twice.
+ *
+ * Runs are skipped while MessageSchemaMigration is still rewriting messages: a legacy message that is only
+ * visible to the archiver after its chat moved on would be deleted as an already archived copy.
+ */
+@Service
+public class MessageArchiver {
+
+    private static final String LEASE = "message-archiver";
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private MessageSchemaMigration schemaMigration;
+
+    @Autowired
+    private MessageArchive messageArchive;
+
+    @Autowired
+    private ClusterLease clusterLease;
+
+    @Value("${messages.archive.enabled:false}")
+    private boolean enabled;
+
+    @Value("${messages.archive.min-age-days:90}")
+    private int minAgeDays;
+
+    @Value("${messages.archive.messages-per-segment:10000}")
+    private int messagesPerSegment;
+
+    @Value("${messages.archive.max-messages-per-second:5000}")
+    private int maxMessagesPerSecond;
+
+    @Value("${messages.archive.lease-ms:300000}")
+    private long leaseMs;
+
+    @Value("${messages.archive.listing-ttl-ms:60000}")
+    private long listingTtlMs;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong archived = new AtomicLong();
+    private final AtomicLong deletedFromHot = new AtomicLong();
+    private final AtomicLong chatsHeldByUnread = new AtomicLong();
+    private final AtomicLong failedChats = new AtomicLong();
+    private final AtomicLong skippedRuns = new AtomicLong();
+    // Next time slot (System.nanoTime) the archiver may move messages in
+    private long nextSlot = 0;
+
+    private volatile Instant lastRunStartedAt;
+    private volatile long lastRunMillis;
+    private volatile long lastRunArchived;
+    private volatile long lastRunChats;
+
+    @Scheduled(initialDelayString = "${messages.archive.initial-delay-ms:60000}",
+            fixedDelayString = "${messages.archive.interval-ms:86400000}")
+    public void scheduledRun() {
+        if (enabled) {
+            start();
+        }
+    }
+
+    public boolean start() {
+        if (schemaMigration.isLegacyReads()) {
+            System.out.println("Message archiving skipped until the schema migration has finished");
+            return false;
+        }
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        Thread thread = new Thread(this::run, "MessageArchiver");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    private void run() {
+        boolean leased;
+        try {
+            leased = clusterLease.tryAcquire(LEASE, Duration.ofMillis(leaseMs));
+        } catch (RuntimeException e) {
+            System.err.println("Could not take the archiver lease: " + e.getMessage());
+            leased = false;
+        }
+        if (!leased) {
+            skippedRuns.incrementAndGet();
+            running.set(false);
+            System.out.println("Message archiving skipped: the archiver lease is not available");
+            return;
+        }
+        long started = System.nanoTime();
+        lastRunStartedAt = Instant.now();
+        long archivedBefore = archived.get();
+        long chats = 0;
+        try {
+            LocalDateTime cutoff = LocalDateTime.now().minusDays(minAgeDays);
+            System.out.println("Archiving messages older than " + cutoff);
+            // Keys up to which each chat's hot messages are archived, one per segment, oldest first
+            Map<String, List<MessageArchive.Key>> toDelete = new LinkedHashMap<>();
+            for (String chatId : coldChats(cutoff)) {
+                renewLease();
+                List<MessageArchive.Key> keys = archiveChat(chatId, cutoff);
+                if (!keys.isEmpty()) {
+                    toDelete.put(chatId, keys);
+                }
+                chats++;
+            }
+            if (!toDelete.isEmpty()) {
+                awaitListings();
+            }
+            for (Map.Entry<String, List<MessageArchive.Key>> chat : toDelete.entrySet()) {
+                renewLease();
+                deleteArchived(chat.getKey(), chat.getValue());
+            }
+        } catch (Exception e) {
+            System.err.println("Message archiving aborted: " + e.getMessage());
+        } finally {
+            try {
+                clusterLease.release(LEASE);
+            } catch (RuntimeException e) {
+                System.err.println("Could not release the archiver lease: " + e.getMessage());
+            }
+            lastRunMillis = (System.nanoTime() - started) / 1_000_000;
+            lastRunArchived = archived.get() - archivedBefore;
+            lastRunChats = chats;
+            runs.incrementAndGet();
+            running.set(false);
+            System.out.println("Message archiving finished: " + lastRunArchived + " messages from " + chats
+                    + " chats in " + lastRunMillis + " ms");
+        }
+    }
+
+    // Collected up front: a cursor left open during a long run would time out on the server
+    private List<String> coldChats(LocalDateTime cutoff) {
+        return messageRepository.findChatIdsBefore(cutoff).collectList().block();
+    }
+
+    /**
+     * Archives the chat's messages older than both the cutoff and its oldest unread message. Returns the keys up to
+     * which its hot messages can be deleted: the chat's last archived key before this run (leftovers of an
+     * interrupted run) and the last key of each segment written now.
+     */
+    private List<MessageArchive.Key> archiveChat(String chatId, LocalDateTime cutoff) {
+        List<MessageArchive.Key> keys = new ArrayList<>();
+        try {
+            MessageArchive.Key last = messageArchive.currentLastKey(chatId);
+            if (last != MessageArchive.Key.NONE) {
+                keys.add(last);
+            }
+            Message unread = messageRepository.findOldestUnreadBefore(chatId, cutoff).block();
+            LocalDateTime chatCutoff = cutoff;
+            if (unread != null) {
+                chatCutoff = unread.getTimestamp();
+                chatsHeldByUnread.incrementAndGet();
+            }
+            Message after = last == MessageArchive.Key.NONE ? null : last.toCursor();
+            while (true) {
+                List<Message> batch = messageRepository.findChatBefore(chatId, after, chatCutoff, messagesPerSegment)
+                        .collectList()
+                        .block();
+                if (batch == null || batch.isEmpty()) {
+                    break;
+                }
+                throttle(batch.size());
+
+                archived.addAndGet(messageArchive.append(chatId, batch));
+                after = batch.get(batch.size() - 1);
+                keys.add(MessageArchive.Key.of(after));
+
+                if (batch.size() < messagesPerSegment) {
+                    break;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            failedChats.incrementAndGet();
+            System.err.println("Error archiving chat " + chatId + ": " + e.getMessage());
+        }
+        return keys;
+    }
+
+    // Lets every instance's cached segment list expire, so none reads a chat without its newest segment
+    private void awaitListings() {
+        long until = System.nanoTime() + listingTtlMs * 1_000_000L;
+        long wait;
+        while ((wait = until - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(Math.min(wait, leaseMs * 1_000_000L / 3));
+            renewLease();
+        }
+    }
+
+    // One delete per segment, throttled like the archiving
+    private void deleteArchived(String chatId, List<MessageArchive.Key> keys) {
+        try {
+            for (MessageArchive.Key key : keys) {
+                Long deleted = messageRepository.deleteChatThrough(chatId, key.toCursor()).block();
+                if (deleted != null && deleted > 0) {
+                    deletedFromHot.addAndGet(deleted);
+                    throttle((int) Math.min(Integer.MAX_VALUE, deleted));
+                }
+            }
+        } catch (RuntimeException e) {
+            failedChats.incrementAndGet();
+            System.err.println("Error deleting archived messages of chat " + chatId + ": " + e.getMessage());
+        }
+    }
+
+    private void renewLease() {
+        if (!clusterLease.tryAcquire(LEASE, Duration.ofMillis(leaseMs))) {
+            throw new IllegalStateException("lost the archiver lease to another instance");
+        }
+    }
+
+    // Only the archiver thread moves messages, so the slot needs no synchronization
+    private void throttle(int messages) {
+        if (maxMessagesPerSecond <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        long slot = Math.max(nextSlot, now);
+        nextSlot = slot + messages * 1_000_000_000L / maxMessagesPerSecond;
+        if (slot > now) {
+            LockSupport.parkNanos(slot - now);
+        }
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("enabled", enabled);
+        status.put("running", running.get());
+        status.put("runs", runs.get());
+        status.put("archived", archived.get());
+        status.put("deletedFromHot", deletedFromHot.get());
+        status.put("chatsHeldByUnread", chatsHeldByUnread.get());
+        status.put("failedChats", failedChats.get());
+        status.put("skippedRuns", skippedRuns.get());
+        status.put("minAgeDays", minAgeDays);
+        status.put("maxMessagesPerSecond", maxMessagesPerSecond);
+        status.put("lastRunStartedAt", lastRunStartedAt != null ? lastRunStartedAt.toString() : null);
+        status.put("lastRunMillis", lastRunMillis);
+        status.put("lastRunArchived", lastRunArchived);
+        status.put("lastRunChats", lastRunChats);
+        status.put("lastRunMessagesPerSecond", lastRunMillis == 0 ? 0.0 : lastRunArchived * 1000.0 / lastRunMillis);
+        status.put("storage", messageArchive.getStats());
+        return status;
+    }
+}
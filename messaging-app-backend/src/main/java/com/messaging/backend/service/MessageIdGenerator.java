@@ -0,0 +1,241 @@
+package com.messaging.backend.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time-ordered 64-bit message IDs: 41 bits of milliseconds since 2024-01-01 UTC, 10 bits of node ID and
+ * 12 bits of per-millisecond sequence. IDs from one node are strictly increasing; IDs from different nodes
+ * sort by creation time to within clock skew.
+ *
+ * The clock and sequence share one AtomicLong, so generating an ID is a single CAS. When the wall clock
+ * goes backwards or a millisecond runs out of sequence numbers, the generator keeps counting from its last
+ * value instead of waiting, briefly running ahead of the wall clock until it catches up.
+ *
+ * Unless messages.id.node-id is set, each instance leases a free node ID from the leases collection once
+ * the application is ready (starting from a hash of host name and PID), on a background thread with a
+ * bounded number of attempts, and renews it on a schedule that also keeps trying if those all failed. Until
+ * a lease is held IDs are refused, and likewise once it could not be renewed before it ran out, since
+ * another instance may have taken the node ID by then; a lease found taken is replaced with a new node ID.
+ * Starting the context never touches the database; runs without one must set messages.id.node-id.
+ */
+@Service
+public class MessageIdGenerator {
+
+    public static final long EPOCH_MILLIS = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+
+    private static final int SEQUENCE_BITS = 12;
+    private static final int NODE_BITS = 10;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    public static final int MAX_NODE_ID = (1 << NODE_BITS) - 1;
+
+    // Hex width of a 64-bit ID; fixed width keeps string order identical to numeric order
+    private static final int ID_LENGTH = 16;
+
+    private static final String LEASE_PREFIX = "message-id-node-";
+
+    // -1 leases a free node ID from the database
+    @Value("${messages.id.node-id:-1}")
+    private int configuredNodeId;
+
+    @Value("${messages.id.node-lease-ms:300000}")
+    private long nodeLeaseMs;
+
+    // Tries at startup, one second apart and doubling up to 30 s; later ones wait for the renewal schedule
+    @Value("${messages.id.node-lease-attempts:8}")
+    private int nodeLeaseAttempts;
+
+    @Autowired
+    private ClusterLease clusterLease;
+
+    private volatile long nodeBits;
+
+    // Leased node ID, or -1 when configured
+    private volatile int leasedNodeId = -1;
+
+    // Local time the node lease runs out unless renewed; Long.MAX_VALUE when configured, 0 before leasing
+    private volatile long leaseValidUntil = 0;
+
+    // Milliseconds since EPOCH_MILLIS in the high bits, sequence in the low SEQUENCE_BITS
+    private final AtomicLong lastTick = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        if (configuredNodeId > MAX_NODE_ID) {
+            throw new IllegalStateException("messages.id.node-id must be between 0 and " + MAX_NODE_ID);
+        }
+        if (configuredNodeId >= 0) {
+            nodeBits = (long) configuredNodeId << SEQUENCE_BITS;
+            leaseValidUntil = Long.MAX_VALUE;
+            System.out.println("Message IDs use node ID " + configuredNodeId);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void leaseOnBoot() {
+        if (configuredNodeId >= 0) {
+            return;
+        }
+        Thread thread = new Thread(this::leaseWithRetries, "MessageIdNodeLease");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void leaseWithRetries() {
+        long backoffMs = 1000;
+        for (int attempt = 1; attempt <= nodeLeaseAttempts; attempt++) {
+            try {
+                acquireNodeLease();
+                return;
+            } catch (RuntimeException e) {
+                System.err.println("Could not lease a message ID node (attempt " + attempt + " of "
+                        + nodeLeaseAttempts + "): " + e.getMessage());
+            }
+            try {
+                Thread.sleep(backoffMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            backoffMs = Math.min(backoffMs * 2, 30000);
+        }
+        System.err.println("No message ID node leased; sends fail until the renewal schedule gets one");
+    }
+
+    // Takes the first lease; does nothing once one is held
+    synchronized void acquireNodeLease() {
+        if (leasedNodeId >= 0) {
+            return;
+        }
+        int nodeId = leaseNodeId(deriveNodeId());
+        nodeBits = (long) nodeId << SEQUENCE_BITS;
+        System.out.println("Message IDs use node ID " + nodeId + " (leased)");
+    }
+
+    @Scheduled(fixedDelayString = "${messages.id.node-lease-renew-ms:60000}")
+    public synchronized void renewNodeLease() {
+        if (configuredNodeId >= 0) {
+            return;
+        }
+        int nodeId = leasedNodeId;
+        if (nodeId < 0) {
+            try {
+                acquireNodeLease();
+            } catch (RuntimeException e) {
+                System.err.println("Could not lease a message ID node: " + e.getMessage());
+            }
+            return;
+        }
+        long renewedUntil = System.currentTimeMillis() + nodeLeaseMs;
+        try {
+            if (clusterLease.tryAcquire(LEASE_PREFIX + nodeId, Duration.ofMillis(nodeLeaseMs))) {
+                leaseValidUntil = renewedUntil;
+                return;
+            }
+            int newNodeId = leaseNodeId(nodeId + 1);
+            nodeBits = (long) newNodeId << SEQUENCE_BITS;
+            System.err.println("Message ID node " + nodeId + " was taken by another instance; now using node ID "
+                    + newNodeId);
+        } catch (RuntimeException e) {
+            System.err.println("Could not renew the message ID node lease: " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void releaseNodeLease() {
+        int nodeId = leasedNodeId;
+        if (nodeId >= 0) {
+            try {
+                clusterLease.release(LEASE_PREFIX + nodeId);
+            } catch (RuntimeException e) {
+                System.err.println("Could not release the message ID node lease: " + e.getMessage());
+            }
+        }
+    }
+
+    public long nextId() {
+        long wallClock = System.currentTimeMillis();
+        if (wallClock >= leaseValidUntil) {
+            throw new IllegalStateException(leasedNodeId < 0
+                    ? "No message ID node leased yet; set messages.id.node-id when running without a database"
+                    : "Message ID node lease has run out; waiting for it to be renewed");
+        }
+        long now = (wallClock - EPOCH_MILLIS) << SEQUENCE_BITS;
+        long previous;
+        long next;
+        do {
+            previous = lastTick.get();
+            next = Math.max(now, previous + 1);
+        } while (!lastTick.compareAndSet(previous, next));
+
+        long millis = next >>> SEQUENCE_BITS;
+        return (millis << (NODE_BITS + SEQUENCE_BITS)) | nodeBits | (next & SEQUENCE_MASK);
+    }
+
+    public String nextIdString() {
+        return format(nextId());
+    }
+
+    public static String format(long id) {
+        String hex = Long.toHexString(id);
+        return hex.length() >= ID_LENGTH ? hex : "0".repeat(ID_LENGTH - hex.length()) + hex;
+    }
+
+    public static long parse(String id) {
+        return Long.parseUnsignedLong(id, 16);
+    }
+
+    // Creation time encoded in an ID, as epoch milliseconds
+    public static long timestampOf(long id) {
+        return (id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH_MILLIS;
+    }
+
+    public static boolean isGenerated(String id) {
+        if (id == null || id.length() != ID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < ID_LENGTH; i++) {
+            if (Character.digit(id.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // First free node ID from {@code start} on; sets the lease fields
+    private int leaseNodeId(int start) {
+        for (int i = 0; i <= MAX_NODE_ID; i++) {
+            int nodeId = (start + i) & MAX_NODE_ID;
+            long leasedUntil = System.currentTimeMillis() + nodeLeaseMs;
+            if (clusterLease.tryAcquire(LEASE_PREFIX + nodeId, Duration.ofMillis(nodeLeaseMs))) {
+                leasedNodeId = nodeId;
+                leaseValidUntil = leasedUntil;
+                return nodeId;
+            }
+        }
+        throw new IllegalStateException("All " + (MAX_NODE_ID + 1)
+                + " message ID nodes are leased; set messages.id.node-id or wait for stale leases to expire");
+    }
+
+    private int deriveNodeId() {
+        String name;
+        try {
+            name = InetAddress.getLocalHost().getHostName() + "/" + ManagementFactory.getRuntimeMXBean().getName();
+        } catch (Exception e) {
+            name = ManagementFactory.getRuntimeMXBean().getName();
+        }
+        return (name.hashCode() & Integer.MAX_VALUE) % (MAX_NODE_ID + 1);
+    }
+}
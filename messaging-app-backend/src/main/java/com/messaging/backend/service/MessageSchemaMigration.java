@@ -0,0 +1,314 @@
+package com.messaging.backend.service;
+
+import com.messaging.backend.repository.MessageSchema;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Rewrites messages stored in the legacy layout into the compact one described in MessageSchema, while the
+ * server keeps serving. Until it has finished, MessageRepositoryImpl queries both layouts; afterwards only
+ * the compact one, and the legacy indexes are dropped.
+ *
+ * Documents are walked in _id order in batches, first the ObjectId IDs and then the String IDs (Mongo
+ * compares the two types separately). The position is saved after every batch in the migrations collection,
+ * so a restarted migration resumes where it stopped. Each rewrite only applies while the document is still
+ * in the legacy layout, so an update the application made in the meantime is never overwritten.
+ */
+@Service
+public class MessageSchemaMigration {
+
+    private static final String COLLECTION = "messages";
+    private static final String STATE_COLLECTION = "migrations";
+    private static final String STATE_ID = "message-compact-schema";
+    private static final List<String> LEGACY_INDEXES =
+            List.of("chat_timestamp_id", "sender_receiver_timestamp", "receiver_read");
+    private static final Document LEGACY = new Document(MessageSchema.LEGACY_SENDER, new Document("$exists", true));
+    private static final DocumentCodec CODEC = new DocumentCodec();
+
+    @Autowired
+    private ReactiveMongoTemplate mongoTemplate;
+
+    @Value("${messages.schema.migration.enabled:false}")
+    private boolean enabled;
+
+    @Value("${messages.schema.migration.batch-size:500}")
+    private int batchSize;
+
+    @Value("${messages.schema.migration.max-messages-per-second:2000}")
+    private int maxMessagesPerSecond;
+
+    // Read by every message query; stays true until this or another instance has finished the migration
+    private volatile boolean legacyReads = true;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicLong migrated = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong bytesBefore = new AtomicLong();
+    private final AtomicLong bytesAfter = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    // Next time slot (System.nanoTime) the migration may rewrite messages in
+    private long nextSlot = 0;
+
+    private volatile Document state = new Document("_id", STATE_ID);
+
+    public boolean isLegacyReads() {
+        return legacyReads;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        loadState()
+                .flatMap(loaded -> loaded.isEmpty() ? markCompleteIfNoLegacy() : Mono.just(loaded))
+                .subscribe(loaded -> {
+                    applyState(loaded);
+                    if (enabled && legacyReads) {
+                        start();
+                    }
+                }, error -> System.err.println("Could not load message schema migration state: " + error.getMessage()));
+    }
+
+    // Picks up a migration finished by another instance
+    @Scheduled(fixedDelayString = "${messages.schema.migration.state-refresh-ms:60000}")
+    public void refreshState() {
+        if (legacyReads && !running.get()) {
+            loadState().subscribe(this::applyState, error -> { });
+        }
+    }
+
+    public boolean start() {
+        if (!legacyReads || !running.compareAndSet(false, true)) {
+            return false;
+        }
+        Thread thread = new Thread(this::run, "MessageSchemaMigration");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    private void run() {
+        try {
+            Document current = loadState().block();
+            state = current.isEmpty() ? new Document("_id", STATE_ID) : current;
+            if (!state.containsKey("before")) {
+                state.put("before", collectionStats().block());
+                state.put("startedAt", Instant.now().toString());
+                saveState();
+            }
+            System.out.println("Migrating messages to the compact schema");
+            MongoCollection<Document> messages = mongoTemplate.getCollection(COLLECTION).block();
+            // Documents inserted by instances that have not been upgraded yet land behind the cursor; go again
+            while (true) {
+                long migratedBefore = migrated.get();
+                migrateRange(messages, "objectIds", new ObjectId("000000000000000000000000"));
+                migrateRange(messages, "stringIds", "");
+                state.remove("phase");
+                state.remove("cursor");
+                if (Mono.from(messages.find(LEGACY).first()).blockOptional().isEmpty()) {
+                    break;
+                }
+                if (migrated.get() == migratedBefore) {
+                    throw new IllegalStateException("legacy messages are left that could not be rewritten");
+                }
+            }
+
+            for (String index : LEGACY_INDEXES) {
+                Mono.from(messages.dropIndex(index))
+                        .onErrorResume(error -> Mono.empty())
+                        .block();
+            }
+            state.put("after", collectionStats().block());
+            state.put("complete", true);
+            state.put("completedAt", Instant.now().toString());
+            saveState();
+            legacyReads = false;
+            System.out.println("Message schema migration finished: " + migrated.get() + " messages rewritten");
+        } catch (Exception e) {
+            System.err.println("Message schema migration aborted: " + e.getMessage());
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private void migrateRange(MongoCollection<Document> messages, String phase, Object start) {
+        if ("objectIds".equals(phase) && "stringIds".equals(state.getString("phase"))) {
+            // Resuming: this range was finished before the restart
+            return;
+        }
+        Object cursor = phase.equals(state.getString("phase")) ? state.get("cursor") : start;
+        while (true) {
+            Document filter = new Document(LEGACY);
+            filter.put(MessageSchema.ID, new Document("$gt", cursor));
+            List<Document> batch = Flux.from(messages.find(filter).sort(Sorts.ascending(MessageSchema.ID))
+                            .limit(batchSize))
+                    .collectList()
+                    .block();
+            if (batch == null || batch.isEmpty()) {
+                return;
+            }
+            throttle(batch.size());
+
+            List<ReplaceOneModel<Document>> replacements = new ArrayList<>(batch.size());
+            long before = 0;
+            long after = 0;
+            for (Document legacy : batch) {
+                Document compact = MessageSchema.toDocument(MessageSchema.fromDocument(legacy));
+                // Keep the stored ID exactly as it is, whatever type it has
+                compact.put(MessageSchema.ID, legacy.get(MessageSchema.ID));
+                before += bsonSize(legacy);
+                after += bsonSize(compact);
+                Document onlyIfLegacy = new Document(MessageSchema.ID, legacy.get(MessageSchema.ID));
+                onlyIfLegacy.putAll(LEGACY);
+                replacements.add(new ReplaceOneModel<>(onlyIfLegacy, compact, new ReplaceOptions().upsert(false)));
+            }
+            try {
+                BulkWriteResult result = Mono.from(messages.bulkWrite(replacements,
+                        new BulkWriteOptions().ordered(false))).block();
+                int replaced = result != null ? result.getModifiedCount() : 0;
+                migrated.addAndGet(replaced);
+                skipped.addAndGet(batch.size() - replaced);
+                bytesBefore.addAndGet(before);
+                bytesAfter.addAndGet(after);
+            } catch (RuntimeException e) {
+                // Left in the legacy layout; the final check sends the migration over them again
+                failedBatches.incrementAndGet();
+                System.err.println("Error rewriting messages after " + cursor + ": " + e.getMessage());
+            }
+
+            cursor = batch.get(batch.size() - 1).get(MessageSchema.ID);
+            state.put("phase", phase);
+            state.put("cursor", cursor);
+            saveState();
+            if (batch.size() < batchSize) {
+                return;
+            }
+        }
+    }
+
+    private Mono<Document> markCompleteIfNoLegacy() {
+        return mongoTemplate.getCollection(COLLECTION)
+                .flatMap(messages -> Mono.from(messages.find(LEGACY).first()))
+                .map(legacy -> new Document("_id", STATE_ID))
+                .switchIfEmpty(Mono.defer(() -> {
+                    // Fresh database: everything is written compact from the start
+                    Document complete = new Document("_id", STATE_ID).append("complete", true)
+                            .append("completedAt", Instant.now().toString());
+                    return mongoTemplate.save(complete, STATE_COLLECTION);
+                }));
+    }
+
+    private Mono<Document> loadState() {
+        return mongoTemplate.getCollection(STATE_COLLECTION)
+                .flatMap(collection -> Mono.from(collection.find(new Document("_id", STATE_ID)).first()))
+                .defaultIfEmpty(new Document());
+    }
+
+    private void applyState(Document loaded) {
+        if (Boolean.TRUE.equals(loaded.getBoolean("complete"))) {
+            state = loaded;
+            legacyReads = false;
+        }
+    }
+
+    private void saveState() {
+        mongoTemplate.getCollection(STATE_COLLECTION)
+                .flatMap(collection -> Mono.from(collection.replaceOne(new Document("_id", STATE_ID), state,
+                        new ReplaceOptions().upsert(true))))
+                .block();
+    }
+
+    private Mono<Map<String, Object>> collectionStats() {
+        List<Document> pipeline = List.of(new Document("$collStats", new Document("storageStats", new Document())));
+        return mongoTemplate.getCollection(COLLECTION)
+                .flatMap(messages -> Mono.from(messages.aggregate(pipeline).first()))
+                .map(result -> {
+                    Document storage = result.get("storageStats", Document.class);
+                    Map<String, Object> stats = new LinkedHashMap<>();
+                    long count = ((Number) storage.getOrDefault("count", 0)).longValue();
+                    long size = ((Number) storage.getOrDefault("size", 0)).longValue();
+                    stats.put("count", count);
+                    stats.put("dataBytes", size);
+                    stats.put("bytesPerMessage", count == 0 ? 0.0 : (double) size / count);
+                    stats.put("storageBytes", storage.get("storageSize"));
+                    stats.put("totalIndexBytes", storage.get("totalIndexSize"));
+                    stats.put("indexBytes", storage.get("indexSizes"));
+                    stats.put("measuredAt", Instant.now().toString());
+                    return stats;
+                });
+    }
+
+    private static long bsonSize(Document document) {
+        return new RawBsonDocument(document, CODEC).getByteBuffer().remaining();
+    }
+
+    // Only the migration thread rewrites messages, so the slot needs no synchronization
+    private void throttle(int messages) {
+        if (maxMessagesPerSecond <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        long slot = Math.max(nextSlot, now);
+        nextSlot = slot + messages * 1_000_000_000L / maxMessagesPerSecond;
+        if (slot > now) {
+            LockSupport.parkNanos(slot - now);
+        }
+    }
+
+    /**
+     * Progress and the size of the messages collection before the migration, after it, and now. The
+     * rewritten* figures compare the BSON size of each rewritten message in both layouts.
+     */
+    public Mono<Map<String, Object>> getReport() {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("enabled", enabled);
+        report.put("running", running.get());
+        report.put("legacyReads", legacyReads);
+        report.put("complete", Boolean.TRUE.equals(state.getBoolean("complete")));
+        report.put("phase", state.get("phase"));
+        report.put("cursor", state.get("cursor") != null ? state.get("cursor").toString() : null);
+        report.put("migrated", migrated.get());
+        report.put("skipped", skipped.get());
+        report.put("failedBatches", failedBatches.get());
+        report.put("maxMessagesPerSecond", maxMessagesPerSecond);
+        long rewritten = migrated.get() + skipped.get();
+        report.put("rewrittenBytesPerMessageBefore", rewritten == 0 ? 0.0 : (double) bytesBefore.get() / rewritten);
+        report.put("rewrittenBytesPerMessageAfter", rewritten == 0 ? 0.0 : (double) bytesAfter.get() / rewritten);
+        report.put("before", state.get("before"));
+        report.put("after", state.get("after"));
+        return collectionStats()
+                .map(current -> {
+                    report.put("current", current);
+                    return report;
+                })
+                .onErrorResume(error -> {
+                    report.put("current", Map.of("error", String.valueOf(error.getMessage())));
+                    return Mono.just(report);
+                })
+                .defaultIfEmpty(report);
+    }
+}
@@ -0,0 +1,328 @@
+package com.messaging.backend.service;
+
+import com.messaging.backend.model.Message;
+import com.messaging.backend.model.MessageSearchEntry;
+import com.messaging.backend.repository.MessageRepository;
+import com.mongodb.client.model.IndexOptions;
+import jakarta.annotation.PreDestroy;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.TextCriteria;
+import org.springframework.data.mongodb.core.query.TextQuery;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Full-text search over message content. Sent messages are tokenized off the request path by a single
+ * indexer thread and written in batches to the message_search collection, one entry per participant,
+ * under a text index prefixed by ownerId. A search therefore only touches the caller's own entries,
+ * and Mongo ranks them by text score.
+ *
+ * Tokenizing happens here rather than in Mongo (the index uses language "none"): text is folded to
+ * lowercase without accents and split on anything that is not a letter or digit, so queries and
+ * snippet highlighting use exactly the same terms the index holds. Entries store the terms as an array,
+ * so a query requires every term with $all on whole elements and Mongo returns only real matches; pages
+ * are cut from those, never shortened afterwards.
+ */
+@Service
+public class MessageSearchService {
+
+    private static final String COLLECTION = "message_search";
+    private static final Pattern WORD = Pattern.compile("[\\p{L}\\p{N}][\\p{L}\\p{N}\\p{M}]*");
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final int MIN_TERM_LENGTH = 2;
+    private static final int MAX_TERM_LENGTH = 40;
+    private static final int MAX_TERMS_PER_MESSAGE = 200;
+    private static final int MAX_QUERY_TERMS = 8;
+    private static final int SNIPPET_LENGTH = 160;
+    private static final int SNIPPET_LEAD = 40;
+
+    @Autowired
+    private ReactiveMongoTemplate mongoTemplate;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private MessageArchive messageArchive;
+
+    @Value("${search.index.batch-size:500}")
+    private int batchSize;
+
+    @Value("${search.backfill-on-startup:false}")
+    private boolean backfillOnStartup;
+
+    private final BlockingQueue<Message> pending;
+    private final Thread indexer;
+    private volatile boolean running = true;
+
+    private final AtomicLong indexed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    public MessageSearchService(@Value("${search.index.queue-capacity:10000}") int queueCapacity) {
+        this.pending = new ArrayBlockingQueue<>(queueCapacity);
+        this.indexer = new Thread(this::runIndexer, "MessageSearchIndexer");
+        this.indexer.setDaemon(true);
+        this.indexer.start();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        Document keys = new Document("ownerId", 1).append("terms", "text");
+        mongoTemplate.getCollection(COLLECTION)
+                .flatMap(collection -> Mono.from(collection.createIndex(keys,
+                        new IndexOptions().name("owner_terms_text").defaultLanguage("none"))))
+                .subscribe(name -> System.out.println("Message search index ready: " + name),
+                        error -> System.err.println("Could not create message search index: " + error.getMessage()));
+
+        if (backfillOnStartup) {
+            Thread backfill = new Thread(this::backfill, "MessageSearchBackfill");
+            backfill.setDaemon(true);
+            backfill.start();
+        }
+    }
+
+    /**
+     * Queues a saved message for indexing. Never blocks the caller: if the indexer is this far behind
+     * the message is skipped (counted in stats) and can be picked up by a backfill later.
+     */
+    public void index(Message message) {
+        if (message.getContent() == null || message.getType() != Message.MessageType.TEXT) {
+            return;
+        }
+        if (!pending.offer(message)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void runIndexer() {
+        List<Message> batch = new ArrayList<>();
+        while (running || !pending.isEmpty()) {
+            try {
+                Message first = pending.poll(500, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                pending.drainTo(batch, batchSize - 1);
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                failed.addAndGet(batch.size());
+                System.err.println("Error indexing messages for search: " + e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<Message> messages) {
+        ReactiveBulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED,
+                MessageSearchEntry.class);
+        int entries = 0;
+        for (Message message : messages) {
+            List<String> terms = tokenize(message.getContent(), MAX_TERMS_PER_MESSAGE);
+            if (terms.isEmpty()) {
+                continue;
+            }
+            for (String ownerId : new String[]{message.getSenderId(), message.getReceiverId()}) {
+                MessageSearchEntry entry = new MessageSearchEntry(ownerId, message, terms);
+                // Upsert by entry ID so a backfill over already indexed messages is harmless
+                operations.replaceOne(Query.query(Criteria.where("_id").is(entry.getId())), entry,
+                        FindAndReplaceOptions.options().upsert());
+                entries++;
+            }
+        }
+        if (entries > 0) {
+            operations.execute().block();
+        }
+        indexed.addAndGet(messages.size());
+        batches.incrementAndGet();
+    }
+
+    private void backfill() {
+        System.out.println("Backfilling message search index");
+        long queued = 0;
+        try {
+            for (Message message : messageRepository.findAll().toIterable(batchSize)) {
+                if (message.getContent() != null && message.getType() == Message.MessageType.TEXT) {
+                    // Unlike index(), wait for room: the backfill should not drop anything
+                    pending.put(message);
+                    queued++;
+                }
+            }
+            System.out.println("Message search backfill queued " + queued + " messages");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("Message search backfill failed after " + queued + " messages: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Ranked search over the messages a user sent or received, optionally within one chat. Every query
+     * term must appear in a result. Each result carries the message, its score, and a snippet of the
+     * content with [start, end) offsets of the matched terms.
+     */
+    public Mono<Map<String, Object>> search(String userId, String query, String chatId, int page, int size) {
+        List<String> terms = tokenize(query, MAX_QUERY_TERMS);
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("query", query);
+        response.put("terms", terms);
+        response.put("page", page);
+        response.put("size", size);
+        if (terms.isEmpty()) {
+            response.put("hasMore", false);
+            response.put("results", List.of());
+            return Mono.just(response);
+        }
+
+        // The text search ORs the terms and scores; $all keeps only entries holding every one as a whole term
+        TextCriteria text = TextCriteria.forLanguage("none").matchingAny(terms.toArray(new String[0]));
+        Query search = TextQuery.queryText(text).sortByScore()
+                .addCriteria(Criteria.where("ownerId").is(userId))
+                .addCriteria(Criteria.where("terms").all(terms));
+        search.fields().exclude("terms");
+        if (chatId != null) {
+            search.addCriteria(Criteria.where("chatId").is(chatId));
+        }
+        search.with(Sort.by(Sort.Direction.DESC, "timestamp"))
+                .skip((long) page * size)
+                .limit(size + 1);
+
+        return mongoTemplate.find(search, MessageSearchEntry.class, COLLECTION)
+                .collectList()
+                .flatMap(entries -> {
+                    response.put("hasMore", entries.size() > size);
+                    List<MessageSearchEntry> pageEntries = entries.subList(0, Math.min(size, entries.size()));
+                    List<String> ids = pageEntries.stream().map(MessageSearchEntry::getMessageId).toList();
+                    return messageRepository.findMessages(ids)
+                            .collectMap(Message::getId)
+                            .flatMap(messages -> withArchived(pageEntries, messages))
+                            .map(messages -> {
+                                List<Map<String, Object>> results = new ArrayList<>();
+                                for (MessageSearchEntry entry : pageEntries) {
+                                    Message message = messages.get(entry.getMessageId());
+                                    if (message != null) {
+                                        addResult(results, message, entry.getScore(), terms);
+                                    }
+                                }
+                                response.put("results", results);
+                                return response;
+                            });
+                });
+    }
+
+    // Entries keep pointing at messages the archiver moved out of Mongo; those are read from the archive
+    private Mono<Map<String, Message>> withArchived(List<MessageSearchEntry> entries, Map<String, Message> messages) {
+        return Flux.fromIterable(entries)
+                .filter(entry -> !messages.containsKey(entry.getMessageId()))
+                .concatMap(entry -> messageArchive.find(entry.getChatId(), entry.getMessageId()))
+                .doOnNext(message -> messages.put(message.getId(), message))
+                .then(Mono.just(messages));
+    }
+
+    private void addResult(List<Map<String, Object>> results, Message message, Float score, List<String> terms) {
+        Set<String> wanted = new LinkedHashSet<>(terms);
+        List<int[]> matches = new ArrayList<>();
+        Matcher matcher = WORD.matcher(message.getContent());
+        while (matcher.find()) {
+            String term = normalize(matcher.group());
+            if (wanted.contains(term)) {
+                matches.add(new int[]{matcher.start(), matcher.end()});
+            }
+        }
+
+        String content = message.getContent();
+        // The entry matched every term, so only an edit since indexing leaves nothing to highlight
+        int start = matches.isEmpty() ? 0 : Math.max(0, matches.get(0)[0] - SNIPPET_LEAD);
+        int end = Math.min(content.length(), start + SNIPPET_LENGTH);
+        String prefix = start > 0 ? "…" : "";
+        String snippet = prefix + content.substring(start, end) + (end < content.length() ? "…" : "");
+
+        List<int[]> highlights = new ArrayList<>();
+        for (int[] match : matches) {
+            if (match[0] >= start && match[1] <= end) {
+                int offset = prefix.length() - start;
+                highlights.add(new int[]{match[0] + offset, match[1] + offset});
+            }
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("message", message);
+        result.put("score", score);
+        result.put("snippet", snippet);
+        result.put("highlights", highlights);
+        results.add(result);
+    }
+
+    static List<String> tokenize(String text, int maxTerms) {
+        Set<String> terms = new LinkedHashSet<>();
+        if (text == null) {
+            return List.of();
+        }
+        Matcher matcher = WORD.matcher(text);
+        while (matcher.find() && terms.size() < maxTerms) {
+            String term = normalize(matcher.group());
+            if (term.length() >= MIN_TERM_LENGTH && term.length() <= MAX_TERM_LENGTH) {
+                terms.add(term);
+            }
+        }
+        return new ArrayList<>(terms);
+    }
+
+    // Lowercase with accents stripped, so "Café" and "cafe" index and match the same
+    private static String normalize(String word) {
+        String decomposed = Normalizer.normalize(word, Normalizer.Form.NFKD);
+        return COMBINING_MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("queueDepth", pending.size());
+        stats.put("indexed", indexed.get());
+        stats.put("dropped", dropped.get());
+        stats.put("failed", failed.get());
+        stats.put("batches", batches.get());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // Let the indexer flush what is already queued
+        running = false;
+        indexer.join(TimeUnit.SECONDS.toMillis(10));
+    }
+}
@@ -3,63 +3,216 @@ package com.messaging.backend.service;
 import com.messaging.backend.dto.MessageDto;
 import com.messaging.backend.model.Message;
 import com.messaging.backend.repository.MessageRepository;
+import com.messaging.backend.repository.MessageSchema;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 
 @Service
 public class MessageService {
 
+    // Same limit as MessageDto's validation, for WebSocket sends that bypass it
+    private static final int MAX_CLIENT_MESSAGE_ID_LENGTH = 64;
+
     @Autowired
     private MessageRepository messageRepository;
 
+    @Autowired
+    private MessageIdGenerator messageIdGenerator;
+
+    @Autowired
+    private MessageSearchService messageSearchService;
+
+    @Autowired
+    private RecentMessageCache recentMessageCache;
+
+    @Autowired
+    private MessageArchive messageArchive;
+
+    @Autowired
+    private SendDeduplicator sendDeduplicator;
+
     public Mono<Message> sendMessage(String senderId, MessageDto messageDto) {
+        return send(senderId, messageDto).map(SendResult::getMessage);
+    }
+
+    /**
+     * Stores a message once per client message ID. A resend with an ID this sender already used returns
+     * the stored original marked as a duplicate, which callers must not deliver again. Sends without a
+     * client message ID are never deduplicated.
+     */
+    public Mono<SendResult> send(String senderId, MessageDto messageDto) {
+        String clientMessageId = messageDto.getClientMessageId();
+        if (clientMessageId == null || clientMessageId.isEmpty()) {
+            return insert(senderId, messageDto).map(SendResult::new);
+        }
+        if (clientMessageId.length() > MAX_CLIENT_MESSAGE_ID_LENGTH) {
+            return Mono.error(new IllegalArgumentException("Client message ID is too long"));
+        }
+        return sendDeduplicator.sendOnce(senderId, clientMessageId, () -> insert(senderId, messageDto)
+                .map(SendResult::new)
+                // Sent before this node's memory of recent sends: the unique index turned the retry away
+                .onErrorResume(DuplicateKeyException.class, duplicate -> messageRepository
+                        .findByClientMessageId(senderId, clientMessageId)
+                        .map(original -> new SendResult(original).asDuplicate())
+                        .switchIfEmpty(Mono.error(duplicate))));
+    }
+
+    private Mono<Message> insert(String senderId, MessageDto messageDto) {
         Message message = new Message();
+        // Server-assigned, time-ordered ID; the timestamp is taken from it so both orderings agree
+        long id = messageIdGenerator.nextId();
+        message.setId(MessageIdGenerator.format(id));
+        message.setTimestamp(LocalDateTime.ofInstant(
+                Instant.ofEpochMilli(MessageIdGenerator.timestampOf(id)), ZoneId.systemDefault()));
         message.setSenderId(senderId);
         message.setReceiverId(messageDto.getReceiverId());
         message.setContent(messageDto.getContent());
         message.setType(Message.MessageType.valueOf(messageDto.getType()));
+        if (messageDto.getClientMessageId() != null && !messageDto.getClientMessageId().isEmpty()) {
+            message.setClientMessageId(messageDto.getClientMessageId());
+        }
         
         // Generate chat ID based on user IDs (consistent regardless of who sends first)
         String chatId = generateChatId(senderId, messageDto.getReceiverId());
         message.setChatId(chatId);
         
-        return messageRepository.save(message);
+        // insert rather than save: the ID is already set, and a collision must fail instead of overwriting
+        return messageRepository.insert(message)
+                .doOnNext(recentMessageCache::append)
+                .doOnNext(messageSearchService::index);
     }
 
+    // Archived history first, then the hot collection; hot copies of archived messages are skipped
     public Flux<Message> getChatMessages(String userId1, String userId2) {
-        return messageRepository.findBySenderIdAndReceiverIdOrReceiverIdAndSenderIdOrderByTimestampAsc(
-                userId1, userId2, userId1, userId2);
+        String chatId = generateChatId(userId1, userId2);
+        return messageArchive.lastKeyAsync(chatId)
+                .flatMapMany(lastArchived -> Flux.concat(
+                        lastArchived == MessageArchive.Key.NONE ? Flux.empty() : messageArchive.streamAll(chatId),
+                        messageRepository.findChat(userId1, userId2).filter(lastArchived::isBefore)));
+    }
+
+    /**
+     * One page of a chat in ascending order: the newest {@code limit} messages, or the {@code limit}
+     * messages right before the message {@code beforeId}. The newest page comes from the recent message
+     * cache when possible; pages that reach past the hot collection continue into the message archive.
+     */
+    public Flux<Message> getChatMessagesPage(String userId1, String userId2, String beforeId, int limit) {
+        String chatId = generateChatId(userId1, userId2);
+        if (beforeId != null) {
+            return messageRepository.findMessage(beforeId)
+                    .switchIfEmpty(Mono.defer(() -> messageArchive.find(chatId, beforeId)))
+                    .filter(cursor -> chatId.equals(cursor.getChatId()))
+                    .flatMapMany(cursor -> findOlder(userId1, userId2, cursor, limit));
+        }
+
+        List<Message> cached = recentMessageCache.getRecent(chatId, limit);
+        if (cached != null) {
+            return Flux.fromIterable(cached);
+        }
+
+        // Load a whole ring's worth so the next opens of this chat are served from memory
+        int loadSize = Math.max(limit, recentMessageCache.getMessagesPerChat());
+        long stamp = recentMessageCache.writeStamp(chatId);
+        return messageRepository.findChatPage(userId1, userId2, null, loadSize)
+                .collectList()
+                .flatMap(newestFirst -> withArchived(chatId, newestFirst, null, loadSize))
+                .flatMapMany(ascending -> {
+                    if (loadSize == recentMessageCache.getMessagesPerChat()) {
+                        recentMessageCache.install(chatId, ascending, stamp);
+                    }
+                    return Flux.fromIterable(ascending.subList(Math.max(0, ascending.size() - limit), ascending.size()));
+                });
+    }
+
+    private Flux<Message> findOlder(String userId1, String userId2, Message cursor, int limit) {
+        String chatId = cursor.getChatId();
+        // Same (timestamp, _id) order as the history queries, so equal timestamps are neither skipped nor repeated
+        return messageRepository.findChatPage(userId1, userId2, cursor, limit)
+                .collectList()
+                .flatMap(newestFirst -> withArchived(chatId, newestFirst, MessageArchive.Key.of(cursor), limit))
+                .flatMapMany(Flux::fromIterable);
+    }
+
+    /**
+     * Turns a newest-first page from the hot collection into an ascending page of up to {@code limit}
+     * messages, filled up from the archive when the hot collection ran out. Everything archived is older
+     * than what is still hot, so the archive is read right before the cursor.
+     */
+    private Mono<List<Message>> withArchived(String chatId, List<Message> newestFirst, MessageArchive.Key before,
+                                             int limit) {
+        return messageArchive.lastKeyAsync(chatId).flatMap(lastArchived -> {
+            List<Message> ascending = new ArrayList<>(newestFirst.size());
+            for (Message message : newestFirst) {
+                if (lastArchived.isBefore(message)) {
+                    ascending.add(message);
+                }
+            }
+            Collections.reverse(ascending);
+            if (ascending.size() >= limit || lastArchived == MessageArchive.Key.NONE) {
+                return Mono.just(ascending);
+            }
+            return messageArchive.readBefore(chatId, before, limit - ascending.size())
+                    .map(archived -> {
+                        List<Message> page = new ArrayList<>(archived);
+                        page.addAll(ascending);
+                        return page;
+                    });
+        });
     }
 
     public Mono<Long> getUnreadMessageCount(String userId) {
-        return messageRepository.countByReceiverIdAndIsReadFalse(userId);
+        return messageRepository.countUnread(userId);
     }
 
     public Mono<Message> markMessageAsRead(String messageId) {
-        return messageRepository.findById(messageId)
+        return messageRepository.findMessage(messageId)
                 .flatMap(message -> {
                     message.setRead(true);
                     return messageRepository.save(message);
-                });
+                })
+                .doOnNext(recentMessageCache::update);
     }
 
     public Flux<Message> markMessagesAsRead(String receiverId, String senderId) {
-        return messageRepository.findBySenderIdAndReceiverIdOrReceiverIdAndSenderIdOrderByTimestampAsc(
-                        senderId, receiverId, receiverId, senderId)
-                .filter(message -> message.getReceiverId().equals(receiverId) && !message.isRead())
-                .flatMap(message -> {
-                    message.setRead(true);
-                    return messageRepository.save(message);
-                });
+        return messageRepository.markChatRead(senderId, receiverId)
+                .doOnNext(recentMessageCache::update);
     }
 
-    private String generateChatId(String userId1, String userId2) {
-        // Create consistent chat ID regardless of order
-        return userId1.compareTo(userId2) < 0 ? 
-                userId1 + "_" + userId2 : userId2 + "_" + userId1;
+    public String generateChatId(String userId1, String userId2) {
+        return MessageSchema.chatId(userId1, userId2);
+    }
+
+    public static final class SendResult {
+        private final Message message;
+        private final boolean duplicate;
+
+        public SendResult(Message message) {
+            this(message, false);
+        }
+
+        private SendResult(Message message, boolean duplicate) {
+            this.message = message;
+            this.duplicate = duplicate;
+        }
+
+        public Message getMessage() { return message; }
+
+        // True when the message was stored by an earlier send with the same client message ID
+        public boolean isDuplicate() { return duplicate; }
+
+        public SendResult asDuplicate() {
+            return duplicate ? this : new SendResult(message, true);
+        }
     }
-}
\ No newline at end of file
+}
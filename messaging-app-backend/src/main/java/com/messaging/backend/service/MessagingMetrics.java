@@ -0,0 +1,173 @@
+package com.messaging.backend.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters for the messaging hot paths, published at /actuator/prometheus. Meters are created on first use
+ * and kept, so recording a WebSocket event or message latency is a map lookup plus an atomic add or a
+ * histogram bucket increment. Tag values come from small fixed sets to keep the number of series bounded.
+ */
+@Service
+public class MessagingMetrics {
+
+    // Anything else a client sends is counted as UNKNOWN rather than becoming a new series
+    private static final Set<String> INBOUND_TYPES = Set.of("SEND_MESSAGE", "TYPING");
+
+    @Autowired
+    private MeterRegistry registry;
+
+    private final Map<String, Counter> inboundEvents = new ConcurrentHashMap<>();
+    private final Map<String, Counter> outboundEvents = new ConcurrentHashMap<>();
+    private final Map<String, Timer> uploadDurations = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> uploadSizes = new ConcurrentHashMap<>();
+    private final Map<String, Timer> authVerifications = new ConcurrentHashMap<>();
+    private final Map<String, Timer> outboundQueueDelays = new ConcurrentHashMap<>();
+
+    private Timer persistLatency;
+    private Timer fanoutLatency;
+    private Timer archiveReadLatency;
+
+    @PostConstruct
+    public void init() {
+        persistLatency = latencyTimer("messaging.message.persist", "SEND_MESSAGE received to message persisted");
+        fanoutLatency = latencyTimer("messaging.message.fanout", "Message persisted to events written to sockets");
+        archiveReadLatency = Timer.builder("messaging.archive.read")
+                .description("Reads of archived history from segment files")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    public MeterRegistry getRegistry() {
+        return registry;
+    }
+
+    public void registerSessionGauge(String transport, Map<?, ?> sessions) {
+        Gauge.builder("messaging.websocket.sessions", sessions, Map::size)
+                .description("Open WebSocket sessions")
+                .tag("transport", transport)
+                .register(registry);
+    }
+
+    public void inboundEvent(String type) {
+        String key = type != null && INBOUND_TYPES.contains(type) ? type : "UNKNOWN";
+        inboundEvents.computeIfAbsent(key, k -> eventCounter("inbound", k)).increment();
+    }
+
+    public void outboundEvent(String type) {
+        outboundEvents.computeIfAbsent(type, k -> eventCounter("outbound", k)).increment();
+    }
+
+    private Counter eventCounter(String direction, String type) {
+        return Counter.builder("messaging.websocket.events")
+                .description("WebSocket events by direction and type")
+                .tag("direction", direction)
+                .tag("type", type)
+                .register(registry);
+    }
+
+    // Frame received -> message stored; returns the current time so the caller can time the fan-out next
+    public long recordPersist(long receivedAtNanos) {
+        long now = System.nanoTime();
+        persistLatency.record(now - receivedAtNanos, TimeUnit.NANOSECONDS);
+        return now;
+    }
+
+    // Message stored -> NEW_MESSAGE and MESSAGE_SENT written to the sockets
+    public void recordFanout(long persistedAtNanos) {
+        fanoutLatency.record(System.nanoTime() - persistedAtNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordArchiveRead(long startedAtNanos) {
+        archiveReadLatency.record(System.nanoTime() - startedAtNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer latencyTimer(String name, String description) {
+        return Timer.builder(name)
+                .description(description)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(registry);
+    }
+
+    public void recordUpload(String folder, String outcome, long bytes, long startedAtNanos) {
+        uploadDurations.computeIfAbsent(folder + ":" + outcome, k -> Timer.builder("messaging.upload.duration")
+                        .description("Upload request handling time")
+                        .tag("folder", folder)
+                        .tag("outcome", outcome)
+                        .publishPercentileHistogram()
+                        .register(registry))
+                .record(System.nanoTime() - startedAtNanos, TimeUnit.NANOSECONDS);
+        if (bytes > 0) {
+            uploadSizes.computeIfAbsent(folder, k -> DistributionSummary.builder("messaging.upload.size")
+                            .description("Size of stored uploads")
+                            .baseUnit("bytes")
+                            .tag("folder", folder)
+                            .register(registry))
+                    .record(bytes);
+        }
+    }
+
+    // mechanism is "jwt" for request tokens and "password" for BCrypt checks at login
+    public void recordAuthVerification(String mechanism, boolean valid, long startedAtNanos) {
+        String outcome = valid ? "valid" : "invalid";
+        authVerifications.computeIfAbsent(mechanism + ":" + outcome, k -> Timer.builder("messaging.auth.verification")
+                        .description("Credential verification time")
+                        .tag("mechanism", mechanism)
+                        .tag("outcome", outcome)
+                        .publishPercentileHistogram()
+                        .register(registry))
+                .record(System.nanoTime() - startedAtNanos, TimeUnit.NANOSECONDS);
+    }
+
+    // Time an outbound WebSocket event waited in its socket's lane before being written
+    public void recordOutboundQueueDelay(String lane, long nanos) {
+        outboundQueueDelays.computeIfAbsent(lane, k -> Timer.builder("messaging.websocket.outbound.queue")
+                        .description("Time outbound WebSocket events wait in their priority lane")
+                        .tag("lane", k.toLowerCase())
+                        .publishPercentiles(0.5, 0.99, 0.999)
+                        .publishPercentileHistogram()
+                        .minimumExpectedValue(Duration.ofNanos(1000))
+                        .maximumExpectedValue(Duration.ofSeconds(10))
+                        .register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Per lane: events and total queueing time since startup (subtract two readings for a window), plus
+     * percentiles and maximum over the last couple of minutes.
+     */
+    public Map<String, Object> getOutboundQueueStats() {
+        Map<String, Object> lanes = new LinkedHashMap<>();
+        outboundQueueDelays.forEach((lane, timer) -> {
+            HistogramSnapshot snapshot = timer.takeSnapshot();
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("count", snapshot.count());
+            stats.put("totalMs", snapshot.total(TimeUnit.MILLISECONDS));
+            stats.put("maxMs", snapshot.max(TimeUnit.MILLISECONDS));
+            for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+                String name = BigDecimal.valueOf(percentile.percentile()).movePointRight(2).stripTrailingZeros().toPlainString();
+                stats.put("p" + name + "Ms", percentile.value(TimeUnit.MILLISECONDS));
+            }
+            lanes.put(lane.toLowerCase(), stats);
+        });
+        return lanes;
+    }
+}
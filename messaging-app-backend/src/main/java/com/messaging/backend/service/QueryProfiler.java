@@ -0,0 +1,343 @@
+package com.messaging.backend.service;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Samples slow Mongo commands as the driver reports them. Commands are grouped by query shape (collection,
+ * command and filter/sort keys with the values blanked out), and the first slow run of a shape is explained
+ * in the background so its entry says whether the query used an index or scanned the collection. A shape
+ * is explained again at most once per explain interval.
+ *
+ * Registered with the MongoClient by MongoConfig, so it sees repository and template calls alike.
+ */
+@Service
+public class QueryProfiler implements CommandListener {
+
+    private static final Set<String> PROFILED_COMMANDS =
+            Set.of("find", "aggregate", "count", "distinct", "update", "delete", "findAndModify");
+    private static final Set<String> SYSTEM_DATABASES = Set.of("admin", "config", "local");
+    // Session and cluster fields the driver adds; explain rejects or does not need them
+    private static final Set<String> SESSION_FIELDS = Set.of("lsid", "txnNumber", "startTransaction", "autocommit");
+
+    @Autowired
+    private ObjectProvider<ReactiveMongoTemplate> mongoTemplate;
+
+    @Value("${mongo.profiler.enabled:true}")
+    private boolean enabled;
+
+    @Value("${mongo.profiler.slow-query-ms:100}")
+    private long slowQueryMs;
+
+    @Value("${mongo.profiler.max-shapes:200}")
+    private int maxShapes;
+
+    @Value("${mongo.profiler.explain-interval-ms:60000}")
+    private long explainIntervalMs;
+
+    // Keyed by driver request ID, from commandStarted until the command completes
+    private final Map<Integer, StartedCommand> started = new ConcurrentHashMap<>();
+    private final Map<String, SlowQuery> slowQueries = new ConcurrentHashMap<>();
+
+    private final AtomicLong profiled = new AtomicLong();
+    private final AtomicLong slow = new AtomicLong();
+    private final AtomicLong droppedShapes = new AtomicLong();
+    private final AtomicLong explainFailures = new AtomicLong();
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        if (!enabled || !PROFILED_COMMANDS.contains(event.getCommandName())
+                || SYSTEM_DATABASES.contains(event.getDatabaseName())) {
+            return;
+        }
+        // The driver may release the command's buffer once this callback returns
+        started.put(event.getRequestId(),
+                new StartedCommand(event.getDatabaseName(), event.getCommandName(), event.getCommand().clone()));
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        StartedCommand command = started.remove(event.getRequestId());
+        if (command == null) {
+            return;
+        }
+        profiled.incrementAndGet();
+        long elapsedMs = event.getElapsedTime(TimeUnit.MILLISECONDS);
+        if (elapsedMs >= slowQueryMs) {
+            recordSlow(command, elapsedMs);
+        }
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        started.remove(event.getRequestId());
+    }
+
+    private void recordSlow(StartedCommand command, long elapsedMs) {
+        slow.incrementAndGet();
+        String collection = command.command.get(command.name) instanceof BsonString name ? name.getValue() : "?";
+        String shape = collection + "." + command.name + " " + shapeOf(command.command, command.name);
+
+        SlowQuery entry = slowQueries.get(shape);
+        if (entry == null) {
+            if (slowQueries.size() >= maxShapes) {
+                droppedShapes.incrementAndGet();
+                return;
+            }
+            entry = slowQueries.computeIfAbsent(shape, key -> new SlowQuery(collection, command.name));
+        }
+        entry.record(elapsedMs);
+
+        long now = System.currentTimeMillis();
+        if (now - entry.explainedAt >= explainIntervalMs && entry.explaining.compareAndSet(false, true)) {
+            explain(command, entry, now);
+        }
+    }
+
+    // Runs without blocking the driver thread that delivered the event
+    private void explain(StartedCommand command, SlowQuery entry, long now) {
+        ReactiveMongoTemplate template = mongoTemplate.getIfAvailable();
+        if (template == null) {
+            entry.explaining.set(false);
+            return;
+        }
+        Document explain = explainCommand(command.command, command.name);
+        template.getMongoDatabaseFactory().getMongoDatabase(command.database)
+                .flatMap(database -> Mono.from(database.runCommand(explain)))
+                .doFinally(signal -> entry.explaining.set(false))
+                .subscribe(result -> {
+                    entry.plan = planSummary(result);
+                    entry.explainedAt = now;
+                }, error -> {
+                    explainFailures.incrementAndGet();
+                    entry.explainError = error.getMessage();
+                    entry.explainedAt = now;
+                });
+    }
+
+    static Document explainCommand(BsonDocument command, String commandName) {
+        BsonDocument explained = new BsonDocument();
+        for (Map.Entry<String, BsonValue> field : command.entrySet()) {
+            String key = field.getKey();
+            if (key.startsWith("$") || SESSION_FIELDS.contains(key)) {
+                continue;
+            }
+            BsonValue value = field.getValue();
+            // Explain handles one statement at a time; the first one stands for the batch
+            if (("update".equals(commandName) && "updates".equals(key))
+                    || ("delete".equals(commandName) && "deletes".equals(key))) {
+                BsonArray statements = value.asArray();
+                value = statements.isEmpty() ? statements : new BsonArray(List.of(statements.get(0)));
+            }
+            explained.put(key, value);
+        }
+        return new Document("explain", explained).append("verbosity", "queryPlanner");
+    }
+
+    /**
+     * Stages of the winning plan from an explain result, outermost first, with the indexes it reads and
+     * whether it scans the whole collection or sorts in memory.
+     */
+    public static Map<String, Object> planSummary(Document explain) {
+        Document queryPlanner = explain.get("queryPlanner", Document.class);
+        Document winningPlan = queryPlanner != null ? queryPlanner.get("winningPlan", Document.class) : null;
+        // Slot-based engine plans nest the classic stage tree under "queryPlan"
+        if (winningPlan != null && winningPlan.get("queryPlan") instanceof Document queryPlan) {
+            winningPlan = queryPlan;
+        }
+
+        List<String> stages = new ArrayList<>();
+        Set<String> indexes = new LinkedHashSet<>();
+        collectStages(winningPlan, stages, indexes);
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("stages", stages);
+        summary.put("indexes", new ArrayList<>(indexes));
+        summary.put("collectionScan", stages.contains("COLLSCAN"));
+        summary.put("inMemorySort", stages.contains("SORT"));
+        return summary;
+    }
+
+    private static void collectStages(Object node, List<String> stages, Set<String> indexes) {
+        if (!(node instanceof Document stage)) {
+            return;
+        }
+        if (stage.getString("stage") != null) {
+            stages.add(stage.getString("stage"));
+        }
+        if (stage.getString("indexName") != null) {
+            indexes.add(stage.getString("indexName"));
+        }
+        collectStages(stage.get("inputStage"), stages, indexes);
+        if (stage.get("inputStages") instanceof List<?> children) {
+            for (Object child : children) {
+                collectStages(child, stages, indexes);
+            }
+        }
+    }
+
+    // Filter with every value replaced by "?", so queries that differ only in their arguments group together
+    static String shapeOf(BsonDocument command, String commandName) {
+        BsonDocument shape = new BsonDocument();
+        switch (commandName) {
+            case "find" -> {
+                putShape(shape, "filter", command.get("filter"));
+                putSort(shape, command.get("sort"));
+            }
+            case "count", "distinct", "findAndModify" -> {
+                putShape(shape, "filter", command.get("query"));
+                putSort(shape, command.get("sort"));
+            }
+            case "update" -> putShape(shape, "filter", firstStatementField(command, "updates", "q"));
+            case "delete" -> putShape(shape, "filter", firstStatementField(command, "deletes", "q"));
+            case "aggregate" -> {
+                BsonValue pipeline = command.get("pipeline");
+                if (pipeline != null && pipeline.isArray() && !pipeline.asArray().isEmpty()
+                        && pipeline.asArray().get(0).isDocument()) {
+                    putShape(shape, "match", pipeline.asArray().get(0).asDocument().get("$match"));
+                }
+            }
+            default -> { }
+        }
+        return shape.toJson();
+    }
+
+    private static BsonValue firstStatementField(BsonDocument command, String statementsKey, String field) {
+        BsonValue statements = command.get(statementsKey);
+        if (statements == null || !statements.isArray() || statements.asArray().isEmpty()
+                || !statements.asArray().get(0).isDocument()) {
+            return null;
+        }
+        return statements.asArray().get(0).asDocument().get(field);
+    }
+
+    private static void putShape(BsonDocument shape, String key, BsonValue value) {
+        if (value != null) {
+            shape.put(key, blankValues(value));
+        }
+    }
+
+    // Sort directions stay, they decide whether an index can provide the order
+    private static void putSort(BsonDocument shape, BsonValue sort) {
+        if (sort != null) {
+            shape.put("sort", sort);
+        }
+    }
+
+    private static BsonValue blankValues(BsonValue value) {
+        if (value.isDocument()) {
+            BsonDocument blanked = new BsonDocument();
+            for (Map.Entry<String, BsonValue> field : value.asDocument().entrySet()) {
+                blanked.put(field.getKey(), blankValues(field.getValue()));
+            }
+            return blanked;
+        }
+        // Keep the branches of $or/$and, which change the plan; value lists such as $in collapse to "?"
+        if (value.isArray() && !value.asArray().isEmpty() && value.asArray().get(0).isDocument()) {
+            BsonArray blanked = new BsonArray();
+            for (BsonValue element : value.asArray()) {
+                blanked.add(blankValues(element));
+            }
+            return blanked;
+        }
+        return new BsonString("?");
+    }
+
+    /**
+     * Slow query shapes, slowest first, each with its run count, worst and mean latency and the last
+     * explained plan.
+     */
+    public Map<String, Object> getSlowQueries() {
+        List<Map<String, Object>> shapes = new ArrayList<>();
+        for (Map.Entry<String, SlowQuery> entry : slowQueries.entrySet()) {
+            SlowQuery query = entry.getValue();
+            Map<String, Object> shape = new LinkedHashMap<>();
+            shape.put("shape", entry.getKey());
+            shape.put("collection", query.collection);
+            shape.put("command", query.command);
+            shape.put("count", query.count.get());
+            shape.put("maxMs", query.maxMs.get());
+            shape.put("meanMs", query.count.get() == 0 ? 0.0 : (double) query.totalMs.get() / query.count.get());
+            shape.put("lastSeen", Instant.ofEpochMilli(query.lastSeen).toString());
+            shape.put("plan", query.plan);
+            if (query.explainError != null) {
+                shape.put("explainError", query.explainError);
+            }
+            shapes.add(shape);
+        }
+        shapes.sort(Comparator.comparingLong((Map<String, Object> shape) -> (Long) shape.get("maxMs")).reversed());
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("slowQueryMs", slowQueryMs);
+        response.put("profiled", profiled.get());
+        response.put("slow", slow.get());
+        response.put("droppedShapes", droppedShapes.get());
+        response.put("explainFailures", explainFailures.get());
+        response.put("shapes", shapes);
+        return response;
+    }
+
+    private static final class StartedCommand {
+        private final String database;
+        private final String name;
+        private final BsonDocument command;
+
+        private StartedCommand(String database, String name, BsonDocument command) {
+            this.database = database;
+            this.name = name;
+            this.command = command;
+        }
+    }
+
+    private static final class SlowQuery {
+        private final String collection;
+        private final String command;
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalMs = new AtomicLong();
+        private final AtomicLong maxMs = new AtomicLong();
+        private final AtomicBoolean explaining = new AtomicBoolean();
+        private volatile long lastSeen;
+        private volatile long explainedAt;
+        private volatile Map<String, Object> plan;
+        private volatile String explainError;
+
+        private SlowQuery(String collection, String command) {
+            this.collection = collection;
+            this.command = command;
+        }
+
+        private void record(long elapsedMs) {
+            count.incrementAndGet();
+            totalMs.addAndGet(elapsedMs);
+            maxMs.accumulateAndGet(elapsedMs, Math::max);
+            lastSeen = System.currentTimeMillis();
+        }
+    }
+}
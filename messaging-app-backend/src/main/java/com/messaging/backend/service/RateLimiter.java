@@ -0,0 +1,178 @@
+package com.messaging.backend.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-user token buckets, one per {@link Budget}. Each bucket is a single long holding the token count
+ * (in thousandths of a token) in the high 20 bits and the last refill time in the low 44 bits, so a user
+ * costs one map entry plus one small AtomicLongArray and every update is a single CAS. Node-wide budgets
+ * such as {@link Budget#HANDSHAKE} use the same encoding in a single shared array.
+ */
+@Service
+public class RateLimiter {
+
+    public enum Budget {
+        MESSAGE, UPLOAD, SEARCH, HANDSHAKE
+    }
+
+    private static final int TIME_BITS = 44;
+    private static final long TIME_MASK = (1L << TIME_BITS) - 1;
+    private static final long MAX_MILLI_TOKENS = (1L << (64 - TIME_BITS)) - 1;
+    private static final long MILLI = 1000;
+
+    @Value("${rate-limit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${rate-limit.message.capacity:30}")
+    private int messageCapacity;
+
+    @Value("${rate-limit.message.refill-per-second:5}")
+    private double messageRefillPerSecond;
+
+    @Value("${rate-limit.upload.capacity:5}")
+    private int uploadCapacity;
+
+    @Value("${rate-limit.upload.refill-per-second:0.2}")
+    private double uploadRefillPerSecond;
+
+    @Value("${rate-limit.search.capacity:10}")
+    private int searchCapacity;
+
+    @Value("${rate-limit.search.refill-per-second:1}")
+    private double searchRefillPerSecond;
+
+    @Value("${rate-limit.handshake.capacity:500}")
+    private int handshakeCapacity;
+
+    @Value("${rate-limit.handshake.refill-per-second:200}")
+    private double handshakeRefillPerSecond;
+
+    private final long[] capacities = new long[Budget.values().length];
+    // Milli-tokens added per millisecond equals tokens added per second
+    private final double[] refillRates = new double[Budget.values().length];
+
+    // Millisecond base so the 44-bit timestamp field does not overflow
+    private final long epoch = System.currentTimeMillis();
+
+    private final Map<String, AtomicLongArray> buckets = new ConcurrentHashMap<>();
+    private AtomicLongArray globalBuckets;
+
+    @PostConstruct
+    public void init() {
+        configure(Budget.MESSAGE, messageCapacity, messageRefillPerSecond);
+        configure(Budget.UPLOAD, uploadCapacity, uploadRefillPerSecond);
+        configure(Budget.SEARCH, searchCapacity, searchRefillPerSecond);
+        configure(Budget.HANDSHAKE, handshakeCapacity, handshakeRefillPerSecond);
+        globalBuckets = newBuckets();
+    }
+
+    private void configure(Budget budget, int capacity, double refillPerSecond) {
+        long milliCapacity = capacity * MILLI;
+        if (capacity <= 0 || milliCapacity > MAX_MILLI_TOKENS || refillPerSecond <= 0) {
+            throw new IllegalStateException("Invalid rate limit for " + budget + ": capacity must be 1-"
+                    + (MAX_MILLI_TOKENS / MILLI) + " and refill rate positive");
+        }
+        capacities[budget.ordinal()] = milliCapacity;
+        refillRates[budget.ordinal()] = refillPerSecond;
+    }
+
+    /**
+     * Takes one token from the user's bucket.
+     *
+     * @return 0 if the call is allowed, otherwise the number of milliseconds until a token is available
+     */
+    public long tryAcquire(String userId, Budget budget) {
+        if (!enabled || userId == null) {
+            return 0;
+        }
+        return acquire(buckets.computeIfAbsent(userId, id -> newBuckets()), budget.ordinal());
+    }
+
+    /**
+     * Takes one token from the bucket shared by the whole node, e.g. to cap the WebSocket handshake rate.
+     *
+     * @return 0 if the call is allowed, otherwise the number of milliseconds until a token is available
+     */
+    public long tryAcquireGlobal(Budget budget) {
+        if (!enabled) {
+            return 0;
+        }
+        return acquire(globalBuckets, budget.ordinal());
+    }
+
+    private long acquire(AtomicLongArray bucketSet, int index) {
+        long capacity = capacities[index];
+        double rate = refillRates[index];
+
+        while (true) {
+            long state = bucketSet.get(index);
+            long tokens = state >>> TIME_BITS;
+            long last = state & TIME_MASK;
+            long now = now();
+
+            long refill = (long) ((now - last) * rate);
+            long available;
+            long refilledAt;
+            if (refill <= 0) {
+                // Keep the old timestamp so sub-token refills accumulate across calls
+                available = tokens;
+                refilledAt = last;
+            } else {
+                available = Math.min(capacity, tokens + refill);
+                refilledAt = now;
+            }
+
+            if (available < MILLI) {
+                return Math.max(1, (long) Math.ceil((MILLI - available) / rate));
+            }
+
+            long next = ((available - MILLI) << TIME_BITS) | refilledAt;
+            if (bucketSet.compareAndSet(index, state, next)) {
+                return 0;
+            }
+        }
+    }
+
+    private AtomicLongArray newBuckets() {
+        long now = now();
+        AtomicLongArray array = new AtomicLongArray(capacities.length);
+        for (int i = 0; i < capacities.length; i++) {
+            array.set(i, (capacities[i] << TIME_BITS) | now);
+        }
+        return array;
+    }
+
+    private long now() {
+        return (System.currentTimeMillis() - epoch) & TIME_MASK;
+    }
+
+    // Buckets that have refilled completely carry no information; dropping them keeps memory bounded to active users
+    @Scheduled(fixedDelayString = "${rate-limit.sweep-interval-ms:60000}")
+    public void sweepIdleBuckets() {
+        long now = now();
+        buckets.entrySet().removeIf(entry -> isFull(entry.getValue(), now));
+    }
+
+    private boolean isFull(AtomicLongArray userBuckets, long now) {
+        for (int i = 0; i < capacities.length; i++) {
+            long state = userBuckets.get(i);
+            long tokens = state >>> TIME_BITS;
+            long last = state & TIME_MASK;
+            if (tokens + (long) ((now - last) * refillRates[i]) < capacities[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getTrackedUsers() {
+        return buckets.size();
+    }
+}
@@ -0,0 +1,274 @@
+package com.messaging.backend.service;
+
+import com.messaging.backend.model.Message;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The most recent messages of active chats, so opening a chat does not need a database round trip.
+ * Each chat keeps a fixed-size ring of its newest messages; chats are evicted least recently active
+ * first once the estimated size of all rings exceeds the memory budget.
+ *
+ * A chat only enters the cache from a database load of its latest page, which makes the ring a complete
+ * "last N". From then on sends append to it and read/delivery updates replace messages in place. Sends of a
+ * chat can be persisted in a different order than their IDs were taken, so an appended message is put in
+ * (timestamp, ID) order, the order the database serves the chat in.
+ * Sends to chats that are not cached are not stored, but they bump a write stamp so a load that raced
+ * with them is discarded instead of installing a ring that misses the new message.
+ */
+@Service
+public class RecentMessageCache {
+
+    private static final int STAMP_STRIPES = 1024;
+    // Rough heap cost of a Message with its strings and LocalDateTime, excluding the character data
+    private static final int MESSAGE_OVERHEAD_BYTES = 200;
+    private static final Comparator<Message> OLDEST_FIRST = Comparator
+            .comparing(Message::getTimestamp, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(Message::getId, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    @Value("${messages.recent-cache.messages-per-chat:50}")
+    private int messagesPerChat;
+
+    @Value("${messages.recent-cache.max-total-bytes:67108864}")
+    private long maxTotalBytes;
+
+    // Access-ordered map gives least-recently-active iteration order; guarded by "this"
+    private final LinkedHashMap<String, ChatRing> chats = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalBytes = 0;
+
+    private final AtomicLongArray writeStamps = new AtomicLongArray(STAMP_STRIPES);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong discardedLoads = new AtomicLong();
+
+    public int getMessagesPerChat() {
+        return messagesPerChat;
+    }
+
+    /**
+     * Newest {@code limit} messages of a chat in ascending order, or null if the chat is not cached
+     * or the ring holds fewer messages than asked for while the chat may have more.
+     */
+    public synchronized List<Message> getRecent(String chatId, int limit) {
+        ChatRing ring = chats.get(chatId);
+        if (ring == null || (limit > ring.size && !ring.complete)) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return ring.latest(limit);
+    }
+
+    // Taken before loading a chat's latest page from the database; pass it back to install()
+    public long writeStamp(String chatId) {
+        return writeStamps.get(stripe(chatId));
+    }
+
+    /**
+     * Installs a chat's newest messages as loaded from the database (ascending order). When the load
+     * returned fewer than a full ring, that is the entire chat and later requests for more can be served too.
+     */
+    public void install(String chatId, List<Message> newest, long stampBeforeLoad) {
+        synchronized (this) {
+            if (writeStamps.get(stripe(chatId)) != stampBeforeLoad) {
+                discardedLoads.incrementAndGet();
+                return;
+            }
+            if (chats.containsKey(chatId)) {
+                return;
+            }
+            ChatRing ring = new ChatRing(messagesPerChat, newest.size() < messagesPerChat);
+            for (Message message : newest) {
+                totalBytes += ring.append(message);
+            }
+            chats.put(chatId, ring);
+            evictIfNeeded(ring);
+        }
+    }
+
+    // Write-through from sendMessage
+    public void append(Message message) {
+        synchronized (this) {
+            writeStamps.incrementAndGet(stripe(message.getChatId()));
+            ChatRing ring = chats.get(message.getChatId());
+            if (ring == null) {
+                return;
+            }
+            // A load that already saw this message in the database can have installed it first
+            long replaced = ring.replace(message);
+            totalBytes += replaced != Long.MIN_VALUE ? replaced : ring.append(message);
+            evictIfNeeded(ring);
+        }
+    }
+
+    // Read and delivery updates; a message that already scrolled out of the ring is ignored
+    public void update(Message message) {
+        if (message.getChatId() == null) {
+            return;
+        }
+        synchronized (this) {
+            writeStamps.incrementAndGet(stripe(message.getChatId()));
+            ChatRing ring = chats.get(message.getChatId());
+            if (ring != null) {
+                long replaced = ring.replace(message);
+                if (replaced != Long.MIN_VALUE) {
+                    totalBytes += replaced;
+                }
+            }
+        }
+    }
+
+    public synchronized void invalidate(String chatId) {
+        writeStamps.incrementAndGet(stripe(chatId));
+        ChatRing removed = chats.remove(chatId);
+        if (removed != null) {
+            totalBytes -= removed.bytes;
+        }
+    }
+
+    private void evictIfNeeded(ChatRing keep) {
+        Iterator<Map.Entry<String, ChatRing>> iterator = chats.entrySet().iterator();
+        while (totalBytes > maxTotalBytes && iterator.hasNext()) {
+            ChatRing eldest = iterator.next().getValue();
+            if (eldest == keep) {
+                continue;
+            }
+            totalBytes -= eldest.bytes;
+            iterator.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private static int stripe(String chatId) {
+        return (chatId.hashCode() & Integer.MAX_VALUE) % STAMP_STRIPES;
+    }
+
+    static long estimateBytes(Message message) {
+        long characters = length(message.getId()) + length(message.getSenderId()) + length(message.getReceiverId())
+                + length(message.getChatId()) + length(message.getContent());
+        return MESSAGE_OVERHEAD_BYTES + characters * 2;
+    }
+
+    private static int length(String value) {
+        return value != null ? value.length() : 0;
+    }
+
+    public Map<String, Object> getStats() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        long requests = hitCount + missCount;
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRatio", requests == 0 ? 0.0 : (double) hitCount / requests);
+        stats.put("evictions", evictions.get());
+        stats.put("discardedLoads", discardedLoads.get());
+        synchronized (this) {
+            stats.put("chats", chats.size());
+            stats.put("estimatedBytes", totalBytes);
+        }
+        stats.put("maxTotalBytes", maxTotalBytes);
+        stats.put("messagesPerChat", messagesPerChat);
+        return stats;
+    }
+
+    // Fixed-capacity ring of one chat's newest messages; guarded by the cache's lock
+    private static final class ChatRing {
+        private final Message[] slots;
+        // Whether the ring holds the whole chat, so requests larger than its size can still be answered
+        private boolean complete;
+        private int next = 0;
+        private int size = 0;
+        private long bytes = 0;
+
+        private ChatRing(int capacity, boolean complete) {
+            this.slots = new Message[capacity];
+            this.complete = complete;
+        }
+
+        // Returns the change in estimated bytes
+        private long append(Message message) {
+            if (size > 0 && OLDEST_FIRST.compare(message, slots[Math.floorMod(next - 1, slots.length)]) < 0) {
+                return insert(message);
+            }
+            long delta = estimateBytes(message);
+            Message overwritten = slots[next];
+            if (overwritten != null) {
+                delta -= estimateBytes(overwritten);
+                // The oldest message fell out, so older history now exists outside the ring
+                complete = false;
+            }
+            slots[next] = message;
+            next = (next + 1) % slots.length;
+            size = Math.min(size + 1, slots.length);
+            bytes += delta;
+            return delta;
+        }
+
+        // A message older than the newest one in the ring: rebuilt in order, which is rare enough to be linear
+        private long insert(Message message) {
+            List<Message> ordered = latest(size);
+            int at = ordered.size();
+            while (at > 0 && OLDEST_FIRST.compare(message, ordered.get(at - 1)) < 0) {
+                at--;
+            }
+            if (at == 0 && size == slots.length) {
+                // Older than all of a full ring, so it is not among the newest messages
+                complete = false;
+                return 0;
+            }
+            ordered.add(at, message);
+            long delta = estimateBytes(message);
+            if (ordered.size() > slots.length) {
+                delta -= estimateBytes(ordered.remove(0));
+                complete = false;
+            }
+            Arrays.fill(slots, null);
+            for (int i = 0; i < ordered.size(); i++) {
+                slots[i] = ordered.get(i);
+            }
+            size = ordered.size();
+            next = size % slots.length;
+            bytes += delta;
+            return delta;
+        }
+
+        // Returns the change in estimated bytes, or Long.MIN_VALUE if the message is not in the ring
+        private long replace(Message message) {
+            for (int i = 0; i < slots.length; i++) {
+                Message current = slots[i];
+                if (current != null && current.getId().equals(message.getId())) {
+                    long delta = estimateBytes(message) - estimateBytes(current);
+                    slots[i] = message;
+                    bytes += delta;
+                    return delta;
+                }
+            }
+            return Long.MIN_VALUE;
+        }
+
+        private List<Message> latest(int limit) {
+            int count = Math.min(limit, size);
+            List<Message> result = new ArrayList<>(count);
+            int start = next - count;
+            for (int i = 0; i < count; i++) {
+                result.add(slots[Math.floorMod(start + i, slots.length)]);
+            }
+            return result;
+        }
+    }
+}
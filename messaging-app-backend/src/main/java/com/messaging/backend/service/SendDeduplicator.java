@@ -0,0 +1,96 @@
+package com.messaging.backend.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the most recent sends by (sender, client message ID), so a retried SEND_MESSAGE gets the
+ * result of the original send instead of a second insert and fan-out. A retry that arrives while the
+ * original is still being stored waits for it.
+ *
+ * Memory is bounded by max-entries: every new send takes the next slot of a ring and evicts whatever was
+ * remembered there, so the oldest sends are forgotten first without any locking. Retries of forgotten
+ * sends, and retries that reach another node, are caught by the unique (sender, client message ID) index
+ * instead; MessageService then loads the stored original. Entries hold the saved message, so the cache
+ * costs roughly max-entries times the average message size.
+ */
+@Service
+public class SendDeduplicator {
+
+    @Value("${messages.dedup.max-entries:50000}")
+    private int maxEntries;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private AtomicReferenceArray<Entry> ring;
+    private final AtomicLong nextSlot = new AtomicLong();
+
+    private final AtomicLong sends = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        ring = new AtomicReferenceArray<>(Math.max(1, maxEntries));
+    }
+
+    /**
+     * The result of {@code send} for the first call with this sender and client message ID; later calls
+     * get the same message, marked as a duplicate. A failed send is forgotten so the client can retry it.
+     */
+    public Mono<MessageService.SendResult> sendOnce(String senderId, String clientMessageId,
+                                                    Supplier<Mono<MessageService.SendResult>> send) {
+        String key = senderId + '\n' + clientMessageId;
+        Entry existing = entries.get(key);
+        if (existing == null) {
+            Entry created = new Entry(key, send);
+            existing = entries.putIfAbsent(key, created);
+            if (existing == null) {
+                sends.incrementAndGet();
+                remember(created);
+                return created.result;
+            }
+        }
+        duplicates.incrementAndGet();
+        return existing.result.map(MessageService.SendResult::asDuplicate);
+    }
+
+    private void remember(Entry entry) {
+        int slot = (int) (nextSlot.getAndIncrement() % ring.length());
+        Entry evicted = ring.getAndSet(slot, entry);
+        if (evicted != null && entries.remove(evicted.key, evicted)) {
+            evictions.incrementAndGet();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("sends", sends.get());
+        stats.put("duplicates", duplicates.get());
+        stats.put("evictions", evictions.get());
+        stats.put("entries", entries.size());
+        stats.put("maxEntries", maxEntries);
+        return stats;
+    }
+
+    private final class Entry {
+        private final String key;
+        private final Mono<MessageService.SendResult> result;
+
+        private Entry(String key, Supplier<Mono<MessageService.SendResult>> send) {
+            this.key = key;
+            // Subscribed once by the first caller; everyone else replays the stored outcome
+            this.result = Mono.defer(send)
+                    .doOnError(error -> entries.remove(key, this))
+                    .cache();
+        }
+    }
+}
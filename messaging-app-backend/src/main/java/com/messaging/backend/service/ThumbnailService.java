@@ -0,0 +1,239 @@
+package com.messaging.backend.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Service
+public class ThumbnailService {
+
+    // Longest edge in pixels for each preview size served via ?size=
+    public enum Size {
+        SMALL(160), MEDIUM(480);
+
+        private final int maxEdge;
+
+        Size(int maxEdge) { this.maxEdge = maxEdge; }
+
+        public int getMaxEdge() { return maxEdge; }
+
+        public static Size fromParam(String value) {
+            if (value == null) return null;
+            try {
+                return Size.valueOf(value.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+
+    @Value("${media.thumbnails.jpeg-quality:0.8}")
+    private float jpegQuality;
+
+    // Originals with more pixels than this get no thumbnails (the header is read, the pixels are not)
+    @Value("${media.thumbnails.max-source-pixels:100000000}")
+    private long maxSourcePixels;
+
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicLong generated = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong inlineRuns = new AtomicLong();
+    private final AtomicLong tooLarge = new AtomicLong();
+    private final AtomicLong subsampled = new AtomicLong();
+
+    public ThumbnailService(@Value("${media.thumbnails.threads:2}") int threads,
+                            @Value("${media.thumbnails.queue-capacity:200}") int queueCapacity) {
+        AtomicInteger threadCount = new AtomicInteger();
+        // Bounded queue: when it is full the uploading request thread renders the thumbnails itself,
+        // which slows down whoever is flooding uploads instead of growing an unbounded backlog.
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "Thumbnail-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (runnable, pool) -> {
+                    if (!pool.isShutdown()) {
+                        inlineRuns.incrementAndGet();
+                        runnable.run();
+                    }
+                });
+    }
+
+    public boolean supports(String contentType) {
+        // Only still images can be decoded with ImageIO; videos keep serving the original
+        return contentType != null && contentType.startsWith("image/") && !contentType.equals("image/gif");
+    }
+
+    public void submit(Path original) {
+        executor.execute(() -> generate(original));
+    }
+
+    public Path resolve(Path original, Size size) {
+        String filename = original.getFileName().toString();
+        return original.resolveSibling(filename + "." + size.name().toLowerCase() + ".jpg");
+    }
+
+    // Thumbnails and in-progress temp files live next to their original and are not media of their own
+    public boolean isDerivedFile(String filename) {
+        if (filename.endsWith(".tmp")) {
+            return true;
+        }
+        for (Size size : Size.values()) {
+            if (filename.endsWith("." + size.name().toLowerCase() + ".jpg")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void generate(Path original) {
+        try {
+            BufferedImage source = read(original);
+            if (source == null) {
+                return;
+            }
+            for (Size size : Size.values()) {
+                writeJpeg(scale(source, size.getMaxEdge()), resolve(original, size));
+            }
+            generated.incrementAndGet();
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            System.err.println("Error generating thumbnails for " + original + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Decodes the original at no more than twice the largest thumbnail's edge: the dimensions come from the
+     * header, and the reader skips the rows and columns that would be scaled away anyway, so a large photo
+     * never needs a full-resolution buffer. Null when the image is skipped.
+     */
+    private BufferedImage read(Path original) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(original.toFile())) {
+            Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : null;
+            if (readers == null || !readers.hasNext()) {
+                System.out.println("Skipping thumbnails, unsupported image format: " + original);
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > maxSourcePixels) {
+                    tooLarge.incrementAndGet();
+                    System.out.println("Skipping thumbnails, " + width + "x" + height + " is over "
+                            + maxSourcePixels + " pixels: " + original);
+                    return null;
+                }
+                int factor = Math.max(1, Math.max(width, height) / (2 * largestEdge()));
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (factor > 1) {
+                    param.setSourceSubsampling(factor, factor, 0, 0);
+                    subsampled.incrementAndGet();
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static int largestEdge() {
+        int largest = 0;
+        for (Size size : Size.values()) {
+            largest = Math.max(largest, size.getMaxEdge());
+        }
+        return largest;
+    }
+
+    private BufferedImage scale(BufferedImage source, int maxEdge) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        double ratio = Math.min(1.0, (double) maxEdge / Math.max(width, height));
+        int targetWidth = Math.max(1, (int) Math.round(width * ratio));
+        int targetHeight = Math.max(1, (int) Math.round(height * ratio));
+
+        // JPEG has no alpha channel, so always draw onto an RGB canvas
+        BufferedImage target = new BufferedImage(targetWidth, targetHeight, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(source, 0, 0, targetWidth, targetHeight, Color.WHITE, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    private void writeJpeg(BufferedImage image, Path target) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+        if (!writers.hasNext()) {
+            throw new IOException("No JPEG writer available");
+        }
+        ImageWriter writer = writers.next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(jpegQuality);
+
+        // Write to a temp file and move it in place so readers never see a partial thumbnail
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(temp.toFile())) {
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("queueDepth", executor.getQueue().size());
+        stats.put("queueRemainingCapacity", executor.getQueue().remainingCapacity());
+        stats.put("active", executor.getActiveCount());
+        stats.put("generated", generated.get());
+        stats.put("failed", failed.get());
+        stats.put("inlineRuns", inlineRuns.get());
+        stats.put("tooLarge", tooLarge.get());
+        stats.put("subsampled", subsampled.get());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,202 @@
+package com.messaging.backend.service;
+
+import com.messaging.backend.model.User;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Sanitized user profiles by ID, in front of UserRepository. Entries expire after a TTL and are dropped
+ * as soon as the profile or presence of the user changes on this node. Concurrent misses for the same ID
+ * share a single load, and batch lookups fetch all of their misses with one query.
+ *
+ * Invalidation bumps a striped stamp, and a load only installs its result if the stamp did not move
+ * while it ran, so a slow load cannot put back a profile that was changed in the meantime.
+ */
+@Service
+public class UserProfileCache {
+
+    private static final int STAMP_STRIPES = 1024;
+
+    @Value("${users.cache.ttl-ms:30000}")
+    private long ttlMs;
+
+    @Value("${users.cache.max-entries:50000}")
+    private int maxEntries;
+
+    // Access-ordered map gives LRU iteration order; guarded by "this"
+    private final LinkedHashMap<String, CachedUser> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final Map<String, Mono<User>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLongArray stamps = new AtomicLongArray(STAMP_STRIPES);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong sharedLoads = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * Cached profile, or the result of {@code loader} (which must return a sanitized user). Callers that
+     * miss while a load for the same ID is running wait for that load instead of starting another one.
+     */
+    public Mono<User> get(String userId, Function<String, Mono<User>> loader) {
+        User cached = lookup(userId);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return Mono.just(cached);
+        }
+        misses.incrementAndGet();
+
+        Mono<User> load = inFlight.get(userId);
+        if (load != null) {
+            sharedLoads.incrementAndGet();
+            return load;
+        }
+        long stamp = stamps.get(stripe(userId));
+        AtomicReference<Mono<User>> self = new AtomicReference<>();
+        Mono<User> created = Mono.defer(() -> loader.apply(userId))
+                .doOnNext(user -> put(user, stamp))
+                // Only remove our own entry; an invalidation may already have replaced it with a newer load
+                .doFinally(signal -> inFlight.remove(userId, self.get()))
+                .cache();
+        self.set(created);
+        Mono<User> existing = inFlight.putIfAbsent(userId, created);
+        if (existing != null) {
+            sharedLoads.incrementAndGet();
+            return existing;
+        }
+        return created;
+    }
+
+    /**
+     * Profiles for several IDs, in request order, skipping unknown IDs. Cache misses are passed to
+     * {@code loader} in a single call so they can be fetched with one $in query.
+     */
+    public Flux<User> getAll(Collection<String> userIds, Function<Collection<String>, Flux<User>> loader) {
+        Map<String, User> found = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String userId : new LinkedHashSet<>(userIds)) {
+            User cached = lookup(userId);
+            if (cached != null) {
+                found.put(userId, cached);
+            } else {
+                missing.add(userId);
+            }
+        }
+        hits.addAndGet(found.size());
+        misses.addAndGet(missing.size());
+
+        Mono<Map<String, User>> loaded;
+        if (missing.isEmpty()) {
+            loaded = Mono.just(found);
+        } else {
+            Map<String, Long> stampsBefore = new HashMap<>();
+            for (String userId : missing) {
+                stampsBefore.put(userId, stamps.get(stripe(userId)));
+            }
+            loaded = loader.apply(missing)
+                    .doOnNext(user -> {
+                        Long stamp = stampsBefore.get(user.getId());
+                        if (stamp != null) {
+                            put(user, stamp);
+                        }
+                        found.put(user.getId(), user);
+                    })
+                    .then(Mono.just(found));
+        }
+
+        return loaded.flatMapIterable(users -> {
+            List<User> ordered = new ArrayList<>();
+            for (String userId : new LinkedHashSet<>(userIds)) {
+                User user = users.get(userId);
+                if (user != null) {
+                    ordered.add(user);
+                }
+            }
+            return ordered;
+        });
+    }
+
+    public void invalidate(String userId) {
+        stamps.incrementAndGet(stripe(userId));
+        invalidations.incrementAndGet();
+        // Later readers start a fresh load instead of joining one that may predate the change
+        inFlight.remove(userId);
+        synchronized (this) {
+            entries.remove(userId);
+        }
+    }
+
+    private synchronized User lookup(String userId) {
+        CachedUser cached = entries.get(userId);
+        if (cached == null) {
+            return null;
+        }
+        if (System.nanoTime() - cached.expiresAt > 0) {
+            entries.remove(userId);
+            return null;
+        }
+        return cached.user;
+    }
+
+    private synchronized void put(User user, long stampBeforeLoad) {
+        if (stamps.get(stripe(user.getId())) != stampBeforeLoad) {
+            return;
+        }
+        entries.put(user.getId(), new CachedUser(user, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttlMs)));
+        Iterator<CachedUser> iterator = entries.values().iterator();
+        while (entries.size() > maxEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private static int stripe(String userId) {
+        return (userId.hashCode() & Integer.MAX_VALUE) % STAMP_STRIPES;
+    }
+
+    public Map<String, Object> getStats() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        long requests = hitCount + missCount;
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRatio", requests == 0 ? 0.0 : (double) hitCount / requests);
+        stats.put("sharedLoads", sharedLoads.get());
+        stats.put("invalidations", invalidations.get());
+        stats.put("loadsInFlight", inFlight.size());
+        synchronized (this) {
+            stats.put("entries", entries.size());
+        }
+        stats.put("maxEntries", maxEntries);
+        stats.put("ttlMs", ttlMs);
+        return stats;
+    }
+
+    private static final class CachedUser {
+        private final User user;
+        private final long expiresAt;
+
+        private CachedUser(User user, long expiresAt) {
+            this.user = user;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
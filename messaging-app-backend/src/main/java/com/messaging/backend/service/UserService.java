@@ -6,12 +6,12 @@ import com.messaging.backend.model.User;
 import com.messaging.backend.repository.UserRepository;
 import com.messaging.backend.security.JwtTokenProvider;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -23,11 +23,14 @@ public class UserService {
     private UserRepository userRepository;
 
     @Autowired
-    private PasswordEncoder passwordEncoder;
+    private PasswordHashingService passwordHashingService;
 
     @Autowired
     private JwtTokenProvider tokenProvider;
 
+    @Autowired
+    private UserProfileCache userProfileCache;
+
     public Mono<Map<String, Object>> registerUser(UserRegistrationDto registrationDto) {
         return userRepository.existsByUsername(registrationDto.getUsername())
                 .flatMap(exists -> {
@@ -35,18 +38,22 @@ public class UserService {
                         return Mono.error(new RuntimeException("Username already exists"));
                     }
                     
+                    return passwordHashingService.encode(registrationDto.getPassword());
+                })
+                .flatMap(encodedPassword -> {
                     User user = new User();
                     user.setUsername(registrationDto.getUsername());
                     user.setEmail(registrationDto.getEmail());
-                    user.setPassword(passwordEncoder.encode(registrationDto.getPassword()));
+                    user.setPassword(encodedPassword);
                     user.setDisplayName(registrationDto.getDisplayName() != null ? 
                             registrationDto.getDisplayName() : registrationDto.getUsername());
                     user.setContacts(new HashSet<>());
+                    user.setRoles(new HashSet<>());
                     
                     return userRepository.save(user);
                 })
                 .map(user -> {
-                    String token = tokenProvider.generateToken(user.getUsername(), user.getId());
+                    String token = tokenProvider.generateToken(user.getUsername(), user.getId(), user.getRoles());
                     Map<String, Object> response = new HashMap<>();
                     response.put("token", token);
                     response.put("user", sanitizeUser(user));
@@ -56,15 +63,17 @@ public class UserService {
 
     public Mono<Map<String, Object>> loginUser(LoginDto loginDto) {
         return userRepository.findByUsername(loginDto.getUsername())
-                .filter(user -> passwordEncoder.matches(loginDto.getPassword(), user.getPassword()))
+                .filterWhen(user -> passwordHashingService.matches(loginDto.getPassword(), user.getPassword()))
                 .switchIfEmpty(Mono.error(new RuntimeException("Invalid credentials")))
+                .flatMap(user -> rehashIfNeeded(user, loginDto.getPassword()))
                 .flatMap(user -> {
                     user.setOnline(true);
                     user.setLastSeen(LocalDateTime.now());
                     return userRepository.save(user);
                 })
+                .doOnNext(user -> userProfileCache.invalidate(user.getId()))
                 .map(user -> {
-                    String token = tokenProvider.generateToken(user.getUsername(), user.getId());
+                    String token = tokenProvider.generateToken(user.getUsername(), user.getId(), user.getRoles());
                     Map<String, Object> response = new HashMap<>();
                     response.put("token", token);
                     response.put("user", sanitizeUser(user));
@@ -72,20 +81,22 @@ public class UserService {
                 });
     }
 
+    // Upgrade hashes made with an older BCrypt cost; skipped when the hashing pool is saturated
+    private Mono<User> rehashIfNeeded(User user, String rawPassword) {
+        if (!passwordHashingService.needsRehash(user.getPassword())) {
+            return Mono.just(user);
+        }
+        return passwordHashingService.encode(rawPassword)
+                .map(encodedPassword -> {
+                    user.setPassword(encodedPassword);
+                    return user;
+                })
+                .onErrorResume(PasswordHashingService.HashingCapacityExceededException.class, e -> Mono.just(user));
+    }
+
     public Flux<User> getAllUsers() {
-        System.out.println("=== UserService.getAllUsers() called ===");
-        
         return userRepository.findAll()
-                .doOnSubscribe(subscription -> System.out.println("Starting database query for all users"))
-                .doOnNext(user -> System.out.println("Raw user from DB: " + user.getUsername() + " (ID: " + user.getId() + ")"))
-                .doOnComplete(() -> System.out.println("Database query completed"))
-                .doOnError(error -> System.out.println("ERROR in database query: " + error.getMessage()))
-                .map(user -> {
-                    System.out.println("Sanitizing user: " + user.getUsername());
-                    User sanitized = this.sanitizeUser(user);
-                    System.out.println("Sanitized user: " + sanitized.getUsername() + " (ID: " + sanitized.getId() + ")");
-                    return sanitized;
-                });
+                .map(this::sanitizeUser);
     }
 
     public Flux<User> searchUsers(String query) {
@@ -94,8 +105,12 @@ public class UserService {
     }
 
     public Mono<User> getUserById(String userId) {
-        return userRepository.findById(userId)
-                .map(this::sanitizeUser);
+        return userProfileCache.get(userId, id -> userRepository.findById(id).map(this::sanitizeUser));
+    }
+
+    // Cached profiles first; the rest come from a single findAllById ($in) query
+    public Flux<User> getUsersByIds(Collection<String> userIds) {
+        return userProfileCache.getAll(userIds, missing -> userRepository.findAllById(missing).map(this::sanitizeUser));
     }
 
     public Mono<User> updateUserOnlineStatus(String userId, boolean isOnline) {
@@ -104,10 +119,11 @@ public class UserService {
                     user.setOnline(isOnline);
                     user.setLastSeen(LocalDateTime.now());
                     return userRepository.save(user);
-                });
+                })
+                .doOnNext(user -> userProfileCache.invalidate(user.getId()));
     }
 
-    private User sanitizeUser(User user) {
+    public User sanitizeUser(User user) {
         User sanitized = new User();
         sanitized.setId(user.getId());
         sanitized.setUsername(user.getUsername());
@@ -4,24 +4,39 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.messaging.backend.dto.MessageDto;
 import com.messaging.backend.model.Message;
 import com.messaging.backend.security.JwtTokenProvider;
+import com.messaging.backend.service.ChatEventLoops;
 import com.messaging.backend.service.MessageService;
+import com.messaging.backend.service.MessagingMetrics;
+import com.messaging.backend.service.RateLimiter;
 import com.messaging.backend.service.UserService;
+import jakarta.annotation.PostConstruct;
+import jakarta.websocket.Session;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.PongMessage;
 import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.NativeWebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 
 @Component
 public class ChatWebSocketHandler extends TextWebSocketHandler {
 
+    private static final String BLOCKING_SEND_TIMEOUT = "org.apache.tomcat.websocket.BLOCKING_SEND_TIMEOUT";
+
     @Autowired
     private MessageService messageService;
 
@@ -31,17 +46,83 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
     @Autowired
     private JwtTokenProvider tokenProvider;
 
+    @Autowired
+    private RateLimiter rateLimiter;
+
     @Autowired
     private ObjectMapper objectMapper; // Use the configured ObjectMapper instead of creating new one
+
+    @Autowired
+    private MessagingMetrics metrics;
+
+    @Autowired
+    private ChatEventLoops chatEventLoops;
+
+    @Autowired
+    private HeartbeatWheel heartbeatWheel;
+
+    @Autowired
+    private OutboundWriters outboundWriters;
+
+    @Value("${websocket.outbound.lane-capacity:256}")
+    private int laneCapacity;
+
+    @Value("${websocket.outbound.control-weight:8}")
+    private int controlWeight;
+
+    @Value("${websocket.outbound.send-timeout-ms:5000}")
+    private long sendTimeoutMs;
     
     // Store active sessions by user ID
     private final Map<String, WebSocketSession> userSessions = new ConcurrentHashMap<>();
+    // Outbound lanes by session ID; every write to a session goes through them
+    private final Map<String, OutboundLanes> outboundLanes = new ConcurrentHashMap<>();
+    // Heartbeat of each session by session ID
+    private final Map<String, HeartbeatWheel.Handle> heartbeats = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void registerMetrics() {
+        metrics.registerSessionGauge("servlet", userSessions);
+    }
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
         String token = getTokenFromSession(session);
         if (token != null && tokenProvider.validateToken(token)) {
             String userId = tokenProvider.getUserIdFromToken(token);
+            limitSendTime(session);
+            outboundLanes.put(session.getId(), new OutboundLanes(laneCapacity, controlWeight, Long.MAX_VALUE,
+                    new OutboundLanes.Writer() {
+                        @Override
+                        public void write(String json) throws IOException {
+                            sendOrClose(session, new TextMessage(json));
+                        }
+
+                        @Override
+                        public void ping() throws IOException {
+                            sendOrClose(session, new PingMessage());
+                            HeartbeatWheel.Handle heartbeat = heartbeats.get(session.getId());
+                            if (heartbeat != null) {
+                                heartbeat.pingSent();
+                            }
+                        }
+                    }, metrics, outboundWriters, outboundWriters.getBatchSize()));
+            heartbeats.put(session.getId(), heartbeatWheel.register(new HeartbeatWheel.Target() {
+                @Override
+                public void ping() {
+                    OutboundLanes lanes = outboundLanes.get(session.getId());
+                    if (session.isOpen() && lanes != null) {
+                        offerPing(session, lanes);
+                    }
+                }
+
+                @Override
+                public void expire() {
+                    // Half-open connection; closing it runs the normal disconnect path
+                    System.out.println("Closing WebSocket session " + session.getId() + " after missed pongs");
+                    close(session, CloseStatus.SESSION_NOT_RELIABLE.withReason("Heartbeat timeout"));
+                }
+            }));
             userSessions.put(userId, session);
             
             // Update user online status
@@ -53,9 +134,7 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
             Map<String, Object> response = new HashMap<>();
             response.put("type", "CONNECTION_ESTABLISHED");
             response.put("userId", userId);
-            
-            String responseJson = objectMapper.writeValueAsString(response);
-            session.sendMessage(new TextMessage(responseJson));
+            send(session, OutboundLanes.Lane.CONTROL, response);
             
         } else {
             session.close(CloseStatus.NOT_ACCEPTABLE.withReason("Invalid token"));
@@ -64,17 +143,29 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
+        outboundLanes.remove(session.getId());
+        HeartbeatWheel.Handle heartbeat = heartbeats.remove(session.getId());
+        if (heartbeat != null) {
+            heartbeat.cancel();
+        }
         String userId = getUserIdFromSession(session);
-        if (userId != null) {
-            userSessions.remove(userId);
+        // Only if this is still the user's session; a reaped half-open one may have been replaced by a reconnect
+        if (userId != null && userSessions.remove(userId, session)) {
             // Update user offline status
             userService.updateUserOnlineStatus(userId, false).subscribe();
             System.out.println("User " + userId + " disconnected from WebSocket");
         }
     }
 
+    @Override
+    protected void handlePongMessage(WebSocketSession session, PongMessage message) {
+        alive(session);
+    }
+
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+        long receivedAt = System.nanoTime();
+        alive(session);
         String token = getTokenFromSession(session);
         if (token == null || !tokenProvider.validateToken(token)) {
             System.out.println("Invalid token in WebSocket message");
@@ -90,63 +181,68 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
             Map<String, Object> messageData = objectMapper.readValue(message.getPayload(), Map.class);
             String type = (String) messageData.get("type");
             System.out.println("Message type: " + type);
+            metrics.inboundEvent(type);
             
             if ("SEND_MESSAGE".equals(type)) {
+                long retryAfterMs = rateLimiter.tryAcquire(senderId, RateLimiter.Budget.MESSAGE);
+                if (retryAfterMs > 0) {
+                    Map<String, Object> rateLimited = new HashMap<>();
+                    rateLimited.put("type", "RATE_LIMITED");
+                    rateLimited.put("requestType", type);
+                    rateLimited.put("retryAfterMs", retryAfterMs);
+                    send(session, OutboundLanes.Lane.CONTROL, rateLimited);
+                    return;
+                }
+
                 MessageDto messageDto = new MessageDto();
                 messageDto.setReceiverId((String) messageData.get("receiverId"));
                 messageDto.setContent((String) messageData.get("content"));
                 messageDto.setType((String) messageData.getOrDefault("messageType", "TEXT"));
+                messageDto.setClientMessageId(Objects.toString(messageData.get("clientMessageId"), null));
                 
                 System.out.println("Sending message from " + senderId + " to " + messageDto.getReceiverId());
                 System.out.println("Message content: " + messageDto.getContent());
                 
-                // Save message to database
-                messageService.sendMessage(senderId, messageDto)
-                    .subscribe(savedMessage -> {
-                        try {
-                            System.out.println("Message saved to database: " + savedMessage.getId());
-                            
-                            // Send to receiver if online
-                            WebSocketSession receiverSession = userSessions.get(messageDto.getReceiverId());
-                            if (receiverSession != null && receiverSession.isOpen()) {
-                                Map<String, Object> response = new HashMap<>();
-                                response.put("type", "NEW_MESSAGE");
-                                response.put("message", savedMessage);
-                                
-                                String responseJson = objectMapper.writeValueAsString(response);
-                                receiverSession.sendMessage(new TextMessage(responseJson));
-                                System.out.println("Message sent to receiver: " + messageDto.getReceiverId());
-                            } else {
-                                System.out.println("Receiver not online: " + messageDto.getReceiverId());
-                            }
-                            
-                            // Send confirmation back to sender
-                            Map<String, Object> confirmation = new HashMap<>();
-                            confirmation.put("type", "MESSAGE_SENT");
-                            confirmation.put("message", savedMessage);
-                            
-                            String confirmationJson = objectMapper.writeValueAsString(confirmation);
-                            session.sendMessage(new TextMessage(confirmationJson));
-                            System.out.println("Confirmation sent to sender: " + senderId);
-                            
-                        } catch (IOException e) {
-                            System.err.println("Error sending WebSocket message: " + e.getMessage());
-                            e.printStackTrace();
+                // Save message to database and deliver it on the chat's shard, in the order the chat's sends arrived
+                String chatId = messageService.generateChatId(senderId, messageDto.getReceiverId());
+                chatEventLoops.submitOrdered(chatId, () -> messageService.send(senderId, messageDto),
+                    result -> {
+                        Message savedMessage = result.getMessage();
+                        long persistedAt = metrics.recordPersist(receivedAt);
+                        System.out.println("Message saved to database: " + savedMessage.getId());
+
+                        // Send to receiver if online; a resend was already delivered by the original
+                        WebSocketSession receiverSession = userSessions.get(messageDto.getReceiverId());
+                        if (result.isDuplicate()) {
+                            System.out.println("Duplicate send, not delivered again: " + savedMessage.getId());
+                        } else if (receiverSession != null && receiverSession.isOpen()) {
+                            Map<String, Object> response = new HashMap<>();
+                            response.put("type", "NEW_MESSAGE");
+                            response.put("message", savedMessage);
+                            send(receiverSession, OutboundLanes.Lane.PAYLOAD, response);
+                            System.out.println("Message sent to receiver: " + messageDto.getReceiverId());
+                        } else {
+                            System.out.println("Receiver not online: " + messageDto.getReceiverId());
                         }
+
+                        // Send confirmation back to sender
+                        Map<String, Object> confirmation = new HashMap<>();
+                        confirmation.put("type", "MESSAGE_SENT");
+                        confirmation.put("message", savedMessage);
+                        if (result.isDuplicate()) {
+                            confirmation.put("duplicate", true);
+                        }
+                        send(session, OutboundLanes.Lane.CONTROL, confirmation);
+                        metrics.recordFanout(persistedAt);
+                        System.out.println("Confirmation sent to sender: " + senderId);
                     }, error -> {
                         System.err.println("Error saving message: " + error.getMessage());
                         error.printStackTrace();
-                        
-                        try {
-                            Map<String, Object> errorResponse = new HashMap<>();
-                            errorResponse.put("type", "ERROR");
-                            errorResponse.put("message", "Failed to send message");
-                            
-                            String errorJson = objectMapper.writeValueAsString(errorResponse);
-                            session.sendMessage(new TextMessage(errorJson));
-                        } catch (IOException ioError) {
-                            System.err.println("Error sending error response: " + ioError.getMessage());
-                        }
+
+                        Map<String, Object> errorResponse = new HashMap<>();
+                        errorResponse.put("type", "ERROR");
+                        errorResponse.put("message", "Failed to send message");
+                        send(session, OutboundLanes.Lane.CONTROL, errorResponse);
                     });
             }
         } catch (Exception e) {
@@ -155,7 +251,97 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
         }
     }
 
-    private String getTokenFromSession(WebSocketSession session) {
+    public Collection<WebSocketSession> getActiveSessions() {
+        return userSessions.values();
+    }
+
+    public void sendEvent(WebSocketSession session, String json) {
+        OutboundLanes lanes = outboundLanes.get(session.getId());
+        if (session.isOpen() && lanes != null) {
+            offer(session, lanes, OutboundLanes.Lane.CONTROL, json);
+        }
+    }
+
+    private void send(WebSocketSession session, OutboundLanes.Lane lane, Map<String, Object> event) {
+        OutboundLanes lanes = outboundLanes.get(session.getId());
+        if (lanes == null) {
+            return;
+        }
+        try {
+            offer(session, lanes, lane, objectMapper.writeValueAsString(event));
+            metrics.outboundEvent((String) event.get("type"));
+        } catch (IOException e) {
+            System.err.println("Error serializing WebSocket event: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Closes the session on its writer thread after the event being written, so the close never races a
+     * write; queued events are dropped. Sessions without lanes (rejected handshakes) are closed right away.
+     */
+    public void close(WebSocketSession session, CloseStatus status) {
+        OutboundLanes lanes = outboundLanes.get(session.getId());
+        if (lanes != null) {
+            lanes.close(() -> closeNow(session, status));
+        } else {
+            closeNow(session, status);
+        }
+    }
+
+    private void offer(WebSocketSession session, OutboundLanes lanes, OutboundLanes.Lane lane, String json) {
+        if (!lanes.offer(lane, json)) {
+            // The client is not reading; drop it rather than buffering without bound
+            System.out.println("Closing slow WebSocket consumer " + session.getId());
+            lanes.close(() -> closeNow(session, CloseStatus.SESSION_NOT_RELIABLE.withReason("Outbound queue full")));
+        }
+    }
+
+    private void offerPing(WebSocketSession session, OutboundLanes lanes) {
+        if (lanes.offerPing()) {
+            metrics.outboundEvent("PING");
+        } else {
+            System.out.println("Closing slow WebSocket consumer " + session.getId());
+            lanes.close(() -> closeNow(session, CloseStatus.SESSION_NOT_RELIABLE.withReason("Outbound queue full")));
+        }
+    }
+
+    // Writer thread only. A send that fails or times out leaves the socket unusable, so it is closed
+    private void sendOrClose(WebSocketSession session, WebSocketMessage<?> message) throws IOException {
+        try {
+            session.sendMessage(message);
+        } catch (IOException e) {
+            closeNow(session, CloseStatus.SESSION_NOT_RELIABLE.withReason("Send failed"));
+            throw e;
+        }
+    }
+
+    private void closeNow(WebSocketSession session, CloseStatus status) {
+        try {
+            session.close(status);
+        } catch (IOException e) {
+            System.err.println("Error closing WebSocket session: " + e.getMessage());
+        }
+    }
+
+    // Tomcat blocks a send for up to 20s by default; a writer thread waits at most send-timeout-ms on one client
+    private void limitSendTime(WebSocketSession session) {
+        if (WebSocketSessionDecorator.unwrap(session) instanceof NativeWebSocketSession nativeSession) {
+            Session standard = nativeSession.getNativeSession(Session.class);
+            if (standard != null) {
+                standard.getUserProperties().put(BLOCKING_SEND_TIMEOUT, sendTimeoutMs);
+            }
+        }
+    }
+
+    // Any frame from the client shows the connection is still up
+    private void alive(WebSocketSession session) {
+        HeartbeatWheel.Handle heartbeat = heartbeats.get(session.getId());
+        if (heartbeat != null) {
+            heartbeat.alive();
+        }
+    }
+
+        private String getTokenFromSession(WebSocketSession session) {
         URI uri = session.getUri();
         if (uri != null && uri.getQuery() != null) {
             String[] params = uri.getQuery().split("&");
@@ -0,0 +1,52 @@
+package com.messaging.backend.websocket;
+
+import com.messaging.backend.service.RateLimiter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.util.Map;
+
+/**
+ * Turns away new WebSocket handshakes while this node drains, and caps the node-wide handshake rate
+ * so a reconnect storm from another node going down cannot flood this one.
+ */
+@Component
+public class HandshakeAdmissionInterceptor implements HandshakeInterceptor {
+
+    @Autowired
+    private RateLimiter rateLimiter;
+
+    private volatile boolean draining = false;
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        if (draining) {
+            response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+            return false;
+        }
+
+        long retryAfterMs = rateLimiter.tryAcquireGlobal(RateLimiter.Budget.HANDSHAKE);
+        if (retryAfterMs > 0) {
+            response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+            response.getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf((retryAfterMs + 999) / 1000));
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+    }
+
+    public void startDraining() {
+        draining = true;
+    }
+}
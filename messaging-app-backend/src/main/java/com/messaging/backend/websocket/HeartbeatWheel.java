@@ -0,0 +1,284 @@
+package com.messaging.backend.websocket;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Heartbeats of every WebSocket session on one hashed timing wheel: a ring of buckets advanced by a single
+ * thread every tick, where a session waits in the bucket of its next heartbeat. Registering, cancelling and
+ * a tick cost O(1) per session that is due, whatever the number of sessions, and no timer exists per session.
+ *
+ * When a session is due it is pinged, unless nothing arrived from it since its last heartbeat (no pong and
+ * no message), in which case it counts as a missed pong. A session that misses max-missed pongs in a row is
+ * expired, which closes it through the normal disconnect path. Targets only queue the ping or the close on
+ * the session's outbound writer, so the wheel thread calls them directly and never waits on a socket.
+ *
+ * A ping counts only once the writer has sent it (Handle.pingSent): while the last one is still queued
+ * behind a busy writer, the client could not have answered it, so the heartbeat is skipped rather than
+ * counted as missed. A healthy session is never reaped because its writer is backed up.
+ */
+@Component
+public class HeartbeatWheel {
+
+    // Both are called on the wheel thread and must only queue work, never block
+    public interface Target {
+        // Queue a ping frame; the writer calls Handle.pingSent() once it is out
+        void ping();
+
+        // Missed too many pongs; close the session
+        void expire();
+    }
+
+    @Value("${websocket.heartbeat.enabled:true}")
+    private boolean enabled;
+
+    @Value("${websocket.heartbeat.interval-ms:30000}")
+    private long intervalMs;
+
+    @Value("${websocket.heartbeat.max-missed:2}")
+    private int maxMissed;
+
+    @Value("${websocket.heartbeat.tick-ms:100}")
+    private long tickMs;
+
+    @Value("${websocket.heartbeat.wheel-size:512}")
+    private int wheelSize;
+
+    private Handle[] buckets;
+    private int mask;
+    private long intervalTicks;
+    // Wheel thread only, like the bucket lists
+    private long currentTick = 0;
+
+    private final Queue<Handle> registrations = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger sessions = new AtomicInteger();
+    private final AtomicLong pings = new AtomicLong();
+    private final AtomicLong missedPongs = new AtomicLong();
+    private final AtomicLong delayedPings = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong ticks = new AtomicLong();
+    private final AtomicLong tickNanos = new AtomicLong();
+    private volatile long maxTickNanos = 0;
+
+    private Thread thread;
+    private volatile boolean running = false;
+
+    @PostConstruct
+    public void init() {
+        // A power of two, so the bucket of a tick is a mask instead of a division
+        int size = Integer.highestOneBit(Math.max(2, wheelSize - 1)) << 1;
+        buckets = new Handle[size];
+        mask = size - 1;
+        intervalTicks = Math.max(1, intervalMs / Math.max(1, tickMs));
+
+        if (enabled) {
+            running = true;
+            thread = new Thread(this::run, "HeartbeatWheel");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Tracks a session from now on; its first heartbeat is one interval away. Returns a no-op handle when
+     * heartbeats are disabled.
+     */
+    public Handle register(Target target) {
+        Handle handle = new Handle(target);
+        if (enabled) {
+            sessions.incrementAndGet();
+            registrations.offer(handle);
+        }
+        return handle;
+    }
+
+    private void run() {
+        long tickNanosInterval = TimeUnit.MILLISECONDS.toNanos(tickMs);
+        long nextTickAt = System.nanoTime() + tickNanosInterval;
+        while (running) {
+            long wait = nextTickAt - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+                continue;
+            }
+            // Catches up tick by tick after a pause, so no bucket is skipped
+            tick();
+            nextTickAt += tickNanosInterval;
+        }
+    }
+
+    /**
+     * Advances the wheel by one tick and handles the sessions that are due. Called by the wheel thread;
+     * public for benchmarks that drive the wheel themselves.
+     */
+    public int tick() {
+        long start = System.nanoTime();
+        Handle added;
+        while ((added = registrations.poll()) != null) {
+            if (added.cancelled) {
+                sessions.decrementAndGet();
+            } else {
+                schedule(added, currentTick + intervalTicks);
+            }
+        }
+
+        int bucket = (int) (currentTick & mask);
+        int due = 0;
+        Handle handle = buckets[bucket];
+        while (handle != null) {
+            Handle next = handle.next;
+            if (handle.cancelled) {
+                unlink(handle, bucket);
+                sessions.decrementAndGet();
+            } else if (handle.deadlineTick <= currentTick) {
+                unlink(handle, bucket);
+                due++;
+                beat(handle);
+            }
+            handle = next;
+        }
+        currentTick++;
+
+        long elapsed = System.nanoTime() - start;
+        ticks.incrementAndGet();
+        tickNanos.addAndGet(elapsed);
+        if (elapsed > maxTickNanos) {
+            maxTickNanos = elapsed;
+        }
+        return due;
+    }
+
+    private void beat(Handle handle) {
+        if (handle.pingPending) {
+            // The last ping is still queued on the session's writer; the client could not have answered it
+            delayedPings.incrementAndGet();
+            schedule(handle, currentTick + intervalTicks);
+            return;
+        }
+        if (handle.seen) {
+            handle.seen = false;
+            handle.missed = 0;
+        } else {
+            handle.missed++;
+            missedPongs.incrementAndGet();
+        }
+
+        Target target = handle.target;
+        if (handle.missed >= maxMissed) {
+            handle.cancelled = true;
+            sessions.decrementAndGet();
+            expired.incrementAndGet();
+            call(target::expire);
+            return;
+        }
+        pings.incrementAndGet();
+        handle.pingPending = true;
+        call(target::ping);
+        schedule(handle, currentTick + intervalTicks);
+    }
+
+    private void call(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            System.err.println("Error in WebSocket heartbeat: " + e.getMessage());
+        }
+    }
+
+    private void schedule(Handle handle, long deadlineTick) {
+        int bucket = (int) (deadlineTick & mask);
+        handle.deadlineTick = deadlineTick;
+        handle.prev = null;
+        handle.next = buckets[bucket];
+        if (handle.next != null) {
+            handle.next.prev = handle;
+        }
+        buckets[bucket] = handle;
+    }
+
+    private void unlink(Handle handle, int bucket) {
+        if (handle.prev != null) {
+            handle.prev.next = handle.next;
+        } else {
+            buckets[bucket] = handle.next;
+        }
+        if (handle.next != null) {
+            handle.next.prev = handle.prev;
+        }
+        handle.prev = null;
+        handle.next = null;
+    }
+
+    public Map<String, Object> getStats() {
+        long tickCount = ticks.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("sessions", sessions.get());
+        stats.put("intervalMs", intervalMs);
+        stats.put("maxMissed", maxMissed);
+        stats.put("pings", pings.get());
+        stats.put("missedPongs", missedPongs.get());
+        stats.put("delayedPings", delayedPings.get());
+        stats.put("expired", expired.get());
+        stats.put("ticks", tickCount);
+        stats.put("avgTickMicros", tickCount == 0 ? 0.0 : tickNanos.get() / 1000.0 / tickCount);
+        stats.put("maxTickMicros", maxTickNanos / 1000.0);
+        return stats;
+    }
+
+    // A session's place on the wheel
+    public static final class Handle {
+        private final Target target;
+        // Written by the socket's threads, read by the wheel thread
+        private volatile boolean seen = true;
+        private volatile boolean cancelled = false;
+        // Set by the wheel when it queues a ping, cleared by the writer once the ping is out
+        private volatile boolean pingPending = false;
+
+        // Wheel thread only
+        private int missed = 0;
+        private long deadlineTick;
+        private Handle prev;
+        private Handle next;
+
+        private Handle(Target target) {
+            this.target = target;
+        }
+
+        // Something arrived from the session (a pong or any message)
+        public void alive() {
+            if (!seen) {
+                seen = true;
+            }
+        }
+
+        // The session's writer sent the last ping, so from now on the client can answer it
+        public void pingSent() {
+            pingPending = false;
+        }
+
+        // The session closed; it is dropped from the wheel when its bucket comes round
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
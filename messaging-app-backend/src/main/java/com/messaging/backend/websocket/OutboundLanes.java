@@ -0,0 +1,224 @@
+package com.messaging.backend.websocket;
+
+import com.messaging.backend.service.MessagingMetrics;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Outbound events of one socket, split into a control lane (confirmations, errors, rate limits,
+ * connection events) and a payload lane (message deliveries). Queuing an event schedules a drain on the
+ * lanes' executor unless one is already scheduled, so the socket is only ever written by one thread at a
+ * time and the thread that queued the event never writes; a drain writes at most batch-size events before
+ * it hands the thread back and schedules the rest. Closing goes through the same drain, so a socket is
+ * never closed while another thread is writing to it.
+ *
+ * The writer takes up to control-weight control events for every payload event while both lanes are
+ * waiting, so a burst of large deliveries cannot hold back a confirmation, and a steady stream of control
+ * events cannot starve deliveries. Each lane is FIFO, so messages of a chat keep their order. Writes can be
+ * limited by demand (the reactive server passes on what the socket requested); the time every event spent
+ * queued is recorded per lane.
+ */
+final class OutboundLanes {
+
+    enum Lane { CONTROL, PAYLOAD }
+
+    interface Writer {
+        void write(String json) throws Exception;
+
+        // A protocol-level ping frame
+        default void ping() throws Exception {
+        }
+
+        // Called once after complete(), when everything queued has been written
+        default void complete() {
+        }
+    }
+
+    private final Queue<Event> control = new ConcurrentLinkedQueue<>();
+    private final Queue<Event> payload = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger controlSize = new AtomicInteger();
+    private final AtomicInteger payloadSize = new AtomicInteger();
+    private final AtomicInteger wip = new AtomicInteger();
+    private final AtomicLong requested;
+    private final AtomicReference<Runnable> closer = new AtomicReference<>();
+    private volatile boolean done = false;
+    private boolean completed = false;
+    private boolean closed = false;
+
+    private final int capacity;
+    private final int controlWeight;
+    private final Writer writer;
+    private final MessagingMetrics metrics;
+    private final Executor executor;
+    private final int batchSize;
+
+    // Only touched by the thread that holds wip, like completed
+    private int controlStreak = 0;
+
+    OutboundLanes(int capacity, int controlWeight, long initialDemand, Writer writer, MessagingMetrics metrics,
+                  Executor executor, int batchSize) {
+        this.capacity = capacity;
+        this.controlWeight = Math.max(1, controlWeight);
+        this.requested = new AtomicLong(initialDemand);
+        this.writer = writer;
+        this.metrics = metrics;
+        this.executor = executor;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Queues an event and schedules the writer. Returns false when the lane is full, which means the client
+     * stopped reading.
+     */
+    boolean offer(Lane lane, String json) {
+        AtomicInteger size = lane == Lane.CONTROL ? controlSize : payloadSize;
+        if (closer.get() != null) {
+            // Closing; nothing more will be written
+            return true;
+        }
+        if (size.incrementAndGet() > capacity) {
+            size.decrementAndGet();
+            return false;
+        }
+        (lane == Lane.CONTROL ? control : payload).offer(new Event(lane, json, System.nanoTime()));
+        drain();
+        return true;
+    }
+
+    // Queues a heartbeat ping on the control lane, so it is written in turn with the socket's other events
+    boolean offerPing() {
+        return offer(Lane.CONTROL, null);
+    }
+
+    // Adds demand; Long.MAX_VALUE means unbounded
+    void request(long n) {
+        requested.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+        drain();
+    }
+
+    // No more events will be offered
+    void complete() {
+        done = true;
+        drain();
+    }
+
+    /**
+     * Runs closer on the writer's thread once the event being written (if any) is out, and drops whatever is
+     * still queued. Only the first close counts.
+     */
+    void close(Runnable close) {
+        if (closer.compareAndSet(null, close)) {
+            drain();
+        }
+    }
+
+    boolean isEmpty() {
+        return controlSize.get() == 0 && payloadSize.get() == 0;
+    }
+
+    void drain() {
+        if (wip.getAndIncrement() == 0) {
+            executor.execute(this::drainLoop);
+        }
+    }
+
+    // Runs on the executor, one drain per socket at a time (the one that took wip from zero)
+    private void drainLoop() {
+        int missed = wip.get();
+        int written = 0;
+        do {
+            if (closer.get() != null) {
+                closeNow();
+                missed = wip.addAndGet(-missed);
+                continue;
+            }
+            while (requested.get() > 0 && closer.get() == null) {
+                if (written == batchSize) {
+                    // wip stays taken, so no other drain starts before this one resumes
+                    executor.execute(this::drainLoop);
+                    return;
+                }
+                Event event = next();
+                if (event == null) {
+                    break;
+                }
+                written++;
+                if (requested.get() != Long.MAX_VALUE) {
+                    requested.decrementAndGet();
+                }
+                metrics.recordOutboundQueueDelay(event.lane.name(), System.nanoTime() - event.queuedAt);
+                try {
+                    if (event.json == null) {
+                        writer.ping();
+                    } else {
+                        writer.write(event.json);
+                    }
+                } catch (Exception e) {
+                    System.err.println("Error sending WebSocket event: " + e.getMessage());
+                }
+            }
+            // With demand, so a writer that has not been connected to its socket yet is not completed
+            if (closer.get() == null && done && !completed && isEmpty() && requested.get() > 0) {
+                completed = true;
+                writer.complete();
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void closeNow() {
+        while (control.poll() != null) {
+            controlSize.decrementAndGet();
+        }
+        while (payload.poll() != null) {
+            payloadSize.decrementAndGet();
+        }
+        if (!closed) {
+            closed = true;
+            try {
+                closer.get().run();
+            } catch (RuntimeException e) {
+                System.err.println("Error closing WebSocket: " + e.getMessage());
+            }
+        }
+    }
+
+    private Event next() {
+        boolean controlFirst = controlStreak < controlWeight || payloadSize.get() == 0;
+        Event event = controlFirst ? control.poll() : null;
+        if (event != null) {
+            controlSize.decrementAndGet();
+            controlStreak++;
+            return event;
+        }
+        event = payload.poll();
+        if (event != null) {
+            payloadSize.decrementAndGet();
+            controlStreak = 0;
+            return event;
+        }
+        event = control.poll();
+        if (event != null) {
+            controlSize.decrementAndGet();
+            controlStreak++;
+        }
+        return event;
+    }
+
+    private static final class Event {
+        private final Lane lane;
+        private final String json;
+        private final long queuedAt;
+
+        private Event(Lane lane, String json, long queuedAt) {
+            this.lane = lane;
+            this.json = json;
+            this.queuedAt = queuedAt;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.messaging.backend.websocket;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Threads that write the servlet WebSocket sessions' outbound lanes. Queuing an event only schedules its
+ * socket here, so the threads that produce events (request threads, chat shards, the heartbeat wheel) never
+ * block on a client's socket. A drain writes at most batch-size events before it makes room for the next
+ * socket, and one socket is only ever written by one thread at a time.
+ *
+ * A client that stops reading holds a writer thread until its send times out after
+ * websocket.outbound.send-timeout-ms, which closes it; the pool is sized for many such clients at once and
+ * shrinks again when idle.
+ */
+@Component
+public class OutboundWriters implements Executor {
+
+    @Value("${websocket.outbound.writer-threads:256}")
+    private int writerThreads;
+
+    @Value("${websocket.outbound.batch-size:64}")
+    private int batchSize;
+
+    private ThreadPoolExecutor pool;
+
+    private final AtomicLong drains = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        pool = new ThreadPoolExecutor(writerThreads, writerThreads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread worker = new Thread(runnable, "WebSocketWriter-" + threadCount.incrementAndGet());
+                    worker.setDaemon(true);
+                    return worker;
+                });
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    @Override
+    public void execute(Runnable drain) {
+        drains.incrementAndGet();
+        try {
+            pool.execute(drain);
+        } catch (RuntimeException e) {
+            // Shutting down; write on the caller's thread rather than drop what is queued
+            rejected.incrementAndGet();
+            drain.run();
+        }
+    }
+
+    int getBatchSize() {
+        return Math.max(1, batchSize);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("maxThreads", writerThreads);
+        stats.put("threads", pool.getPoolSize());
+        stats.put("activeWriters", pool.getActiveCount());
+        stats.put("queuedDrains", pool.getQueue().size());
+        stats.put("drains", drains.get());
+        stats.put("rejectedDrains", rejected.get());
+        stats.put("batchSize", getBatchSize());
+        return stats;
+    }
+}
@@ -0,0 +1,343 @@
+package com.messaging.backend.websocket;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.messaging.backend.dto.MessageDto;
+import com.messaging.backend.model.Message;
+import com.messaging.backend.security.JwtTokenProvider;
+import com.messaging.backend.service.ChatEventLoops;
+import com.messaging.backend.service.MessageService;
+import com.messaging.backend.service.MessagingMetrics;
+import com.messaging.backend.service.RateLimiter;
+import com.messaging.backend.service.UserService;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.websocket.WebsocketInbound;
+import reactor.netty.http.websocket.WebsocketOutbound;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Serves the /ws/chat protocol from a Reactor Netty server instead of the servlet container
+ * (enabled by the reactive-ws profile). Each socket's inbound frames are processed one at a time,
+ * so a sender is not read from again until its previous message has been persisted and fanned out
+ * on its chat's shard,
+ * and each socket's outbound events go through bounded priority lanes drained at the pace the socket writes.
+ * Sockets are pinged from the shared heartbeat wheel and closed when they stop answering.
+ */
+@Component
+@ConditionalOnProperty(name = "websocket.reactive.enabled", havingValue = "true")
+public class ReactiveChatWebSocketServer implements SmartLifecycle {
+
+    @Autowired
+    private MessageService messageService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private JwtTokenProvider tokenProvider;
+
+    @Autowired
+    private RateLimiter rateLimiter;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MessagingMetrics metrics;
+
+    @Autowired
+    private ChatEventLoops chatEventLoops;
+
+    @Autowired
+    private HeartbeatWheel heartbeatWheel;
+
+    @Value("${websocket.reactive.port:8081}")
+    private int port;
+
+    @Value("${websocket.reactive.outbound-queue-size:256}")
+    private int outboundQueueSize;
+
+    @Value("${websocket.outbound.control-weight:8}")
+    private int controlWeight;
+
+    @Value("${websocket.drain.max-reconnect-delay-ms:15000}")
+    private long maxReconnectDelayMs;
+
+    private final Map<String, ChatSession> userSessions = new ConcurrentHashMap<>();
+
+    private volatile DisposableServer server;
+    private volatile boolean draining = false;
+
+    @Override
+    public void start() {
+        metrics.registerSessionGauge("reactive", userSessions);
+        server = HttpServer.create()
+                .port(port)
+                .route(routes -> routes.get("/ws/chat", (request, response) -> {
+                    if (draining) {
+                        return response.status(HttpResponseStatus.SERVICE_UNAVAILABLE).send();
+                    }
+                    long retryAfterMs = rateLimiter.tryAcquireGlobal(RateLimiter.Budget.HANDSHAKE);
+                    if (retryAfterMs > 0) {
+                        return response.status(HttpResponseStatus.TOO_MANY_REQUESTS)
+                                .header("Retry-After", String.valueOf((retryAfterMs + 999) / 1000))
+                                .send();
+                    }
+
+                    String token = getToken(request.uri());
+                    if (token == null || !tokenProvider.validateToken(token)) {
+                        return response.status(HttpResponseStatus.UNAUTHORIZED).send();
+                    }
+                    String userId = tokenProvider.getUserIdFromToken(token);
+                    return response.sendWebsocket((in, out) -> handle(userId, in, out));
+                }))
+                .bindNow();
+        System.out.println("Reactive WebSocket server listening on port " + server.port());
+    }
+
+    private Mono<Void> handle(String userId, WebsocketInbound in, WebsocketOutbound out) {
+        ChatSession session = new ChatSession(userId);
+
+        ChatSession previous = userSessions.put(userId, session);
+        if (previous != null) {
+            previous.complete();
+        }
+        userService.updateUserOnlineStatus(userId, true).subscribe();
+        System.out.println("User " + userId + " connected via reactive WebSocket");
+
+        Map<String, Object> established = new HashMap<>();
+        established.put("type", "CONNECTION_ESTABLISHED");
+        established.put("userId", userId);
+        send(session, OutboundLanes.Lane.CONTROL, established);
+
+        // Prefetch of zero: the next frame is only requested once the current one has been handled
+        // Any frame counts as a sign of life; pongs carry nothing else
+        Mono<Void> inbound = in.aggregateFrames()
+                .receiveFrames()
+                .<String>handle((frame, next) -> {
+                    session.heartbeat.alive();
+                    if (frame instanceof TextWebSocketFrame text) {
+                        next.next(text.text());
+                    }
+                })
+                .concatMap(payload -> handleMessage(session, payload), 0)
+                .doFinally(signal -> session.complete())
+                .then();
+
+        Mono<Void> outbound = out.sendObject(session.outbound).then();
+
+        return Mono.when(inbound, outbound)
+                .doFinally(signal -> {
+                    session.heartbeat.cancel();
+                    if (userSessions.remove(userId, session)) {
+                        userService.updateUserOnlineStatus(userId, false).subscribe();
+                        System.out.println("User " + userId + " disconnected from reactive WebSocket");
+                    }
+                });
+    }
+
+    @SuppressWarnings("unchecked")
+    private Mono<Void> handleMessage(ChatSession session, String payload) {
+        long receivedAt = System.nanoTime();
+        Map<String, Object> messageData;
+        try {
+            messageData = objectMapper.readValue(payload, Map.class);
+        } catch (Exception e) {
+            System.err.println("Error parsing WebSocket message: " + e.getMessage());
+            return Mono.empty();
+        }
+
+        String type = (String) messageData.get("type");
+        metrics.inboundEvent(type);
+        if (!"SEND_MESSAGE".equals(type)) {
+            return Mono.empty();
+        }
+
+        long retryAfterMs = rateLimiter.tryAcquire(session.userId, RateLimiter.Budget.MESSAGE);
+        if (retryAfterMs > 0) {
+            Map<String, Object> rateLimited = new HashMap<>();
+            rateLimited.put("type", "RATE_LIMITED");
+            rateLimited.put("requestType", type);
+            rateLimited.put("retryAfterMs", retryAfterMs);
+            send(session, OutboundLanes.Lane.CONTROL, rateLimited);
+            return Mono.empty();
+        }
+
+        MessageDto messageDto = new MessageDto();
+        messageDto.setReceiverId((String) messageData.get("receiverId"));
+        messageDto.setContent((String) messageData.get("content"));
+        messageDto.setType((String) messageData.getOrDefault("messageType", "TEXT"));
+        messageDto.setClientMessageId(Objects.toString(messageData.get("clientMessageId"), null));
+
+        // Persisted and delivered on the chat's shard; the socket is read again once that has happened
+        String chatId = messageService.generateChatId(session.userId, messageDto.getReceiverId());
+        return Mono.create(done -> chatEventLoops.submitOrdered(chatId,
+                () -> messageService.send(session.userId, messageDto),
+                result -> {
+                    Message savedMessage = result.getMessage();
+                    long persistedAt = metrics.recordPersist(receivedAt);
+                    ChatSession receiver = userSessions.get(messageDto.getReceiverId());
+                    // A resend was already delivered by the original send
+                    if (receiver != null && !result.isDuplicate()) {
+                        Map<String, Object> response = new HashMap<>();
+                        response.put("type", "NEW_MESSAGE");
+                        response.put("message", savedMessage);
+                        send(receiver, OutboundLanes.Lane.PAYLOAD, response);
+                    }
+
+                    Map<String, Object> confirmation = new HashMap<>();
+                    confirmation.put("type", "MESSAGE_SENT");
+                    confirmation.put("message", savedMessage);
+                    if (result.isDuplicate()) {
+                        confirmation.put("duplicate", true);
+                    }
+                    send(session, OutboundLanes.Lane.CONTROL, confirmation);
+                    // Events are queued here; the socket writes them as it drains its outbound queue
+                    metrics.recordFanout(persistedAt);
+                    done.success();
+                },
+                error -> {
+                    System.err.println("Error saving message: " + error.getMessage());
+                    Map<String, Object> errorResponse = new HashMap<>();
+                    errorResponse.put("type", "ERROR");
+                    errorResponse.put("message", "Failed to send message");
+                    send(session, OutboundLanes.Lane.CONTROL, errorResponse);
+                    done.success();
+                }));
+    }
+
+    private void send(ChatSession session, OutboundLanes.Lane lane, Map<String, Object> event) {
+        try {
+            session.emit(lane, objectMapper.writeValueAsString(event));
+            metrics.outboundEvent((String) event.get("type"));
+        } catch (Exception e) {
+            System.err.println("Error serializing WebSocket event: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void stop() {
+        draining = true;
+        List<ChatSession> sessions = List.copyOf(userSessions.values());
+        for (ChatSession session : sessions) {
+            Map<String, Object> reconnect = new HashMap<>();
+            reconnect.put("type", "RECONNECT");
+            reconnect.put("delayMs", ThreadLocalRandom.current().nextLong(maxReconnectDelayMs + 1));
+            send(session, OutboundLanes.Lane.CONTROL, reconnect);
+            session.complete();
+        }
+        if (server != null) {
+            server.disposeNow(Duration.ofSeconds(10));
+            server = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return server != null;
+    }
+
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE;
+    }
+
+    private String getToken(String uri) {
+        List<String> values = new QueryStringDecoder(uri).parameters().get("token");
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    private final class ChatSession {
+        private final String userId;
+        private final OutboundLanes lanes;
+        private final Flux<WebSocketFrame> outbound;
+        private final HeartbeatWheel.Handle heartbeat;
+        private volatile FluxSink<WebSocketFrame> sink;
+
+        private ChatSession(String userId) {
+            this.userId = userId;
+            // Writing only hands frames to Netty, which never blocks, so the thread that queues an event writes it
+            this.lanes = new OutboundLanes(outboundQueueSize, controlWeight, 0, new OutboundLanes.Writer() {
+                @Override
+                public void write(String json) {
+                    sink.next(new TextWebSocketFrame(json));
+                }
+
+                @Override
+                public void ping() {
+                    sink.next(new PingWebSocketFrame());
+                    heartbeat.pingSent();
+                }
+
+                @Override
+                public void complete() {
+                    sink.complete();
+                }
+            }, metrics, Runnable::run, Integer.MAX_VALUE);
+            // Events wait in the lanes until the socket subscribes, then leave them as fast as it requests
+            this.outbound = Flux.create(created -> {
+                sink = created;
+                created.onRequest(lanes::request);
+            });
+            this.heartbeat = heartbeatWheel.register(new HeartbeatWheel.Target() {
+                @Override
+                public void ping() {
+                    if (lanes.offerPing()) {
+                        metrics.outboundEvent("PING");
+                    } else {
+                        fail("Closing slow WebSocket consumer " + userId, "Outbound queue full");
+                    }
+                }
+
+                @Override
+                public void expire() {
+                    // Half-open connection; failing the outbound stream closes it and runs the disconnect path
+                    fail("Closing reactive WebSocket of " + userId + " after missed pongs", "Heartbeat timeout");
+                }
+            });
+        }
+
+        private void emit(OutboundLanes.Lane lane, String json) {
+            if (!lanes.offer(lane, json)) {
+                // The client is not reading; drop it rather than buffering without bound
+                fail("Closing slow WebSocket consumer " + userId, "Outbound queue full");
+            }
+        }
+
+        // Fails the outbound stream from the lanes' writer, after the frame being emitted, never alongside it
+        private void fail(String logMessage, String reason) {
+            System.out.println(logMessage);
+            lanes.close(() -> {
+                FluxSink<WebSocketFrame> current = sink;
+                if (current != null) {
+                    current.error(new IllegalStateException(reason));
+                }
+            });
+        }
+
+        // Completes the socket's outbound stream once everything queued has been written
+        private void complete() {
+            lanes.complete();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.messaging.backend.websocket;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
@@ -8,14 +9,19 @@ import org.springframework.beans.factory.annotation.Autowired;
 
 @Configuration
 @EnableWebSocket
+@ConditionalOnProperty(name = "websocket.reactive.enabled", havingValue = "false", matchIfMissing = true)
 public class WebSocketConfig implements WebSocketConfigurer {
 
     @Autowired
     private ChatWebSocketHandler chatWebSocketHandler;
 
+    @Autowired
+    private HandshakeAdmissionInterceptor handshakeAdmissionInterceptor;
+
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
         registry.addHandler(chatWebSocketHandler, "/ws/chat")
+                .addInterceptors(handshakeAdmissionInterceptor)
                 .setAllowedOrigins("*"); // Allow all origins
     }
 }
\ No newline at end of file
@@ -0,0 +1,97 @@
+package com.messaging.backend.websocket;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.messaging.backend.service.MessagingMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drains WebSocket sessions on shutdown instead of dropping them all at once. Runs in the first shutdown
+ * phase, before the web server stops: new handshakes are refused, every client is told to reconnect after a
+ * random delay, and sessions are then closed evenly over the drain window.
+ */
+@Component
+public class WebSocketDrainer implements SmartLifecycle {
+
+    @Autowired
+    private ChatWebSocketHandler chatWebSocketHandler;
+
+    @Autowired
+    private HandshakeAdmissionInterceptor handshakeAdmissionInterceptor;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MessagingMetrics metrics;
+
+    @Value("${websocket.drain.window-ms:10000}")
+    private long drainWindowMs;
+
+    @Value("${websocket.drain.max-reconnect-delay-ms:15000}")
+    private long maxReconnectDelayMs;
+
+    private volatile boolean running = false;
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        handshakeAdmissionInterceptor.startDraining();
+
+        List<WebSocketSession> sessions = new ArrayList<>(chatWebSocketHandler.getActiveSessions());
+        System.out.println("Draining " + sessions.size() + " WebSocket sessions over " + drainWindowMs + "ms");
+
+        for (WebSocketSession session : sessions) {
+            Map<String, Object> reconnect = new HashMap<>();
+            reconnect.put("type", "RECONNECT");
+            // Spread the reconnects so the remaining nodes see a ramp instead of a spike
+            reconnect.put("delayMs", ThreadLocalRandom.current().nextLong(maxReconnectDelayMs + 1));
+            try {
+                chatWebSocketHandler.sendEvent(session, objectMapper.writeValueAsString(reconnect));
+                metrics.outboundEvent("RECONNECT");
+            } catch (Exception e) {
+                System.err.println("Error sending RECONNECT: " + e.getMessage());
+            }
+        }
+
+        long start = System.nanoTime();
+        long step = sessions.isEmpty() ? 0 : TimeUnit.MILLISECONDS.toNanos(drainWindowMs) / sessions.size();
+        for (int i = 0; i < sessions.size(); i++) {
+            long wait = start + step * i - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            // After the RECONNECT event, on the session's writer thread
+            chatWebSocketHandler.close(sessions.get(i), CloseStatus.SERVICE_RESTARTED);
+        }
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // Stop first, while the web server is still up and able to deliver the RECONNECT events
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE;
+    }
+}
@@ -0,0 +1,204 @@
+package com.messaging.backend.repository;
+
+import com.messaging.backend.model.Message;
+import com.messaging.backend.service.MessageIdGenerator;
+import com.messaging.backend.service.MessageSchemaMigration;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * findChat against a real MongoDB holding one chat half in the legacy and half in the compact layout, as it
+ * is while the schema migration runs: both halves come back as one stream, oldest first, each message once.
+ * Also marking a chat read in both layouts, and generated message IDs stored as numbers. Needs Docker;
+ * skipped without it.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class MessageRepositoryMongoTest {
+
+    @Container
+    private static final MongoDBContainer MONGO = new MongoDBContainer("mongo:7.0");
+
+    private static final String ALICE = new ObjectId().toHexString();
+    private static final String BOB = new ObjectId().toHexString();
+    private static final int MESSAGES = 600;
+
+    private static MongoClient client;
+    private static ReactiveMongoTemplate mongoTemplate;
+    private static MessageRepositoryImpl repository;
+    // In (timestamp, _id) order: timestamps step every two messages and ObjectIds grow in creation order
+    private static final List<String> expectedIds = new ArrayList<>();
+    private static long nextGeneratedId = 1L << 40;
+
+    @BeforeAll
+    static void connect() {
+        client = MongoClients.create(MONGO.getReplicaSetUrl());
+        mongoTemplate = new ReactiveMongoTemplate(client, "message_repository_test");
+        repository = new MessageRepositoryImpl();
+        ReflectionTestUtils.setField(repository, "mongoTemplate", mongoTemplate);
+        // A fresh instance reads both layouts until the migration state says otherwise
+        ReflectionTestUtils.setField(repository, "schemaMigration", new MessageSchemaMigration());
+
+        // Alternate layouts message by message, and give pairs the same timestamp so the _id tie-break matters
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 12, 0);
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < MESSAGES; i++) {
+            ObjectId id = new ObjectId();
+            LocalDateTime timestamp = start.plusSeconds(i / 2);
+            boolean fromAlice = i % 3 != 0;
+            String sender = fromAlice ? ALICE : BOB;
+            String receiver = fromAlice ? BOB : ALICE;
+            if (i % 2 == 0) {
+                documents.add(new Document("_id", id)
+                        .append(MessageSchema.LEGACY_SENDER, sender)
+                        .append(MessageSchema.LEGACY_RECEIVER, receiver)
+                        .append(MessageSchema.LEGACY_CHAT, MessageSchema.chatId(sender, receiver))
+                        .append("content", "legacy " + i)
+                        .append("type", "TEXT")
+                        .append(MessageSchema.LEGACY_TIMESTAMP, MessageSchema.toDate(timestamp))
+                        .append(MessageSchema.LEGACY_READ, false));
+            } else {
+                Message message = new Message();
+                message.setId(id.toHexString());
+                message.setSenderId(sender);
+                message.setReceiverId(receiver);
+                message.setContent("compact " + i);
+                message.setTimestamp(timestamp);
+                documents.add(MessageSchema.toDocument(message));
+            }
+            expectedIds.add(id.toHexString());
+        }
+        // Another chat of Alice's in both layouts, which must not leak into the result
+        Message other = new Message();
+        other.setSenderId(ALICE);
+        other.setReceiverId(new ObjectId().toHexString());
+        other.setContent("elsewhere");
+        other.setTimestamp(start);
+        documents.add(MessageSchema.toDocument(other));
+        documents.add(new Document(MessageSchema.LEGACY_SENDER, ALICE)
+                .append(MessageSchema.LEGACY_RECEIVER, other.getReceiverId())
+                .append(MessageSchema.LEGACY_CHAT, MessageSchema.chatId(ALICE, other.getReceiverId()))
+                .append("content", "elsewhere")
+                .append(MessageSchema.LEGACY_TIMESTAMP, MessageSchema.toDate(start)));
+
+        mongoTemplate.getCollection("messages")
+                .flatMap(c -> Mono.from(c.insertMany(documents)))
+                .block(Duration.ofSeconds(30));
+        // markChatRead hints this index
+        mongoTemplate.getCollection("messages")
+                .flatMap(c -> Mono.from(c.createIndex(new Document("r", 1).append("f", 1),
+                        new IndexOptions().name("r_f"))))
+                .block(Duration.ofSeconds(30));
+    }
+
+    @AfterAll
+    static void disconnect() {
+        if (client != null) {
+            client.close();
+        }
+    }
+
+    @Test
+    void findChatMergesBothLayoutsOldestFirst() {
+        List<Message> chat = repository.findChat(BOB, ALICE).collectList().block(Duration.ofSeconds(30));
+
+        assertThat(chat).isNotNull();
+        assertThat(chat).extracting(Message::getId).containsExactlyElementsOf(expectedIds);
+        for (int i = 1; i < chat.size(); i++) {
+            assertThat(chat.get(i).getTimestamp()).isAfterOrEqualTo(chat.get(i - 1).getTimestamp());
+        }
+        assertThat(chat).allSatisfy(message ->
+                assertThat(message.getChatId()).isEqualTo(MessageSchema.chatId(ALICE, BOB)));
+    }
+
+    @Test
+    void markChatReadMarksWhatTheReceiverHasNotReadInBothLayouts() {
+        String carol = new ObjectId().toHexString();
+        String dave = new ObjectId().toHexString();
+        Message unread = compact(carol, dave, 0);
+        Message alreadyRead = compact(carol, dave, MessageSchema.READ);
+        Message delivered = compact(carol, dave, MessageSchema.DELIVERED);
+        Message reply = compact(dave, carol, 0);
+        ObjectId legacyId = new ObjectId();
+        mongoTemplate.getCollection("messages")
+                .flatMap(c -> Mono.from(c.insertMany(List.of(
+                        MessageSchema.toDocument(unread), MessageSchema.toDocument(alreadyRead),
+                        MessageSchema.toDocument(delivered), MessageSchema.toDocument(reply),
+                        new Document("_id", legacyId)
+                                .append(MessageSchema.LEGACY_SENDER, carol)
+                                .append(MessageSchema.LEGACY_RECEIVER, dave)
+                                .append(MessageSchema.LEGACY_CHAT, MessageSchema.chatId(carol, dave))
+                                .append("content", "legacy")
+                                .append(MessageSchema.LEGACY_TIMESTAMP, MessageSchema.toDate(LocalDateTime.now()))
+                                .append(MessageSchema.LEGACY_READ, false)))))
+                .block(Duration.ofSeconds(30));
+
+        List<Message> marked = repository.markChatRead(carol, dave).collectList().block(Duration.ofSeconds(30));
+
+        assertThat(marked).extracting(Message::getId)
+                .containsExactlyInAnyOrder(unread.getId(), delivered.getId(), legacyId.toHexString());
+        assertThat(marked).allMatch(Message::isRead);
+        assertThat(repository.findMessages(Set.of(unread.getId(), delivered.getId(), legacyId.toHexString()))
+                .collectList().block(Duration.ofSeconds(30))).allMatch(Message::isRead);
+        Message stillDelivered = repository.findMessage(delivered.getId()).block(Duration.ofSeconds(30));
+        assertThat(stillDelivered.isDelivered()).isTrue();
+        assertThat(repository.findMessage(reply.getId()).block(Duration.ofSeconds(30)).isRead()).isFalse();
+        assertThat(repository.markChatRead(carol, dave).collectList().block(Duration.ofSeconds(30))).isEmpty();
+    }
+
+    @Test
+    void generatedIdsAreStoredAsNumbers() {
+        Message message = compact(new ObjectId().toHexString(), new ObjectId().toHexString(), 0);
+
+        Document stored = mongoTemplate.getCollection("messages")
+                .flatMap(c -> Mono.from(c.insertOne(MessageSchema.toDocument(message)))
+                        .then(Mono.from(c.find(new Document("c", message.getContent())).first())))
+                .block(Duration.ofSeconds(30));
+
+        assertThat(stored.get("_id")).isInstanceOf(Long.class);
+        assertThat(repository.findMessage(message.getId()).block(Duration.ofSeconds(30)).getId())
+                .isEqualTo(message.getId());
+    }
+
+    private static Message compact(String sender, String receiver, int flags) {
+        Message message = new Message();
+        message.setId(MessageIdGenerator.format(nextGeneratedId++));
+        message.setSenderId(sender);
+        message.setReceiverId(receiver);
+        message.setContent("generated " + message.getId());
+        message.setTimestamp(LocalDateTime.now());
+        message.setRead((flags & MessageSchema.READ) != 0);
+        message.setDelivered((flags & MessageSchema.DELIVERED) != 0);
+        return message;
+    }
+
+    @Test
+    void findChatStreamsInSmallRequests() {
+        // A slow consumer pulling a few at a time still gets every message exactly once
+        List<Message> chat = repository.findChat(ALICE, BOB)
+                .limitRate(7)
+                .collectList()
+                .block(Duration.ofSeconds(30));
+
+        assertThat(chat).extracting(Message::getId).containsExactlyElementsOf(expectedIds);
+    }
+}
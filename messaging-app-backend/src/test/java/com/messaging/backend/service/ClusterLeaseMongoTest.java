@@ -0,0 +1,77 @@
+package com.messaging.backend.service;
+
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Two instances competing for the same lease in a real MongoDB. Needs Docker; skipped without it.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class ClusterLeaseMongoTest {
+
+    @Container
+    private static final MongoDBContainer MONGO = new MongoDBContainer("mongo:7.0");
+
+    private static MongoClient client;
+    private static ReactiveMongoTemplate mongoTemplate;
+
+    @BeforeAll
+    static void connect() {
+        client = MongoClients.create(MONGO.getReplicaSetUrl());
+        mongoTemplate = new ReactiveMongoTemplate(client, "cluster_lease_test");
+    }
+
+    @AfterAll
+    static void disconnect() {
+        if (client != null) {
+            client.close();
+        }
+    }
+
+    @Test
+    void onlyOneInstanceHoldsALeaseUntilItIsReleased() {
+        ClusterLease first = lease();
+        ClusterLease second = lease();
+
+        assertThat(first.tryAcquire("held", Duration.ofMinutes(1))).isTrue();
+        assertThat(second.tryAcquire("held", Duration.ofMinutes(1))).isFalse();
+        // The holder renews it
+        assertThat(first.tryAcquire("held", Duration.ofMinutes(1))).isTrue();
+
+        second.release("held");
+        assertThat(second.tryAcquire("held", Duration.ofMinutes(1))).isFalse();
+
+        first.release("held");
+        assertThat(second.tryAcquire("held", Duration.ofMinutes(1))).isTrue();
+    }
+
+    @Test
+    void expiredLeaseCanBeTakenOver() throws InterruptedException {
+        ClusterLease first = lease();
+        ClusterLease second = lease();
+
+        assertThat(first.tryAcquire("expiring", Duration.ofMillis(200))).isTrue();
+        Thread.sleep(400);
+
+        assertThat(second.tryAcquire("expiring", Duration.ofMinutes(1))).isTrue();
+        assertThat(first.tryAcquire("expiring", Duration.ofMinutes(1))).isFalse();
+    }
+
+    private static ClusterLease lease() {
+        ClusterLease lease = new ClusterLease();
+        ReflectionTestUtils.setField(lease, "mongoTemplate", mongoTemplate);
+        return lease;
+    }
+}
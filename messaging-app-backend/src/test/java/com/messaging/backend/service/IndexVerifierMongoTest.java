@@ -0,0 +1,105 @@
+package com.messaging.backend.service;
+
+import com.messaging.backend.model.Message;
+import com.messaging.backend.repository.MessageSchema;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Every query in IndexVerifier.HOT_QUERIES, explained by a real MongoDB against the declared indexes, must be
+ * served without a collection scan. A new repository query belongs in HOT_QUERIES, which puts it under this
+ * check. Needs Docker; skipped without it.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class IndexVerifierMongoTest {
+
+    @Container
+    private static final MongoDBContainer MONGO = new MongoDBContainer("mongo:7.0");
+
+    private static MongoClient client;
+    private static ReactiveMongoTemplate mongoTemplate;
+
+    @BeforeAll
+    static void connect() {
+        client = MongoClients.create(MONGO.getReplicaSetUrl());
+        mongoTemplate = new ReactiveMongoTemplate(client, "index_verifier_test");
+
+        // The collections must exist and hold data, otherwise every plan is EOF and proves nothing
+        List<Document> messages = new ArrayList<>();
+        List<ObjectId> users = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            users.add(new ObjectId());
+        }
+        for (int i = 0; i < 2000; i++) {
+            Message message = new Message();
+            message.setSenderId(users.get(i % users.size()).toHexString());
+            message.setReceiverId(users.get((i * 7 + 1) % users.size()).toHexString());
+            message.setContent("message " + i);
+            message.setTimestamp(LocalDateTime.now().minusMinutes(i));
+            message.setRead(i % 3 == 0);
+            if (i % 5 == 0) {
+                message.setClientMessageId("client-" + i);
+            }
+            messages.add(MessageSchema.toDocument(message));
+        }
+        List<Document> userDocuments = new ArrayList<>();
+        for (int i = 0; i < users.size(); i++) {
+            userDocuments.add(new Document("_id", users.get(i))
+                    .append("username", "user" + i)
+                    .append("email", "user" + i + "@example.com")
+                    .append("isOnline", i % 4 == 0));
+        }
+        Flux.concat(
+                        mongoTemplate.getCollection("messages").flatMap(c -> Mono.from(c.insertMany(messages))),
+                        mongoTemplate.getCollection("users").flatMap(c -> Mono.from(c.insertMany(userDocuments))))
+                .blockLast(Duration.ofSeconds(30));
+    }
+
+    @AfterAll
+    static void disconnect() {
+        if (client != null) {
+            client.close();
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void hotQueriesDoNotScanCollections() {
+        IndexVerifier verifier = new IndexVerifier();
+        ReflectionTestUtils.setField(verifier, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(verifier, "mode", "fail");
+        ReflectionTestUtils.setField(verifier, "timeoutMs", 30000L);
+
+        Map<String, Object> report = verifier.verify().block(Duration.ofSeconds(60));
+
+        assertThat(report).isNotNull();
+        assertThat((List<String>) report.get("problems")).isEmpty();
+        assertThat((List<String>) report.get("indexes"))
+                .contains("messages.s_r_t_id", "messages.r_f", "messages.s_m");
+        List<Map<String, Object>> queries = (List<Map<String, Object>>) report.get("queries");
+        assertThat(queries).isNotEmpty();
+        for (Map<String, Object> query : queries) {
+            assertThat((List<String>) query.get("stages")).as((String) query.get("name")).doesNotContain("COLLSCAN");
+        }
+    }
+}
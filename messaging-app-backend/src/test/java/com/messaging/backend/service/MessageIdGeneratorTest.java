@@ -0,0 +1,124 @@
+package com.messaging.backend.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Node ID leasing against an in-memory stand-in for the leases collection.
+ */
+class MessageIdGeneratorTest {
+
+    private static final int NODE_MASK = MessageIdGenerator.MAX_NODE_ID << 12;
+
+    private final Map<String, FakeLeases> holders = new HashMap<>();
+    private MessageIdGenerator generator;
+
+    @BeforeEach
+    void setUp() {
+        generator = generator(new FakeLeases(holders));
+    }
+
+    @Test
+    void configuredNodeIdTakesNoLease() {
+        ReflectionTestUtils.setField(generator, "configuredNodeId", 7);
+        generator.init();
+
+        assertThat(nodeOf(generator.nextId())).isEqualTo(7);
+        assertThat(holders).isEmpty();
+    }
+
+    @Test
+    void startingTheContextTakesNoLeaseAndIdsWaitForOne() {
+        generator.init();
+
+        assertThat(holders).isEmpty();
+        assertThatThrownBy(generator::nextId).isInstanceOf(IllegalStateException.class);
+
+        generator.acquireNodeLease();
+        generator.nextId();
+    }
+
+    @Test
+    void renewalTakesTheFirstLeaseWhenStartupCouldNot() {
+        generator.init();
+
+        generator.renewNodeLease();
+
+        generator.nextId();
+        assertThat(holders).hasSize(1);
+    }
+
+    @Test
+    void unsetNodeIdLeasesOneNoOtherInstanceHolds() {
+        generator.init();
+        generator.acquireNodeLease();
+        int first = nodeOf(generator.nextId());
+
+        MessageIdGenerator other = generator(new FakeLeases(holders));
+        other.init();
+        other.acquireNodeLease();
+
+        assertThat(nodeOf(other.nextId())).isNotEqualTo(first);
+        assertThat(holders).hasSize(2);
+    }
+
+    @Test
+    void leaseTakenByAnotherInstanceIsReplaced() {
+        generator.init();
+        generator.acquireNodeLease();
+        int first = nodeOf(generator.nextId());
+
+        // Its lease ran out unrenewed and another instance took the node ID
+        holders.put("message-id-node-" + first, new FakeLeases(holders));
+        generator.renewNodeLease();
+
+        assertThat(nodeOf(generator.nextId())).isNotEqualTo(first);
+    }
+
+    @Test
+    void idsAreRefusedOnceTheLeaseRanOutUnrenewed() {
+        generator.init();
+        generator.acquireNodeLease();
+        ReflectionTestUtils.setField(generator, "leaseValidUntil", System.currentTimeMillis() - 1);
+
+        assertThatThrownBy(generator::nextId).isInstanceOf(IllegalStateException.class);
+
+        generator.renewNodeLease();
+        generator.nextId();
+    }
+
+    private static MessageIdGenerator generator(ClusterLease leases) {
+        MessageIdGenerator generator = new MessageIdGenerator();
+        ReflectionTestUtils.setField(generator, "configuredNodeId", -1);
+        ReflectionTestUtils.setField(generator, "nodeLeaseMs", 60000L);
+        ReflectionTestUtils.setField(generator, "clusterLease", leases);
+        return generator;
+    }
+
+    private static int nodeOf(long id) {
+        return (int) ((id & NODE_MASK) >>> 12);
+    }
+
+    // One per instance; instances share the map of who holds which lease
+    private static final class FakeLeases extends ClusterLease {
+        private final Map<String, FakeLeases> holders;
+
+        private FakeLeases(Map<String, FakeLeases> holders) {
+            this.holders = holders;
+        }
+
+        @Override
+        public boolean tryAcquire(String name, Duration duration) {
+            FakeLeases holder = holders.putIfAbsent(name, this);
+            return holder == null || holder == this;
+        }
+    }
+}
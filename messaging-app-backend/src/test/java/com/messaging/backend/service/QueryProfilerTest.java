@@ -0,0 +1,147 @@
+package com.messaging.backend.service;
+
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Plan parsing against explain output captured from MongoDB 7 (src/test/resources/explain), for both the
+ * classic and the slot-based engine, and shape grouping of the commands the driver reports.
+ */
+class QueryProfilerTest {
+
+    @Test
+    void planSummaryFollowsEveryBranchOfAnIndexedPlan() throws IOException {
+        Map<String, Object> plan = QueryProfiler.planSummary(explain("chat-history-sort-merge.json"));
+
+        assertThat(plan.get("stages")).isEqualTo(List.of("LIMIT", "FETCH", "SORT_MERGE", "IXSCAN", "IXSCAN"));
+        assertThat(plan.get("indexes")).isEqualTo(List.of("s_r_t_id"));
+        assertThat(plan.get("collectionScan")).isEqualTo(false);
+        assertThat(plan.get("inMemorySort")).isEqualTo(false);
+    }
+
+    @Test
+    void planSummaryReadsSlotBasedEnginePlans() throws IOException {
+        Map<String, Object> plan = QueryProfiler.planSummary(explain("unread-count-sbe.json"));
+
+        assertThat(plan.get("stages")).isEqualTo(List.of("COUNT", "FETCH", "IXSCAN"));
+        assertThat(plan.get("indexes")).isEqualTo(List.of("r_f"));
+        assertThat(plan.get("collectionScan")).isEqualTo(false);
+    }
+
+    @Test
+    void planSummaryFlagsCollectionScans() throws IOException {
+        Map<String, Object> plan = QueryProfiler.planSummary(explain("online-users-collscan-sbe.json"));
+
+        assertThat(plan.get("stages")).isEqualTo(List.of("COLLSCAN"));
+        assertThat(plan.get("indexes")).isEqualTo(List.of());
+        assertThat(plan.get("collectionScan")).isEqualTo(true);
+    }
+
+    @Test
+    void planSummaryFlagsInMemorySorts() throws IOException {
+        Map<String, Object> plan = QueryProfiler.planSummary(explain("user-search-in-memory-sort.json"));
+
+        assertThat(plan.get("stages")).isEqualTo(List.of("SORT", "FETCH", "IXSCAN"));
+        assertThat(plan.get("indexes")).isEqualTo(List.of("username"));
+        assertThat(plan.get("collectionScan")).isEqualTo(false);
+        assertThat(plan.get("inMemorySort")).isEqualTo(true);
+    }
+
+    @Test
+    void planSummaryOfAMissingCollectionIsNotAScan() throws IOException {
+        Map<String, Object> plan = QueryProfiler.planSummary(explain("missing-collection-eof.json"));
+
+        assertThat(plan.get("stages")).isEqualTo(List.of("EOF"));
+        assertThat(plan.get("collectionScan")).isEqualTo(false);
+    }
+
+    @Test
+    void planSummaryToleratesResultsWithoutAPlan() {
+        Map<String, Object> plan = QueryProfiler.planSummary(new Document("ok", 1.0));
+
+        assertThat(plan.get("stages")).isEqualTo(List.of());
+        assertThat(plan.get("collectionScan")).isEqualTo(false);
+    }
+
+    @Test
+    void shapeOfFindBlanksValuesAndKeepsSortDirections() {
+        BsonDocument first = BsonDocument.parse("{find: 'messages', filter: {$or: ["
+                + "{s: {$oid: '000000000000000000000001'}, r: {$oid: '000000000000000000000002'}},"
+                + "{s: {$oid: '000000000000000000000002'}, r: {$oid: '000000000000000000000001'}}]},"
+                + " sort: {t: -1, _id: -1}, limit: 50}");
+        BsonDocument second = BsonDocument.parse("{find: 'messages', filter: {$or: ["
+                + "{s: {$oid: '0000000000000000000000aa'}, r: {$oid: '0000000000000000000000bb'}},"
+                + "{s: {$oid: '0000000000000000000000bb'}, r: {$oid: '0000000000000000000000aa'}}]},"
+                + " sort: {t: -1, _id: -1}, limit: 20}");
+
+        String shape = QueryProfiler.shapeOf(first, "find");
+
+        assertThat(shape).isEqualTo(QueryProfiler.shapeOf(second, "find"));
+        assertThat(BsonDocument.parse(shape)).isEqualTo(BsonDocument.parse("{filter: {$or: ["
+                + "{s: '?', r: '?'}, {s: '?', r: '?'}]}, sort: {t: -1, _id: -1}}"));
+    }
+
+    @Test
+    void shapeOfSeparatesSortOrders() {
+        BsonDocument newestFirst = BsonDocument.parse("{find: 'messages', filter: {s: 'a'}, sort: {t: -1}}");
+        BsonDocument oldestFirst = BsonDocument.parse("{find: 'messages', filter: {s: 'a'}, sort: {t: 1}}");
+
+        assertThat(QueryProfiler.shapeOf(newestFirst, "find")).isNotEqualTo(QueryProfiler.shapeOf(oldestFirst, "find"));
+    }
+
+    @Test
+    void shapeOfCollapsesValueLists() {
+        BsonDocument two = BsonDocument.parse("{count: 'messages', query: {r: 'a', f: {$in: [null, 1]}}}");
+        BsonDocument three = BsonDocument.parse("{count: 'messages', query: {r: 'b', f: {$in: [null, 1, 3]}}}");
+
+        String shape = QueryProfiler.shapeOf(two, "count");
+
+        assertThat(shape).isEqualTo(QueryProfiler.shapeOf(three, "count"));
+        assertThat(BsonDocument.parse(shape)).isEqualTo(BsonDocument.parse("{filter: {r: '?', f: {$in: '?'}}}"));
+    }
+
+    @Test
+    void shapeOfUsesTheFirstStatementOfWritesAndTheLeadingMatchOfPipelines() {
+        BsonDocument update = BsonDocument.parse("{update: 'messages', updates: ["
+                + "{q: {_id: 'x'}, u: {$set: {f: 2}}}, {q: {r: 'y', s: 'z'}, u: {$set: {f: 2}}}]}");
+        BsonDocument aggregate = BsonDocument.parse("{aggregate: 'search', pipeline: ["
+                + "{$match: {$text: {$search: 'hello'}, chatId: {$in: ['a_b']}}}, {$limit: 20}], cursor: {}}");
+
+        assertThat(BsonDocument.parse(QueryProfiler.shapeOf(update, "update")))
+                .isEqualTo(BsonDocument.parse("{filter: {_id: '?'}}"));
+        assertThat(BsonDocument.parse(QueryProfiler.shapeOf(aggregate, "aggregate")))
+                .isEqualTo(BsonDocument.parse("{match: {$text: {$search: '?'}, chatId: {$in: '?'}}}"));
+    }
+
+    @Test
+    void explainCommandDropsSessionFieldsAndKeepsOneStatement() {
+        BsonDocument delete = BsonDocument.parse("{delete: 'messages', deletes: ["
+                + "{q: {_id: 1}, limit: 1}, {q: {_id: 2}, limit: 1}], ordered: true,"
+                + " lsid: {id: 'session'}, txnNumber: 3, $db: 'messaging_db', $clusterTime: {}}");
+
+        Document explain = QueryProfiler.explainCommand(delete, "delete");
+
+        assertThat(explain.getString("verbosity")).isEqualTo("queryPlanner");
+        BsonDocument explained = (BsonDocument) explain.get("explain");
+        assertThat(explained.keySet()).containsExactly("delete", "deletes", "ordered");
+        assertThat(explained.getArray("deletes")).hasSize(1);
+        assertThat(explained.getArray("deletes").get(0).asDocument().getDocument("q").getInt32("_id").getValue())
+                .isEqualTo(1);
+    }
+
+    private static Document explain(String name) throws IOException {
+        try (InputStream in = QueryProfilerTest.class.getResourceAsStream("/explain/" + name)) {
+            assertThat(in).as(name).isNotNull();
+            return Document.parse(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+}
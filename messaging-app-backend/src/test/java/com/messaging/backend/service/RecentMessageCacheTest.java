@@ -0,0 +1,90 @@
+package com.messaging.backend.service;
+
+import com.messaging.backend.model.Message;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Sends of one chat whose writes finish out of order, appended in the order they finished.
+ */
+class RecentMessageCacheTest {
+
+    private static final String CHAT = "alice_bob";
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    private RecentMessageCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new RecentMessageCache();
+        ReflectionTestUtils.setField(cache, "messagesPerChat", 4);
+        ReflectionTestUtils.setField(cache, "maxTotalBytes", Long.MAX_VALUE);
+    }
+
+    @Test
+    void lateAppendIsPutInKeyOrder() {
+        cache.install(CHAT, List.of(message(1)), cache.writeStamp(CHAT));
+
+        cache.append(message(3));
+        cache.append(message(2));
+
+        assertThat(ids(cache.getRecent(CHAT, 4))).containsExactly("m1", "m2", "m3");
+    }
+
+    @Test
+    void sameTimestampIsOrderedById() {
+        cache.install(CHAT, List.of(), cache.writeStamp(CHAT));
+        Message second = message(1);
+        second.setId("m1b");
+
+        cache.append(second);
+        cache.append(message(1));
+
+        assertThat(ids(cache.getRecent(CHAT, 4))).containsExactly("m1", "m1b");
+    }
+
+    @Test
+    void lateAppendPushesOutTheOldestOfAFullRing() {
+        cache.install(CHAT, List.of(message(1), message(2), message(4)), cache.writeStamp(CHAT));
+        cache.append(message(5));
+
+        cache.append(message(3));
+
+        assertThat(ids(cache.getRecent(CHAT, 4))).containsExactly("m2", "m3", "m4", "m5");
+        // Message 1 left the ring, so the ring no longer answers for the whole chat
+        assertThat(cache.getRecent(CHAT, 5)).isNull();
+    }
+
+    @Test
+    void appendOlderThanAFullRingIsLeftOut() {
+        cache.install(CHAT, List.of(message(2), message(3)), cache.writeStamp(CHAT));
+        cache.append(message(4));
+        cache.append(message(5));
+
+        cache.append(message(1));
+
+        assertThat(ids(cache.getRecent(CHAT, 4))).containsExactly("m2", "m3", "m4", "m5");
+        assertThat(cache.getRecent(CHAT, 5)).isNull();
+    }
+
+    private static Message message(int n) {
+        Message message = new Message();
+        message.setId("m" + n);
+        message.setChatId(CHAT);
+        message.setSenderId("alice");
+        message.setReceiverId("bob");
+        message.setContent("message " + n);
+        message.setTimestamp(START.plusSeconds(n));
+        return message;
+    }
+
+    private static List<String> ids(List<Message> messages) {
+        return messages.stream().map(Message::getId).toList();
+    }
+}
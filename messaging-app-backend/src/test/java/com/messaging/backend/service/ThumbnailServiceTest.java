@@ -0,0 +1,78 @@
+package com.messaging.backend.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Thumbnails rendered on the test thread from images written to a temporary folder.
+ */
+class ThumbnailServiceTest {
+
+    @TempDir
+    Path folder;
+
+    private ThumbnailService thumbnails;
+
+    @BeforeEach
+    void setUp() {
+        thumbnails = new ThumbnailService(1, 1);
+        ReflectionTestUtils.setField(thumbnails, "jpegQuality", 0.8f);
+        ReflectionTestUtils.setField(thumbnails, "maxSourcePixels", 100_000_000L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        thumbnails.shutdown();
+    }
+
+    @Test
+    void largeImageIsDecodedSubsampled() throws IOException {
+        Path original = image("large.png", 4000, 3000);
+
+        ReflectionTestUtils.invokeMethod(thumbnails, "generate", original);
+
+        BufferedImage medium = ImageIO.read(thumbnails.resolve(original, ThumbnailService.Size.MEDIUM).toFile());
+        assertThat(medium.getWidth()).isEqualTo(480);
+        assertThat(medium.getHeight()).isEqualTo(360);
+        assertThat(thumbnails.getStats()).containsEntry("subsampled", 1L).containsEntry("generated", 1L);
+    }
+
+    @Test
+    void smallImageIsDecodedAsIs() throws IOException {
+        Path original = image("small.png", 600, 400);
+
+        ReflectionTestUtils.invokeMethod(thumbnails, "generate", original);
+
+        BufferedImage small = ImageIO.read(thumbnails.resolve(original, ThumbnailService.Size.SMALL).toFile());
+        assertThat(small.getWidth()).isEqualTo(160);
+        assertThat(thumbnails.getStats()).containsEntry("subsampled", 0L);
+    }
+
+    @Test
+    void imageOverThePixelCapGetsNoThumbnails() throws IOException {
+        ReflectionTestUtils.setField(thumbnails, "maxSourcePixels", 1_000_000L);
+        Path original = image("huge.png", 2000, 1000);
+
+        ReflectionTestUtils.invokeMethod(thumbnails, "generate", original);
+
+        assertThat(Files.exists(thumbnails.resolve(original, ThumbnailService.Size.SMALL))).isFalse();
+        assertThat(thumbnails.getStats()).containsEntry("tooLarge", 1L).containsEntry("generated", 0L);
+    }
+
+    private Path image(String name, int width, int height) throws IOException {
+        Path path = folder.resolve(name);
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", path.toFile());
+        return path;
+    }
+}
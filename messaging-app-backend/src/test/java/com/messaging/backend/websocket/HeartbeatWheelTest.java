@@ -0,0 +1,96 @@
+package com.messaging.backend.websocket;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The wheel driven tick by tick without its thread, with one heartbeat per tick.
+ */
+class HeartbeatWheelTest {
+
+    private HeartbeatWheel wheel;
+
+    @BeforeEach
+    void setUp() {
+        wheel = new HeartbeatWheel();
+        ReflectionTestUtils.setField(wheel, "enabled", false);
+        ReflectionTestUtils.setField(wheel, "intervalMs", 100L);
+        ReflectionTestUtils.setField(wheel, "maxMissed", 2);
+        ReflectionTestUtils.setField(wheel, "tickMs", 100L);
+        ReflectionTestUtils.setField(wheel, "wheelSize", 8);
+        wheel.init();
+        ReflectionTestUtils.setField(wheel, "enabled", true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        wheel.shutdown();
+    }
+
+    @Test
+    void silentSessionIsExpiredOnceItsPingsWentOut() {
+        RecordingTarget target = new RecordingTarget(true);
+        target.handle = wheel.register(target);
+
+        tick(10);
+
+        // Registered at tick 0: pinged at 1 (seen at registration), missed at 2 and expired at 3
+        assertThat(target.pings).isEqualTo(2);
+        assertThat(target.expired).isTrue();
+        assertThat(wheel.getStats().get("expired")).isEqualTo(1L);
+    }
+
+    @Test
+    void sessionWhosePingIsStillQueuedIsNotExpired() {
+        RecordingTarget target = new RecordingTarget(false);
+        target.handle = wheel.register(target);
+
+        tick(10);
+
+        // One ping queued and never written; every later heartbeat waits for it instead of counting a miss
+        assertThat(target.pings).isEqualTo(1);
+        assertThat(target.expired).isFalse();
+        assertThat((Long) wheel.getStats().get("delayedPings")).isGreaterThan(0L);
+
+        target.handle.pingSent();
+        target.handle.alive();
+        tick(2);
+
+        assertThat(target.pings).isEqualTo(2);
+        assertThat(target.expired).isFalse();
+    }
+
+    private void tick(int ticks) {
+        for (int i = 0; i < ticks; i++) {
+            wheel.tick();
+        }
+    }
+
+    private static final class RecordingTarget implements HeartbeatWheel.Target {
+        private final boolean writerKeepsUp;
+        private HeartbeatWheel.Handle handle;
+        private int pings = 0;
+        private boolean expired = false;
+
+        private RecordingTarget(boolean writerKeepsUp) {
+            this.writerKeepsUp = writerKeepsUp;
+        }
+
+        @Override
+        public void ping() {
+            pings++;
+            if (writerKeepsUp) {
+                handle.pingSent();
+            }
+        }
+
+        @Override
+        public void expire() {
+            expired = true;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.messaging.backend.websocket;
+
+import com.messaging.backend.service.MessagingMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Lanes driven by an executor that only runs its tasks when the test says so, which shows which thread
+ * writes and how a drain splits into batches.
+ */
+class OutboundLanesTest {
+
+    private final Queue<Runnable> scheduled = new ArrayDeque<>();
+    private final List<String> written = new ArrayList<>();
+    private MessagingMetrics metrics;
+
+    @BeforeEach
+    void setUp() {
+        metrics = new MessagingMetrics();
+        ReflectionTestUtils.setField(metrics, "registry", new SimpleMeterRegistry());
+    }
+
+    @Test
+    void offeringOnlySchedulesTheWriter() {
+        OutboundLanes lanes = lanes(64);
+
+        assertThat(lanes.offer(OutboundLanes.Lane.PAYLOAD, "a")).isTrue();
+        assertThat(lanes.offer(OutboundLanes.Lane.CONTROL, "b")).isTrue();
+
+        assertThat(written).isEmpty();
+        assertThat(scheduled).hasSize(1);
+
+        runScheduled();
+
+        assertThat(written).containsExactly("b", "a");
+        assertThat(lanes.isEmpty()).isTrue();
+    }
+
+    @Test
+    void drainHandsBackItsThreadAfterABatch() {
+        OutboundLanes lanes = lanes(2);
+        for (int i = 0; i < 5; i++) {
+            lanes.offer(OutboundLanes.Lane.PAYLOAD, "m" + i);
+        }
+
+        scheduled.poll().run();
+        assertThat(written).containsExactly("m0", "m1");
+        // The rest is scheduled again, and an offer in between does not start a second drain
+        lanes.offer(OutboundLanes.Lane.PAYLOAD, "m5");
+        assertThat(scheduled).hasSize(1);
+
+        runScheduled();
+
+        assertThat(written).containsExactly("m0", "m1", "m2", "m3", "m4", "m5");
+    }
+
+    @Test
+    void controlEventsOvertakeQueuedDeliveriesUpToTheWeight() {
+        OutboundLanes lanes = lanes(64);
+        lanes.offer(OutboundLanes.Lane.PAYLOAD, "p0");
+        lanes.offer(OutboundLanes.Lane.PAYLOAD, "p1");
+        for (int i = 0; i < 3; i++) {
+            lanes.offer(OutboundLanes.Lane.CONTROL, "c" + i);
+        }
+
+        runScheduled();
+
+        assertThat(written).containsExactly("c0", "c1", "p0", "c2", "p1");
+    }
+
+    @Test
+    void closeRunsOnTheWriterAndDropsWhatIsQueued() {
+        OutboundLanes lanes = lanes(2);
+        for (int i = 0; i < 4; i++) {
+            lanes.offer(OutboundLanes.Lane.PAYLOAD, "m" + i);
+        }
+        scheduled.poll().run();
+
+        lanes.close(() -> written.add("closed"));
+        lanes.close(() -> written.add("closed again"));
+        assertThat(lanes.offer(OutboundLanes.Lane.CONTROL, "late")).isTrue();
+        assertThat(written).containsExactly("m0", "m1");
+
+        runScheduled();
+
+        assertThat(written).containsExactly("m0", "m1", "closed");
+        assertThat(lanes.isEmpty()).isTrue();
+    }
+
+    private OutboundLanes lanes(int batchSize) {
+        return new OutboundLanes(16, 2, Long.MAX_VALUE, written::add, metrics, scheduled::offer, batchSize);
+    }
+
+    private void runScheduled() {
+        Runnable task;
+        while ((task = scheduled.poll()) != null) {
+            task.run();
+        }
+    }
+}
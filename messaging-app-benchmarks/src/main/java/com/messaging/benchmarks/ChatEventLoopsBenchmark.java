@@ -0,0 +1,140 @@
+package com.messaging.benchmarks;
+
+import com.messaging.backend.service.ChatEventLoops;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Sends spread over a fixed set of chats, each persisted by a stub store that completes on a pool of
+ * store threads after a random amount of work (like the Mongo driver, completions overtake each other),
+ * then delivered. {@code sharded} goes through ChatEventLoops with 1..N shards; {@code unordered} delivers
+ * on whichever store thread completed, which is what the WebSocket handlers did before. The reorders
+ * counter is the number of deliveries that arrived after a later send of the same chat.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChatEventLoopsBenchmark {
+
+    private static final int CHATS = 15;
+    private static final int SENDS = 1024;
+    private static final int MAX_STORE_SPINS = 2000;
+
+    @Param({"1", "2", "4", "8"})
+    private int shards;
+
+    private ChatEventLoops loops;
+    private Scheduler store;
+    private String[] chatIds;
+    // Next sequence number per chat; sharded sends take it on their shard, unordered ones from the caller
+    private AtomicLongArray nextSeq;
+    private AtomicLongArray lastDelivered;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        loops = new ChatEventLoops();
+        BenchmarkSupport.setField(loops, "configuredShards", shards);
+        loops.init();
+        store = Schedulers.newParallel("store", 4);
+        chatIds = new String[CHATS];
+        for (int i = 0; i < CHATS; i++) {
+            chatIds[i] = String.format("64f1c2a9e4b0a1b2c3d4%04x_64f1c2a9e4b0a1b2c3d5%04x", i, i);
+        }
+        nextSeq = new AtomicLongArray(CHATS);
+        lastDelivered = new AtomicLongArray(CHATS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        loops.shutdown();
+        store.dispose();
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Reorders {
+        public long reorders;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            reorders = 0;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SENDS)
+    public void sharded(Reorders counters) throws InterruptedException {
+        CountDownLatch delivered = new CountDownLatch(SENDS);
+        AtomicLong reorders = new AtomicLong();
+        for (int i = 0; i < SENDS; i++) {
+            int chat = i % CHATS;
+            loops.submitOrdered(chatIds[chat], () -> persist(nextSeq.incrementAndGet(chat)),
+                    seq -> {
+                        deliver(chat, seq, reorders);
+                        delivered.countDown();
+                    },
+                    error -> delivered.countDown());
+        }
+        delivered.await();
+        counters.reorders += reorders.get();
+    }
+
+    // Baseline only: its numbers do not depend on the shards parameter
+    @Benchmark
+    @OperationsPerInvocation(SENDS)
+    public void unordered(Reorders counters) throws InterruptedException {
+        CountDownLatch delivered = new CountDownLatch(SENDS);
+        AtomicLong reorders = new AtomicLong();
+        for (int i = 0; i < SENDS; i++) {
+            int chat = i % CHATS;
+            persist(nextSeq.incrementAndGet(chat)).subscribe(seq -> {
+                deliver(chat, seq, reorders);
+                delivered.countDown();
+            });
+        }
+        delivered.await();
+        counters.reorders += reorders.get();
+    }
+
+    private Mono<Long> persist(long seq) {
+        return Mono.fromCallable(() -> {
+            int spins = ThreadLocalRandom.current().nextInt(MAX_STORE_SPINS);
+            for (int i = 0; i < spins; i++) {
+                Thread.onSpinWait();
+            }
+            return seq;
+        }).subscribeOn(store);
+    }
+
+    private void deliver(int chat, long seq, AtomicLong reorders) {
+        long previous = lastDelivered.getAndAccumulate(chat, seq, Math::max);
+        if (seq < previous) {
+            reorders.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.messaging.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Prints score and allocation changes between two JMH JSON result files, e.g. from two commits:
+ * java -cp target/benchmarks.jar com.messaging.benchmarks.CompareResults results/base.json results/head.json
+ */
+public class CompareResults {
+
+    private static final String ALLOC_METRIC = "gc.alloc.rate.norm";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: CompareResults <baseline.json> <current.json>");
+            System.exit(1);
+        }
+        Map<String, JsonNode> baseline = load(new File(args[0]));
+        Map<String, JsonNode> current = load(new File(args[1]));
+
+        System.out.printf("%-70s %14s %14s %9s %12s %12s%n", "Benchmark", "Baseline", "Current", "Change", "B/op base", "B/op now");
+        for (Map.Entry<String, JsonNode> entry : current.entrySet()) {
+            JsonNode now = entry.getValue();
+            JsonNode base = baseline.get(entry.getKey());
+            double nowScore = now.path("primaryMetric").path("score").asDouble();
+            String unit = now.path("primaryMetric").path("scoreUnit").asText();
+            if (base == null) {
+                System.out.printf("%-70s %14s %14.3f %9s %12s %12.1f%n", entry.getKey(), "-", nowScore, "new", "-", allocation(now));
+                continue;
+            }
+            double baseScore = base.path("primaryMetric").path("score").asDouble();
+            double change = baseScore == 0 ? 0 : (nowScore - baseScore) / baseScore * 100;
+            System.out.printf("%-70s %14.3f %14.3f %8.1f%% %12.1f %12.1f  %s%n",
+                    entry.getKey(), baseScore, nowScore, change, allocation(base), allocation(now), unit);
+        }
+    }
+
+    private static Map<String, JsonNode> load(File file) throws IOException {
+        Map<String, JsonNode> results = new LinkedHashMap<>();
+        for (JsonNode result : new ObjectMapper().readTree(file)) {
+            String key = result.path("benchmark").asText() + " " + result.path("mode").asText();
+            if (result.has("params")) {
+                key += " " + result.get("params");
+            }
+            results.put(key, result);
+        }
+        return results;
+    }
+
+    private static double allocation(JsonNode result) {
+        JsonNode secondary = result.path("secondaryMetrics");
+        for (Map.Entry<String, JsonNode> metric : (Iterable<Map.Entry<String, JsonNode>>) secondary::fields) {
+            if (metric.getKey().endsWith(ALLOC_METRIC)) {
+                return metric.getValue().path("score").asDouble();
+            }
+        }
+        return Double.NaN;
+    }
+}
@@ -0,0 +1,90 @@
+package com.messaging.benchmarks;
+
+import com.messaging.backend.websocket.HeartbeatWheel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One tick of the heartbeat wheel with every session connected, at the production settings (30s interval,
+ * 100ms ticks, so each tick pings 1/300 of the sessions). Sessions connected evenly over one interval; their
+ * ping only marks the ping sent and answered, as queuing it on a real session's writer costs about as little.
+ * Targets run on the wheel thread, so the score is the timer's whole CPU cost per tick; its share of one
+ * core is the time per tick divided by the 100ms tick.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HeartbeatWheelBenchmark {
+
+    private static final long INTERVAL_MS = 30_000;
+    private static final long TICK_MS = 100;
+
+    @Param({"10000", "100000"})
+    private int sessions;
+
+    private HeartbeatWheel wheel;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        wheel = new HeartbeatWheel();
+        BenchmarkSupport.setField(wheel, "enabled", false);
+        BenchmarkSupport.setField(wheel, "intervalMs", INTERVAL_MS);
+        BenchmarkSupport.setField(wheel, "maxMissed", 2);
+        BenchmarkSupport.setField(wheel, "tickMs", TICK_MS);
+        BenchmarkSupport.setField(wheel, "wheelSize", 512);
+        // Initialized without its thread; the benchmark drives the ticks
+        wheel.init();
+        BenchmarkSupport.setField(wheel, "enabled", true);
+
+        long ticksPerInterval = INTERVAL_MS / TICK_MS;
+        for (long tick = 0; tick < ticksPerInterval; tick++) {
+            long from = sessions * tick / ticksPerInterval;
+            long to = sessions * (tick + 1) / ticksPerInterval;
+            for (long i = from; i < to; i++) {
+                PongingSession session = new PongingSession();
+                session.handle = wheel.register(session);
+            }
+            wheel.tick();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        wheel.shutdown();
+    }
+
+    @Benchmark
+    public int tick() {
+        return wheel.tick();
+    }
+
+    private final class PongingSession implements HeartbeatWheel.Target {
+        private volatile HeartbeatWheel.Handle handle;
+
+        @Override
+        public void ping() {
+            handle.pingSent();
+            handle.alive();
+        }
+
+        @Override
+        public void expire() {
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.messaging.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.messaging.backend.config.JacksonConfig;
+import com.messaging.backend.model.Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Mirrors what ChatWebSocketHandler does for every delivered message
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonSerializationBenchmark {
+
+    private ObjectMapper objectMapper;
+    private Message message;
+    private String inboundFrame;
+
+    @Setup
+    public void setup() throws JsonProcessingException {
+        objectMapper = new JacksonConfig().objectMapper();
+
+        message = new Message();
+        message.setId("64f1c2a9e4b0a1b2c3d4e5f7");
+        message.setSenderId("64f1c2a9e4b0a1b2c3d4e5f6");
+        message.setReceiverId("64f1c2a9e4b0a1b2c3d4e5f8");
+        message.setChatId("64f1c2a9e4b0a1b2c3d4e5f6_64f1c2a9e4b0a1b2c3d4e5f8");
+        message.setContent("Hey, are we still on for lunch tomorrow? I found a new place near the office.");
+
+        Map<String, Object> frame = new HashMap<>();
+        frame.put("type", "SEND_MESSAGE");
+        frame.put("receiverId", message.getReceiverId());
+        frame.put("content", message.getContent());
+        frame.put("messageType", "TEXT");
+        inboundFrame = objectMapper.writeValueAsString(frame);
+    }
+
+    @Benchmark
+    public String serializeMessage() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(message);
+    }
+
+    @Benchmark
+    public String serializeNewMessageEvent() throws JsonProcessingException {
+        Map<String, Object> response = new HashMap<>();
+        response.put("type", "NEW_MESSAGE");
+        response.put("message", message);
+        return objectMapper.writeValueAsString(response);
+    }
+
+    @Benchmark
+    public String serializeConnectionEstablishedEvent() throws JsonProcessingException {
+        Map<String, Object> response = new HashMap<>();
+        response.put("type", "CONNECTION_ESTABLISHED");
+        response.put("userId", message.getSenderId());
+        return objectMapper.writeValueAsString(response);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> parseSendMessageFrame() throws JsonProcessingException {
+        return objectMapper.readValue(inboundFrame, Map.class);
+    }
+}
@@ -0,0 +1,47 @@
+package com.messaging.benchmarks;
+
+import com.messaging.backend.security.JwtTokenProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Runs on every REST call and every inbound WebSocket frame
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtTokenProviderBenchmark {
+
+    private JwtTokenProvider tokenProvider;
+    private String token;
+
+    @Setup
+    public void setup() {
+        tokenProvider = new JwtTokenProvider();
+        BenchmarkSupport.setField(tokenProvider, "jwtSecret",
+                "mySecretKey123456789012345678901234567890123456789012345678901234567890123456789012345678901234567890");
+        BenchmarkSupport.setField(tokenProvider, "jwtExpirationInMs", 86400000);
+        token = tokenProvider.generateToken("alice", "64f1c2a9e4b0a1b2c3d4e5f6");
+    }
+
+    @Benchmark
+    public boolean validateToken() {
+        return tokenProvider.validateToken(token);
+    }
+
+    @Benchmark
+    public String getUserIdFromToken() {
+        return tokenProvider.getUserIdFromToken(token);
+    }
+}
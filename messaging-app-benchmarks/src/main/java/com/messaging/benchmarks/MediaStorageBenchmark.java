@@ -0,0 +1,102 @@
+package com.messaging.benchmarks;
+
+import com.messaging.backend.service.MediaStorage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Looking up and creating media files in a folder that already holds a million of them, with every file in
+ * the one folder (flat, the layout before sharding) and spread over two levels of hash-prefixed folders
+ * (sharded). A lookup goes through MediaStorage.locate, which tries the sharded path first, so a flat lookup
+ * also pays for that miss, as it does for files the migration has not moved yet. A create makes an empty
+ * file under a new name. Setup writes the million files into a temporary directory on the default file
+ * system (-Djava.io.tmpdir picks another disk); expect it to take a minute or more per layout.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MediaStorageBenchmark {
+
+    private static final String FOLDER = "images";
+    private static final int USERS = 5000;
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+    private static final DateTimeFormatter NAME_TIME = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
+
+    @Param({"1000000"})
+    private int files;
+
+    @Param({"flat", "sharded"})
+    private String layout;
+
+    private Path root;
+    private MediaStorage storage;
+    private long created = 0;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        root = Files.createTempDirectory("media-benchmark");
+        storage = new MediaStorage();
+        BenchmarkSupport.setField(storage, "uploadDir", root.toString());
+        Files.createDirectories(storage.getFolder(FOLDER));
+        for (int i = 0; i < files; i++) {
+            Files.createFile(path(name(i)));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    @Benchmark
+    public Path lookup() {
+        return storage.locate(FOLDER, name(ThreadLocalRandom.current().nextInt(files)));
+    }
+
+    @Benchmark
+    public Path create() throws IOException {
+        return Files.createFile(path("uploader_" + NAME_TIME.format(START.plusSeconds(created++)) + ".jpg"));
+    }
+
+    private Path path(String name) throws IOException {
+        return "flat".equals(layout) ? storage.flatPath(FOLDER, name) : storage.resolveForWrite(FOLDER, name);
+    }
+
+    // Shaped like the names FileController gives uploads: username_yyyyMMdd_HHmmss.ext, unique per i
+    private static String name(int i) {
+        return "user" + (i % USERS) + "_" + NAME_TIME.format(START.plusSeconds(i / USERS)) + ".jpg";
+    }
+}
@@ -0,0 +1,87 @@
+package com.messaging.benchmarks;
+
+import com.messaging.backend.config.MetricsConfig;
+import com.messaging.backend.service.MessagingMetrics;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+
+// Cost of the metrics recorded on every message, against the work they wrap
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricsOverheadBenchmark {
+
+    public interface Lookup {
+        Mono<String> findById(String id);
+    }
+
+    private MessagingMetrics metrics;
+    private Lookup plainRepository;
+    private Lookup timedRepository;
+    private long receivedAt;
+
+    @Setup
+    public void setup() {
+        metrics = new MessagingMetrics();
+        BenchmarkSupport.setField(metrics, "registry", new PrometheusMeterRegistry(PrometheusConfig.DEFAULT));
+        metrics.init();
+        receivedAt = System.nanoTime();
+
+        Lookup target = id -> Mono.just(id);
+        plainRepository = proxy(target, null);
+
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("messagingMetrics", metrics);
+        timedRepository = proxy(target, new MetricsConfig.RepositoryTimingInterceptor(
+                beanFactory.getBeanProvider(MessagingMetrics.class), "Lookup"));
+    }
+
+    private static Lookup proxy(Lookup target, MetricsConfig.RepositoryTimingInterceptor interceptor) {
+        ProxyFactory factory = new ProxyFactory(target);
+        factory.addInterface(Lookup.class);
+        if (interceptor != null) {
+            factory.addAdvice(interceptor);
+        }
+        return (Lookup) factory.getProxy();
+    }
+
+    @Benchmark
+    public void inboundEvent() {
+        metrics.inboundEvent("SEND_MESSAGE");
+    }
+
+    @Benchmark
+    public long persistAndFanoutTimers() {
+        long persistedAt = metrics.recordPersist(receivedAt);
+        metrics.recordFanout(persistedAt);
+        return persistedAt;
+    }
+
+    @Benchmark
+    public String repositoryCallPlain() {
+        return plainRepository.findById("64f1c2a9e4b0a1b2c3d4e5f6").block();
+    }
+
+    @Benchmark
+    public String repositoryCallTimed() {
+        return timedRepository.findById("64f1c2a9e4b0a1b2c3d4e5f6").block();
+    }
+}
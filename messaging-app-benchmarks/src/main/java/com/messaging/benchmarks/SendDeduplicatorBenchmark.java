@@ -0,0 +1,98 @@
+package com.messaging.benchmarks;
+
+import com.messaging.backend.model.Message;
+import com.messaging.backend.service.MessageService;
+import com.messaging.backend.service.SendDeduplicator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * What deduplication adds to a send with a client message ID: a first send (remember the key, evict the
+ * oldest one once the ring is full) and a retry (replay the stored result), uncontended and with every
+ * hardware thread sending. The send itself is a stub, so only the deduplication is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SendDeduplicatorBenchmark {
+
+    private static final int RETRIED_KEYS = 4096;
+    private static final String SENDER = "64f1c2a9e4b0a1b2c3d4e5f6";
+
+    private SendDeduplicator deduplicator;
+    private Supplier<Mono<MessageService.SendResult>> send;
+    private String[] retriedKeys;
+    private final AtomicLong nextClientId = new AtomicLong();
+
+    @Setup
+    public void setup() {
+        deduplicator = new SendDeduplicator();
+        BenchmarkSupport.setField(deduplicator, "maxEntries", 50_000);
+        deduplicator.init();
+
+        Message message = new Message();
+        message.setId("00000000000f4240");
+        message.setSenderId(SENDER);
+        message.setReceiverId("64f1c2a9e4b0a1b2c3d4e5f8");
+        message.setContent("hello");
+        Mono<MessageService.SendResult> stored = Mono.just(new MessageService.SendResult(message));
+        send = () -> stored;
+
+        // Every benchmark method gets a fresh deduplicator, so these stay remembered during the retry runs
+        retriedKeys = new String[RETRIED_KEYS];
+        for (int i = 0; i < RETRIED_KEYS; i++) {
+            retriedKeys[i] = "retry-" + i;
+            deduplicator.sendOnce("retrier", retriedKeys[i], send).block();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        private int next;
+    }
+
+    @Benchmark
+    public MessageService.SendResult firstSend() {
+        return deduplicator.sendOnce(SENDER, "c-" + nextClientId.getAndIncrement(), send).block();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public MessageService.SendResult firstSendContended() {
+        return deduplicator.sendOnce(SENDER, "c-" + nextClientId.getAndIncrement(), send).block();
+    }
+
+    @Benchmark
+    public MessageService.SendResult retry(ThreadState state) {
+        return deduplicator.sendOnce("retrier", retriedKeys[state.next++ & (RETRIED_KEYS - 1)], send).block();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public MessageService.SendResult retryContended(ThreadState state) {
+        return deduplicator.sendOnce("retrier", retriedKeys[state.next++ & (RETRIED_KEYS - 1)], send).block();
+    }
+
+    // Baseline: the stubbed send without deduplication
+    @Benchmark
+    public MessageService.SendResult sendWithoutDedup() {
+        return send.get().block();
+    }
+}
@@ -0,0 +1,64 @@
+package com.messaging.benchmarks;
+
+import com.messaging.backend.model.User;
+import com.messaging.backend.service.MessageService;
+import com.messaging.backend.service.UserService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ServiceHelpersBenchmark {
+
+    private MessageService messageService;
+    private UserService userService;
+    private User user;
+    private String senderId;
+    private String receiverId;
+
+    @Setup
+    public void setup() {
+        messageService = new MessageService();
+        userService = new UserService();
+
+        senderId = "64f1c2a9e4b0a1b2c3d4e5f6";
+        receiverId = "64f1c2a9e4b0a1b2c3d4e5f8";
+
+        user = new User();
+        user.setId(senderId);
+        user.setUsername("alice");
+        user.setEmail("alice@example.com");
+        user.setPassword("$2a$10$abcdefghijklmnopqrstuv1234567890ABCDEFGHIJKLMNOPQRSTU");
+        user.setDisplayName("Alice");
+        user.setAvatarUrl("/api/files/images/alice_20240101_120000.png");
+        Set<String> contacts = new HashSet<>();
+        contacts.add(receiverId);
+        user.setContacts(contacts);
+    }
+
+    @Benchmark
+    public String generateChatId() {
+        return messageService.generateChatId(senderId, receiverId);
+    }
+
+    @Benchmark
+    public User sanitizeUser() {
+        return userService.sanitizeUser(user);
+    }
+}
@@ -0,0 +1,60 @@
+package com.messaging.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+// A backend started from a command line for one benchmark run, with its output in a log file
+final class BackendProcess implements AutoCloseable {
+
+    final Process process;
+    final File log;
+
+    private BackendProcess(Process process, File log) {
+        this.process = process;
+        this.log = log;
+    }
+
+    static BackendProcess start(String command, String dir, File log) throws IOException {
+        if (log.getAbsoluteFile().getParentFile() != null) {
+            log.getAbsoluteFile().getParentFile().mkdirs();
+        }
+        ProcessBuilder builder = new ProcessBuilder(Arrays.asList(command.trim().split("\\s+")))
+                .directory(new File(dir))
+                .redirectErrorStream(true)
+                .redirectOutput(log);
+        return new BackendProcess(builder.start(), log);
+    }
+
+    void checkAlive(String name) {
+        if (!process.isAlive()) {
+            throw new IllegalStateException(name + " backend exited with " + process.exitValue() + ", see " + log);
+        }
+    }
+
+    // Resident set size from /proc (Linux); -1 elsewhere
+    double rssMb() {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc/" + process.pid() + "/status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    long kb = Long.parseLong(line.replaceAll("\\D", ""));
+                    return Math.round(kb / 102.4) / 10.0;
+                }
+            }
+        } catch (Exception e) {
+            // Not on Linux
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        process.destroy();
+        if (!process.waitFor(30, TimeUnit.SECONDS)) {
+            process.destroyForcibly().waitFor();
+        }
+    }
+}
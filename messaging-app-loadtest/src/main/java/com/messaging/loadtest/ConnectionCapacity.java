@@ -0,0 +1,336 @@
+package com.messaging.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Starts the backend once with /ws/chat on the servlet container and once in the reactive-ws profile (Reactor
+ * Netty), each with the same fixed heap, and opens idle WebSockets in steps of --step until --max-connections,
+ * a refused handshake or the backend dying. After every step it forces a full GC (jcmd GC.run) and reads the
+ * heap in use from the backend's Prometheus endpoint, so each step reports the live heap its connections
+ * hold. The report gives per mode the most connections held at once, the heap each one costs (the growth
+ * from the first step to the last, divided by the connections added) and how many connections at that cost
+ * fit into one GB of heap.
+ *
+ * Sockets use tokens signed locally with the backend's JWT secret for distinct user IDs, so nothing has to be
+ * registered; the backend marks each user online in MongoDB, which should be running so those writes do not
+ * pile up as retries. Every socket is a file descriptor on both sides: raise ulimit -n for large runs.
+ */
+public final class ConnectionCapacity {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final Pattern MAX_HEAP = Pattern.compile("-Xmx(\\d+)([kKmMgG]?)");
+    private static final String HEAP_USED = "jvm_memory_used_bytes{";
+    private static final double MB = 1024 * 1024;
+
+    private String dir = "../messaging-app-backend";
+    private String servlet = "java -Xmx512m -XX:+ExitOnOutOfMemoryError"
+            + " -jar target/messaging-backend-0.0.1-SNAPSHOT-exec.jar --rate-limit.enabled=false";
+    private String reactive = "java -Xmx512m -XX:+ExitOnOutOfMemoryError"
+            + " -jar target/messaging-backend-0.0.1-SNAPSHOT-exec.jar --rate-limit.enabled=false"
+            + " --spring.profiles.active=reactive-ws";
+    private String servletWsUrl = "ws://localhost:8080/ws/chat";
+    private String reactiveWsUrl = "ws://localhost:8081/ws/chat";
+    private String metricsUrl = "http://localhost:9091/actuator/prometheus";
+    private String jwtSecret = LocalTokens.DEFAULT_SECRET;
+    private String jcmd = "jcmd";
+    private int step = 1000;
+    private int maxConnections = 20000;
+    private int connectThreads = 32;
+    private int timeoutSeconds = 180;
+    private String output = "target/connection-capacity";
+
+    private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+    private final String runId = Integer.toHexString(ThreadLocalRandom.current().nextInt(0x10000, 0xfffff));
+
+    public static void main(String[] args) throws Exception {
+        ConnectionCapacity capacity = new ConnectionCapacity();
+        try {
+            capacity.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            usage();
+            System.exit(2);
+            return;
+        }
+        capacity.run();
+    }
+
+    private void parse(String[] args) {
+        for (String arg : args) {
+            if (arg.equals("--help")) {
+                usage();
+                System.exit(0);
+            }
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            String name = arg.substring(2, separator);
+            String value = arg.substring(separator + 1);
+            switch (name) {
+                case "dir" -> dir = value;
+                case "servlet" -> servlet = value;
+                case "reactive" -> reactive = value;
+                case "servlet-ws-url" -> servletWsUrl = value;
+                case "reactive-ws-url" -> reactiveWsUrl = value;
+                case "metrics-url" -> metricsUrl = value;
+                case "jwt-secret" -> jwtSecret = value;
+                case "jcmd" -> jcmd = value;
+                case "step" -> step = Integer.parseInt(value);
+                case "max-connections" -> maxConnections = Integer.parseInt(value);
+                case "connect-threads" -> connectThreads = Integer.parseInt(value);
+                case "timeout" -> timeoutSeconds = Integer.parseInt(value);
+                case "output" -> output = value;
+                default -> throw new IllegalArgumentException("Unknown option --" + name);
+            }
+        }
+        if (step < 1 || maxConnections < 1 || connectThreads < 1) {
+            throw new IllegalArgumentException("--step, --max-connections and --connect-threads must be positive");
+        }
+    }
+
+    private static void usage() {
+        System.out.println("""
+                Usage: java -cp target/loadtest.jar com.messaging.loadtest.ConnectionCapacity [options]
+                  --dir=../messaging-app-backend        working directory of the backend processes
+                  --servlet="java -Xmx512m ... -jar target/..."
+                                                        command of the servlet WebSocket mode
+                  --reactive="java -Xmx512m ... --spring.profiles.active=reactive-ws"
+                                                        command of the reactive WebSocket mode
+                  --servlet-ws-url=ws://localhost:8080/ws/chat
+                  --reactive-ws-url=ws://localhost:8081/ws/chat
+                  --metrics-url=http://localhost:9091/actuator/prometheus
+                                                        backend Prometheus endpoint, for heap in use
+                  --jwt-secret=...                      backend jwt.secret (defaults to application.properties)
+                  --jcmd=jcmd                           jcmd used to force a GC before each heap reading
+                  --step=1000                           connections opened per step
+                  --max-connections=20000               stop once this many are open
+                  --connect-threads=32                  handshakes in flight while opening a step
+                  --timeout=180                         seconds to wait for the backend to accept a socket
+                  --output=target/connection-capacity   report prefix (.json)""");
+    }
+
+    private void run() throws Exception {
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("runId", runId);
+        config.put("servlet", servlet);
+        config.put("reactive", reactive);
+        config.put("step", step);
+        config.put("maxConnections", maxConnections);
+        config.put("cpus", Runtime.getRuntime().availableProcessors());
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("config", config);
+        report.put("servlet", measure("servlet", servlet, servletWsUrl));
+        report.put("reactive", measure("reactive", reactive, reactiveWsUrl));
+
+        File json = new File(output + ".json");
+        if (json.getAbsoluteFile().getParentFile() != null) {
+            json.getAbsoluteFile().getParentFile().mkdirs();
+        }
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(json, report);
+        System.out.println(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(report));
+        System.out.println("Report written to " + json.getPath());
+    }
+
+    private Map<String, Object> measure(String mode, String command, String wsUrl) throws Exception {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("maxHeapMb", maxHeapMb(command));
+        List<SyntheticUser> users = new ArrayList<>();
+        ExecutorService connector = Executors.newFixedThreadPool(connectThreads);
+        File log = new File(output + "-" + mode + ".log");
+        try (BackendProcess backend = BackendProcess.start(command, dir, log)) {
+            openInSteps(backend, mode, wsUrl, users, connector, log, result);
+        } finally {
+            connector.shutdownNow();
+        }
+        return result;
+    }
+
+    private void openInSteps(BackendProcess backend, String mode, String wsUrl, List<SyntheticUser> users,
+                             ExecutorService connector, File log, Map<String, Object> result) throws Exception {
+        try {
+            users.add(awaitFirstSocket(backend, mode, wsUrl));
+            double idleHeapMb = liveHeapMb(backend);
+            result.put("idleHeapMb", idleHeapMb);
+            System.out.printf("%s: 1 connection, live heap %.1f MB%n", mode, idleHeapMb);
+
+            List<Map<String, Object>> steps = new ArrayList<>();
+            String stoppedBy = "max-connections";
+            while (users.size() < maxConnections) {
+                int target = Math.min(maxConnections, users.size() + step);
+                String failure = openUpTo(target, users, connector, mode, wsUrl);
+                if (!backend.process.isAlive()) {
+                    stoppedBy = "backend exited with " + backend.process.exitValue() + ", see " + log;
+                    break;
+                }
+                long open = users.stream().filter(user -> !user.isClosed()).count();
+                if (failure != null || open < users.size()) {
+                    stoppedBy = failure != null ? failure : (users.size() - open) + " sockets closed by the server";
+                    break;
+                }
+                double heapMb = liveHeapMb(backend);
+                Map<String, Object> measured = new LinkedHashMap<>();
+                measured.put("connections", users.size());
+                measured.put("liveHeapMb", heapMb);
+                measured.put("rssMb", backend.rssMb());
+                Map<String, Object> previous = steps.isEmpty() ? null : steps.get(steps.size() - 1);
+                double previousHeapMb = previous == null ? idleHeapMb : (double) previous.get("liveHeapMb");
+                int previousConnections = previous == null ? 1 : (int) previous.get("connections");
+                measured.put("stepHeapPerConnectionKb",
+                        perConnectionKb(heapMb - previousHeapMb, users.size() - previousConnections));
+                steps.add(measured);
+                System.out.printf("%s: %d connections, live heap %.1f MB%n", mode, users.size(), heapMb);
+            }
+
+            Map<String, Object> last = steps.isEmpty() ? null : steps.get(steps.size() - 1);
+            result.put("maxConcurrentConnections", last == null ? 1 : last.get("connections"));
+            result.put("stoppedBy", stoppedBy);
+            if (last != null) {
+                // Slope from the first step on: the idle reading still holds some startup garbage
+                Map<String, Object> first = steps.get(0);
+                double perConnectionKb = steps.size() == 1
+                        ? (double) first.get("stepHeapPerConnectionKb")
+                        : perConnectionKb((double) last.get("liveHeapMb") - (double) first.get("liveHeapMb"),
+                                (int) last.get("connections") - (int) first.get("connections"));
+                result.put("heapPerConnectionKb", perConnectionKb);
+                result.put("connectionsPerGbHeap",
+                        perConnectionKb > 0 ? Math.round(1024 * 1024 / perConnectionKb) : null);
+            }
+            result.put("steps", steps);
+        } finally {
+            // While the backend still runs, so each close gets its answer
+            for (SyntheticUser user : users) {
+                user.close();
+            }
+        }
+    }
+
+    // Polls until the backend accepts a socket, so the idle heap is read from a started backend
+    private SyntheticUser awaitFirstSocket(BackendProcess backend, String mode, String wsUrl) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        while (true) {
+            backend.checkAlive(mode);
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException(mode + " backend accepted no socket within " + timeoutSeconds + "s");
+            }
+            SyntheticUser user = user(0);
+            try {
+                user.connect(httpClient, wsUrl);
+                if (user.awaitEstablished(5, TimeUnit.SECONDS)) {
+                    return user;
+                }
+                user.close();
+            } catch (RuntimeException e) {
+                // Not listening yet
+                Thread.sleep(200);
+            }
+        }
+    }
+
+    // Returns why opening stopped short of the target, or null once every socket got CONNECTION_ESTABLISHED
+    private String openUpTo(int target, List<SyntheticUser> users, ExecutorService connector, String mode,
+                            String wsUrl) throws Exception {
+        List<Future<?>> handshakes = new ArrayList<>();
+        List<SyntheticUser> opened = new ArrayList<>();
+        for (int i = users.size(); i < target; i++) {
+            SyntheticUser user = user(i);
+            opened.add(user);
+            handshakes.add(connector.submit(() -> {
+                user.connect(httpClient, wsUrl);
+                if (!user.awaitEstablished(30, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("no CONNECTION_ESTABLISHED within 30s");
+                }
+                return null;
+            }));
+        }
+        String failure = null;
+        for (int i = 0; i < handshakes.size(); i++) {
+            try {
+                handshakes.get(i).get();
+                users.add(opened.get(i));
+            } catch (Exception e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                if (failure == null) {
+                    failure = "connection " + (users.size() + 1) + " failed: " + cause;
+                    System.err.println(mode + ": " + failure);
+                }
+                opened.get(i).close();
+            }
+        }
+        return failure;
+    }
+
+    private SyntheticUser user(int index) throws Exception {
+        String userId = String.format("%s%019x", runId, (long) index);
+        return new SyntheticUser(index, userId, LocalTokens.sign(jwtSecret, userId), (user, event) -> { });
+    }
+
+    // Heap in use right after a full collection, summed over the heap pools
+    private double liveHeapMb(BackendProcess backend) throws Exception {
+        Process gc = new ProcessBuilder(jcmd, String.valueOf(backend.process.pid()), "GC.run")
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        if (!gc.waitFor(60, TimeUnit.SECONDS) || gc.exitValue() != 0) {
+            throw new IllegalStateException(jcmd + " GC.run failed for pid " + backend.process.pid());
+        }
+        HttpRequest request = HttpRequest.newBuilder(URI.create(metricsUrl))
+                .timeout(Duration.ofSeconds(30))
+                .GET()
+                .build();
+        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException(metricsUrl + " answered " + response.statusCode());
+        }
+        double bytes = 0;
+        boolean found = false;
+        for (String line : response.body().split("\n")) {
+            if (line.startsWith(HEAP_USED) && line.contains("area=\"heap\"")) {
+                bytes += Double.parseDouble(line.substring(line.lastIndexOf(' ') + 1));
+                found = true;
+            }
+        }
+        if (!found) {
+            throw new IllegalStateException("No heap jvm_memory_used_bytes at " + metricsUrl);
+        }
+        return Math.round(bytes / MB * 10) / 10.0;
+    }
+
+    private static double perConnectionKb(double heapMb, int connections) {
+        return connections <= 0 ? 0 : Math.round(heapMb * 1024 / connections * 100) / 100.0;
+    }
+
+    // -Xmx of the command in MB, or null when it leaves the heap to the JVM's default
+    private static Long maxHeapMb(String command) {
+        Matcher matcher = MAX_HEAP.matcher(command);
+        if (!matcher.find()) {
+            return null;
+        }
+        long value = Long.parseLong(matcher.group(1));
+        return switch (matcher.group(2).toLowerCase()) {
+            case "g" -> value * 1024;
+            case "m" -> value;
+            case "k" -> value / 1024;
+            default -> value / (1024 * 1024);
+        };
+    }
+}
@@ -0,0 +1,162 @@
+package com.messaging.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms (microsecond resolution, up to one minute) and event counters for one run.
+ * Everything is reset when the warmup ends so the report only covers the measured window.
+ */
+final class LatencyRecorder {
+
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    // SEND_MESSAGE written -> MESSAGE_SENT received by the sender (persisted and acknowledged)
+    final Histogram ackLatency = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+    // SEND_MESSAGE written -> NEW_MESSAGE received by the receiver (end to end)
+    final Histogram deliveryLatency = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+    // GET /api/messages/search request -> response
+    final Histogram searchLatency = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+    // Chat page, unread count and mark-read request -> response
+    final Histogram restLatency = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+
+    final LongAdder sent = new LongAdder();
+    final LongAdder acknowledged = new LongAdder();
+    final LongAdder delivered = new LongAdder();
+    final LongAdder rateLimited = new LongAdder();
+    final LongAdder errors = new LongAdder();
+    final LongAdder searches = new LongAdder();
+    final LongAdder searchErrors = new LongAdder();
+    final LongAdder restRequests = new LongAdder();
+    final LongAdder restErrors = new LongAdder();
+    // Sender ticks that found the previous send still blocked on the socket
+    final LongAdder missedTicks = new LongAdder();
+
+    private volatile long windowStartNanos = System.nanoTime();
+
+    void recordAck(long sentAtNanos) {
+        acknowledged.increment();
+        ackLatency.recordValue(micros(sentAtNanos));
+    }
+
+    void recordDelivery(long sentAtNanos) {
+        delivered.increment();
+        deliveryLatency.recordValue(micros(sentAtNanos));
+    }
+
+    void recordSearch(long startedAtNanos) {
+        searches.increment();
+        searchLatency.recordValue(micros(startedAtNanos));
+    }
+
+    void recordRest(long startedAtNanos) {
+        restRequests.increment();
+        restLatency.recordValue(micros(startedAtNanos));
+    }
+
+    void reset() {
+        ackLatency.reset();
+        deliveryLatency.reset();
+        searchLatency.reset();
+        restLatency.reset();
+        sent.reset();
+        acknowledged.reset();
+        delivered.reset();
+        rateLimited.reset();
+        errors.reset();
+        searches.reset();
+        searchErrors.reset();
+        restRequests.reset();
+        restErrors.reset();
+        missedTicks.reset();
+        windowStartNanos = System.nanoTime();
+    }
+
+    private static long micros(long sentAtNanos) {
+        long micros = (System.nanoTime() - sentAtNanos) / 1000;
+        return Math.min(Math.max(micros, 0), HIGHEST_TRACKABLE_MICROS);
+    }
+
+    Map<String, Object> report(long lost) {
+        double seconds = (System.nanoTime() - windowStartNanos) / 1e9;
+
+        Map<String, Object> counts = new LinkedHashMap<>();
+        counts.put("sent", sent.sum());
+        counts.put("acknowledged", acknowledged.sum());
+        counts.put("delivered", delivered.sum());
+        counts.put("rateLimited", rateLimited.sum());
+        counts.put("errors", errors.sum());
+        counts.put("searches", searches.sum());
+        counts.put("searchErrors", searchErrors.sum());
+        counts.put("restRequests", restRequests.sum());
+        counts.put("restErrors", restErrors.sum());
+        counts.put("missedTicks", missedTicks.sum());
+        counts.put("lost", lost);
+
+        Map<String, Object> throughput = new LinkedHashMap<>();
+        throughput.put("sentPerSecond", round(sent.sum() / seconds));
+        throughput.put("acknowledgedPerSecond", round(acknowledged.sum() / seconds));
+        throughput.put("deliveredPerSecond", round(delivered.sum() / seconds));
+        throughput.put("restPerSecond", round(restRequests.sum() / seconds));
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("measuredSeconds", round(seconds));
+        report.put("counts", counts);
+        report.put("throughput", throughput);
+        report.put("ackLatencyMs", summary(ackLatency));
+        report.put("deliveryLatencyMs", summary(deliveryLatency));
+        if (searchLatency.getTotalCount() > 0) {
+            report.put("searchLatencyMs", summary(searchLatency));
+        }
+        if (restLatency.getTotalCount() > 0) {
+            report.put("restLatencyMs", summary(restLatency));
+        }
+        return report;
+    }
+
+    static Map<String, Object> summary(Histogram histogram) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", histogram.getTotalCount());
+        summary.put("mean", round(histogram.getMean() / 1000.0));
+        summary.put("p50", millis(histogram, 50));
+        summary.put("p90", millis(histogram, 90));
+        summary.put("p99", millis(histogram, 99));
+        summary.put("p999", millis(histogram, 99.9));
+        summary.put("max", round(histogram.getMaxValue() / 1000.0));
+        return summary;
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return round(histogram.getValueAtPercentile(percentile) / 1000.0);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000.0) / 1000.0;
+    }
+
+    // Full percentile distributions in milliseconds, plottable with HdrHistogram's plotter
+    void writeDistributions(String prefix) throws IOException {
+        write(ackLatency, prefix + "-ack.hgrm");
+        write(deliveryLatency, prefix + "-delivery.hgrm");
+        if (searchLatency.getTotalCount() > 0) {
+            write(searchLatency, prefix + "-search.hgrm");
+        }
+        if (restLatency.getTotalCount() > 0) {
+            write(restLatency, prefix + "-rest.hgrm");
+        }
+    }
+
+    private static void write(Histogram histogram, String path) throws IOException {
+        try (PrintStream out = new PrintStream(new FileOutputStream(path))) {
+            histogram.outputPercentileDistribution(out, 1000.0);
+        }
+    }
+}
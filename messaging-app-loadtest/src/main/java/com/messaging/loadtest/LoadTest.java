@@ -0,0 +1,455 @@
+package com.messaging.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drives the chat WebSocket protocol with synthetic users: registers them over REST, opens one socket each,
+ * sends SEND_MESSAGE at a fixed aggregate rate along the chosen topology, and reports ack (MESSAGE_SENT)
+ * and delivery (NEW_MESSAGE) latency as HDR histograms. With --search-rate it also issues message
+ * searches for vocabulary words at a fixed rate and records their latency, and with --rest-rate the REST calls
+ * a client makes besides sending (chat page, unread count, mark read). The server's queueing delay per
+ * outbound priority lane over the measured window is read from /api/admin/websocket/lanes when an admin
+ * token is given, and its live and busy request threads from its Prometheus endpoint with --metrics-url.
+ * --baseline compares throughput, p99 and thread counts with an earlier report, e.g. one taken against the
+ * previous build with the same options.
+ *
+ * Latency is measured from the time a message was scheduled to go out, not from when the send actually
+ * happened, so a stalled server shows up as latency instead of as fewer samples (coordinated omission).
+ */
+public class LoadTest {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final String PASSWORD = "loadtest-password";
+
+    private final LoadTestOptions options;
+    private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+    private final LatencyRecorder recorder = new LatencyRecorder();
+    // Correlation id -> scheduled send time and how many of (ack, delivery) are still outstanding
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+    private final String runId = Integer.toHexString(ThreadLocalRandom.current().nextInt(0x10000, 0xfffff));
+    private final int bodyLength;
+
+    private final List<SyntheticUser> users = new ArrayList<>();
+    private final AtomicInteger restCalls = new AtomicInteger();
+    private final ServerThreads serverThreads;
+
+    // Report fields compared with --baseline
+    private static final List<String> COMPARED = List.of(
+            "/throughput/acknowledgedPerSecond", "/throughput/deliveredPerSecond", "/throughput/restPerSecond",
+            "/ackLatencyMs/p99", "/deliveryLatencyMs/p99", "/restLatencyMs/p99",
+            "/serverThreads/liveMean", "/serverThreads/liveMax", "/serverThreads/busyMean", "/serverThreads/busyMax");
+
+    LoadTest(LoadTestOptions options) {
+        this.options = options;
+        this.bodyLength = Math.max(0, options.messageSize - 24);
+        this.serverThreads = options.metricsUrl != null ? new ServerThreads(httpClient, options.metricsUrl) : null;
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options;
+        try {
+            options = LoadTestOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            LoadTestOptions.usage();
+            System.exit(2);
+            return;
+        }
+        new LoadTest(options).run();
+    }
+
+    void run() throws Exception {
+        System.out.printf("Run %s: %d users, %.1f msg/s, topology %s, %ds warmup + %ds measured%n",
+                runId, options.users, options.rate, options.topology, options.warmupSeconds, options.durationSeconds);
+
+        registerUsers();
+        connectUsers();
+
+        long periodNanos = (long) (options.users * 1e9 / options.rate);
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(
+                Math.max(2, Runtime.getRuntime().availableProcessors()));
+        List<ScheduledFuture<?>> senders = new ArrayList<>();
+        long start = System.nanoTime();
+        for (SyntheticUser user : users) {
+            // Spread the first sends over one period so senders do not fire in lockstep
+            long initialDelay = ThreadLocalRandom.current().nextLong(periodNanos);
+            long firstSend = start + initialDelay;
+            senders.add(scheduler.scheduleAtFixedRate(
+                    new Sender(user, firstSend, periodNanos), initialDelay, periodNanos, TimeUnit.NANOSECONDS));
+        }
+
+        if (options.searchRate > 0) {
+            long searchPeriodNanos = (long) (1e9 / options.searchRate);
+            senders.add(scheduler.scheduleAtFixedRate(this::search, searchPeriodNanos, searchPeriodNanos,
+                    TimeUnit.NANOSECONDS));
+        }
+
+        if (options.restRate > 0) {
+            long restPeriodNanos = (long) (1e9 / options.restRate);
+            senders.add(scheduler.scheduleAtFixedRate(this::restCall, restPeriodNanos, restPeriodNanos,
+                    TimeUnit.NANOSECONDS));
+        }
+        // Own thread, so a slow metrics scrape never delays a send
+        ScheduledExecutorService sampler = serverThreads != null ? Executors.newSingleThreadScheduledExecutor() : null;
+        if (sampler != null) {
+            senders.add(sampler.scheduleAtFixedRate(serverThreads::sample, 1, 1, TimeUnit.SECONDS));
+        }
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(options.warmupSeconds));
+        recorder.reset();
+        pending.clear();
+        if (serverThreads != null) {
+            serverThreads.reset();
+        }
+        JsonNode lanesBefore = fetchLaneStats();
+        System.out.println("Warmup finished, measuring");
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(options.durationSeconds));
+        senders.forEach(sender -> sender.cancel(false));
+        scheduler.shutdown();
+        scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        if (sampler != null) {
+            sampler.shutdown();
+        }
+
+        // Give in-flight messages a moment; whatever is still outstanding afterwards counts as lost
+        long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!pending.isEmpty() && System.nanoTime() < drainDeadline) {
+            Thread.sleep(50);
+        }
+        Map<String, Object> measured = recorder.report(pending.size());
+        measured.put("serverLanes", laneReport(lanesBefore, fetchLaneStats()));
+        if (serverThreads != null) {
+            measured.put("serverThreads", serverThreads.report());
+        }
+        if (options.baseline != null) {
+            measured.put("comparison", compare(new File(options.baseline), measured));
+        }
+        users.forEach(SyntheticUser::close);
+
+        writeReport(measured);
+    }
+
+    private void registerUsers() throws Exception {
+        ExecutorService registrations = Executors.newFixedThreadPool(16);
+        List<Future<SyntheticUser>> futures = new ArrayList<>();
+        for (int i = 0; i < options.users; i++) {
+            int index = i;
+            futures.add(registrations.submit(() -> register(index)));
+        }
+        for (Future<SyntheticUser> future : futures) {
+            users.add(future.get());
+        }
+        registrations.shutdown();
+        System.out.println("Registered " + users.size() + " users");
+    }
+
+    private SyntheticUser register(int index) throws Exception {
+        String username = "lt" + runId + "_" + index;
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("username", username);
+        body.put("email", username + "@loadtest.local");
+        body.put("password", PASSWORD);
+
+        HttpRequest request = HttpRequest.newBuilder(URI.create(options.baseUrl + "/api/auth/register"))
+                .header("Content-Type", "application/json")
+                .timeout(Duration.ofSeconds(30))
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(body)))
+                .build();
+
+        for (int attempt = 0; ; attempt++) {
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() == 200) {
+                JsonNode json = objectMapper.readTree(response.body());
+                return new SyntheticUser(index, json.path("user").path("id").asText(),
+                        json.path("token").asText(), this::onEvent);
+            }
+            // Password hashing pool or rate limiter pushing back; anything else is a real failure
+            if ((response.statusCode() != 503 && response.statusCode() != 429) || attempt >= 20) {
+                throw new IllegalStateException("Registration of " + username + " failed with "
+                        + response.statusCode() + ": " + response.body());
+            }
+            Thread.sleep(Math.min(2000, 50L << Math.min(attempt, 6)));
+        }
+    }
+
+    private void connectUsers() throws Exception {
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, options.connectRate);
+        long next = System.nanoTime();
+        for (SyntheticUser user : users) {
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            next += intervalNanos;
+            user.connect(httpClient, options.wsUrl);
+        }
+        for (SyntheticUser user : users) {
+            if (!user.awaitEstablished(30, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("User " + user.index + " never received CONNECTION_ESTABLISHED");
+            }
+        }
+        System.out.println("Connected " + users.size() + " sockets");
+    }
+
+    private JsonNode fetchLaneStats() {
+        if (options.adminToken == null) {
+            return null;
+        }
+        HttpRequest request = HttpRequest.newBuilder(URI.create(options.baseUrl + "/api/admin/websocket/lanes"))
+                .header("Authorization", "Bearer " + options.adminToken)
+                .timeout(Duration.ofSeconds(10))
+                .GET()
+                .build();
+        try {
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            return response.statusCode() == 200 ? objectMapper.readTree(response.body()) : null;
+        } catch (Exception e) {
+            System.err.println("Could not read server lane stats: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Events and mean queueing delay per lane over the measured window; percentiles are the server's recent ones
+    private Map<String, Object> laneReport(JsonNode before, JsonNode after) {
+        Map<String, Object> lanes = new LinkedHashMap<>();
+        if (after == null) {
+            return lanes;
+        }
+        after.fields().forEachRemaining(lane -> {
+            JsonNode start = before != null ? before.path(lane.getKey()) : null;
+            long count = lane.getValue().path("count").asLong() - (start != null ? start.path("count").asLong() : 0);
+            double totalMs = lane.getValue().path("totalMs").asDouble()
+                    - (start != null ? start.path("totalMs").asDouble() : 0);
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("events", count);
+            stats.put("meanMs", count == 0 ? 0.0 : totalMs / count);
+            lane.getValue().fields().forEachRemaining(field -> {
+                if (field.getKey().startsWith("p") || field.getKey().equals("maxMs")) {
+                    stats.put(field.getKey(), field.getValue().asDouble());
+                }
+            });
+            lanes.put(lane.getKey(), stats);
+        });
+        return lanes;
+    }
+
+    // One or two vocabulary words, searched by a random user; the response is awaited off the scheduler
+    private void search() {
+        SyntheticUser user = users.get(ThreadLocalRandom.current().nextInt(users.size()));
+        String query = ThreadLocalRandom.current().nextBoolean()
+                ? Vocabulary.word() : Vocabulary.word() + " " + Vocabulary.word();
+        HttpRequest request = HttpRequest.newBuilder(URI.create(options.baseUrl + "/api/messages/search?q="
+                        + URLEncoder.encode(query, StandardCharsets.UTF_8)))
+                .header("Authorization", "Bearer " + user.token)
+                .timeout(Duration.ofSeconds(30))
+                .GET()
+                .build();
+        long started = System.nanoTime();
+        httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, error) -> {
+                    if (error == null && response.statusCode() == 200) {
+                        recorder.recordSearch(started);
+                    } else {
+                        recorder.searchErrors.increment();
+                    }
+                });
+    }
+
+    // Open a chat (newest page), poll the unread badge or mark a chat read, in turn, for a random user
+    private void restCall() {
+        SyntheticUser user = users.get(ThreadLocalRandom.current().nextInt(users.size()));
+        String partner = users.get(options.topology.receiver(user.index,
+                ThreadLocalRandom.current().nextLong(Long.MAX_VALUE), users.size())).userId;
+        HttpRequest.Builder builder = switch (restCalls.getAndIncrement() % 3) {
+            case 0 -> HttpRequest.newBuilder(
+                    URI.create(options.baseUrl + "/api/messages/chat/" + partner + "?limit=50")).GET();
+            case 1 -> HttpRequest.newBuilder(URI.create(options.baseUrl + "/api/messages/unread/count")).GET();
+            default -> HttpRequest.newBuilder(URI.create(options.baseUrl + "/api/messages/read/" + partner))
+                    .PUT(HttpRequest.BodyPublishers.noBody());
+        };
+        HttpRequest request = builder.header("Authorization", "Bearer " + user.token)
+                .timeout(Duration.ofSeconds(30))
+                .build();
+        long started = System.nanoTime();
+        httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, error) -> {
+                    if (error == null && response.statusCode() == 200) {
+                        recorder.recordRest(started);
+                    } else {
+                        recorder.restErrors.increment();
+                    }
+                });
+    }
+
+    // Before, after and relative change of each compared field present in both reports
+    private static Map<String, Object> compare(File baselineFile, Map<String, Object> measured) throws IOException {
+        JsonNode baseline = objectMapper.readTree(baselineFile);
+        JsonNode current = objectMapper.valueToTree(measured);
+        Map<String, Object> comparison = new LinkedHashMap<>();
+        comparison.put("baseline", baselineFile.getPath());
+        for (String field : COMPARED) {
+            JsonNode before = baseline.at(field);
+            JsonNode after = current.at(field);
+            if (!before.isNumber() || !after.isNumber()) {
+                continue;
+            }
+            Map<String, Object> change = new LinkedHashMap<>();
+            change.put("before", before.asDouble());
+            change.put("after", after.asDouble());
+            if (before.asDouble() != 0) {
+                change.put("changePercent",
+                        Math.round((after.asDouble() - before.asDouble()) / before.asDouble() * 1000) / 10.0);
+            }
+            comparison.put(field.substring(1).replace('/', '.'), change);
+        }
+        return comparison;
+    }
+
+    private void onEvent(SyntheticUser user, JsonNode event) {
+        switch (event.path("type").asText()) {
+            case "MESSAGE_SENT" -> complete(event, true);
+            case "NEW_MESSAGE" -> complete(event, false);
+            case "RATE_LIMITED" -> recorder.rateLimited.increment();
+            case "ERROR" -> recorder.errors.increment();
+            default -> {
+            }
+        }
+    }
+
+    private void complete(JsonNode event, boolean ack) {
+        String correlationId = correlationId(event.path("message").path("content").asText());
+        if (correlationId == null) {
+            return;
+        }
+        Pending entry = pending.get(correlationId);
+        if (entry == null) {
+            // Sent during warmup, or belongs to another run
+            return;
+        }
+        if (ack) {
+            recorder.recordAck(entry.scheduledAt);
+        } else {
+            recorder.recordDelivery(entry.scheduledAt);
+        }
+        if (entry.outstanding.decrementAndGet() == 0) {
+            pending.remove(correlationId);
+        }
+    }
+
+    // Content is "lt:<runId>:<correlationId> <words>"
+    private String correlationId(String content) {
+        String prefix = "lt:" + runId + ":";
+        if (!content.startsWith(prefix)) {
+            return null;
+        }
+        int end = content.indexOf(' ', prefix.length());
+        return content.substring(prefix.length(), end < 0 ? content.length() : end);
+    }
+
+    private void writeReport(Map<String, Object> measured) throws Exception {
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("runId", runId);
+        config.put("users", options.users);
+        config.put("rate", options.rate);
+        config.put("topology", options.topology.name().toLowerCase());
+        config.put("messageSize", options.messageSize);
+        config.put("warmupSeconds", options.warmupSeconds);
+        config.put("durationSeconds", options.durationSeconds);
+        config.put("wsUrl", options.wsUrl);
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("config", config);
+        report.putAll(measured);
+
+        File json = new File(options.output + ".json");
+        if (json.getAbsoluteFile().getParentFile() != null) {
+            json.getAbsoluteFile().getParentFile().mkdirs();
+        }
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(json, report);
+        recorder.writeDistributions(options.output);
+
+        System.out.println(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(measured));
+        System.out.println("Report written to " + json.getPath());
+    }
+
+    private final class Sender implements Runnable {
+        private final SyntheticUser user;
+        private final long firstSend;
+        private final long periodNanos;
+        private long tick = 0;
+
+        private Sender(SyntheticUser user, long firstSend, long periodNanos) {
+            this.user = user;
+            this.firstSend = firstSend;
+            this.periodNanos = periodNanos;
+        }
+
+        @Override
+        public void run() {
+            if (user.isClosed()) {
+                return;
+            }
+            // scheduleAtFixedRate runs late ticks back to back, so tick n was due at firstSend + n * period
+            long scheduledAt = firstSend + tick++ * periodNanos;
+            if (System.nanoTime() - scheduledAt > periodNanos) {
+                recorder.missedTicks.increment();
+            }
+
+            long sequence = user.nextSequence();
+            int receiver = options.topology.receiver(user.index, sequence, users.size());
+            String correlationId = user.index + "-" + sequence;
+
+            Map<String, Object> message = new LinkedHashMap<>();
+            message.put("type", "SEND_MESSAGE");
+            message.put("receiverId", users.get(receiver).userId);
+            message.put("content", "lt:" + runId + ":" + correlationId + " " + Vocabulary.text(bodyLength));
+            message.put("messageType", "TEXT");
+
+            try {
+                String json = objectMapper.writeValueAsString(message);
+                pending.put(correlationId, new Pending(scheduledAt));
+                recorder.sent.increment();
+                user.send(json);
+            } catch (Exception e) {
+                pending.remove(correlationId);
+                recorder.errors.increment();
+                System.err.println("Send failed for user " + user.index + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static final class Pending {
+        private final long scheduledAt;
+        // MESSAGE_SENT to the sender plus NEW_MESSAGE to the receiver
+        private final AtomicInteger outstanding = new AtomicInteger(2);
+
+        private Pending(long scheduledAt) {
+            this.scheduledAt = scheduledAt;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.messaging.loadtest;
+
+final class LoadTestOptions {
+
+    String baseUrl = "http://localhost:8080";
+    String wsUrl = "ws://localhost:8080/ws/chat";
+    int users = 100;
+    // Messages per second across all senders
+    double rate = 100;
+    int durationSeconds = 60;
+    int warmupSeconds = 10;
+    Topology topology = Topology.PAIRS;
+    int messageSize = 64;
+    // Handshakes per second while opening sockets; stay under the server's rate-limit.handshake budget
+    int connectRate = 100;
+    String output = "target/loadtest-report";
+    // GET /api/messages/search per second across all users; 0 disables the search load
+    double searchRate = 0;
+    // Token of an admin account, for the server-side stats in the report; without it they are left out
+    String adminToken = null;
+    // Chat page, unread count and mark-read requests per second across all users; 0 disables them
+    double restRate = 0;
+    // Backend Prometheus endpoint, sampled for thread counts during the measured window; null skips it
+    String metricsUrl = null;
+    // Report of an earlier run (e.g. against the previous build) to compare this one with
+    String baseline = null;
+
+    static LoadTestOptions parse(String[] args) {
+        LoadTestOptions options = new LoadTestOptions();
+        for (String arg : args) {
+            if (arg.equals("--help")) {
+                usage();
+                System.exit(0);
+            }
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            String name = arg.substring(2, separator);
+            String value = arg.substring(separator + 1);
+            switch (name) {
+                case "base-url" -> options.baseUrl = value;
+                case "ws-url" -> options.wsUrl = value;
+                case "users" -> options.users = Integer.parseInt(value);
+                case "rate" -> options.rate = Double.parseDouble(value);
+                case "duration" -> options.durationSeconds = Integer.parseInt(value);
+                case "warmup" -> options.warmupSeconds = Integer.parseInt(value);
+                case "topology" -> options.topology = Topology.valueOf(value.toUpperCase());
+                case "message-size" -> options.messageSize = Integer.parseInt(value);
+                case "connect-rate" -> options.connectRate = Integer.parseInt(value);
+                case "output" -> options.output = value;
+                case "search-rate" -> options.searchRate = Double.parseDouble(value);
+                case "admin-token" -> options.adminToken = value;
+                case "rest-rate" -> options.restRate = Double.parseDouble(value);
+                case "metrics-url" -> options.metricsUrl = value;
+                case "baseline" -> options.baseline = value;
+                default -> throw new IllegalArgumentException("Unknown option --" + name);
+            }
+        }
+        if (options.users < 2) {
+            throw new IllegalArgumentException("--users must be at least 2");
+        }
+        return options;
+    }
+
+    static void usage() {
+        System.out.println("""
+                Usage: java -jar target/loadtest.jar [options]
+                  --base-url=http://localhost:8080      REST base URL used for registration
+                  --ws-url=ws://localhost:8080/ws/chat  WebSocket endpoint
+                  --users=100                           synthetic users (one socket each)
+                  --rate=100                            SEND_MESSAGE per second, all users together
+                  --duration=60                         measured seconds
+                  --warmup=10                           seconds sent before measuring starts
+                  --topology=pairs                      pairs | ring | star | random
+                  --message-size=64                     content length in characters
+                  --connect-rate=100                    socket handshakes per second
+                  --output=target/loadtest-report       report prefix (.json and .hgrm files)
+                  --search-rate=0                       message searches per second alongside the sends
+                  --admin-token=                        JWT of an admin account, to report the server's lane stats
+                  --rest-rate=0                         chat page / unread count / mark-read requests per second
+                  --metrics-url=                        backend Prometheus endpoint, for server thread counts
+                  --baseline=                           earlier report (.json) to compare this run with""");
+    }
+}
@@ -0,0 +1,33 @@
+package com.messaging.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+
+// HS512 tokens in the shape JwtTokenProvider issues, signed with the backend's secret; the user need not exist
+final class LocalTokens {
+
+    static final String DEFAULT_SECRET = "mySecretKey123456789012345678901234567890123456789012345678901234567890"
+            + "123456789012345678901234567890";
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private LocalTokens() {
+    }
+
+    static String sign(String jwtSecret, String userId) throws Exception {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        long now = System.currentTimeMillis() / 1000;
+        String header = encoder.encodeToString("{\"alg\":\"HS512\"}".getBytes(StandardCharsets.UTF_8));
+        String claims = encoder.encodeToString(objectMapper.writeValueAsBytes(Map.of(
+                "sub", userId, "userId", userId, "iat", now, "exp", now + 86400)));
+        Mac mac = Mac.getInstance("HmacSHA512");
+        mac.init(new SecretKeySpec(jwtSecret.getBytes(StandardCharsets.UTF_8), "HmacSHA512"));
+        byte[] signature = mac.doFinal((header + "." + claims).getBytes(StandardCharsets.UTF_8));
+        return header + "." + claims + "." + encoder.encodeToString(signature);
+    }
+}
@@ -0,0 +1,284 @@
+package com.messaging.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.File;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The burst of logins after a deploy, when every client signs in again at once. Registers --accounts users,
+ * then measures a cheap authenticated request (GET /api/messages/unread/count) at a fixed rate for --baseline
+ * seconds, and keeps measuring it while --logins logins run with up to --concurrency in flight. Reports
+ * login latency and outcomes (200, 503 from the password hashing pool's admission control, anything else)
+ * next to the probe's latency before and during the storm: with hashing on its own bounded pool, the probe
+ * should barely move while logins queue or are turned away.
+ *
+ * Login latency is measured per request from when it was sent (the storm is a closed loop of --concurrency
+ * clients); the probe runs open loop from its schedule like the load test's senders.
+ */
+public final class LoginStorm {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final String PASSWORD = "loginstorm-password";
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private String baseUrl = "http://localhost:8080";
+    private int accounts = 100;
+    private int logins = 2000;
+    private int concurrency = 500;
+    private double probeRate = 20;
+    private int baselineSeconds = 10;
+    private String output = "target/login-storm";
+
+    private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+    private final String runId = Integer.toHexString(ThreadLocalRandom.current().nextInt(0x10000, 0xfffff));
+
+    private final Histogram loginLatency = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+    private final Histogram baselineProbe = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+    private final Histogram stormProbe = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+    private volatile Histogram probeLatency = baselineProbe;
+
+    private final LongAdder loggedIn = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder probeErrors = new LongAdder();
+
+    public static void main(String[] args) throws Exception {
+        LoginStorm storm = new LoginStorm();
+        try {
+            storm.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            usage();
+            System.exit(2);
+            return;
+        }
+        storm.run();
+    }
+
+    private void parse(String[] args) {
+        for (String arg : args) {
+            if (arg.equals("--help")) {
+                usage();
+                System.exit(0);
+            }
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            String name = arg.substring(2, separator);
+            String value = arg.substring(separator + 1);
+            switch (name) {
+                case "base-url" -> baseUrl = value;
+                case "accounts" -> accounts = Integer.parseInt(value);
+                case "logins" -> logins = Integer.parseInt(value);
+                case "concurrency" -> concurrency = Integer.parseInt(value);
+                case "probe-rate" -> probeRate = Double.parseDouble(value);
+                case "baseline" -> baselineSeconds = Integer.parseInt(value);
+                case "output" -> output = value;
+                default -> throw new IllegalArgumentException("Unknown option --" + name);
+            }
+        }
+        if (accounts < 1 || concurrency < 1 || probeRate <= 0) {
+            throw new IllegalArgumentException("--accounts, --concurrency and --probe-rate must be positive");
+        }
+    }
+
+    private static void usage() {
+        System.out.println("""
+                Usage: java -cp target/loadtest.jar com.messaging.loadtest.LoginStorm [options]
+                  --base-url=http://localhost:8080      backend REST base URL
+                  --accounts=100                        accounts registered before the storm and logged into in turn
+                  --logins=2000                         logins in the storm
+                  --concurrency=500                     logins in flight at once
+                  --probe-rate=20                       unread-count requests per second, before and during the storm
+                  --baseline=10                         seconds the probe runs before the storm
+                  --output=target/login-storm           report prefix (.json)""");
+    }
+
+    private void run() throws Exception {
+        System.out.printf("Run %s: %d accounts, %d logins with %d in flight, probe at %.1f/s%n",
+                runId, accounts, logins, concurrency, probeRate);
+        List<String> tokens = registerAccounts();
+
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        long probePeriodNanos = (long) (1e9 / probeRate);
+        long probeStart = System.nanoTime() + probePeriodNanos;
+        long[] tick = {0};
+        scheduler.scheduleAtFixedRate(() -> probe(tokens.get(0), probeStart + tick[0]++ * probePeriodNanos),
+                probePeriodNanos, probePeriodNanos, TimeUnit.NANOSECONDS);
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(baselineSeconds));
+        probeLatency = stormProbe;
+        System.out.println("Baseline finished, starting the storm");
+
+        Semaphore inFlight = new Semaphore(concurrency);
+        long stormStart = System.nanoTime();
+        for (int i = 0; i < logins; i++) {
+            inFlight.acquire();
+            login(i % accounts).whenComplete((ignored, error) -> inFlight.release());
+        }
+        inFlight.acquire(concurrency);
+        double stormSeconds = (System.nanoTime() - stormStart) / 1e9;
+
+        scheduler.shutdown();
+        scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        writeReport(stormSeconds);
+    }
+
+    private List<String> registerAccounts() throws Exception {
+        ExecutorService registrations = Executors.newFixedThreadPool(16);
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < accounts; i++) {
+            int index = i;
+            futures.add(registrations.submit(() -> register(index)));
+        }
+        List<String> tokens = new ArrayList<>();
+        try {
+            for (Future<String> future : futures) {
+                tokens.add(future.get());
+            }
+        } finally {
+            registrations.shutdownNow();
+        }
+        System.out.println("Registered " + tokens.size() + " accounts");
+        return tokens;
+    }
+
+    // Returns the account's token; retries while hashing or the rate limiter push back, as the load test does
+    private String register(int index) throws Exception {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("username", username(index));
+        body.put("email", username(index) + "@loadtest.local");
+        body.put("password", PASSWORD);
+        HttpRequest request = post("/api/auth/register", body);
+        for (int attempt = 0; ; attempt++) {
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() == 200) {
+                return objectMapper.readTree(response.body()).path("token").asText();
+            }
+            if ((response.statusCode() != 503 && response.statusCode() != 429) || attempt >= 20) {
+                throw new IllegalStateException("Registration of " + username(index) + " failed with "
+                        + response.statusCode() + ": " + response.body());
+            }
+            Thread.sleep(Math.min(2000, 50L << Math.min(attempt, 6)));
+        }
+    }
+
+    private CompletableFuture<?> login(int index) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("username", username(index));
+        body.put("password", PASSWORD);
+        HttpRequest request;
+        try {
+            request = post("/api/auth/login", body);
+        } catch (Exception e) {
+            failed.increment();
+            return CompletableFuture.completedFuture(null);
+        }
+        long started = System.nanoTime();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, error) -> {
+                    if (error != null) {
+                        failed.increment();
+                        return;
+                    }
+                    loginLatency.recordValue(micros(started));
+                    switch (response.statusCode()) {
+                        case 200 -> loggedIn.increment();
+                        case 503 -> rejected.increment();
+                        default -> failed.increment();
+                    }
+                });
+    }
+
+    private void probe(String token, long scheduledAt) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/api/messages/unread/count"))
+                .header("Authorization", "Bearer " + token)
+                .timeout(Duration.ofSeconds(30))
+                .GET()
+                .build();
+        Histogram histogram = probeLatency;
+        httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, error) -> {
+                    if (error == null && response.statusCode() == 200) {
+                        histogram.recordValue(micros(scheduledAt));
+                    } else {
+                        probeErrors.increment();
+                    }
+                });
+    }
+
+    private HttpRequest post(String path, Map<String, Object> body) throws Exception {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Content-Type", "application/json")
+                .timeout(Duration.ofSeconds(30))
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(body)))
+                .build();
+    }
+
+    private String username(int index) {
+        return "ls" + runId + "_" + index;
+    }
+
+    private static long micros(long startedAtNanos) {
+        long micros = (System.nanoTime() - startedAtNanos) / 1000;
+        return Math.min(Math.max(micros, 0), HIGHEST_TRACKABLE_MICROS);
+    }
+
+    private void writeReport(double stormSeconds) throws Exception {
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("runId", runId);
+        config.put("baseUrl", baseUrl);
+        config.put("accounts", accounts);
+        config.put("logins", logins);
+        config.put("concurrency", concurrency);
+        config.put("probeRate", probeRate);
+        config.put("baselineSeconds", baselineSeconds);
+
+        Map<String, Object> loginReport = new LinkedHashMap<>();
+        loginReport.put("stormSeconds", Math.round(stormSeconds * 1000) / 1000.0);
+        loginReport.put("ok", loggedIn.sum());
+        loginReport.put("rejected", rejected.sum());
+        loginReport.put("failed", failed.sum());
+        loginReport.put("okPerSecond", Math.round(loggedIn.sum() / stormSeconds * 10) / 10.0);
+        loginReport.put("latencyMs", LatencyRecorder.summary(loginLatency));
+
+        Map<String, Object> probeReport = new LinkedHashMap<>();
+        probeReport.put("baselineMs", LatencyRecorder.summary(baselineProbe));
+        probeReport.put("duringStormMs", LatencyRecorder.summary(stormProbe));
+        probeReport.put("errors", probeErrors.sum());
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("config", config);
+        report.put("logins", loginReport);
+        report.put("probe", probeReport);
+
+        File json = new File(output + ".json");
+        if (json.getAbsoluteFile().getParentFile() != null) {
+            json.getAbsoluteFile().getParentFile().mkdirs();
+        }
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(json, report);
+        System.out.println(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(report));
+        System.out.println("Report written to " + json.getPath());
+    }
+}
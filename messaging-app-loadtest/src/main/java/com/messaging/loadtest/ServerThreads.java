@@ -0,0 +1,111 @@
+package com.messaging.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Thread counts of the backend under test, sampled from its Prometheus endpoint during the measured window:
+ * live JVM threads, and Tomcat request threads busy at that moment (tomcat_threads_busy_threads, summed over
+ * connectors). Request threads that wait on Mongo stay busy, so blocking endpoints show up as busy threads.
+ */
+final class ServerThreads {
+
+    private static final String LIVE = "jvm_threads_live_threads";
+    private static final String BUSY = "tomcat_threads_busy_threads";
+
+    private final HttpClient httpClient;
+    private final String metricsUrl;
+    private final List<Double> live = new ArrayList<>();
+    private final List<Double> busy = new ArrayList<>();
+    private int failedSamples = 0;
+
+    ServerThreads(HttpClient httpClient, String metricsUrl) {
+        this.httpClient = httpClient;
+        this.metricsUrl = metricsUrl;
+    }
+
+    synchronized void reset() {
+        live.clear();
+        busy.clear();
+        failedSamples = 0;
+    }
+
+    void sample() {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(metricsUrl))
+                .timeout(Duration.ofSeconds(5))
+                .GET()
+                .build();
+        String body;
+        try {
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException("HTTP " + response.statusCode());
+            }
+            body = response.body();
+        } catch (Exception e) {
+            synchronized (this) {
+                failedSamples++;
+            }
+            return;
+        }
+        Double liveThreads = null;
+        Double busyThreads = null;
+        for (String line : body.split("\n")) {
+            if (line.startsWith(LIVE)) {
+                liveThreads = sum(liveThreads, line);
+            } else if (line.startsWith(BUSY)) {
+                busyThreads = sum(busyThreads, line);
+            }
+        }
+        synchronized (this) {
+            if (liveThreads != null) {
+                live.add(liveThreads);
+            }
+            if (busyThreads != null) {
+                busy.add(busyThreads);
+            }
+        }
+    }
+
+    // Exposition format: name{labels} value
+    private static Double sum(Double total, String line) {
+        double value = Double.parseDouble(line.substring(line.lastIndexOf(' ') + 1));
+        return total == null ? value : total + value;
+    }
+
+    synchronized Map<String, Object> report() {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("samples", live.size());
+        report.put("failedSamples", failedSamples);
+        report.put("liveMean", mean(live));
+        report.put("liveMax", max(live));
+        if (!busy.isEmpty()) {
+            report.put("busyMean", mean(busy));
+            report.put("busyMax", max(busy));
+        }
+        return report;
+    }
+
+    private static double mean(List<Double> values) {
+        double sum = 0;
+        for (double value : values) {
+            sum += value;
+        }
+        return values.isEmpty() ? 0 : Math.round(sum / values.size() * 10) / 10.0;
+    }
+
+    private static double max(List<Double> values) {
+        double max = 0;
+        for (double value : values) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+}
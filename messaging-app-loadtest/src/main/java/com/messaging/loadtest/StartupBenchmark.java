@@ -0,0 +1,168 @@
+package com.messaging.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts the backend several times in each packaging mode and measures how long it takes until a /ws/chat
+ * handshake is accepted (CONNECTION_ESTABLISHED received), and the process's resident set size right then.
+ * The standard mode runs the executable jar; the fast mode runs the AOT-processed jar of
+ * {@code mvn -Pfast-startup package} with its class-data-sharing archive. The token is signed locally with
+ * the backend's JWT secret, and both commands fix the message ID node, so no database is needed.
+ */
+public final class StartupBenchmark {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private String dir = "../messaging-app-backend";
+    private String standard = "java -jar target/messaging-backend-0.0.1-SNAPSHOT-exec.jar --messages.id.node-id=1";
+    private String fast = "java -XX:SharedArchiveFile=target/application.jsa -Dspring.aot.enabled=true"
+            + " -jar target/messaging-backend-0.0.1-SNAPSHOT.jar --messages.id.node-id=1";
+    private String wsUrl = "ws://localhost:8080/ws/chat";
+    private String jwtSecret = LocalTokens.DEFAULT_SECRET;
+    private int runs = 3;
+    private int timeoutSeconds = 180;
+    private String output = "target/startup-report";
+
+    public static void main(String[] args) throws Exception {
+        StartupBenchmark benchmark = new StartupBenchmark();
+        try {
+            benchmark.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            usage();
+            System.exit(2);
+            return;
+        }
+        benchmark.run();
+    }
+
+    private void parse(String[] args) {
+        for (String arg : args) {
+            if (arg.equals("--help")) {
+                usage();
+                System.exit(0);
+            }
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            String name = arg.substring(2, separator);
+            String value = arg.substring(separator + 1);
+            switch (name) {
+                case "dir" -> dir = value;
+                case "standard" -> standard = value;
+                case "fast" -> fast = value;
+                case "ws-url" -> wsUrl = value;
+                case "jwt-secret" -> jwtSecret = value;
+                case "runs" -> runs = Integer.parseInt(value);
+                case "timeout" -> timeoutSeconds = Integer.parseInt(value);
+                case "output" -> output = value;
+                default -> throw new IllegalArgumentException("Unknown option --" + name);
+            }
+        }
+    }
+
+    private static void usage() {
+        System.out.println("""
+                Usage: java -cp target/loadtest.jar com.messaging.loadtest.StartupBenchmark [options]
+                  --dir=../messaging-app-backend        working directory of the backend processes
+                  --standard="java -jar target/..."     command of the standard mode (executable jar)
+                  --fast="java -XX:SharedArchiveFile=..." command of the fast-startup mode
+                  --ws-url=ws://localhost:8080/ws/chat  WebSocket endpoint to handshake with
+                  --jwt-secret=...                      backend jwt.secret (defaults to application.properties)
+                  --runs=3                              starts per mode, alternating between modes
+                  --timeout=180                         seconds to wait for the first handshake
+                  --output=target/startup-report        report prefix (.json)""");
+    }
+
+    private void run() throws Exception {
+        String token = LocalTokens.sign(jwtSecret, "startup-benchmark");
+        HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+
+        Map<String, List<Map<String, Object>>> results = new LinkedHashMap<>();
+        results.put("standard", new ArrayList<>());
+        results.put("fast", new ArrayList<>());
+        // Alternate, so page cache and machine load affect both modes alike
+        for (int run = 0; run < runs; run++) {
+            results.get("standard").add(measure("standard", standard, run, httpClient, token));
+            results.get("fast").add(measure("fast", fast, run, httpClient, token));
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("standard", standard);
+        config.put("fast", fast);
+        config.put("runs", runs);
+        config.put("cpus", Runtime.getRuntime().availableProcessors());
+        report.put("config", config);
+        for (Map.Entry<String, List<Map<String, Object>>> mode : results.entrySet()) {
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("handshakeMs", summarize(mode.getValue(), "handshakeMs"));
+            summary.put("rssMb", summarize(mode.getValue(), "rssMb"));
+            summary.put("runs", mode.getValue());
+            report.put(mode.getKey(), summary);
+        }
+
+        File json = new File(output + ".json");
+        if (json.getAbsoluteFile().getParentFile() != null) {
+            json.getAbsoluteFile().getParentFile().mkdirs();
+        }
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(json, report);
+        System.out.println(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(report));
+        System.out.println("Report written to " + json.getPath());
+    }
+
+    private Map<String, Object> measure(String mode, String command, int run, HttpClient httpClient, String token)
+            throws Exception {
+        File log = new File(output + "-" + mode + "-" + run + ".log");
+        long start = System.nanoTime();
+        Map<String, Object> result = new LinkedHashMap<>();
+        try (BackendProcess backend = BackendProcess.start(command, dir, log)) {
+            long deadline = start + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+            SyntheticUser probe = null;
+            while (probe == null) {
+                backend.checkAlive(mode);
+                if (System.nanoTime() > deadline) {
+                    throw new IllegalStateException(mode + " backend accepted no handshake within " + timeoutSeconds + "s");
+                }
+                SyntheticUser candidate = new SyntheticUser(0, "startup-benchmark", token, (user, event) -> { });
+                try {
+                    candidate.connect(httpClient, wsUrl);
+                    if (candidate.awaitEstablished(5, TimeUnit.SECONDS)) {
+                        probe = candidate;
+                    } else {
+                        candidate.close();
+                    }
+                } catch (RuntimeException e) {
+                    // Not listening yet
+                    Thread.sleep(20);
+                }
+            }
+            double handshakeMs = (System.nanoTime() - start) / 1e6;
+            result.put("handshakeMs", Math.round(handshakeMs * 10) / 10.0);
+            result.put("rssMb", backend.rssMb());
+            probe.close();
+            System.out.printf("%s run %d: first handshake after %.0f ms, RSS %s MB%n",
+                    mode, run, handshakeMs, result.get("rssMb"));
+        }
+        return result;
+    }
+
+    private static Map<String, Object> summarize(List<Map<String, Object>> runs, String key) {
+        double[] values = runs.stream().mapToDouble(run -> ((Number) run.get(key)).doubleValue()).sorted().toArray();
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("median", values.length == 0 ? 0 : values[values.length / 2]);
+        summary.put("min", values.length == 0 ? 0 : values[0]);
+        summary.put("max", values.length == 0 ? 0 : values[values.length - 1]);
+        return summary;
+    }
+}
@@ -0,0 +1,130 @@
+package com.messaging.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.net.http.WebSocketHandshakeException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+// One registered account and its WebSocket; inbound events are handed to the load test as parsed JSON
+final class SyntheticUser implements WebSocket.Listener {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    final int index;
+    final String userId;
+    final String token;
+
+    private final BiConsumer<SyntheticUser, JsonNode> eventHandler;
+    private final CountDownLatch established = new CountDownLatch(1);
+    private final StringBuilder partial = new StringBuilder();
+
+    private volatile WebSocket webSocket;
+    private volatile boolean closed = false;
+    private long sequence = 0;
+
+    SyntheticUser(int index, String userId, String token, BiConsumer<SyntheticUser, JsonNode> eventHandler) {
+        this.index = index;
+        this.userId = userId;
+        this.token = token;
+        this.eventHandler = eventHandler;
+    }
+
+    /**
+     * Opens the socket, backing off while the server answers the handshake with 429/503.
+     */
+    void connect(HttpClient httpClient, String wsUrl) throws InterruptedException {
+        URI uri = URI.create(wsUrl + "?token=" + token);
+        for (int attempt = 0; ; attempt++) {
+            try {
+                webSocket = httpClient.newWebSocketBuilder().buildAsync(uri, this).join();
+                return;
+            } catch (CompletionException e) {
+                if (!(e.getCause() instanceof WebSocketHandshakeException handshake) || attempt >= 10) {
+                    throw e;
+                }
+                int status = handshake.getResponse().statusCode();
+                if (status != 429 && status != 503) {
+                    throw e;
+                }
+                Thread.sleep(Math.min(5000, 100L << attempt));
+            }
+        }
+    }
+
+    boolean awaitEstablished(long timeout, TimeUnit unit) throws InterruptedException {
+        return established.await(timeout, unit);
+    }
+
+    long nextSequence() {
+        return sequence++;
+    }
+
+    // Callers serialize sends per user (one scheduled task each); WebSocket allows one outstanding send
+    void send(String json) {
+        WebSocket socket = webSocket;
+        if (socket != null && !closed) {
+            socket.sendText(json, true).join();
+        }
+    }
+
+    void close() {
+        closed = true;
+        WebSocket socket = webSocket;
+        if (socket != null) {
+            socket.sendClose(WebSocket.NORMAL_CLOSURE, "load test finished")
+                    .orTimeout(5, TimeUnit.SECONDS)
+                    .exceptionally(e -> null)
+                    .join();
+        }
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+        partial.append(data);
+        if (last) {
+            String payload = partial.toString();
+            partial.setLength(0);
+            try {
+                JsonNode event = objectMapper.readTree(payload);
+                if ("CONNECTION_ESTABLISHED".equals(event.path("type").asText())) {
+                    established.countDown();
+                }
+                eventHandler.accept(this, event);
+            } catch (Exception e) {
+                System.err.println("Unparseable event for user " + index + ": " + e.getMessage());
+            }
+        }
+        webSocket.request(1);
+        return null;
+    }
+
+    @Override
+    public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+        if (!closed) {
+            System.err.println("User " + index + " disconnected by server: " + statusCode + " " + reason);
+        }
+        closed = true;
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public void onError(WebSocket webSocket, Throwable error) {
+        if (!closed) {
+            System.err.println("User " + index + " socket error: " + error.getMessage());
+        }
+        closed = true;
+    }
+}
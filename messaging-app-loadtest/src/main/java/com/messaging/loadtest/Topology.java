@@ -0,0 +1,46 @@
+package com.messaging.loadtest;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// Who each synthetic user sends to
+enum Topology {
+
+    // 0<->1, 2<->3, ... : many small, independent one-to-one chats
+    PAIRS {
+        @Override
+        int receiver(int sender, long sequence, int users) {
+            int partner = sender ^ 1;
+            return partner < users ? partner : (sender + 1) % users;
+        }
+    },
+
+    // i -> i+1 : every user is both sender and receiver in two different chats
+    RING {
+        @Override
+        int receiver(int sender, long sequence, int users) {
+            return (sender + 1) % users;
+        }
+    },
+
+    // Everyone talks to user 0, which answers round-robin : one hot user, many chats converging on it
+    STAR {
+        @Override
+        int receiver(int sender, long sequence, int users) {
+            if (sender != 0) {
+                return 0;
+            }
+            return 1 + (int) (sequence % (users - 1));
+        }
+    },
+
+    // Uniformly random partner per message : worst case for per-chat caches
+    RANDOM {
+        @Override
+        int receiver(int sender, long sequence, int users) {
+            int receiver = ThreadLocalRandom.current().nextInt(users - 1);
+            return receiver >= sender ? receiver + 1 : receiver;
+        }
+    };
+
+    abstract int receiver(int sender, long sequence, int users);
+}
@@ -0,0 +1,246 @@
+package com.messaging.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Starts the backend once on the platform-thread pools and once in the virtual-threads profile, and ramps
+ * the number of concurrent requests to one endpoint through --levels. Each level runs for --step seconds
+ * with that many requests always in flight and records p50/p99 and errors (non-200 answers, timeouts,
+ * refused connections). A level passes while errors stay under --max-error-rate and p99 under
+ * --p99-limit-ms; the report gives each mode's highest passing level as maxConcurrentRequests, next to
+ * every level's numbers.
+ *
+ * Requests carry a token signed locally with the backend's JWT secret for a random user ID, so nothing has
+ * to be registered; the default endpoint reads from MongoDB, which must be running. The virtual mode needs
+ * a JDK 21 java in its command.
+ */
+public final class VirtualThreadBenchmark {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private String dir = "../messaging-app-backend";
+    private String platform = "java -jar target/messaging-backend-0.0.1-SNAPSHOT-exec.jar --rate-limit.enabled=false";
+    private String virtual = "java -jar target/messaging-backend-0.0.1-SNAPSHOT-exec.jar --rate-limit.enabled=false"
+            + " --spring.profiles.active=virtual-threads";
+    private String baseUrl = "http://localhost:8080";
+    private String path = "/api/messages/unread/count";
+    private String jwtSecret = LocalTokens.DEFAULT_SECRET;
+    private int[] levels = {50, 100, 200, 400, 800, 1600};
+    private int stepSeconds = 15;
+    private int warmupSeconds = 10;
+    private double p99LimitMs = 1000;
+    private double maxErrorRate = 0.01;
+    private int timeoutSeconds = 180;
+    private String output = "target/virtual-threads-report";
+
+    private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+
+    public static void main(String[] args) throws Exception {
+        VirtualThreadBenchmark benchmark = new VirtualThreadBenchmark();
+        try {
+            benchmark.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            usage();
+            System.exit(2);
+            return;
+        }
+        benchmark.run();
+    }
+
+    private void parse(String[] args) {
+        for (String arg : args) {
+            if (arg.equals("--help")) {
+                usage();
+                System.exit(0);
+            }
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            String name = arg.substring(2, separator);
+            String value = arg.substring(separator + 1);
+            switch (name) {
+                case "dir" -> dir = value;
+                case "platform" -> platform = value;
+                case "virtual" -> virtual = value;
+                case "base-url" -> baseUrl = value;
+                case "path" -> path = value;
+                case "jwt-secret" -> jwtSecret = value;
+                case "levels" -> levels = parseLevels(value);
+                case "step" -> stepSeconds = Integer.parseInt(value);
+                case "warmup" -> warmupSeconds = Integer.parseInt(value);
+                case "p99-limit-ms" -> p99LimitMs = Double.parseDouble(value);
+                case "max-error-rate" -> maxErrorRate = Double.parseDouble(value);
+                case "timeout" -> timeoutSeconds = Integer.parseInt(value);
+                case "output" -> output = value;
+                default -> throw new IllegalArgumentException("Unknown option --" + name);
+            }
+        }
+    }
+
+    private static int[] parseLevels(String value) {
+        String[] parts = value.split(",");
+        int[] parsed = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            parsed[i] = Integer.parseInt(parts[i].trim());
+        }
+        return parsed;
+    }
+
+    private static void usage() {
+        System.out.println("""
+                Usage: java -cp target/loadtest.jar com.messaging.loadtest.VirtualThreadBenchmark [options]
+                  --dir=../messaging-app-backend        working directory of the backend processes
+                  --platform="java -jar target/..."     command of the platform-thread mode
+                  --virtual="java -jar target/... --spring.profiles.active=virtual-threads"
+                                                        command of the virtual-thread mode (JDK 21 java)
+                  --base-url=http://localhost:8080      backend REST base URL
+                  --path=/api/messages/unread/count     endpoint requested with a locally signed token
+                  --jwt-secret=...                      backend jwt.secret (defaults to application.properties)
+                  --levels=50,100,200,400,800,1600      concurrent requests per step
+                  --step=15                             measured seconds per level
+                  --warmup=10                           seconds at the first level before measuring
+                  --p99-limit-ms=1000                   a level fails above this p99
+                  --max-error-rate=0.01                 a level fails above this share of errors
+                  --timeout=180                         seconds to wait for the backend to answer
+                  --output=target/virtual-threads-report report prefix (.json)""");
+    }
+
+    private void run() throws Exception {
+        Map<String, Object> report = new LinkedHashMap<>();
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("platform", platform);
+        config.put("virtual", virtual);
+        config.put("path", path);
+        config.put("levels", levels);
+        config.put("stepSeconds", stepSeconds);
+        config.put("p99LimitMs", p99LimitMs);
+        config.put("maxErrorRate", maxErrorRate);
+        config.put("cpus", Runtime.getRuntime().availableProcessors());
+        report.put("config", config);
+        report.put("platform", measure("platform", platform));
+        report.put("virtual", measure("virtual", virtual));
+
+        File json = new File(output + ".json");
+        if (json.getAbsoluteFile().getParentFile() != null) {
+            json.getAbsoluteFile().getParentFile().mkdirs();
+        }
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(json, report);
+        System.out.println(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(report));
+        System.out.println("Report written to " + json.getPath());
+    }
+
+    private Map<String, Object> measure(String mode, String command) throws Exception {
+        String userId = String.format("%024x", ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE);
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Authorization", "Bearer " + LocalTokens.sign(jwtSecret, userId))
+                .timeout(Duration.ofSeconds(30))
+                .GET()
+                .build();
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        File log = new File(output + "-" + mode + ".log");
+        try (BackendProcess backend = BackendProcess.start(command, dir, log)) {
+            awaitAnswer(backend, mode, request);
+            System.out.println(mode + ": warming up at " + levels[0] + " concurrent requests");
+            step(request, levels[0], warmupSeconds);
+
+            List<Map<String, Object>> steps = new ArrayList<>();
+            int maxConcurrent = 0;
+            for (int level : levels) {
+                backend.checkAlive(mode);
+                Map<String, Object> step = step(request, level, stepSeconds);
+                steps.add(step);
+                System.out.printf("%s: %d concurrent -> %.0f req/s, p99 %.1f ms, error rate %.4f%n", mode, level,
+                        step.get("requestsPerSecond"), ((Map<?, ?>) step.get("latencyMs")).get("p99"),
+                        step.get("errorRate"));
+                if (!Boolean.TRUE.equals(step.get("passed"))) {
+                    break;
+                }
+                maxConcurrent = level;
+            }
+            result.put("maxConcurrentRequests", maxConcurrent);
+            result.put("rssMb", backend.rssMb());
+            result.put("steps", steps);
+        }
+        return result;
+    }
+
+    // Polls until the endpoint answers at all, so the first level does not measure startup
+    private void awaitAnswer(BackendProcess backend, String mode, HttpRequest request) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        while (true) {
+            backend.checkAlive(mode);
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException(mode + " backend did not answer within " + timeoutSeconds + "s");
+            }
+            try {
+                httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+                return;
+            } catch (IOException e) {
+                // Not listening yet
+                Thread.sleep(200);
+            }
+        }
+    }
+
+    // Keeps exactly {@code concurrency} requests in flight for the given time; each is timed from its send
+    private Map<String, Object> step(HttpRequest request, int concurrency, int seconds) throws InterruptedException {
+        Histogram latency = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+        LongAdder ok = new LongAdder();
+        LongAdder errors = new LongAdder();
+        Semaphore inFlight = new Semaphore(concurrency);
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        while (System.nanoTime() < end) {
+            inFlight.acquire();
+            long sent = System.nanoTime();
+            httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        long micros = (System.nanoTime() - sent) / 1000;
+                        latency.recordValue(Math.min(Math.max(micros, 0), HIGHEST_TRACKABLE_MICROS));
+                        if (error == null && response.statusCode() == 200) {
+                            ok.increment();
+                        } else {
+                            errors.increment();
+                        }
+                        inFlight.release();
+                    });
+        }
+        inFlight.acquire(concurrency);
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        long total = ok.sum() + errors.sum();
+        double errorRate = total == 0 ? 1.0 : (double) errors.sum() / total;
+        Map<String, Object> summary = LatencyRecorder.summary(latency);
+        Map<String, Object> step = new LinkedHashMap<>();
+        step.put("concurrency", concurrency);
+        step.put("requests", total);
+        step.put("errors", errors.sum());
+        step.put("errorRate", Math.round(errorRate * 10000) / 10000.0);
+        step.put("requestsPerSecond", Math.round(ok.sum() / elapsed * 10) / 10.0);
+        step.put("latencyMs", summary);
+        step.put("passed", errorRate <= maxErrorRate && ((Number) summary.get("p99")).doubleValue() <= p99LimitMs);
+        return step;
+    }
+}
@@ -0,0 +1,41 @@
+package com.messaging.loadtest;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// Word source for message bodies and search queries, skewed so a few words are common and most are rare
+final class Vocabulary {
+
+    private static final String[] WORDS = {
+            "hello", "thanks", "meeting", "tomorrow", "lunch", "project", "deadline", "call", "later", "today",
+            "weekend", "coffee", "review", "update", "please", "check", "photo", "link", "ticket", "release",
+            "build", "deploy", "server", "client", "budget", "invoice", "flight", "hotel", "dinner", "birthday",
+            "football", "concert", "movie", "recipe", "garden", "doctor", "school", "holiday", "train", "airport",
+            "design", "draft", "contract", "schedule", "report", "analysis", "feedback", "question", "answer", "idea",
+            "market", "customer", "support", "network", "database", "backup", "password", "account", "payment", "refund",
+            "kitchen", "office", "family", "friend", "message", "picture", "video", "music", "podcast", "article",
+            "weather", "rain", "sunny", "snow", "beach", "mountain", "river", "city", "village", "museum",
+            "library", "bakery", "pizza", "sushi", "salad", "burger", "tea", "juice", "bicycle", "parking",
+            "camera", "laptop", "phone", "charger", "battery", "keyboard", "monitor", "printer", "router", "cable",
+            "quarterly", "roadmap", "milestone", "sprint", "retro", "standup", "onboarding", "interview", "offer", "promotion",
+            "astronomy", "telescope", "volcano", "glacier", "archipelago", "harmonica", "origami", "saxophone", "zeppelin", "quokka"
+    };
+
+    private Vocabulary() {
+    }
+
+    static String word() {
+        double skewed = Math.pow(ThreadLocalRandom.current().nextDouble(), 2);
+        return WORDS[(int) (skewed * WORDS.length)];
+    }
+
+    static String text(int length) {
+        StringBuilder text = new StringBuilder(length + 16);
+        while (text.length() < length) {
+            if (text.length() > 0) {
+                text.append(' ');
+            }
+            text.append(word());
+        }
+        return text.toString();
+    }
+}